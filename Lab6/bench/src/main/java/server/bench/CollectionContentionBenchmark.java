@@ -0,0 +1,160 @@
+package server.bench;
+
+import common.data.Ticket;
+import common.data.TicketType;
+import common.exceptions.WrongArgumentException;
+import common.managers.CollectionManager;
+import common.managers.FileManager;
+import common.managers.IdManager;
+import common.utils.generators.RandomTicketGenerator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import server.system.ServerCollectionManager;
+import server.system.SnapshotCollectionManager;
+
+/**
+ * Конкуренция за менеджер коллекции при разной доле читающих операций.
+ *
+ * <p>Потоки в замкнутом цикле обращаются к менеджеру напрямую, без сети. Читающая операция — поиск
+ * по {@code id} или фильтрация по типу, изменяющая — замена билета по {@code id}, поэтому размер
+ * коллекции не меняется. Сравниваются две схемы:
+ *
+ * <ul>
+ *   <li>{@code monitor} — все операции под монитором коллекции, как до параллельного чтения;
+ *   <li>{@code stamped} — изменения под монитором, чтение без него, под блокировкой менеджера, как
+ *       исполняет запросы сервер;
+ *   <li>{@code snapshot} — то же с {@link SnapshotCollectionManager}, где чтение не блокируется.
+ * </ul>
+ *
+ * <p>Используйте: {@code CollectionContentionBenchmark [threads] [tickets] [seconds]
+ * [readPercents]}, где {@code readPercents} — доли чтения в процентах через запятую.
+ */
+public class CollectionContentionBenchmark {
+  public static void main(String[] args)
+      throws IOException, InterruptedException, WrongArgumentException {
+    int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int ticketCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+    String ratios = args.length > 3 ? args[3] : "100,99,90,50,0";
+
+    Path file = Files.createTempFile("bench", ".xml");
+    try {
+      FileManager fileManager = new FileManager(file.toString());
+      CollectionManager stamped = new ServerCollectionManager(fileManager, new IdManager());
+      CollectionManager snapshot = new SnapshotCollectionManager(fileManager, new IdManager());
+      RandomTicketGenerator generator = new RandomTicketGenerator(new Random(1));
+      for (int id = 1; id <= ticketCount; id++) {
+        Ticket ticket = generator.create();
+        ticket.setId(id);
+        stamped.addTicket(ticket);
+        snapshot.addTicket(ticket);
+      }
+      for (String ratio : ratios.split(",")) {
+        int readPercent = Integer.parseInt(ratio.trim());
+        for (String scheme : new String[] {"monitor", "stamped", "snapshot"}) {
+          long operations =
+              run(
+                  scheme.equals("snapshot") ? snapshot : stamped,
+                  threadCount,
+                  ticketCount,
+                  seconds,
+                  readPercent,
+                  !scheme.equals("monitor"));
+          System.out.printf(
+              "lock=%s threads=%d tickets=%d reads=%d%%: %.0f ops/s%n",
+              scheme, threadCount, ticketCount, readPercent, (double) operations / seconds);
+        }
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static long run(
+      CollectionManager collectionManager,
+      int threadCount,
+      int ticketCount,
+      int seconds,
+      int readPercent,
+      boolean concurrentReads)
+      throws InterruptedException {
+    LongAdder operations = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    List<Thread> threads = new ArrayList<>(threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                  start.await();
+                  while (System.nanoTime() < deadline) {
+                    int id = 1 + random.nextInt(ticketCount);
+                    if (random.nextInt(100) < readPercent) {
+                      if (concurrentReads) {
+                        read(collectionManager, id);
+                      } else {
+                        synchronized (collectionManager) {
+                          read(collectionManager, id);
+                        }
+                      }
+                    } else {
+                      synchronized (collectionManager) {
+                        collectionManager.updateTicket(id, replacement(collectionManager, id));
+                      }
+                    }
+                    operations.increment();
+                  }
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              },
+              "contention-" + i);
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return operations.sum();
+  }
+
+  /** Девять из десяти чтений — поиск по {@code id}, остальные — фильтрация всей коллекции. */
+  private static void read(CollectionManager collectionManager, int id) {
+    try {
+      if (id % 10 == 0) {
+        collectionManager.getFilteredByType(TicketType.values()[id % TicketType.values().length]);
+      } else {
+        collectionManager.getById(id);
+      }
+    } catch (WrongArgumentException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Ticket replacement(CollectionManager collectionManager, int id) {
+    try {
+      Ticket ticket = collectionManager.getById(id);
+      return new Ticket(
+          id,
+          ticket.getName(),
+          ticket.getCoordinates(),
+          ticket.getCreationDate(),
+          ticket.getPrice() + 1,
+          ticket.getType(),
+          ticket.getPerson());
+    } catch (WrongArgumentException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package server.bench;
+
+import common.managers.CollectionManager;
+import common.managers.CommandManager;
+import common.managers.FileManager;
+import common.managers.IdManager;
+import common.network.Request;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import server.ReceiveLoop;
+import server.pipeline.ExecutionMode;
+import server.pipeline.ProcessorOptions;
+import server.system.ServerCollectionManager;
+
+/**
+ * Сравнение режимов исполнения запросов ({@link ExecutionMode}) через loopback.
+ *
+ * <p>Для каждого режима поднимается {@link ReceiveLoop} и заданное количество клиентов отправляет
+ * запросы в замкнутом цикле ({@link LoopbackLoad}). Выводятся пропускная способность и процентили
+ * времени ответа. Режим {@code virtual} пропускается на Java ниже 21.
+ *
+ * <p>Используйте: {@code ExecutionModeBenchmark [clients] [requests] [command] [tickets] [modes]},
+ * где {@code modes} — список режимов через запятую.
+ */
+public class ExecutionModeBenchmark {
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int requests = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+    String command = args.length > 2 ? args[2] : "info";
+    int ticketCount = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+    String modes = args.length > 4 ? args[4] : "single,pool,virtual";
+
+    for (String name : modes.split(",")) {
+      ExecutionMode mode = ExecutionMode.forName(name);
+      Path file = Files.createTempFile("bench", ".xml");
+      try {
+        CollectionManager collectionManager = collection(file, ticketCount);
+        CommandManager commandManager = new CommandManager(collectionManager, null, null);
+        LoopbackLoad load;
+        try (ReceiveLoop loop =
+            ReceiveLoop.open(
+                new InetSocketAddress("localhost", 0),
+                false,
+                commandManager,
+                new ProcessorOptions().executionMode(mode))) {
+          Thread thread = new Thread(loop, "bench-selector");
+          thread.start();
+          load = LoopbackLoad.run(loop.getLocalAddress(), clientCount, requests, request(command));
+          loop.stop();
+          thread.join();
+        }
+        System.out.printf(
+            "mode=%s clients=%d command=%s: %s%n",
+            mode.name().toLowerCase(), clientCount, command, load.getSummary());
+      } catch (UnsupportedOperationException e) {
+        System.out.println("mode=" + mode.name().toLowerCase() + ": " + e.getMessage());
+      } finally {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  /** Создает коллекцию из заданного количества билетов с временами, взятыми из файла. */
+  static CollectionManager collection(Path file, int ticketCount) {
+    CollectionManager collectionManager =
+        new ServerCollectionManager(new FileManager(file.toString()), new IdManager());
+    collectionManager.fillCollection(TransportAllocationBenchmark.tickets(ticketCount));
+    return collectionManager;
+  }
+
+  static Request request(String command) {
+    return new Request(command, null);
+  }
+}
@@ -0,0 +1,162 @@
+package server.bench;
+
+import common.network.Codecs;
+import common.network.Fragmenter;
+import common.network.FrameHeader;
+import common.network.MessageCodec;
+import common.network.Reassembler;
+import common.network.Request;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Нагрузка на сервер через loopback: клиенты в отдельных потоках отправляют один и тот же запрос в
+ * замкнутом цикле, следующий — после ответа на предыдущий, и повторяют его при потере.
+ */
+final class LoopbackLoad {
+  private static final int CLIENT_TIMEOUT_MS = 500;
+  private static final int WARMUP_REQUESTS = 200;
+
+  private final long[] latencies;
+  private final long elapsedNanos;
+
+  private LoopbackLoad(long[] latencies, long elapsedNanos) {
+    this.latencies = latencies;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /**
+   * Прогревает сервер и замеряет время ответов.
+   *
+   * @param server адрес сервера.
+   * @param clientCount количество клиентов, каждый со своим сокетом.
+   * @param requests количество замеряемых запросов на клиента.
+   * @param request отправляемый запрос.
+   */
+  static LoopbackLoad run(SocketAddress server, int clientCount, int requests, Request request)
+      throws InterruptedException {
+    long[][] latencies = new long[clientCount][];
+    CountDownLatch ready = new CountDownLatch(clientCount);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> clients = new ArrayList<>();
+    for (int i = 0; i < clientCount; i++) {
+      int index = i;
+      Thread client =
+          new Thread(
+              () -> {
+                try (DatagramSocket socket = new DatagramSocket()) {
+                  Client benchClient = new Client(socket, server, index + 1, request);
+                  benchClient.run(WARMUP_REQUESTS, null);
+                  ready.countDown();
+                  start.await();
+                  latencies[index] = new long[requests];
+                  benchClient.run(requests, latencies[index]);
+                } catch (IOException | ClassNotFoundException e) {
+                  throw new IllegalStateException(e);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              });
+      clients.add(client);
+      client.start();
+    }
+    ready.await();
+    long started = System.nanoTime();
+    start.countDown();
+    for (Thread client : clients) {
+      client.join();
+    }
+    long elapsed = System.nanoTime() - started;
+    long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+    return new LoopbackLoad(all, elapsed);
+  }
+
+  double getThroughput() {
+    return latencies.length / (elapsedNanos / 1e9);
+  }
+
+  /** Возвращает процентиль времени ответа в микросекундах. */
+  double getPercentileMicros(double percentile) {
+    int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+    return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1000.0;
+  }
+
+  String getSummary() {
+    return String.format(
+        "%.0f запросов/с, p50 %.1f мкс, p99 %.1f мкс, p99.9 %.1f мкс",
+        getThroughput(),
+        getPercentileMicros(50),
+        getPercentileMicros(99),
+        getPercentileMicros(99.9));
+  }
+
+  private static final class Client {
+    private final DatagramSocket socket;
+    private final MessageCodec codec = Codecs.BINARY;
+    private final long clientId;
+    private final Request request;
+    private final Reassembler reassembler = new Reassembler(1);
+    private final ByteBuffer sendFrame = ByteBuffer.allocate(FrameHeader.MAX_DATAGRAM_SIZE);
+    private final byte[] receiveData = new byte[FrameHeader.MAX_DATAGRAM_SIZE];
+    private final DatagramPacket packet = new DatagramPacket(receiveData, receiveData.length);
+    private long sequence;
+
+    private Client(DatagramSocket socket, SocketAddress server, long clientId, Request request)
+        throws IOException {
+      this.socket = socket;
+      this.clientId = clientId;
+      this.request = request;
+      socket.connect(server);
+      socket.setSoTimeout(CLIENT_TIMEOUT_MS);
+    }
+
+    private void run(int requests, long[] latencies) throws IOException, ClassNotFoundException {
+      for (int i = 0; i < requests; i++) {
+        long started = System.nanoTime();
+        exchange(++sequence);
+        if (latencies != null) {
+          latencies[i] = System.nanoTime() - started;
+        }
+      }
+    }
+
+    private void exchange(long messageId) throws IOException, ClassNotFoundException {
+      ByteBuffer payload = codec.encode(request.withIdentity(clientId, messageId));
+      while (true) {
+        int count = Fragmenter.fragmentCount(payload.remaining());
+        for (int i = 0; i < count; i++) {
+          ByteBuffer frame =
+              Fragmenter.writeFragment(sendFrame, messageId, codec.getId(), payload, i);
+          socket.send(new DatagramPacket(frame.array(), frame.arrayOffset(), frame.remaining()));
+        }
+        try {
+          while (true) {
+            packet.setLength(receiveData.length);
+            socket.receive(packet);
+            ByteBuffer frame = ByteBuffer.wrap(receiveData, 0, packet.getLength());
+            FrameHeader header = FrameHeader.read(frame);
+            if (header.getMessageId() != messageId) {
+              continue;
+            }
+            ByteBuffer message = reassembler.accept(header, frame);
+            if (message != null) {
+              codec.decode(message);
+              return;
+            }
+          }
+        } catch (SocketTimeoutException e) {
+          // Повтор с тем же номером: сервер ответит сохраненным ответом.
+          reassembler.discard(messageId);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package server.bench;
+
+import common.managers.CollectionManager;
+import common.managers.CommandManager;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import server.ReceiveLoop;
+import server.pipeline.ProcessorOptions;
+
+/**
+ * Масштабирование приема по количеству каналов с {@code SO_REUSEPORT} через loopback.
+ *
+ * <p>Для каждого количества каналов на одном порту поднимаются циклы {@link ReceiveLoop}, каждый в
+ * своем потоке, с общей коллекцией. Клиенты ({@link LoopbackLoad}) используют разные порты, поэтому
+ * ядро распределяет их между каналами. Рабочие потоки делятся между каналами так же, как в {@code
+ * UDPServer}.
+ *
+ * <p>Используйте: {@code ReusePortBenchmark [clients] [requests] [command] [channels]}, где {@code
+ * channels} — список количеств каналов через запятую.
+ */
+public class ReusePortBenchmark {
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int requests = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+    String command = args.length > 2 ? args[2] : "info";
+    int cores = Runtime.getRuntime().availableProcessors();
+    String channelCounts = args.length > 3 ? args[3] : "1,2,4," + cores;
+
+    for (String value : channelCounts.split(",")) {
+      int channelCount = Integer.parseInt(value);
+      Path file = Files.createTempFile("bench", ".xml");
+      List<ReceiveLoop> loops = new ArrayList<>();
+      List<Thread> threads = new ArrayList<>();
+      try {
+        CollectionManager collectionManager = ExecutionModeBenchmark.collection(file, 10);
+        CommandManager commandManager = new CommandManager(collectionManager, null, null);
+        InetSocketAddress address = new InetSocketAddress("localhost", 0);
+        // Одни параметры на все каналы: блокировка исполнения общая, как в UDPServer.
+        ProcessorOptions options =
+            new ProcessorOptions().workerCount(Math.max(1, cores / channelCount));
+        for (int i = 0; i < channelCount; i++) {
+          ReceiveLoop loop = ReceiveLoop.open(address, true, commandManager, options);
+          loops.add(loop);
+          // Остальные каналы привязываются к порту, который система выбрала для первого.
+          address = (InetSocketAddress) loop.getLocalAddress();
+          Thread thread = new Thread(loop, "bench-selector-" + i);
+          thread.start();
+          threads.add(thread);
+        }
+
+        SocketAddress server = loops.get(0).getLocalAddress();
+        LoopbackLoad load =
+            LoopbackLoad.run(
+                server, clientCount, requests, ExecutionModeBenchmark.request(command));
+        System.out.printf(
+            "channels=%d clients=%d command=%s: %s%n",
+            channelCount, clientCount, command, load.getSummary());
+      } finally {
+        for (ReceiveLoop loop : loops) {
+          loop.stop();
+        }
+        for (Thread thread : threads) {
+          thread.join();
+        }
+        for (ReceiveLoop loop : loops) {
+          loop.close();
+        }
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
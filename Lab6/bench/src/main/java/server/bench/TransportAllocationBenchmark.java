@@ -0,0 +1,107 @@
+package server.bench;
+
+import common.data.Coordinates;
+import common.data.Ticket;
+import common.data.TicketType;
+import common.network.BufferPool;
+import common.network.Codecs;
+import common.network.Fragmenter;
+import common.network.FrameHeader;
+import common.network.MessageCodec;
+import common.network.Reassembler;
+import common.network.Request;
+import common.network.Response;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Замер выделения памяти на пути запроса через транспорт сервера: прием кадра в буфер из пула,
+ * разбор заголовка, декодирование запроса, кодирование ответа и нарезка его на кадры.
+ *
+ * <p>Исполнение команды в замер не входит. Используйте: {@code TransportAllocationBenchmark [codec]
+ * [tickets] [iterations]}.
+ */
+public class TransportAllocationBenchmark {
+  private static final int WARMUP_ITERATIONS = 50_000;
+
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    MessageCodec codec = Codecs.forName(args.length > 0 ? args[0] : "binary");
+    int ticketCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+
+    BufferPool pool = new BufferPool(FrameHeader.MAX_DATAGRAM_SIZE, 64);
+    Reassembler reassembler = new Reassembler(4);
+    ByteBuffer requestPayload = copy(codec.encode(new Request("show", null)));
+    Response response = new Response("Элементы коллекции:", tickets(ticketCount));
+
+    run(codec, pool, reassembler, requestPayload, response, WARMUP_ITERATIONS);
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long started = System.nanoTime();
+    run(codec, pool, reassembler, requestPayload, response, iterations);
+    long elapsed = System.nanoTime() - started;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+    System.out.printf(
+        "codec=%s tickets=%d: %.1f байт/запрос, %.2f мкс/запрос%n",
+        codec.getClass().getSimpleName(),
+        ticketCount,
+        (double) allocated / iterations,
+        elapsed / 1000.0 / iterations);
+  }
+
+  private static void run(
+      MessageCodec codec,
+      BufferPool pool,
+      Reassembler reassembler,
+      ByteBuffer requestPayload,
+      Response response,
+      int iterations)
+      throws IOException, ClassNotFoundException {
+    for (long messageId = 1; messageId <= iterations; messageId++) {
+      ByteBuffer received =
+          Fragmenter.writeFragment(pool.acquire(), messageId, codec.getId(), requestPayload, 0);
+      FrameHeader header = FrameHeader.read(received);
+      Request request = (Request) codec.decode(reassembler.accept(header, received));
+      pool.release(received);
+      if (request == null) {
+        throw new IllegalStateException();
+      }
+
+      ByteBuffer payload = codec.encode(response);
+      int count = Fragmenter.fragmentCount(payload.remaining());
+      for (int i = 0; i < count; i++) {
+        pool.release(
+            Fragmenter.writeFragment(pool.acquire(), messageId, codec.getId(), payload, i));
+      }
+    }
+  }
+
+  private static ByteBuffer copy(ByteBuffer buffer) {
+    return ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+  }
+
+  static List<Ticket> tickets(int count) {
+    List<Ticket> tickets = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++) {
+      Ticket ticket = new Ticket();
+      ticket.setId(i);
+      ticket.setName("Билет " + i);
+      Coordinates coordinates = new Coordinates();
+      coordinates.setX(i);
+      coordinates.setY((long) i * 2);
+      ticket.setCoordinates(coordinates);
+      ticket.setCreationDate(LocalDate.now());
+      ticket.setPrice(100 + i);
+      ticket.setType(TicketType.values()[i % TicketType.values().length]);
+      tickets.add(ticket);
+    }
+    return tickets;
+  }
+}
@@ -0,0 +1,519 @@
+package client;
+
+import common.data.Ticket;
+import common.data.TicketType;
+import common.exceptions.CommandExecuteException;
+import common.network.BusyResponse;
+import common.network.Codecs;
+import common.network.DeltaResponse;
+import common.network.Fragmenter;
+import common.network.FrameHeader;
+import common.network.MessageCodec;
+import common.network.PageResponse;
+import common.network.PayloadDecompressor;
+import common.network.Reassembler;
+import common.network.Request;
+import common.network.RequestBody;
+import common.network.RequestBodyWithTicket;
+import common.network.Response;
+import common.network.ResponseWithException;
+import common.network.RttEstimator;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронный клиент коллекции для использования из других программ.
+ *
+ * <p>Каждая команда возвращает {@link CompletableFuture}. Запросы из любых потоков отправляются
+ * через один неблокирующий {@link DatagramChannel}: одновременно в полете до {@code maxInFlight}
+ * сообщений, остальные ждут своей очереди. Ответы сопоставляются с запросами по идентификатору
+ * сообщения, поэтому могут приходить в любом порядке.
+ *
+ * <p>Все операции с каналом выполняет один поток ввода-вывода. Как и интерактивный клиент, он
+ * повторяет потерянные запросы по таймауту {@link RttEstimator}, запрашивает недостающие фрагменты
+ * ответа кадром {@link FrameHeader#NACK} и повторяет запросы, отклоненные перегруженным сервером.
+ * Повторы безопасны: каждый запрос несет идентификатор клиента и номер, по которым сервер узнает
+ * повтор.
+ *
+ * <p>Запросы не зависят друг от друга: если порядок важен, следующий запрос отправляется после
+ * завершения предыдущего ({@link CompletableFuture#thenCompose}). Результаты передаются в {@code
+ * callbackExecutor}, поэтому продолжения не задерживают поток ввода-вывода.
+ *
+ * <p>Ошибка, которой сервер ответил на команду, завершает результат исключением {@link
+ * CommandExecuteException}, таймаут — {@link SocketTimeoutException}.
+ */
+public class AsyncCollectionClient implements AutoCloseable {
+  private static final int MIN_RTO_MS = 200;
+  private static final int MAX_RTO_MS = 10000;
+  private static final int MAX_ATTEMPTS = 5;
+  private static final int MAX_NACK_ROUNDS = 10;
+  private static final int MAX_BUSY_RETRIES = 10;
+  private static final int PAGE_SIZE = 100;
+  private static final int DEFAULT_MAX_IN_FLIGHT = 256;
+  private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+  private static final long IDLE_SELECT_MS = 1000;
+
+  private final DatagramChannel channel;
+  private final Selector selector;
+  private final MessageCodec codec;
+  private final int maxInFlight;
+  private final Executor callbackExecutor;
+  private final RttEstimator rttEstimator = new RttEstimator(MIN_RTO_MS, MAX_RTO_MS);
+  private final long clientId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+  private final Queue<Call> submitted = new ConcurrentLinkedQueue<>();
+  private final Thread thread;
+  private volatile boolean isRunning = true;
+
+  // Состояние потока ввода-вывода.
+  private final ArrayDeque<Call> waiting = new ArrayDeque<>();
+  private final Map<Long, Call> inFlight = new HashMap<>();
+  private final Reassembler reassembler;
+  private final PayloadDecompressor decompressor = new PayloadDecompressor();
+  private final ByteBuffer receiveBuffer = ByteBuffer.allocate(FrameHeader.MAX_DATAGRAM_SIZE);
+  private final ByteBuffer sendFrame = ByteBuffer.allocate(FrameHeader.MAX_DATAGRAM_SIZE);
+  private long nextMessageId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE / 2);
+
+  private AsyncCollectionClient(
+      DatagramChannel channel,
+      Selector selector,
+      MessageCodec codec,
+      int maxInFlight,
+      Executor callbackExecutor) {
+    this.channel = channel;
+    this.selector = selector;
+    this.codec = codec;
+    this.maxInFlight = maxInFlight;
+    this.callbackExecutor = callbackExecutor;
+    this.reassembler = new Reassembler(maxInFlight);
+    this.thread = new Thread(this::run, "async-client");
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Открывает клиент с двоичным кодеком.
+   *
+   * @param serverAddress адрес сервера.
+   */
+  public static AsyncCollectionClient open(InetSocketAddress serverAddress) throws IOException {
+    return open(serverAddress, Codecs.BINARY, DEFAULT_MAX_IN_FLIGHT, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Открывает клиент и запускает его поток ввода-вывода.
+   *
+   * @param serverAddress адрес сервера.
+   * @param codec кодек запросов.
+   * @param maxInFlight максимальное количество сообщений в полете.
+   * @param callbackExecutor исполнитель, в котором завершаются результаты команд.
+   */
+  public static AsyncCollectionClient open(
+      InetSocketAddress serverAddress,
+      MessageCodec codec,
+      int maxInFlight,
+      Executor callbackExecutor)
+      throws IOException {
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException(
+          "Количество сообщений в полете должно быть положительным.");
+    }
+    Selector selector = Selector.open();
+    DatagramChannel channel = DatagramChannel.open();
+    try {
+      channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+      channel.configureBlocking(false);
+      // Подключенный канал принимает датаграммы только от сервера.
+      channel.connect(serverAddress);
+      channel.register(selector, SelectionKey.OP_READ);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      selector.close();
+      throw e;
+    }
+    AsyncCollectionClient client =
+        new AsyncCollectionClient(channel, selector, codec, maxInFlight, callbackExecutor);
+    client.thread.start();
+    return client;
+  }
+
+  /**
+   * Отправляет произвольный запрос.
+   *
+   * @param request запрос.
+   * @return Ответ сервера как есть, в том числе {@link ResponseWithException}.
+   */
+  public CompletableFuture<Response> execute(Request request) {
+    Call call = new Call(request);
+    submitted.add(call);
+    if (isRunning) {
+      selector.wakeup();
+    } else {
+      // Поток ввода-вывода мог завершиться до постановки запроса в очередь.
+      failSubmitted();
+    }
+    return call.future;
+  }
+
+  /** Выполняет команду "info". */
+  public CompletableFuture<String> info() {
+    return message(execute(command("info")));
+  }
+
+  /** Выполняет команду "show" и собирает все страницы ответа. */
+  public CompletableFuture<List<Ticket>> show() {
+    return collectPages("show", new String[0], null, new ArrayList<>());
+  }
+
+  /** Выполняет команду "filter_by_type" и собирает все страницы ответа. */
+  public CompletableFuture<List<Ticket>> filterByType(TicketType type) {
+    return collectPages("filter_by_type", new String[] {type.name()}, null, new ArrayList<>());
+  }
+
+  /**
+   * Выполняет команду "show_since".
+   *
+   * @param version версия коллекции, известная вызывающему.
+   */
+  public CompletableFuture<DeltaResponse> showSince(long version) {
+    return execute(command("show_since", String.valueOf(version)))
+        .thenApply(AsyncCollectionClient::checked)
+        .thenApply(
+            response -> {
+              if (!(response instanceof DeltaResponse)) {
+                throw new CompletionException(
+                    new CommandExecuteException("Сервер не вернул изменения коллекции."));
+              }
+              return (DeltaResponse) response;
+            });
+  }
+
+  /**
+   * Выполняет команду "add". Идентификатор билета назначает сервер.
+   *
+   * @return Сообщение сервера.
+   */
+  public CompletableFuture<String> add(Ticket ticket) {
+    return message(execute(new Request("add", new RequestBodyWithTicket(new String[0], ticket))));
+  }
+
+  /** Выполняет команду "add_if_max". */
+  public CompletableFuture<String> addIfMax(Ticket ticket) {
+    return message(
+        execute(new Request("add_if_max", new RequestBodyWithTicket(new String[0], ticket))));
+  }
+
+  /** Выполняет команду "update". */
+  public CompletableFuture<String> update(int id, Ticket ticket) {
+    return message(
+        execute(
+            new Request(
+                "update", new RequestBodyWithTicket(new String[] {String.valueOf(id)}, ticket))));
+  }
+
+  /** Выполняет команду "remove_by_id". */
+  public CompletableFuture<String> removeById(int id) {
+    return message(execute(command("remove_by_id", String.valueOf(id))));
+  }
+
+  /** Выполняет команду "clear". */
+  public CompletableFuture<String> clear() {
+    return message(execute(command("clear")));
+  }
+
+  /** Выполняет команду "average_of_price". */
+  public CompletableFuture<String> averageOfPrice() {
+    return message(execute(command("average_of_price")));
+  }
+
+  /** Останавливает поток ввода-вывода; незавершенные запросы завершаются исключением. */
+  @Override
+  public void close() throws IOException {
+    isRunning = false;
+    selector.wakeup();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      failSubmitted();
+      selector.close();
+      channel.close();
+    }
+  }
+
+  private static Request command(String name, String... args) {
+    return new Request(name, new RequestBody(args));
+  }
+
+  private static CompletableFuture<String> message(CompletableFuture<Response> response) {
+    return response.thenApply(AsyncCollectionClient::checked).thenApply(Response::getMessage);
+  }
+
+  /** Превращает ошибку, которой ответил сервер, в исключение результата. */
+  private static Response checked(Response response) {
+    if (response instanceof ResponseWithException) {
+      Exception exception = ((ResponseWithException) response).getException();
+      throw new CompletionException(
+          new CommandExecuteException(
+              exception != null ? exception.getMessage() : response.getMessage()));
+    }
+    if (response instanceof BusyResponse) {
+      throw new CompletionException(new CommandExecuteException(response.getMessage()));
+    }
+    return response;
+  }
+
+  /** Запрашивает страницы по {@code PAGE_SIZE} элементов, пока сервер возвращает токен. */
+  private CompletableFuture<List<Ticket>> collectPages(
+      String name, String[] args, String token, List<Ticket> tickets) {
+    String[] pageArgs = Arrays.copyOf(args, args.length + (token == null ? 1 : 2));
+    pageArgs[args.length] = String.valueOf(PAGE_SIZE);
+    if (token != null) {
+      pageArgs[args.length + 1] = token;
+    }
+    return execute(command(name, pageArgs))
+        .thenApply(AsyncCollectionClient::checked)
+        .thenCompose(
+            response -> {
+              tickets.addAll(response.getTickets());
+              String next =
+                  response instanceof PageResponse
+                      ? ((PageResponse) response).getNextToken()
+                      : null;
+              return next == null
+                  ? CompletableFuture.completedFuture(tickets)
+                  : collectPages(name, args, next, tickets);
+            });
+  }
+
+  private void run() {
+    IOException failure = null;
+    try {
+      while (isRunning) {
+        selector.select(selectTimeout());
+        selector.selectedKeys().clear();
+        receive();
+        admit();
+        handleTimeouts(System.nanoTime());
+      }
+    } catch (IOException e) {
+      failure = e;
+    } finally {
+      isRunning = false;
+      IOException cause = failure != null ? failure : new IOException("Клиент закрыт.");
+      for (Call call : inFlight.values()) {
+        fail(call, cause);
+      }
+      inFlight.clear();
+      for (Call call : waiting) {
+        fail(call, cause);
+      }
+      waiting.clear();
+      failSubmitted();
+    }
+  }
+
+  private void failSubmitted() {
+    Call call;
+    while ((call = submitted.poll()) != null) {
+      fail(call, new IOException("Клиент закрыт."));
+    }
+  }
+
+  private long selectTimeout() {
+    if (inFlight.isEmpty()) {
+      return IDLE_SELECT_MS;
+    }
+    long nearestDeadline = Long.MAX_VALUE;
+    for (Call call : inFlight.values()) {
+      nearestDeadline = Math.min(nearestDeadline, call.deadline);
+    }
+    // Ноль означает бесконечное ожидание, поэтому таймаут не меньше миллисекунды.
+    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nearestDeadline - System.nanoTime()));
+  }
+
+  /** Ставит новые запросы в очередь и отправляет их, пока в окне есть место. */
+  private void admit() throws IOException {
+    Call call;
+    while ((call = submitted.poll()) != null) {
+      waiting.add(call);
+    }
+    while (inFlight.size() < maxInFlight && (call = waiting.poll()) != null) {
+      call.messageId = nextMessageId++;
+      ByteBuffer encoded;
+      try {
+        encoded = codec.encode(call.request.withIdentity(clientId, call.messageId));
+      } catch (IOException | RuntimeException e) {
+        fail(call, e);
+        continue;
+      }
+      // Буфер кодека переиспользуется следующим запросом, а этот может понадобиться для повтора.
+      call.payload = ByteBuffer.allocate(encoded.remaining()).put(encoded).flip();
+      inFlight.put(call.messageId, call);
+      transmit(call);
+    }
+  }
+
+  private void transmit(Call call) throws IOException {
+    call.attempts++;
+    call.sentAt = System.nanoTime();
+    call.deadline =
+        call.sentAt + TimeUnit.MILLISECONDS.toNanos(rttEstimator.getTimeoutMillis(call.attempts));
+    int count = Fragmenter.fragmentCount(call.payload.remaining());
+    byte flags = (byte) (codec.getId() | FrameHeader.ACCEPTS_COMPRESSED);
+    for (int i = 0; i < count; i++) {
+      send(Fragmenter.writeFragment(sendFrame, call.messageId, flags, call.payload, i));
+    }
+  }
+
+  private void send(ByteBuffer frame) throws IOException {
+    try {
+      channel.write(frame);
+    } catch (PortUnreachableException e) {
+      // Сервер еще не запущен или перезапускается: запрос будет повторен по таймауту.
+    }
+  }
+
+  private void receive() throws IOException {
+    while (true) {
+      receiveBuffer.clear();
+      try {
+        if (channel.read(receiveBuffer) <= 0) {
+          return;
+        }
+      } catch (PortUnreachableException e) {
+        continue;
+      }
+      try {
+        accept(receiveBuffer.flip());
+      } catch (IllegalArgumentException e) {
+        // Некорректный кадр отбрасывается, запрос будет повторен по таймауту.
+      }
+    }
+  }
+
+  private void accept(ByteBuffer frame) {
+    FrameHeader header = FrameHeader.read(frame);
+    Call call = inFlight.get(header.getMessageId());
+    // Уведомления подписки этим клиентом не используются.
+    if (header.getType() != FrameHeader.DATA || header.isPush() || call == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (!call.answered) {
+      call.answered = true;
+      // Время ответа на повторную отправку не учитывается: неизвестно, на какую попытку он пришел.
+      if (call.attempts == 1) {
+        rttEstimator.addSample(now - call.sentAt);
+      }
+    }
+
+    ByteBuffer message = reassembler.accept(header, frame);
+    if (message == null) {
+      call.deadline = now + TimeUnit.MILLISECONDS.toNanos(rttEstimator.getRtoMillis());
+      call.idleRounds = 0;
+      return;
+    }
+    inFlight.remove(call.messageId);
+    Response response;
+    try {
+      MessageCodec responseCodec = Codecs.forId(header.getCodecId());
+      if (responseCodec == null) {
+        throw new IOException("Сервер ответил неизвестным кодеком " + header.getCodecId());
+      }
+      if (header.isCompressed()) {
+        message = decompressor.decompress(message);
+      }
+      response = (Response) responseCodec.decode(message);
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      fail(call, e);
+      return;
+    }
+
+    if (response instanceof BusyResponse && call.busyRetries < MAX_BUSY_RETRIES) {
+      // Сервер не исполнял запрос: он повторяется с тем же номером после отсрочки.
+      call.busyRetries++;
+      call.busy = true;
+      call.answered = false;
+      call.attempts = 0;
+      long retryAfter = ((BusyResponse) response).getRetryAfterMillis();
+      call.deadline = now + TimeUnit.MILLISECONDS.toNanos(retryAfter);
+      inFlight.put(call.messageId, call);
+      return;
+    }
+    callbackExecutor.execute(() -> call.future.complete(response));
+  }
+
+  private void handleTimeouts(long now) throws IOException {
+    for (Call call : inFlight.values().toArray(new Call[0])) {
+      if (call.deadline > now) {
+        continue;
+      }
+      if (reassembler.isPartial(call.messageId)) {
+        if (++call.idleRounds > MAX_NACK_ROUNDS) {
+          timeout(call);
+        } else {
+          send(Fragmenter.nack(call.messageId, reassembler.missingFragments(call.messageId)));
+          call.deadline = now + TimeUnit.MILLISECONDS.toNanos(rttEstimator.getRtoMillis());
+        }
+      } else if (call.busy) {
+        call.busy = false;
+        transmit(call);
+      } else if (call.attempts >= MAX_ATTEMPTS) {
+        timeout(call);
+      } else {
+        rttEstimator.onRetransmission();
+        transmit(call);
+      }
+    }
+  }
+
+  private void timeout(Call call) {
+    inFlight.remove(call.messageId);
+    reassembler.discard(call.messageId);
+    fail(call, new SocketTimeoutException("Превышено время ожидания от сервера."));
+  }
+
+  private void fail(Call call, Throwable cause) {
+    callbackExecutor.execute(() -> call.future.completeExceptionally(cause));
+  }
+
+  /** Запрос в полете или в очереди. Кроме результата, используется только потоком ввода-вывода. */
+  private static final class Call {
+    private final Request request;
+    private final CompletableFuture<Response> future = new CompletableFuture<>();
+    private long messageId;
+    private ByteBuffer payload;
+    private int attempts;
+    private int idleRounds;
+    private int busyRetries;
+    private long sentAt;
+    private long deadline;
+    private boolean answered;
+    private boolean busy;
+
+    private Call(Request request) {
+      this.request = request;
+    }
+  }
+}
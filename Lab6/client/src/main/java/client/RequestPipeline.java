@@ -0,0 +1,378 @@
+package client;
+
+import common.network.BatchRequest;
+import common.network.BatchResponse;
+import common.network.BusyResponse;
+import common.network.Codecs;
+import common.network.Fragmenter;
+import common.network.FrameHeader;
+import common.network.MessageCodec;
+import common.network.PayloadDecompressor;
+import common.network.Reassembler;
+import common.network.Request;
+import common.network.Response;
+import common.network.RttEstimator;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Отправка запросов скрипта окном: до {@code window} сообщений находятся в полете одновременно.
+ *
+ * <p>Ответы сопоставляются с запросами по идентификатору сообщения и выводятся строго в порядке
+ * скрипта, вместе со строками, добавленными через {@link #print(String)}. Каждый запрос указывает
+ * номер последнего изменяющего коллекцию запроса, поэтому сервер исполняет изменения в порядке
+ * скрипта, а чтения видят все предыдущие изменения, даже если датаграммы переставились в сети.
+ *
+ * <p>Потерянные запросы отправляются повторно по таймауту {@link RttEstimator}, недостающие
+ * фрагменты ответа запрашиваются кадром {@link FrameHeader#NACK}.
+ *
+ * <p>Подряд идущие команды собираются в {@link BatchRequest}, пока пакет помещается в один кадр:
+ * сервер исполняет их за один захват коллекции и возвращает ответы одним сообщением. Пакет
+ * считается изменяющим, если изменяющая хотя бы одна его команда.
+ */
+public class RequestPipeline {
+  private static final int MAX_NACK_ROUNDS = 10;
+  private static final int MAX_BUSY_RETRIES = 10;
+  private static final int MAX_BATCH_COMMANDS = 64;
+
+  /** Запас на заголовок пакета: тег, идентификатор клиента, номер, зависимость и количество. */
+  private static final int BATCH_OVERHEAD = 48;
+
+  private final DatagramSocket socket;
+  private final MessageCodec codec;
+  private final RttEstimator rttEstimator;
+  private final long clientId;
+  private final LongSupplier messageIds;
+  private final int window;
+  private final int maxAttempts;
+  private final Consumer<Response> responsePrinter;
+  private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+  private final Map<Long, Message> inFlight = new HashMap<>();
+  private final Reassembler reassembler;
+  private final PayloadDecompressor decompressor = new PayloadDecompressor();
+  private final byte[] receiveData = new byte[FrameHeader.MAX_DATAGRAM_SIZE];
+  private final DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+  private final ByteBuffer sendFrame = ByteBuffer.allocate(FrameHeader.MAX_DATAGRAM_SIZE);
+  private final DatagramPacket sendPacket = new DatagramPacket(new byte[0], 0);
+  private Message lastWrite;
+  private Message openBatch;
+
+  /**
+   * @param socket сокет клиента.
+   * @param serverAddress адрес сервера.
+   * @param codec кодек запросов.
+   * @param rttEstimator оценка времени ответа, общая с остальными запросами клиента.
+   * @param clientId идентификатор клиента.
+   * @param messageIds источник идентификаторов сообщений.
+   * @param window максимальное количество запросов в полете.
+   * @param maxAttempts максимальное количество отправок одного запроса.
+   * @param responsePrinter вывод ответа сервера.
+   */
+  public RequestPipeline(
+      DatagramSocket socket,
+      InetSocketAddress serverAddress,
+      MessageCodec codec,
+      RttEstimator rttEstimator,
+      long clientId,
+      LongSupplier messageIds,
+      int window,
+      int maxAttempts,
+      Consumer<Response> responsePrinter) {
+    this.socket = socket;
+    this.codec = codec;
+    this.rttEstimator = rttEstimator;
+    this.clientId = clientId;
+    this.messageIds = messageIds;
+    this.window = window;
+    this.maxAttempts = maxAttempts;
+    this.responsePrinter = responsePrinter;
+    this.reassembler = new Reassembler(window);
+    this.sendPacket.setSocketAddress(serverAddress);
+  }
+
+  /**
+   * Добавляет запрос в текущий пакет. Если пакет заполнен, он отправляется, когда в окне появится
+   * свободное место.
+   *
+   * @param request запрос.
+   * @param readOnly {@code true}, если команда не изменяет коллекцию.
+   */
+  public void submit(Request request, boolean readOnly) throws IOException {
+    int size = codec.encode(request).remaining();
+    if (openBatch != null
+        && (openBatch.requests.size() >= MAX_BATCH_COMMANDS
+            || openBatch.size + size > FrameHeader.MAX_PAYLOAD_SIZE - BATCH_OVERHEAD)) {
+      sendBatch();
+    }
+    if (openBatch == null) {
+      openBatch = new Message();
+    }
+    entries.add(new Entry(null, openBatch, openBatch.requests.size()));
+    openBatch.requests.add(request);
+    openBatch.size += size;
+    openBatch.readOnly &= readOnly;
+  }
+
+  /** Выводит строку после ответов на все ранее добавленные запросы. */
+  public void print(String line) {
+    entries.add(new Entry(line, null, 0));
+    printCompleted();
+  }
+
+  /** Отправляет неполный пакет, дожидается ответов на все запросы и выводит их. */
+  public void flush() throws IOException {
+    if (openBatch != null) {
+      sendBatch();
+    }
+    while (!inFlight.isEmpty()) {
+      pump();
+    }
+    printCompleted();
+  }
+
+  /** Отправляет текущий пакет, дождавшись свободного места в окне. */
+  private void sendBatch() throws IOException {
+    Message message = openBatch;
+    openBatch = null;
+    while (inFlight.size() >= window) {
+      pump();
+    }
+    message.messageId = messageIds.getAsLong();
+    long dependsOn = lastWrite != null ? lastWrite.messageId : 0;
+    // Одна команда отправляется обычным запросом, без заголовка пакета.
+    Request request =
+        message.requests.size() == 1 ? message.requests.get(0) : new BatchRequest(message.requests);
+    ByteBuffer encoded = codec.encode(request.withIdentity(clientId, message.messageId, dependsOn));
+    // Буфер кодека переиспользуется следующим запросом, а этот может понадобиться для повтора.
+    message.payload = ByteBuffer.allocate(encoded.remaining()).put(encoded).flip();
+
+    if (lastWrite != null && inFlight.containsKey(lastWrite.messageId)) {
+      message.dependency = lastWrite;
+    }
+    if (!message.readOnly) {
+      lastWrite = message;
+    }
+    inFlight.put(message.messageId, message);
+    transmit(message);
+    printCompleted();
+  }
+
+  private void transmit(Message entry) throws IOException {
+    entry.attempts++;
+    entry.stalledAttempts++;
+    entry.sentAt = System.nanoTime();
+    entry.deadline =
+        entry.sentAt
+            + TimeUnit.MILLISECONDS.toNanos(rttEstimator.getTimeoutMillis(entry.stalledAttempts));
+    int count = Fragmenter.fragmentCount(entry.payload.remaining());
+    byte flags = (byte) (codec.getId() | FrameHeader.ACCEPTS_COMPRESSED);
+    for (int i = 0; i < count; i++) {
+      send(Fragmenter.writeFragment(sendFrame, entry.messageId, flags, entry.payload, i));
+    }
+  }
+
+  /** Принимает одну датаграмму или дожидается ближайшего таймаута и обрабатывает его. */
+  private void pump() throws IOException {
+    long now = System.nanoTime();
+    long nearestDeadline = Long.MAX_VALUE;
+    for (Message entry : inFlight.values()) {
+      nearestDeadline = Math.min(nearestDeadline, entry.deadline);
+    }
+    long waitMillis = TimeUnit.NANOSECONDS.toMillis(nearestDeadline - now);
+    if (waitMillis > 0) {
+      socket.setSoTimeout((int) Math.min(waitMillis, Integer.MAX_VALUE));
+      try {
+        receivePacket.setLength(receiveData.length);
+        socket.receive(receivePacket);
+        accept(ByteBuffer.wrap(receiveData, 0, receivePacket.getLength()));
+      } catch (SocketTimeoutException ignored) {
+        // Просроченные запросы обрабатываются ниже.
+      } catch (IllegalArgumentException e) {
+        System.err.println("[CLIENT] Получен некорректный кадр: " + e.getMessage());
+      }
+    }
+    handleTimeouts(System.nanoTime());
+    printCompleted();
+  }
+
+  private void accept(ByteBuffer frame) {
+    FrameHeader header = FrameHeader.read(frame);
+    Message entry = inFlight.get(header.getMessageId());
+    // Уведомления сервера не относятся к запросам окна.
+    if (header.getType() != FrameHeader.DATA || header.isPush() || entry == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (!entry.answered) {
+      entry.answered = true;
+      // Время ответа на повторную отправку не учитывается: неизвестно, на какую попытку он пришел.
+      // Так же не учитывается ответ, который сервер задержал до повторной отправки предыдущего
+      // запроса, иначе одна потеря надолго увеличит таймаут.
+      entry.delayed = entry.attempts > 1 || (entry.dependency != null && entry.dependency.delayed);
+      entry.dependency = null;
+      if (!entry.delayed) {
+        rttEstimator.addSample(now - entry.sentAt);
+      }
+    }
+
+    ByteBuffer message = reassembler.accept(header, frame);
+    if (message == null) {
+      entry.deadline = now + TimeUnit.MILLISECONDS.toNanos(rttEstimator.getRtoMillis());
+      entry.idleRounds = 0;
+      return;
+    }
+    Response response = null;
+    MessageCodec responseCodec = Codecs.forId(header.getCodecId());
+    try {
+      if (responseCodec == null) {
+        throw new IOException("Сервер ответил неизвестным кодеком " + header.getCodecId());
+      }
+      if (header.isCompressed()) {
+        message = decompressor.decompress(message);
+      }
+      response = (Response) responseCodec.decode(message);
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      entry.error = "[CLIENT] Ошибка при передаче команды: " + e.getMessage();
+    }
+    if (response instanceof BusyResponse && entry.busyRetries < MAX_BUSY_RETRIES) {
+      // Сервер не исполнял запрос: он остается в окне и повторяется с тем же номером.
+      entry.busyRetries++;
+      entry.busy = true;
+      entry.answered = false;
+      long retryAfter = ((BusyResponse) response).getRetryAfterMillis();
+      entry.deadline = now + TimeUnit.MILLISECONDS.toNanos(retryAfter);
+      return;
+    }
+    inFlight.remove(entry.messageId);
+    entry.completed = true;
+    entry.response = response;
+    resetBackoff(now);
+  }
+
+  private void handleTimeouts(long now) throws IOException {
+    for (Message entry : inFlight.values().toArray(new Message[0])) {
+      if (entry.deadline > now) {
+        continue;
+      }
+      if (reassembler.isPartial(entry.messageId)) {
+        if (++entry.idleRounds > MAX_NACK_ROUNDS) {
+          fail(entry, "[CLIENT] Превышено время ожидания от сервера.");
+        } else {
+          send(Fragmenter.nack(entry.messageId, reassembler.missingFragments(entry.messageId)));
+          entry.deadline = now + TimeUnit.MILLISECONDS.toNanos(rttEstimator.getRtoMillis());
+        }
+      } else if (entry.busy) {
+        // Повтор после отказа перегруженного сервера не означает потерю и не увеличивает отсрочку.
+        entry.busy = false;
+        entry.stalledAttempts = 0;
+        transmit(entry);
+      } else if (entry.stalledAttempts >= maxAttempts) {
+        fail(entry, "[CLIENT] Превышено время ожидания от сервера.");
+      } else {
+        rttEstimator.onRetransmission();
+        transmit(entry);
+      }
+    }
+  }
+
+  /**
+   * Сбрасывает отсрочку остальных запросов, когда пришел очередной ответ, как TCP перезапускает
+   * таймер при подтверждении новых данных. Запросы, ожидающие на сервере потерянного предыдущего
+   * запроса, не должны накапливать отсрочку и исчерпывать попытки, пока канал работает.
+   */
+  private void resetBackoff(long now) {
+    long deadline = now + TimeUnit.MILLISECONDS.toNanos(rttEstimator.getTimeoutMillis(1));
+    for (Message entry : inFlight.values()) {
+      if (entry.busy) {
+        continue;
+      }
+      entry.stalledAttempts = Math.min(entry.stalledAttempts, 1);
+      entry.deadline = Math.min(entry.deadline, deadline);
+    }
+  }
+
+  private void fail(Message entry, String error) {
+    inFlight.remove(entry.messageId);
+    entry.completed = true;
+    reassembler.discard(entry.messageId);
+    entry.error = error;
+  }
+
+  private void printCompleted() {
+    Entry head;
+    while ((head = entries.peek()) != null && (head.message == null || head.message.completed)) {
+      entries.poll();
+      if (head.title != null) {
+        System.out.println(head.title);
+        continue;
+      }
+      Message message = head.message;
+      if (message.error != null) {
+        // Ошибка передачи относится ко всему пакету и выводится один раз.
+        if (head.index == 0) {
+          System.err.println(message.error);
+        }
+      } else if (message.response instanceof BatchResponse) {
+        List<Response> responses = ((BatchResponse) message.response).getResponses();
+        if (head.index < responses.size()) {
+          responsePrinter.accept(responses.get(head.index));
+        }
+      } else if (head.index == 0) {
+        // Одиночный запрос или ошибка, которой сервер ответил на пакет целиком.
+        responsePrinter.accept(message.response);
+      }
+    }
+  }
+
+  private void send(ByteBuffer frame) throws IOException {
+    sendPacket.setData(frame.array(), frame.arrayOffset(), frame.remaining());
+    socket.send(sendPacket);
+  }
+
+  /** Строка вывода, если {@code title != null}, или место ответа на команду в пакете. */
+  private static final class Entry {
+    private final String title;
+    private final Message message;
+    private final int index;
+
+    private Entry(String title, Message message, int index) {
+      this.title = title;
+      this.message = message;
+      this.index = index;
+    }
+  }
+
+  /** Пакет команд, отправляемый одним сообщением. */
+  private static final class Message {
+    private final List<Request> requests = new ArrayList<>();
+    private int size;
+    private boolean readOnly = true;
+    private long messageId;
+    private ByteBuffer payload;
+    private int attempts;
+    private int stalledAttempts;
+    private int idleRounds;
+    private long sentAt;
+    private long deadline;
+    private boolean answered;
+    private boolean delayed;
+    private boolean busy;
+    private int busyRetries;
+    private Message dependency;
+    private boolean completed;
+    private Response response;
+    private String error;
+  }
+}
@@ -0,0 +1,121 @@
+package client;
+
+import common.network.StreamFrames;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Потоковый транспорт клиента (TCP) для больших запросов и ответов.
+ *
+ * <p>Соединение открывается при первом запросе и переиспользуется; после ошибки оно закрывается и
+ * открывается заново при следующем запросе. Сообщения передаются кадрами {@link StreamFrames}.
+ */
+public class StreamTransport implements AutoCloseable {
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 20;
+
+  private final InetSocketAddress address;
+  private final int timeoutMillis;
+  private Socket socket;
+  private DataInputStream in;
+  private OutputStream out;
+  private final ByteBuffer header = ByteBuffer.allocate(StreamFrames.HEADER_SIZE);
+  private byte[] receiveData = new byte[INITIAL_BUFFER_SIZE];
+  private byte responseFlags;
+
+  /**
+   * @param address адрес сервера.
+   * @param timeoutMillis таймаут подключения и ожидания ответа.
+   */
+  public StreamTransport(InetSocketAddress address, int timeoutMillis) {
+    this.address = address;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /** Открыто ли соединение с сервером. */
+  public boolean isConnected() {
+    return socket != null;
+  }
+
+  /**
+   * Открывает соединение, если оно еще не открыто.
+   *
+   * @throws IOException если сервер не принимает соединения.
+   */
+  public void connect() throws IOException {
+    if (socket != null) {
+      return;
+    }
+    Socket opened = new Socket();
+    try {
+      opened.setTcpNoDelay(true);
+      opened.connect(address, timeoutMillis);
+      opened.setSoTimeout(timeoutMillis);
+      in = new DataInputStream(new BufferedInputStream(opened.getInputStream()));
+      out = new BufferedOutputStream(opened.getOutputStream());
+      socket = opened;
+    } catch (IOException e) {
+      opened.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Отправляет сообщение и дожидается ответа.
+   *
+   * <p>Ответ записывается в буфер, который переиспользуется следующим вызовом.
+   *
+   * @param flags флаги кадра запроса.
+   * @param payload закодированный запрос.
+   * @return Сообщение ответа; его флаги возвращает {@link #getResponseFlags()}.
+   * @throws IOException если соединение прервано или ответ не пришел за таймаут.
+   */
+  public ByteBuffer exchange(byte flags, ByteBuffer payload) throws IOException {
+    connect();
+    try {
+      ByteBuffer frame = StreamFrames.frame(flags, payload);
+      out.write(frame.array(), frame.arrayOffset(), frame.remaining());
+      out.flush();
+
+      in.readFully(header.array());
+      int length = StreamFrames.readLength(header, 0);
+      responseFlags = StreamFrames.readFlags(header, 0);
+      if (receiveData.length < length
+          || receiveData.length > Math.max(length, MAX_RETAINED_BUFFER_SIZE)) {
+        receiveData = new byte[Math.max(INITIAL_BUFFER_SIZE, length)];
+      }
+      in.readFully(receiveData, 0, length);
+      return ByteBuffer.wrap(receiveData, 0, length);
+    } catch (IOException | IllegalArgumentException e) {
+      close();
+      throw e instanceof IOException
+          ? (IOException) e
+          : new IOException("Некорректный ответ сервера: " + e.getMessage());
+    }
+  }
+
+  public byte getResponseFlags() {
+    return responseFlags;
+  }
+
+  @Override
+  public void close() {
+    if (socket == null) {
+      return;
+    }
+    try {
+      socket.close();
+    } catch (IOException ignored) {
+    } finally {
+      socket = null;
+      in = null;
+      out = null;
+    }
+  }
+}
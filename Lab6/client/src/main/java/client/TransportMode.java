@@ -0,0 +1,26 @@
+package client;
+
+/** Выбор транспорта для запросов клиента. */
+public enum TransportMode {
+  /** TCP для больших запросов и команд, ответы на которые в прошлый раз были большими. */
+  AUTO,
+  /** Только UDP. */
+  UDP,
+  /** Все запросы по TCP. */
+  TCP;
+
+  /**
+   * Возвращает режим по имени без учета регистра.
+   *
+   * @throws IllegalArgumentException если режим неизвестен.
+   */
+  public static TransportMode forName(String name) {
+    for (TransportMode mode : values()) {
+      if (mode.name().equalsIgnoreCase(name)) {
+        return mode;
+      }
+    }
+    throw new IllegalArgumentException(
+        "Неизвестный транспорт: " + name + ". Доступны: auto, udp, tcp.");
+  }
+}
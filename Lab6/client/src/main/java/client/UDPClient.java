@@ -3,76 +3,466 @@ package client;
 import common.exceptions.CommandExecuteException;
 import common.exceptions.UnknownCommandException;
 import common.managers.*;
-import common.network.ObjectDecoder;
-import common.network.ObjectEncoder;
+import common.network.BusyResponse;
+import common.network.ChangeNotification;
+import common.network.Codecs;
+import common.network.DeltaResponse;
+import common.network.Fragmenter;
+import common.network.FrameHeader;
+import common.network.MessageCodec;
+import common.network.PageResponse;
+import common.network.PayloadDecompressor;
+import common.network.Reassembler;
 import common.network.Request;
+import common.network.RequestBody;
 import common.network.Response;
+import common.network.ResponseWithException;
+import common.network.RttEstimator;
 import java.io.*;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class UDPClient implements ClientControl {
-  private final int BUFFER_SIZE = 65535;
-  private final int TIMEOUT_MS = 10000;
+  private final int MIN_RTO_MS = 200;
+  private final int MAX_RTO_MS = 10000;
+  private final int MAX_ATTEMPTS = 5;
+  private final int MAX_NACK_ROUNDS = 10;
+  private final int MAX_BUSY_RETRIES = 10;
+  private final int PAGE_SIZE = 100;
+  private final int STREAM_TIMEOUT_MS = 30_000;
+
+  /** Размер сообщения в кадрах, начиная с которого запрос в режиме AUTO идет по TCP. */
+  private final int STREAM_FRAGMENTS = 8;
+
+  /** Команды с постраничным выводом и количество их обязательных аргументов. */
+  private final Map<String, Integer> PAGED_COMMANDS = Map.of("show", 0, "filter_by_type", 1);
+
+  private final int DEFAULT_WINDOW = 32;
+  private final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
   private final InetSocketAddress serverAddress;
+  private final byte[] receiveData = new byte[FrameHeader.MAX_DATAGRAM_SIZE];
+  private final DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+  private final ByteBuffer sendFrame = ByteBuffer.allocate(FrameHeader.MAX_DATAGRAM_SIZE);
+  private final DatagramPacket sendPacket = new DatagramPacket(new byte[0], 0);
+  private final Reassembler reassembler = new Reassembler(1);
+  private final PayloadDecompressor decompressor = new PayloadDecompressor();
+  private final RttEstimator rttEstimator = new RttEstimator(MIN_RTO_MS, MAX_RTO_MS);
+  private final long clientId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+  private long nextMessageId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE / 2);
   private boolean isRunning = true;
   private final CommandManager commandManager;
   private final ScriptManager scriptManager;
+  private final int window;
+  private MessageCodec codec;
+  private int responseCodecId;
+  private RequestPipeline pipeline;
+  private final TransportMode transportMode;
+  private StreamTransport stream;
+
+  /** Размер последнего ответа на каждую команду, по которому оценивается размер следующего. */
+  private final Map<String, Integer> responseSizes = new HashMap<>();
+
+  private int lastResponseSize;
+
+  /** Последняя известная клиенту версия коллекции или {@code -1}, если она неизвестна. */
+  private long knownVersion = -1;
 
   public UDPClient(
       String host, int port, CommandManager commandManager, ScriptManager scriptManager)
       throws IOException {
+    this(host, port, commandManager, scriptManager, Codecs.BINARY);
+  }
+
+  public UDPClient(
+      String host,
+      int port,
+      CommandManager commandManager,
+      ScriptManager scriptManager,
+      MessageCodec codec)
+      throws IOException {
+    this(host, port, commandManager, scriptManager, codec, 0);
+  }
+
+  public UDPClient(
+      String host,
+      int port,
+      CommandManager commandManager,
+      ScriptManager scriptManager,
+      MessageCodec codec,
+      int window)
+      throws IOException {
+    this(host, port, commandManager, scriptManager, codec, window, TransportMode.UDP);
+  }
+
+  /**
+   * @param transportMode выбор транспорта; TCP подключается к тому же номеру порта.
+   */
+  public UDPClient(
+      String host,
+      int port,
+      CommandManager commandManager,
+      ScriptManager scriptManager,
+      MessageCodec codec,
+      int window,
+      TransportMode transportMode)
+      throws IOException {
     this.serverAddress = new InetSocketAddress(host, port);
+    this.window = window > 0 ? window : DEFAULT_WINDOW;
     this.commandManager = commandManager;
     this.scriptManager = scriptManager;
+    this.codec = codec;
+    this.sendPacket.setSocketAddress(serverAddress);
+    this.transportMode = transportMode;
+    if (transportMode != TransportMode.UDP) {
+      this.stream = new StreamTransport(serverAddress, STREAM_TIMEOUT_MS);
+    }
   }
 
   public void runClient() {
     try (DatagramSocket socket = new DatagramSocket()) {
-      socket.setSoTimeout(TIMEOUT_MS);
+      socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
       System.out.println("[CLIENT] Установлено подключение к серверу: " + serverAddress);
       spinLoop(socket);
     } catch (IOException e) {
       System.err.println("[CLIENT] Ошибка при подключении к серверу.");
+    } finally {
+      if (stream != null) {
+        stream.close();
+      }
     }
   }
 
-  private void sendRequest(Request request, DatagramSocket socket) throws IOException {
+  /**
+   * Отправляет запрос и возвращает ответ сервера.
+   *
+   * @return Ответ или {@code null}, если ответ не получен; ошибка уже выведена.
+   */
+  private Response sendRequest(Request request, DatagramSocket socket) throws IOException {
     try {
-      ByteBuffer sendBuffer = ObjectEncoder.encodeObject(request);
-      DatagramPacket sendPacket =
-          new DatagramPacket(sendBuffer.array(), sendBuffer.array().length, serverAddress);
-      socket.send(sendPacket);
-
-      ByteBuffer receiveBuffer = ByteBuffer.allocate(BUFFER_SIZE);
-      DatagramPacket receivePacket =
-          new DatagramPacket(receiveBuffer.array(), receiveBuffer.array().length);
-      try {
-        socket.receive(receivePacket);
-        if (receivePacket.getData() != null) {
-          Response response =
-              (Response) ObjectDecoder.decodeObject(ByteBuffer.wrap(receivePacket.getData()));
+      long messageId = nextMessageId++;
+      // Номер запроса совпадает с идентификатором сообщения, поэтому повтор сообщения сервер
+      // распознает как повтор запроса и не исполняет его второй раз.
+      ByteBuffer payload = codec.encode(request.withIdentity(clientId, messageId));
 
-          System.out.println("[CLIENT] Ответ: " + response.getMessage());
-
-          if (response.getTickets() != null && !response.getTickets().isEmpty()) {
-            response.getTickets().forEach(System.out::println);
+      try {
+        Response response;
+        int busyRetries = 0;
+        while (true) {
+          ByteBuffer message =
+              useStream(request.getCommandName(), payload)
+                  ? exchangeStream(payload)
+                  : exchange(messageId, payload, socket);
+          responseSizes.put(request.getCommandName(), lastResponseSize);
+          response = (Response) negotiateCodec(responseCodecId).decode(message);
+          if (!(response instanceof BusyResponse) || ++busyRetries > MAX_BUSY_RETRIES) {
+            break;
           }
+          // Сервер не исполнял запрос, поэтому он повторяется с тем же номером.
+          long retryAfter = ((BusyResponse) response).getRetryAfterMillis();
+          System.out.println("[CLIENT] Сервер перегружен, повтор через " + retryAfter + " мс.");
+          reassembler.discard(messageId);
+          Thread.sleep(retryAfter);
+          payload = codec.encode(request.withIdentity(clientId, messageId));
         }
+        return response;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        System.err.println("[CLIENT] Ожидание повтора прервано.");
       } catch (SocketTimeoutException e) {
         System.err.println("[CLIENT] Превышено время ожидания от сервера.");
       } catch (IOException e) {
         System.err.println("[CLIENT] Ошибка при передаче команды: " + e.getMessage());
+      } finally {
+        reassembler.discard(messageId);
       }
 
     } catch (Exception e) {
       System.err.println("[CLIENT] Ошибка при передаче команды: " + e.getMessage());
     }
+    return null;
+  }
+
+  /**
+   * Отправляет запрос и выводит ответ. Команда с постраничным выводом, для которой не указан размер
+   * страницы, запрашивается страницами по {@code PAGE_SIZE} элементов до последней, поэтому ни
+   * сервер, ни клиент не держат весь список в памяти.
+   */
+  private void sendAndPrint(Request request, DatagramSocket socket) throws IOException {
+    Integer requiredArgs = PAGED_COMMANDS.get(request.getCommandName());
+    String[] args = request.getRequestBody() != null ? request.getRequestBody().getArgs() : null;
+    if (requiredArgs == null || args == null || args.length != requiredArgs) {
+      Response response = sendRequest(request, socket);
+      if (response != null) {
+        printResponse(response);
+      }
+      return;
+    }
+
+    String token = null;
+    do {
+      String[] pageArgs = Arrays.copyOf(args, requiredArgs + (token == null ? 1 : 2));
+      pageArgs[requiredArgs] = String.valueOf(PAGE_SIZE);
+      if (token != null) {
+        pageArgs[requiredArgs + 1] = token;
+      }
+      Response response =
+          sendRequest(new Request(request.getCommandName(), new RequestBody(pageArgs)), socket);
+      if (response == null) {
+        return;
+      }
+      printMessage(response);
+      token = response instanceof PageResponse ? ((PageResponse) response).getNextToken() : null;
+    } while (token != null);
+  }
+
+  private void printResponse(Response response) {
+    printMessage(response);
+    if (response instanceof PageResponse && ((PageResponse) response).getNextToken() != null) {
+      System.out.println(
+          "[CLIENT] Токен следующей страницы: " + ((PageResponse) response).getNextToken());
+    }
+    if (response instanceof DeltaResponse) {
+      DeltaResponse delta = (DeltaResponse) response;
+      if (!delta.getRemovedIds().isEmpty()) {
+        System.out.println("[CLIENT] Удалены элементы с id: " + delta.getRemovedIds());
+      }
+      System.out.println("[CLIENT] Версия коллекции для следующего запроса: " + delta.getVersion());
+      knownVersion = delta.getVersion();
+    }
+  }
+
+  /**
+   * Выводит уведомление об изменениях коллекции. Повторно полученные изменения пропускаются, а если
+   * уведомление сообщает о потере изменений или между известной версией и уведомлением есть
+   * пропуск, клиент предлагает догнать коллекцию командой {@code show_since}.
+   */
+  private void handlePush(FrameHeader header, ByteBuffer frame) {
+    MessageCodec pushCodec = Codecs.forId(header.getCodecId());
+    if (pushCodec == null || header.getFragmentCount() != 1) {
+      return;
+    }
+    ChangeNotification notification;
+    try {
+      ByteBuffer message = header.isCompressed() ? decompressor.decompress(frame) : frame;
+      notification = (ChangeNotification) pushCodec.decode(message);
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      System.err.println("[CLIENT] Получено некорректное уведомление: " + e.getMessage());
+      return;
+    }
+
+    if (notification.isReset()
+        || (knownVersion >= 0 && notification.getFromVersion() > knownVersion)) {
+      System.out.println(
+          "[CLIENT] Уведомление: часть изменений пропущена, выполните show_since "
+              + Math.max(knownVersion, 0));
+      return;
+    }
+    if (notification.getVersion() <= knownVersion) {
+      return;
+    }
+    System.out.println("[CLIENT] Уведомление: " + notification.getMessage());
+    notification.getTickets().forEach(System.out::println);
+    if (!notification.getRemovedIds().isEmpty()) {
+      System.out.println("[CLIENT] Удалены элементы с id: " + notification.getRemovedIds());
+    }
+    knownVersion = notification.getVersion();
+  }
+
+  /** Ожидает уведомления сервера заданное количество секунд: {@code listen <секунды>}. */
+  private void listen(String[] parts, DatagramSocket socket) throws IOException {
+    long seconds;
+    try {
+      seconds = parts.length == 2 ? Long.parseLong(parts[1]) : 0;
+    } catch (NumberFormatException e) {
+      seconds = 0;
+    }
+    if (seconds <= 0) {
+      System.out.println("[CLIENT] Команда принимает один аргумент - положительное число секунд.");
+      return;
+    }
+
+    System.out.println("[CLIENT] Ожидание уведомлений " + seconds + " с...");
+    long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+    long remainingMillis;
+    while ((remainingMillis = (deadline - System.nanoTime()) / 1_000_000) > 0) {
+      socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, remainingMillis));
+      try {
+        receivePacket.setLength(receiveData.length);
+        socket.receive(receivePacket);
+        ByteBuffer frame = ByteBuffer.wrap(receiveData, 0, receivePacket.getLength());
+        FrameHeader header = FrameHeader.read(frame);
+        if (header.getType() == FrameHeader.DATA && header.isPush()) {
+          handlePush(header, frame);
+        }
+      } catch (SocketTimeoutException e) {
+        break;
+      } catch (IllegalArgumentException e) {
+        System.err.println("[CLIENT] Получен некорректный кадр: " + e.getMessage());
+      }
+    }
+  }
+
+  private void printMessage(Response response) {
+    System.out.println("[CLIENT] Ответ: " + response.getMessage());
+    if (response instanceof ResponseWithException
+        && ((ResponseWithException) response).getException() != null) {
+      System.out.println(((ResponseWithException) response).getException().getMessage());
+    }
+
+    if (response.getTickets() != null && !response.getTickets().isEmpty()) {
+      response.getTickets().forEach(System.out::println);
+    }
+  }
+
+  /**
+   * Отправляет запрос и дожидается ответа, повторяя отправку, если ответ не пришел за таймаут.
+   *
+   * <p>Таймаут каждой попытки вычисляет {@link RttEstimator}; после {@code MAX_ATTEMPTS} попыток
+   * без ответа запрос считается неудачным. Повторы безопасны: сервер узнает запрос по номеру и не
+   * исполняет его второй раз.
+   */
+  private ByteBuffer exchange(long messageId, ByteBuffer payload, DatagramSocket socket)
+      throws IOException {
+    int count = Fragmenter.fragmentCount(payload.remaining());
+    for (int attempt = 1; ; attempt++) {
+      long sentAt = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        send(Fragmenter.writeFragment(sendFrame, messageId, frameFlags(), payload, i), socket);
+      }
+      socket.setSoTimeout(rttEstimator.getTimeoutMillis(attempt));
+      try {
+        // Время ответа на повторную попытку не учитывается: неизвестно, на какую попытку он пришел.
+        return receiveMessage(messageId, socket, attempt == 1 ? sentAt : 0);
+      } catch (SocketTimeoutException e) {
+        if (reassembler.isPartial(messageId) || attempt >= MAX_ATTEMPTS) {
+          throw e;
+        }
+        rttEstimator.onRetransmission();
+      }
+    }
+  }
+
+  /**
+   * Решает, отправить ли запрос по TCP: в режиме AUTO — если запрос или прошлый ответ на ту же
+   * команду не помещаются в {@code STREAM_FRAGMENTS} кадров. Если сервер не принимает соединения,
+   * клиент переходит на UDP.
+   */
+  private boolean useStream(String commandName, ByteBuffer payload) {
+    if (stream == null) {
+      return false;
+    }
+    int threshold = STREAM_FRAGMENTS * FrameHeader.MAX_PAYLOAD_SIZE;
+    if (transportMode == TransportMode.AUTO
+        && payload.remaining() <= threshold
+        && responseSizes.getOrDefault(commandName, 0) <= threshold) {
+      return false;
+    }
+    try {
+      stream.connect();
+      return true;
+    } catch (IOException e) {
+      System.out.println("[CLIENT] Сервер не принимает соединения TCP, запросы идут по UDP.");
+      stream = null;
+      return false;
+    }
+  }
+
+  /** Отправляет запрос по TCP и возвращает распакованный ответ. */
+  private ByteBuffer exchangeStream(ByteBuffer payload) throws IOException {
+    ByteBuffer message = stream.exchange(frameFlags(), payload);
+    int flags = stream.getResponseFlags();
+    responseCodecId = flags & FrameHeader.CODEC_MASK;
+    lastResponseSize = message.remaining();
+    return (flags & FrameHeader.COMPRESSED) != 0 ? decompressor.decompress(message) : message;
+  }
+
+  /**
+   * Принимает все фрагменты ответа на сообщение с заданным идентификатором.
+   *
+   * <p>Если часть фрагментов потерялась, запрашивает у сервера только недостающие. Ожидание
+   * прекращается, если за {@code MAX_NACK_ROUNDS} раундов подряд не пришло ни одного фрагмента.
+   *
+   * @param sentAt момент отправки запроса для замера времени ответа или {@code 0}, если замер не
+   *     нужен.
+   */
+  private ByteBuffer receiveMessage(long messageId, DatagramSocket socket, long sentAt)
+      throws IOException {
+    boolean firstFrame = true;
+    int idleRounds = 0;
+
+    while (true) {
+      try {
+        receivePacket.setLength(receiveData.length);
+        socket.receive(receivePacket);
+        ByteBuffer frame = ByteBuffer.wrap(receiveData, 0, receivePacket.getLength());
+        FrameHeader header = FrameHeader.read(frame);
+        if (header.getType() == FrameHeader.DATA && header.isPush()) {
+          handlePush(header, frame);
+          continue;
+        }
+        if (header.getType() != FrameHeader.DATA || header.getMessageId() != messageId) {
+          continue;
+        }
+        if (firstFrame) {
+          firstFrame = false;
+          if (sentAt != 0) {
+            rttEstimator.addSample(System.nanoTime() - sentAt);
+          }
+        }
+
+        ByteBuffer message = reassembler.accept(header, frame);
+        if (message != null) {
+          responseCodecId = header.getCodecId();
+          lastResponseSize = message.remaining();
+          return header.isCompressed() ? decompressor.decompress(message) : message;
+        }
+        socket.setSoTimeout(rttEstimator.getRtoMillis());
+        idleRounds = 0;
+      } catch (IllegalArgumentException e) {
+        System.err.println("[CLIENT] Получен некорректный кадр: " + e.getMessage());
+      } catch (SocketTimeoutException e) {
+        if (!reassembler.isPartial(messageId) || ++idleRounds > MAX_NACK_ROUNDS) {
+          throw e;
+        }
+        send(Fragmenter.nack(messageId, reassembler.missingFragments(messageId)), socket);
+      }
+    }
+  }
+
+  /**
+   * Возвращает кодек, которым закодирован ответ сервера. Если сервер ответил другим кодеком
+   * (например, не поддерживает двоичный формат), клиент переходит на него для следующих запросов.
+   */
+  private MessageCodec negotiateCodec(int codecId) throws IOException {
+    if (codecId == codec.getId()) {
+      return codec;
+    }
+    MessageCodec serverCodec = Codecs.forId(codecId);
+    if (serverCodec == null) {
+      throw new IOException("Сервер ответил неизвестным кодеком " + codecId);
+    }
+    System.out.println("[CLIENT] Сервер использует другой формат сообщений, клиент переключается.");
+    codec = serverCodec;
+    return serverCodec;
+  }
+
+  /** Флаги кадров запроса: кодек и готовность принимать сжатые ответы. */
+  private byte frameFlags() {
+    return (byte) (codec.getId() | FrameHeader.ACCEPTS_COMPRESSED);
+  }
+
+  private void send(ByteBuffer frame, DatagramSocket socket) throws IOException {
+    sendPacket.setData(frame.array(), frame.arrayOffset(), frame.remaining());
+    socket.send(sendPacket);
   }
 
   private void spinLoop(DatagramSocket socket) {
@@ -89,8 +479,12 @@ public class UDPClient implements ClientControl {
             if (parts.length != 2) {
               System.out.println("[CLIENT] Команда принимает один обязательный аргумент.");
             } else {
-              executeScript(parts[1], socket);
+              runScript(parts[1], socket);
             }
+          } else if (parts[0].equals("listen")) {
+            listen(parts, socket);
+          } else if (parts[0].equals("rtt")) {
+            System.out.println("[CLIENT] Время ответа сервера: " + rttEstimator.getSummary());
           } else if (parts[0].equals("exit")) {
             if (parts.length != 1) {
               System.out.println("[CLIENT] Команда не принимает аргументов.");
@@ -102,7 +496,7 @@ public class UDPClient implements ClientControl {
           }
 
           if (request != null) {
-            sendRequest(request, socket);
+            sendAndPrint(request, socket);
           }
         } catch (IOException e) {
           stopClient();
@@ -116,6 +510,45 @@ public class UDPClient implements ClientControl {
     }
   }
 
+  /**
+   * Исполняет скрипт. Если окно больше одного запроса, команды скрипта отправляются без ожидания
+   * ответов через {@link RequestPipeline}, а ответы выводятся в порядке скрипта.
+   */
+  private void runScript(String fileName, DatagramSocket socket) {
+    if (window > 1) {
+      pipeline =
+          new RequestPipeline(
+              socket,
+              serverAddress,
+              codec,
+              rttEstimator,
+              clientId,
+              () -> nextMessageId++,
+              window,
+              MAX_ATTEMPTS,
+              this::printResponse);
+    }
+    try {
+      executeScript(fileName, socket);
+      if (pipeline != null) {
+        pipeline.flush();
+      }
+    } catch (IOException e) {
+      System.err.println("[CLIENT] Ошибка при передаче команды: " + e.getMessage());
+    } finally {
+      pipeline = null;
+    }
+  }
+
+  /** Выводит строку скрипта; при отправке окном — после ответов на предыдущие команды. */
+  private void printScriptLine(String line) {
+    if (pipeline != null) {
+      pipeline.print(line);
+    } else {
+      System.out.println(line);
+    }
+  }
+
   private void executeScript(String fileName, DatagramSocket socket) {
     FileManager fileManager = new FileManager(fileName);
     ScannerManager scannerManager = scriptManager.getScannerManager();
@@ -151,7 +584,7 @@ public class UDPClient implements ClientControl {
           continue;
         }
 
-        System.out.println("[CLIENT] Выполнение команды " + commandParts[0] + ":");
+        printScriptLine("[CLIENT] Выполнение команды " + commandParts[0] + ":");
 
         if (commandParts[0].equalsIgnoreCase("execute_script")) {
           executeScript(commandParts[1], socket);
@@ -160,11 +593,13 @@ public class UDPClient implements ClientControl {
             Request request = null;
             request = commandManager.convertInputToCommandRequest(input);
 
-            if (request != null) {
-              sendRequest(request, socket);
+            if (request != null && pipeline != null) {
+              pipeline.submit(request, commandManager.isReadOnly(request.getCommandName()));
+            } else if (request != null) {
+              sendAndPrint(request, socket);
             }
           } catch (UnknownCommandException | CommandExecuteException | IOException e) {
-            System.out.println("[CLIENT] Непредвиденная ошибка: " + e.getMessage());
+            printScriptLine("[CLIENT] Непредвиденная ошибка: " + e.getMessage());
           } catch (NoSuchElementException e) {
             currentScanner = new Scanner(System.in);
             scannerManager.setScanner(currentScanner);
@@ -172,12 +607,12 @@ public class UDPClient implements ClientControl {
         }
       }
     } catch (FileNotFoundException e) {
-      System.out.println("[CLIENT] Не удалось найти файл: " + e.getMessage());
+      printScriptLine("[CLIENT] Не удалось найти файл: " + e.getMessage());
     } catch (NoSuchElementException ignored) {
     } finally {
       scriptManager.deactivateFileMode();
       if (!recursionFlag) {
-        System.out.println("[CLIENT] Скрипт " + fileName + " выполнен!");
+        printScriptLine("[CLIENT] Скрипт " + fileName + " выполнен!");
       }
     }
   }
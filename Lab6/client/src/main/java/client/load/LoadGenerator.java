@@ -0,0 +1,444 @@
+package client.load;
+
+import client.AsyncCollectionClient;
+import common.data.Ticket;
+import common.data.TicketType;
+import common.network.BusyResponse;
+import common.network.DeltaResponse;
+import common.network.MessageCodec;
+import common.network.Request;
+import common.network.RequestBody;
+import common.network.RequestBodyWithTicket;
+import common.network.Response;
+import common.network.ResponseWithException;
+import common.utils.LatencyHistogram;
+import common.utils.generators.RandomTicketGenerator;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Генератор нагрузки: {@code clients} виртуальных клиентов, каждый со своим сокетом ({@link
+ * AsyncCollectionClient}), отправляют серверу смесь команд в заданных долях.
+ *
+ * <p>В замкнутом цикле ({@code rate == 0}) каждый клиент отправляет следующий запрос после ответа
+ * на предыдущий и паузы {@code thinkMillis}. В открытом цикле запросы отправляются с общей частотой
+ * {@code rate} в секунду по расписанию, независимо от ответов, распределяясь по клиентам по кругу.
+ *
+ * <p>Задержка открытого цикла отсчитывается от запланированного момента отправки, а не от
+ * фактического: если сервер или клиент не успевают и запросы уходят позже, ожидание в очереди
+ * входит в задержку (исправление coordinated omission). В замкнутом цикле с паузой исправленная
+ * гистограмма дополняется замерами запросов, которые клиент не успел отправить по расписанию, пока
+ * ждал медленного ответа. Запросы периода прогрева в статистику не входят.
+ *
+ * <p>Билеты для команд {@code add} и {@code update} создает {@link RandomTicketGenerator}, а
+ * идентификаторы для {@code update} и {@code remove_by_id} берутся из коллекции на момент запуска.
+ */
+public class LoadGenerator {
+  /** Смесь команд по умолчанию: в основном чтение. */
+  public static final String DEFAULT_MIX =
+      "info:30,show:10,filter_by_type:20,average_of_price:10,show_since:5,add:15,update:5,"
+          + "remove_by_id:5";
+
+  private static final List<String> COMMANDS =
+      List.of(
+          "info",
+          "show",
+          "filter_by_type",
+          "average_of_price",
+          "max_by_creation_date",
+          "show_since",
+          "add",
+          "update",
+          "remove_by_id");
+  private static final String PAGE_SIZE = "100";
+  private static final int MAX_IN_FLIGHT_PER_CLIENT = 256;
+  private static final long MAX_OUTSTANDING = 100_000;
+  private static final long DRAIN_TIMEOUT_SEC = 60;
+  private static final TicketType[] TICKET_TYPES = TicketType.values();
+
+  private final InetSocketAddress serverAddress;
+  private final MessageCodec codec;
+  private final int clientCount;
+  private final long durationNanos;
+  private final long warmupNanos;
+  private final int rate;
+  private final long thinkMillis;
+  private final String[] mixCommands;
+  private final int[] mixWeights;
+  private final int totalWeight;
+
+  private final LatencyHistogram serviceLatency = new LatencyHistogram();
+  private final LatencyHistogram correctedLatency = new LatencyHistogram();
+  private final AtomicLong outstanding = new AtomicLong();
+  private final AtomicLong skipped = new AtomicLong();
+  private final AtomicLong commandErrors = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong lastVersion = new AtomicLong();
+  private final AtomicLong lastCompletedAt = new AtomicLong();
+  private final List<Integer> ids = new ArrayList<>();
+  private long measureFrom;
+  private long measureUntil;
+  private volatile boolean isRunning = true;
+
+  /**
+   * @param serverAddress адрес сервера.
+   * @param codec кодек запросов.
+   * @param clientCount количество виртуальных клиентов.
+   * @param durationSeconds длительность замера.
+   * @param warmupSeconds длительность прогрева перед замером.
+   * @param rate общая частота запросов в секунду для открытого цикла или {@code 0} для замкнутого.
+   * @param thinkMillis пауза клиента между ответом и следующим запросом в замкнутом цикле.
+   * @param mix доли команд в формате {@code команда:вес,...}.
+   * @throws IllegalArgumentException если параметры или смесь команд некорректны.
+   */
+  public LoadGenerator(
+      InetSocketAddress serverAddress,
+      MessageCodec codec,
+      int clientCount,
+      int durationSeconds,
+      int warmupSeconds,
+      int rate,
+      int thinkMillis,
+      String mix) {
+    if (clientCount <= 0 || durationSeconds <= 0 || warmupSeconds < 0 || rate < 0) {
+      throw new IllegalArgumentException(
+          "Количество клиентов и длительность должны быть положительными, прогрев и частота —"
+              + " неотрицательными.");
+    }
+    if (thinkMillis < 0) {
+      throw new IllegalArgumentException("Пауза между запросами не может быть отрицательной.");
+    }
+    this.serverAddress = serverAddress;
+    this.codec = codec;
+    this.clientCount = clientCount;
+    this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+    this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+    this.rate = rate;
+    this.thinkMillis = thinkMillis;
+
+    Map<String, Integer> weights = parseMix(mix);
+    this.mixCommands = weights.keySet().toArray(new String[0]);
+    this.mixWeights = new int[mixCommands.length];
+    int sum = 0;
+    for (int i = 0; i < mixCommands.length; i++) {
+      sum += weights.get(mixCommands[i]);
+      mixWeights[i] = sum;
+    }
+    this.totalWeight = sum;
+  }
+
+  /**
+   * Разбирает смесь команд.
+   *
+   * @param mix строка вида {@code info:30,add:10}.
+   * @return Веса команд в порядке перечисления.
+   * @throws IllegalArgumentException если команда не поддерживается или вес некорректен.
+   */
+  public static Map<String, Integer> parseMix(String mix) {
+    Map<String, Integer> weights = new LinkedHashMap<>();
+    for (String part : mix.split(",")) {
+      String[] pair = part.trim().split(":");
+      if (pair.length != 2 || !COMMANDS.contains(pair[0])) {
+        throw new IllegalArgumentException(
+            "Некорректная доля команды '" + part + "'. Доступные команды: " + COMMANDS);
+      }
+      int weight;
+      try {
+        weight = Integer.parseInt(pair[1]);
+      } catch (NumberFormatException e) {
+        weight = -1;
+      }
+      if (weight < 0) {
+        throw new IllegalArgumentException("Вес команды должен быть неотрицательным: " + part);
+      }
+      weights.merge(pair[0], weight, Integer::sum);
+    }
+    if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+      throw new IllegalArgumentException("Сумма весов команд должна быть положительной.");
+    }
+    return weights;
+  }
+
+  /** Создает нагрузку, дожидается ответов на все запросы и выводит отчет. */
+  public void run() throws IOException, InterruptedException {
+    List<AsyncCollectionClient> clients = new ArrayList<>(clientCount);
+    try {
+      for (int i = 0; i < clientCount; i++) {
+        clients.add(
+            AsyncCollectionClient.open(
+                serverAddress, codec, MAX_IN_FLIGHT_PER_CLIENT, ForkJoinPool.commonPool()));
+      }
+      loadIds(clients.get(0));
+      System.out.println(describe());
+
+      long start = System.nanoTime();
+      measureFrom = start + warmupNanos;
+      measureUntil = measureFrom + durationNanos;
+      if (rate > 0) {
+        runOpenLoop(clients, start);
+      } else {
+        runClosedLoop(clients);
+      }
+      System.out.println(report());
+    } finally {
+      isRunning = false;
+      for (AsyncCollectionClient client : clients) {
+        client.close();
+      }
+    }
+  }
+
+  private void loadIds(AsyncCollectionClient client) throws IOException {
+    try {
+      for (Ticket ticket : client.show().get()) {
+        ids.add(ticket.getId());
+      }
+      lastVersion.set(client.showSince(Long.MAX_VALUE).get().getVersion());
+    } catch (ExecutionException e) {
+      throw new IOException("Сервер не ответил на начальный запрос: " + e.getCause().getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Начальный запрос прерван.");
+    }
+  }
+
+  /** Отправляет запросы по расписанию с частотой {@code rate} из одного потока. */
+  private void runOpenLoop(List<AsyncCollectionClient> clients, long start)
+      throws InterruptedException {
+    double intervalNanos = 1e9 / rate;
+    for (long i = 0; ; i++) {
+      long intendedAt = start + (long) (i * intervalNanos);
+      if (intendedAt >= measureUntil) {
+        break;
+      }
+      long delay;
+      while ((delay = intendedAt - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(delay);
+      }
+      if (outstanding.get() >= MAX_OUTSTANDING) {
+        // Клиент не может держать бесконечную очередь: запрос считается неотправленным.
+        if (intendedAt >= measureFrom) {
+          skipped.incrementAndGet();
+        }
+        continue;
+      }
+      outstanding.incrementAndGet();
+      send(clients.get((int) (i % clients.size())), intendedAt, 0, null);
+    }
+    awaitOutstanding();
+  }
+
+  /** Каждый клиент отправляет следующий запрос после ответа на предыдущий и паузы. */
+  private void runClosedLoop(List<AsyncCollectionClient> clients) throws InterruptedException {
+    CountDownLatch finished = new CountDownLatch(clients.size());
+    ScheduledExecutorService scheduler =
+        thinkMillis > 0 ? Executors.newSingleThreadScheduledExecutor() : null;
+    try {
+      for (AsyncCollectionClient client : clients) {
+        outstanding.incrementAndGet();
+        loop(client, finished, scheduler);
+      }
+      if (!finished.await(
+          durationNanos + warmupNanos + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SEC),
+          TimeUnit.NANOSECONDS)) {
+        System.err.println("[LOAD] Не все клиенты завершили работу вовремя.");
+      }
+    } finally {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+      }
+    }
+  }
+
+  private void loop(
+      AsyncCollectionClient client, CountDownLatch finished, ScheduledExecutorService scheduler) {
+    long now = System.nanoTime();
+    if (!isRunning || now >= measureUntil) {
+      outstanding.decrementAndGet();
+      finished.countDown();
+      return;
+    }
+    long expectedIntervalMicros = TimeUnit.MILLISECONDS.toMicros(thinkMillis);
+    send(
+        client,
+        now,
+        expectedIntervalMicros,
+        () -> {
+          if (scheduler != null) {
+            scheduler.schedule(
+                () -> loop(client, finished, scheduler), thinkMillis, TimeUnit.MILLISECONDS);
+          } else {
+            loop(client, finished, scheduler);
+          }
+        });
+  }
+
+  /**
+   * Отправляет случайную команду смеси и записывает задержку.
+   *
+   * @param intendedAt запланированный момент отправки.
+   * @param expectedIntervalMicros ожидаемый интервал между запросами клиента для исправления
+   *     гистограммы или {@code 0}.
+   * @param next действие после записи ответа или {@code null}.
+   */
+  private void send(
+      AsyncCollectionClient client, long intendedAt, long expectedIntervalMicros, Runnable next) {
+    long sentAt = System.nanoTime();
+    client
+        .execute(nextRequest())
+        .whenComplete(
+            (response, error) -> {
+              long completedAt = System.nanoTime();
+              if (intendedAt >= measureFrom && intendedAt < measureUntil) {
+                record(response, error);
+                lastCompletedAt.accumulateAndGet(completedAt, Math::max);
+                serviceLatency.record(TimeUnit.NANOSECONDS.toMicros(completedAt - sentAt));
+                correctedLatency.recordCorrected(
+                    TimeUnit.NANOSECONDS.toMicros(completedAt - intendedAt),
+                    expectedIntervalMicros);
+              }
+              if (response instanceof DeltaResponse) {
+                lastVersion.accumulateAndGet(((DeltaResponse) response).getVersion(), Math::max);
+              }
+              if (next != null) {
+                next.run();
+              } else {
+                outstanding.decrementAndGet();
+              }
+            });
+  }
+
+  private void record(Response response, Throwable error) {
+    if (error != null) {
+      failures.incrementAndGet();
+    } else if (response instanceof BusyResponse) {
+      rejected.incrementAndGet();
+    } else if (response instanceof ResponseWithException) {
+      commandErrors.incrementAndGet();
+    }
+  }
+
+  private void awaitOutstanding() throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SEC);
+    while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    if (outstanding.get() > 0) {
+      System.err.println("[LOAD] Не дождались ответов на " + outstanding.get() + " запросов.");
+    }
+  }
+
+  private Request nextRequest() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int pick = random.nextInt(totalWeight);
+    int index = 0;
+    while (mixWeights[index] <= pick) {
+      index++;
+    }
+    String command = mixCommands[index];
+    return switch (command) {
+      case "show" -> command(command, PAGE_SIZE);
+      case "filter_by_type" ->
+          command(command, TICKET_TYPES[random.nextInt(TICKET_TYPES.length)].name(), PAGE_SIZE);
+      case "show_since" -> command(command, String.valueOf(lastVersion.get()));
+      case "add" ->
+          new Request(
+              command,
+              new RequestBodyWithTicket(new String[0], new RandomTicketGenerator(random).create()));
+      case "update" ->
+          new Request(
+              command,
+              new RequestBodyWithTicket(
+                  new String[] {String.valueOf(randomId(false))},
+                  new RandomTicketGenerator(random).create()));
+      case "remove_by_id" -> command(command, String.valueOf(randomId(true)));
+      default -> command(command);
+    };
+  }
+
+  /** Случайный идентификатор из начальной коллекции; удаленный идентификатор больше не выдается. */
+  private int randomId(boolean remove) {
+    synchronized (ids) {
+      if (ids.isEmpty()) {
+        return 0;
+      }
+      int index = ThreadLocalRandom.current().nextInt(ids.size());
+      int id = ids.get(index);
+      if (remove) {
+        ids.set(index, ids.get(ids.size() - 1));
+        ids.remove(ids.size() - 1);
+      }
+      return id;
+    }
+  }
+
+  private static Request command(String name, String... args) {
+    return new Request(name, new RequestBody(args));
+  }
+
+  private String describe() {
+    StringBuilder mix = new StringBuilder();
+    int previous = 0;
+    for (int i = 0; i < mixCommands.length; i++) {
+      mix.append(i > 0 ? ", " : "")
+          .append(mixCommands[i])
+          .append(' ')
+          .append(Math.round(100.0 * (mixWeights[i] - previous) / totalWeight))
+          .append('%');
+      previous = mixWeights[i];
+    }
+    return String.format(
+        "[LOAD] %s, клиентов: %d, замер: %d с после прогрева %d с%nСмесь команд: %s",
+        rate > 0
+            ? "открытый цикл, " + rate + " запросов/с"
+            : "замкнутый цикл, пауза " + thinkMillis + " мс",
+        clientCount,
+        TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+        TimeUnit.NANOSECONDS.toSeconds(warmupNanos),
+        mix);
+  }
+
+  private String report() {
+    long count = serviceLatency.getCount();
+    // При перегрузке ответы приходят и после окончания замера: пропускная способность считается
+    // по фактическому времени.
+    double seconds = Math.max(durationNanos, lastCompletedAt.get() - measureFrom) / 1e9;
+    return String.format(
+        "[LOAD] Выполнено запросов: %d (%.1f запросов/с), ошибок команды: %d, отказов сервера:"
+            + " %d, без ответа: %d, не отправлено: %d%n"
+            + "Задержка от отправки, мс:        %s%n"
+            + "Задержка с исправлением CO, мс: %s",
+        count,
+        count / seconds,
+        commandErrors.get(),
+        rejected.get(),
+        failures.get(),
+        skipped.get(),
+        percentiles(serviceLatency),
+        percentiles(correctedLatency));
+  }
+
+  private static String percentiles(LatencyHistogram histogram) {
+    return String.format(
+        "p50 %.3f, p99 %.3f, p99.9 %.3f, max %.3f (замеров: %d)",
+        histogram.getPercentile(50) / 1000.0,
+        histogram.getPercentile(99) / 1000.0,
+        histogram.getPercentile(99.9) / 1000.0,
+        histogram.getMax() / 1000.0,
+        histogram.getCount());
+  }
+}
@@ -1,37 +1,82 @@
 package client.system;
 
+import client.TransportMode;
 import client.UDPClient;
+import client.load.LoadGenerator;
 import common.managers.CollectionManager;
 import common.managers.CommandManager;
 import common.managers.ScannerManager;
 import common.managers.ScriptManager;
+import common.network.Codecs;
+import common.network.MessageCodec;
+import common.utils.LaunchOptions;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.Scanner;
 
 public class Client {
   public static void main(String[] args) {
-    if (args.length != 2) {
+    LaunchOptions options = LaunchOptions.parse(args);
+    if (options.getPositional().size() != 2) {
       System.err.println("Неверное количество аргументов для запуска клиента.");
-      System.err.println("Используйте: java -jar client.jar <host> <port>");
+      System.err.println(
+          "Используйте: java -jar client.jar <host> <port> [--codec=binary|java] [--window=N]"
+              + " [--transport=auto|udp|tcp]");
+      System.err.println(
+          "Нагрузка: java -jar client.jar <host> <port> --load [--clients=N] [--duration=сек]"
+              + " [--warmup=сек] [--rate=запросов/с] [--think-ms=N] [--mix=команда:вес,...]");
       return;
     }
 
     try {
-      String host = args[0];
-      int port = Integer.parseInt(args[1]);
+      String host = options.getPositional().get(0);
+      int port = Integer.parseInt(options.getPositional().get(1));
+      MessageCodec codec = Codecs.forName(options.get("codec", "binary"));
+      int window = options.getInt("window", 0);
+      TransportMode transportMode = TransportMode.forName(options.get("transport", "auto"));
       InetSocketAddress serverAddress = new InetSocketAddress(host, port);
+      if (options.has("load")) {
+        runLoad(serverAddress, codec, options);
+        return;
+      }
       ScannerManager scannerManager = new ScannerManager(new Scanner(System.in));
       ScriptManager scriptManager = new ScriptManager(scannerManager);
       CollectionManager collectionManager = new PlaceholderCollectionManager();
       CommandManager commandManager =
           new CommandManager(collectionManager, scriptManager, scannerManager);
-      UDPClient udpClient = new UDPClient(host, port, commandManager, scriptManager);
+      UDPClient udpClient =
+          new UDPClient(host, port, commandManager, scriptManager, codec, window, transportMode);
       udpClient.runClient();
     } catch (IOException e) {
       System.err.println("Ошибка при создании клиента.");
     } catch (NumberFormatException e) {
       System.err.println("Порт должен быть целым числом.");
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+    }
+  }
+
+  private static void runLoad(
+      InetSocketAddress serverAddress, MessageCodec codec, LaunchOptions options)
+      throws IOException {
+    if (serverAddress.isUnresolved() || !serverAddress.getAddress().isLoopbackAddress()) {
+      System.err.println("Генератор нагрузки запускается только против сервера на этой машине.");
+      return;
+    }
+    LoadGenerator loadGenerator =
+        new LoadGenerator(
+            serverAddress,
+            codec,
+            options.getInt("clients", 16),
+            options.getInt("duration", 10),
+            options.getInt("warmup", 2),
+            options.getInt("rate", 0),
+            options.getInt("think-ms", 0),
+            options.get("mix", LoadGenerator.DEFAULT_MIX));
+    try {
+      loadGenerator.run();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
   }
 }
@@ -5,8 +5,10 @@ import common.data.TicketType;
 import common.exceptions.EmptyCollectionException;
 import common.exceptions.RemoveException;
 import common.exceptions.WrongArgumentException;
+import common.managers.ChangeLog;
 import common.managers.CollectionManager;
 import common.managers.IdManager;
+import common.managers.PriceStatistics;
 import java.time.LocalDateTime;
 import java.util.ArrayDeque;
 import java.util.List;
@@ -17,6 +19,11 @@ public class PlaceholderCollectionManager implements CollectionManager {
     return null;
   }
 
+  @Override
+  public String getCollectionType() {
+    return null;
+  }
+
   @Override
   public IdManager getIdManager() {
     return new IdManager();
@@ -70,6 +77,11 @@ public class PlaceholderCollectionManager implements CollectionManager {
     return 0;
   }
 
+  @Override
+  public PriceStatistics.Summary getPriceSummary() {
+    return null;
+  }
+
   @Override
   public Ticket getMaxByDate() throws EmptyCollectionException {
     return null;
@@ -92,4 +104,17 @@ public class PlaceholderCollectionManager implements CollectionManager {
   public List<Ticket> getTicketsList() {
     return List.of();
   }
+
+  @Override
+  public long getVersion() {
+    return 0;
+  }
+
+  @Override
+  public ChangeLog.Delta getChangesSince(long version) {
+    return null;
+  }
+
+  @Override
+  public void setChangeListener(ChangeLog.ChangeListener listener) {}
 }
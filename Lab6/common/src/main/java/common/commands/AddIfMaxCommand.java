@@ -66,7 +66,7 @@ public class AddIfMaxCommand implements Command {
       Ticket ticket = ((RequestBodyWithTicket) body).getTicket();
       IdManager idManager = collectionManager.getIdManager();
       ticket.setId(idManager.getAndIncrement());
-      if (maxTicket == null || collectionManager.getCollection().isEmpty()) {
+      if (maxTicket == null || collectionManager.getCollectionSize() == 0) {
         collectionManager.addTicket(ticket);
         return new Response("Билет успешно добавлен.");
       } else if (ticket.compareTo(maxTicket) > 0) {
@@ -1,8 +1,10 @@
 package common.commands;
 
 import common.data.Ticket;
+import common.data.TicketType;
 import common.exceptions.CommandExecuteException;
 import common.managers.CollectionManager;
+import common.managers.PriceStatistics;
 import common.network.Request;
 import common.network.RequestBody;
 import common.network.Response;
@@ -13,7 +15,9 @@ import common.network.Response;
  * <p>Описание команды: "Вывести среднее значение поля {@code price} для всех элементов {@link
  * Ticket} коллекции".
  *
- * <p>Не принимает входных аргументов.
+ * <p>Не принимает входных аргументов. Кроме среднего выводит минимальную и максимальную цену и
+ * количество и среднюю цену билетов каждого типа; все значения берутся из статистики, которую
+ * менеджер коллекции ведет при изменениях.
  *
  * @see Command
  * @see Ticket
@@ -37,8 +41,30 @@ public class AverageOfPriceCommand implements Command {
 
   @Override
   public Response execute(Request request) {
-    return new Response(
-        "Cредняя цена по всем элементам коллекции равна " + collectionManager.getAveragePrice());
+    PriceStatistics.Summary summary = collectionManager.getPriceSummary();
+    StringBuilder message =
+        new StringBuilder("Cредняя цена по всем элементам коллекции равна ")
+            .append((float) summary.getAverage());
+    if (summary.getCount() > 0) {
+      message
+          .append("\nМинимальная цена: ")
+          .append(summary.getMin())
+          .append(", максимальная: ")
+          .append(summary.getMax())
+          .append('.');
+      for (TicketType type : TicketType.values()) {
+        if (summary.getCount(type) > 0) {
+          message
+              .append("\n")
+              .append(type.name())
+              .append(": ")
+              .append(summary.getCount(type))
+              .append(" шт., средняя цена ")
+              .append((float) summary.getAverage(type));
+        }
+      }
+    }
+    return new Response(message.toString());
   }
 
   @Override
@@ -73,4 +99,14 @@ public class AverageOfPriceCommand implements Command {
   public String getDescription() {
     return "вывести среднее значение поля price для всех элементов коллекции";
   }
+
+  /**
+   * Команда не изменяет коллекцию.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
 }
@@ -4,6 +4,7 @@ import common.exceptions.CommandExecuteException;
 import common.network.Request;
 import common.network.RequestBody;
 import common.network.Response;
+import java.net.SocketAddress;
 
 /**
  * Базовый интерфейс для реализации команд.
@@ -14,6 +15,18 @@ import common.network.Response;
 public interface Command {
   Response execute(Request request);
 
+  /**
+   * Исполняет запрос, пришедший от заданного клиента. Команды, состояние которых зависит от клиента
+   * (например, курсоры постраничного просмотра), переопределяют этот метод.
+   *
+   * @param request запрос.
+   * @param client адрес клиента или {@code null}, если запрос пришел не по сети.
+   * @return Ответ.
+   */
+  default Response execute(Request request, SocketAddress client) {
+    return execute(request);
+  }
+
   RequestBody packageBody(String[] args) throws CommandExecuteException;
 
   /**
@@ -29,4 +42,15 @@ public interface Command {
    * @return Описание команды.
    */
   String getDescription();
+
+  /**
+   * Показывает, что команда только читает коллекцию и не изменяет ее.
+   *
+   * <p>Такие команды можно исполнять в любом порядке относительно других читающих команд.
+   *
+   * @return {@code true}, если команда не изменяет коллекцию.
+   */
+  default boolean isReadOnly() {
+    return false;
+  }
 }
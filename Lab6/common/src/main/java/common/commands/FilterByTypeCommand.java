@@ -4,10 +4,12 @@ import common.data.Ticket;
 import common.data.TicketType;
 import common.exceptions.CommandExecuteException;
 import common.managers.CollectionManager;
+import common.managers.CursorManager;
 import common.network.Request;
 import common.network.RequestBody;
 import common.network.Response;
 import common.network.ResponseWithException;
+import java.net.SocketAddress;
 import java.util.List;
 
 /**
@@ -16,7 +18,8 @@ import java.util.List;
  * <p>Описание команды: "Вывести элементы {@link Ticket} с заданным значением {@code type}".
  *
  * <p>Принимает на вход один обязательный аргумент - тип билета (тип {@link TicketType}). Регистр не
- * имеет значения.
+ * имеет значения. За ним могут следовать аргументы постраничного просмотра: размер страницы и токен
+ * продолжения из предыдущей страницы.
  *
  * @see Command
  * @see Ticket
@@ -26,25 +29,44 @@ import java.util.List;
  */
 public class FilterByTypeCommand implements Command {
   private final CollectionManager collectionManager;
+  private final CursorManager cursorManager;
 
   /**
    * Конструктор команды.
    *
    * @param collectionManager менеджер коллекции.
+   * @param cursorManager менеджер курсоров постраничного просмотра.
    * @see CollectionManager
    * @author Alvas
    * @since 1.0
    */
-  public FilterByTypeCommand(CollectionManager collectionManager) {
+  public FilterByTypeCommand(CollectionManager collectionManager, CursorManager cursorManager) {
     this.collectionManager = collectionManager;
+    this.cursorManager = cursorManager;
   }
 
   @Override
   public Response execute(Request request) {
+    return execute(request, null);
+  }
+
+  @Override
+  public Response execute(Request request, SocketAddress client) {
     String[] args = request.getRequestBody().getArgs();
 
     try {
       TicketType type = TicketType.valueOf(args[0].toUpperCase());
+      if (Pagination.isPaged(args, 1)) {
+        return Pagination.page(
+            cursorManager,
+            client,
+            args,
+            1,
+            collectionManager.getVersion(),
+            () -> collectionManager.getFilteredByType(type),
+            "ЭЛЕМЕНТЫ С ТИПОМ БИЛЕТА " + type.name(),
+            "Элементов, соответствующих данному типу, не найдено.");
+      }
       List<Ticket> filteredTickets = collectionManager.getFilteredByType(type);
       if (filteredTickets.isEmpty()) {
         return new Response("Элементов, соответствующих данному типу, не найдено.");
@@ -59,9 +81,10 @@ public class FilterByTypeCommand implements Command {
 
   @Override
   public RequestBody packageBody(String[] args) throws CommandExecuteException {
-    if (args.length != 1) {
+    if (args.length < 1) {
       throw new CommandExecuteException("Команда принимает один обязательный аргумент.");
     }
+    Pagination.validate(args, 1);
 
     try {
       TicketType.valueOf(args[0].toUpperCase());
@@ -93,6 +116,16 @@ public class FilterByTypeCommand implements Command {
    */
   @Override
   public String getDescription() {
-    return "вывести элементы с заданным значением type";
+    return "вывести элементы с заданным значением type (постранично: <type> <размер> [токен])";
+  }
+
+  /**
+   * Команда не изменяет коллекцию.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return true;
   }
 }
@@ -80,4 +80,14 @@ public class HelpCommand implements Command {
   public String getDescription() {
     return "вывести справку по доступным командам";
   }
+
+  /**
+   * Команда не изменяет коллекцию.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
 }
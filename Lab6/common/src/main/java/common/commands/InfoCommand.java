@@ -37,7 +37,7 @@ public class InfoCommand implements Command {
     StringBuilder sb = new StringBuilder();
     sb.append("ИНФОРМАЦИЯ О КОЛЛЕКЦИИ\n")
         .append("Тип коллекции: ")
-        .append(collectionManager.getCollection().getClass().getSimpleName())
+        .append(collectionManager.getCollectionType())
         .append("\n")
         .append("Количество элементов: ")
         .append(collectionManager.getCollectionSize())
@@ -46,7 +46,10 @@ public class InfoCommand implements Command {
         .append(collectionManager.getInitializationTime())
         .append("\n")
         .append("Дата последнего изменения: ")
-        .append(collectionManager.getLastUpdateTime());
+        .append(collectionManager.getLastUpdateTime())
+        .append("\n")
+        .append("Версия коллекции: ")
+        .append(collectionManager.getVersion());
 
     return new Response(sb.toString().trim());
   }
@@ -83,4 +86,14 @@ public class InfoCommand implements Command {
   public String getDescription() {
     return "вывести информацию о коллекции";
   }
+
+  /**
+   * Команда не изменяет коллекцию.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
 }
@@ -79,4 +79,14 @@ public class MaxByCreationDateCommand implements Command {
   public String getDescription() {
     return "вывести максимальный по creationDate элемент коллекции";
   }
+
+  /**
+   * Команда не изменяет коллекцию.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
 }
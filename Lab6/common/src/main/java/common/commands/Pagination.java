@@ -0,0 +1,107 @@
+package common.commands;
+
+import common.data.Ticket;
+import common.exceptions.CommandExecuteException;
+import common.managers.CursorManager;
+import common.network.PageResponse;
+import common.network.Response;
+import common.network.ResponseWithException;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Необязательные аргументы постраничного просмотра, общие для команд, выводящих элементы: размер
+ * страницы и токен продолжения, которые следуют за обязательными аргументами команды.
+ *
+ * @see CursorManager
+ */
+final class Pagination {
+  private Pagination() {}
+
+  /**
+   * Проверяет аргументы постраничного просмотра.
+   *
+   * @param args все аргументы команды.
+   * @param from количество обязательных аргументов команды.
+   * @throws CommandExecuteException если аргументов слишком много или размер страницы некорректен.
+   */
+  static void validate(String[] args, int from) throws CommandExecuteException {
+    if (args.length > from + 2) {
+      throw new CommandExecuteException(
+          "Слишком много аргументов: после обязательных допускаются размер страницы и токен.");
+    }
+    if (args.length > from) {
+      parseLimit(args[from]);
+    }
+  }
+
+  /** Проверяет, запрошен ли постраничный просмотр. */
+  static boolean isPaged(String[] args, int from) {
+    return args != null && args.length > from;
+  }
+
+  /**
+   * Возвращает страницу элементов.
+   *
+   * @param cursorManager менеджер курсоров.
+   * @param client адрес клиента или {@code null}.
+   * @param args все аргументы команды.
+   * @param from количество обязательных аргументов команды.
+   * @param version версия коллекции, прочитанная до получения списка.
+   * @param view список элементов для первой страницы; вычисляется, только если токена нет и курсора
+   *     над тем же представлением этой версии еще нет.
+   * @param title заголовок страницы без двоеточия; он же название представления, поэтому различные
+   *     выборки должны иметь различные заголовки.
+   * @param emptyMessage сообщение, если элементов нет.
+   * @return Страница, сообщение об отсутствии элементов или ошибка, если курсор истек.
+   */
+  static Response page(
+      CursorManager cursorManager,
+      SocketAddress client,
+      String[] args,
+      int from,
+      long version,
+      Supplier<List<Ticket>> view,
+      String title,
+      String emptyMessage) {
+    CursorManager.Page page;
+    try {
+      int limit = parseLimit(args[from]);
+      page =
+          args.length > from + 1
+              ? cursorManager.next(args[from + 1], limit)
+              : cursorManager.open(client, title, version, view, limit);
+    } catch (CommandExecuteException e) {
+      return new ResponseWithException(e);
+    }
+    if (page == null) {
+      return new ResponseWithException(
+          new CommandExecuteException("Курсор не найден или истек, начните просмотр заново."));
+    }
+    if (page.getTotal() == 0) {
+      return new Response(emptyMessage);
+    }
+    return new PageResponse(
+        String.format(
+            "%s (%d-%d из %d):",
+            title,
+            page.getOffset() + 1,
+            page.getOffset() + page.getTickets().size(),
+            page.getTotal()),
+        page.getTickets(),
+        page.getNextToken());
+  }
+
+  private static int parseLimit(String value) throws CommandExecuteException {
+    try {
+      int limit = Integer.parseInt(value);
+      if (limit > 0) {
+        return limit;
+      }
+    } catch (NumberFormatException ignored) {
+      // Сообщение общее для нечисловых и неположительных значений.
+    }
+    throw new CommandExecuteException("Размер страницы должен быть положительным целым числом.");
+  }
+}
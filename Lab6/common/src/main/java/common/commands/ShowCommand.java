@@ -3,16 +3,19 @@ package common.commands;
 import common.data.Ticket;
 import common.exceptions.CommandExecuteException;
 import common.managers.CollectionManager;
+import common.managers.CursorManager;
 import common.network.Request;
 import common.network.RequestBody;
 import common.network.Response;
+import java.net.SocketAddress;
 
 /**
  * Класс, отвечающий за команду "show".
  *
  * <p>Описание команды: "Вывести все элементы {@link Ticket} коллекции".
  *
- * <p>Не принимает входных аргументов.
+ * <p>Принимает необязательные аргументы постраничного просмотра: размер страницы и токен
+ * продолжения из предыдущей страницы. Без них выводит все элементы одним ответом.
  *
  * @see Command
  * @see Ticket
@@ -21,21 +24,41 @@ import common.network.Response;
  */
 public class ShowCommand implements Command {
   private final CollectionManager collectionManager;
+  private final CursorManager cursorManager;
 
   /**
    * Конструктор команды.
    *
    * @param collectionManager менеджер коллекции.
+   * @param cursorManager менеджер курсоров постраничного просмотра.
    * @see CollectionManager
    * @author Alvas
    * @since 1.0
    */
-  public ShowCommand(CollectionManager collectionManager) {
+  public ShowCommand(CollectionManager collectionManager, CursorManager cursorManager) {
     this.collectionManager = collectionManager;
+    this.cursorManager = cursorManager;
   }
 
   @Override
   public Response execute(Request request) {
+    return execute(request, null);
+  }
+
+  @Override
+  public Response execute(Request request, SocketAddress client) {
+    String[] args = request.getRequestBody() != null ? request.getRequestBody().getArgs() : null;
+    if (Pagination.isPaged(args, 0)) {
+      return Pagination.page(
+          cursorManager,
+          client,
+          args,
+          0,
+          collectionManager.getVersion(),
+          collectionManager::getTicketsList,
+          "ЭЛЕМЕНТЫ КОЛЛЕКЦИИ",
+          "Коллекция пуста.");
+    }
     if (collectionManager.getCollectionSize() == 0) {
       return new Response("Коллекция пуста.");
     } else {
@@ -45,10 +68,7 @@ public class ShowCommand implements Command {
 
   @Override
   public RequestBody packageBody(String[] args) throws CommandExecuteException {
-    if (args.length != 0) {
-      throw new CommandExecuteException("Команда не принимает аргументы.");
-    }
-
+    Pagination.validate(args, 0);
     return new RequestBody(args);
   }
 
@@ -73,6 +93,16 @@ public class ShowCommand implements Command {
    */
   @Override
   public String getDescription() {
-    return "вывести все элементы коллекции";
+    return "вывести все элементы коллекции (постранично: show <размер> [токен])";
+  }
+
+  /**
+   * Команда не изменяет коллекцию.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return true;
   }
 }
@@ -0,0 +1,124 @@
+package common.commands;
+
+import common.data.Ticket;
+import common.exceptions.CommandExecuteException;
+import common.managers.ChangeLog;
+import common.managers.CollectionManager;
+import common.network.DeltaResponse;
+import common.network.Request;
+import common.network.RequestBody;
+import common.network.Response;
+import common.network.ResponseWithException;
+
+/**
+ * Класс, отвечающий за команду "show_since".
+ *
+ * <p>Описание команды: "Вывести элементы {@link Ticket}, измененные после заданной версии
+ * коллекции".
+ *
+ * <p>Принимает на вход один обязательный аргумент - версию коллекции, известную клиенту (тип {@code
+ * long}). Возвращает добавленные и измененные элементы, идентификаторы удаленных элементов и новую
+ * версию, которую нужно передать в следующем запросе. Клиент, опрашивающий коллекцию, получает
+ * объем данных, пропорциональный количеству изменений, а не размеру коллекции.
+ *
+ * @see Command
+ * @see ChangeLog
+ * @author Alvas
+ * @since 2.0
+ */
+public class ShowSinceCommand implements Command {
+  private final CollectionManager collectionManager;
+
+  /**
+   * Конструктор команды.
+   *
+   * @param collectionManager менеджер коллекции.
+   * @see CollectionManager
+   * @author Alvas
+   * @since 2.0
+   */
+  public ShowSinceCommand(CollectionManager collectionManager) {
+    this.collectionManager = collectionManager;
+  }
+
+  @Override
+  public Response execute(Request request) {
+    String[] args = request.getRequestBody().getArgs();
+
+    long since;
+    try {
+      since = Long.parseLong(args[0]);
+      if (since < 0) {
+        throw new CommandExecuteException("Версия не может быть отрицательной.");
+      }
+    } catch (CommandExecuteException | NumberFormatException e) {
+      return new ResponseWithException(e);
+    }
+
+    ChangeLog.Delta delta = collectionManager.getChangesSince(since);
+    String message =
+        delta.isReset()
+            ? "ЭЛЕМЕНТЫ КОЛЛЕКЦИИ ЦЕЛИКОМ (версия " + delta.getVersion() + "):"
+            : "ИЗМЕНЕНИЯ С ВЕРСИИ "
+                + since
+                + " (версия "
+                + delta.getVersion()
+                + "): изменено "
+                + delta.getChanged().size()
+                + ", удалено "
+                + delta.getRemovedIds().size();
+    return new DeltaResponse(
+        message, delta.getChanged(), delta.getVersion(), delta.isReset(), delta.getRemovedIds());
+  }
+
+  @Override
+  public RequestBody packageBody(String[] args) throws CommandExecuteException {
+    if (args.length != 1) {
+      throw new CommandExecuteException("Команда принимает один обязательный аргумент.");
+    }
+
+    try {
+      if (Long.parseLong(args[0]) < 0) {
+        throw new CommandExecuteException("Версия не может быть отрицательной.");
+      }
+    } catch (NumberFormatException e) {
+      throw new CommandExecuteException(e.getMessage());
+    }
+
+    return new RequestBody(args);
+  }
+
+  /**
+   * Возвращает название команды.
+   *
+   * @return Название команды.
+   * @author Alvas
+   * @since 2.0
+   */
+  @Override
+  public String getName() {
+    return "show_since";
+  }
+
+  /**
+   * Возвращает описание команды.
+   *
+   * @return Описание команды.
+   * @author Alvas
+   * @since 2.0
+   */
+  @Override
+  public String getDescription() {
+    return "вывести изменения коллекции после заданной версии (show_since <версия>)";
+  }
+
+  /**
+   * Команда не изменяет коллекцию.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+}
@@ -0,0 +1,95 @@
+package common.commands;
+
+import common.exceptions.CommandExecuteException;
+import common.managers.CollectionManager;
+import common.network.ChangeNotification;
+import common.network.DeltaResponse;
+import common.network.Request;
+import common.network.RequestBody;
+import common.network.Response;
+import java.util.List;
+
+/**
+ * Класс, отвечающий за команду "subscribe".
+ *
+ * <p>Описание команды: "Подписаться на уведомления об изменениях коллекции".
+ *
+ * <p>Не принимает входных аргументов. Адрес клиента регистрирует сервер до исполнения команды, а
+ * команда возвращает версию коллекции, после которой изменения будут приходить уведомлениями {@link
+ * ChangeNotification}. Подписка действует, пока клиент отправляет запросы, и отменяется командой
+ * "unsubscribe".
+ *
+ * @see Command
+ * @see UnsubscribeCommand
+ * @author Alvas
+ * @since 2.0
+ */
+public class SubscribeCommand implements Command {
+  private final CollectionManager collectionManager;
+
+  /**
+   * Конструктор команды.
+   *
+   * @param collectionManager менеджер коллекции.
+   * @see CollectionManager
+   * @author Alvas
+   * @since 2.0
+   */
+  public SubscribeCommand(CollectionManager collectionManager) {
+    this.collectionManager = collectionManager;
+  }
+
+  @Override
+  public Response execute(Request request) {
+    long version = collectionManager.getVersion();
+    return new DeltaResponse(
+        "ПОДПИСКА ОФОРМЛЕНА: изменения после версии " + version + " будут приходить уведомлениями",
+        List.of(),
+        version,
+        false,
+        List.of());
+  }
+
+  @Override
+  public RequestBody packageBody(String[] args) throws CommandExecuteException {
+    if (args.length != 0) {
+      throw new CommandExecuteException("Команда не принимает аргументы.");
+    }
+
+    return new RequestBody(args);
+  }
+
+  /**
+   * Возвращает название команды.
+   *
+   * @return Название команды.
+   * @author Alvas
+   * @since 2.0
+   */
+  @Override
+  public String getName() {
+    return "subscribe";
+  }
+
+  /**
+   * Возвращает описание команды.
+   *
+   * @return Описание команды.
+   * @author Alvas
+   * @since 2.0
+   */
+  @Override
+  public String getDescription() {
+    return "подписаться на уведомления об изменениях коллекции";
+  }
+
+  /**
+   * Команда не изменяет коллекцию.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+}
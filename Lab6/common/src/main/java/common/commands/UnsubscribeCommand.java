@@ -0,0 +1,69 @@
+package common.commands;
+
+import common.exceptions.CommandExecuteException;
+import common.network.Request;
+import common.network.RequestBody;
+import common.network.Response;
+
+/**
+ * Класс, отвечающий за команду "unsubscribe".
+ *
+ * <p>Описание команды: "Отменить подписку на уведомления об изменениях коллекции".
+ *
+ * <p>Не принимает входных аргументов. Подписку снимает сервер до исполнения команды.
+ *
+ * @see Command
+ * @see SubscribeCommand
+ * @author Alvas
+ * @since 2.0
+ */
+public class UnsubscribeCommand implements Command {
+
+  @Override
+  public Response execute(Request request) {
+    return new Response("ПОДПИСКА ОТМЕНЕНА");
+  }
+
+  @Override
+  public RequestBody packageBody(String[] args) throws CommandExecuteException {
+    if (args.length != 0) {
+      throw new CommandExecuteException("Команда не принимает аргументы.");
+    }
+
+    return new RequestBody(args);
+  }
+
+  /**
+   * Возвращает название команды.
+   *
+   * @return Название команды.
+   * @author Alvas
+   * @since 2.0
+   */
+  @Override
+  public String getName() {
+    return "unsubscribe";
+  }
+
+  /**
+   * Возвращает описание команды.
+   *
+   * @return Описание команды.
+   * @author Alvas
+   * @since 2.0
+   */
+  @Override
+  public String getDescription() {
+    return "отменить подписку на уведомления об изменениях коллекции";
+  }
+
+  /**
+   * Команда не изменяет коллекцию.
+   *
+   * @return {@code true}.
+   */
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+}
@@ -0,0 +1,27 @@
+package common.exceptions;
+
+/**
+ * Ошибка, которой сервер ответил на команду, в виде, восстановленном из двоичного формата. Класс
+ * исходного исключения не создается заново: его имя доступно через {@link #getTypeName()}, а
+ * сообщение совпадает с сообщением исходного исключения.
+ */
+public class RemoteCommandException extends Exception {
+  private final String typeName;
+
+  /**
+   * @param typeName полное имя класса исключения на сервере или {@code null}, если оно неизвестно.
+   * @param message сообщение исходного исключения.
+   */
+  public RemoteCommandException(String typeName, String message) {
+    super(message);
+    this.typeName = typeName;
+  }
+
+  /**
+   * @return Полное имя класса исключения на сервере или {@code null}, если отправитель его не
+   *     передал.
+   */
+  public String getTypeName() {
+    return typeName;
+  }
+}
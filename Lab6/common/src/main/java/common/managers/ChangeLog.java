@@ -0,0 +1,167 @@
+package common.managers;
+
+import common.data.Ticket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Журнал версий коллекции для выдачи изменений с заданной версии.
+ *
+ * <p>Каждое изменение увеличивает версию коллекции на единицу. Для каждого элемента хранится версия
+ * его последнего добавления или обновления, а для удаленных элементов — надгробия с версией
+ * удаления. Изменения с версии {@code v} — это элементы и надгробия с версией больше {@code v}; они
+ * находятся по упорядоченным по версии индексам за время, пропорциональное количеству изменений, а
+ * не размеру коллекции.
+ *
+ * <p>Количество надгробий ограничено. Если клиент запрашивает изменения с версии, удаления после
+ * которой уже забыты (или после очистки коллекции), он получает коллекцию целиком.
+ *
+ * <p>О каждом изменении сообщается {@link ChangeListener}, если он задан.
+ *
+ * <p>Класс не потокобезопасен: изменения и запросы выполняются под блокировкой менеджера коллекции.
+ */
+public class ChangeLog {
+  private final int maxTombstones;
+  private final Map<Integer, Long> liveVersions = new HashMap<>();
+  private final TreeMap<Long, Ticket> upserts = new TreeMap<>();
+  private final TreeMap<Long, Integer> tombstones = new TreeMap<>();
+  private long version;
+  private long horizon;
+  private ChangeListener listener;
+
+  /**
+   * @param maxTombstones максимальное количество хранимых надгробий.
+   */
+  public ChangeLog(int maxTombstones) {
+    this.maxTombstones = maxTombstones;
+  }
+
+  /**
+   * Задает получателя событий об изменениях.
+   *
+   * @param listener получатель или {@code null}, чтобы перестать сообщать об изменениях.
+   */
+  public void setListener(ChangeListener listener) {
+    this.listener = listener;
+  }
+
+  /** Текущая версия коллекции. */
+  public long getVersion() {
+    return version;
+  }
+
+  /** Отмечает добавление или изменение элемента. */
+  public void recordUpsert(Ticket ticket) {
+    long current = ++version;
+    Long previous = liveVersions.put(ticket.getId(), current);
+    if (previous != null) {
+      upserts.remove(previous);
+    }
+    upserts.put(current, ticket);
+    if (listener != null) {
+      listener.onUpsert(current, ticket);
+    }
+  }
+
+  /** Отмечает удаление элемента. */
+  public void recordRemoval(Ticket ticket) {
+    Long previous = liveVersions.remove(ticket.getId());
+    if (previous == null) {
+      return;
+    }
+    upserts.remove(previous);
+    tombstones.put(++version, ticket.getId());
+    if (tombstones.size() > maxTombstones) {
+      horizon = tombstones.pollFirstEntry().getKey();
+    }
+    if (listener != null) {
+      listener.onRemoval(version, ticket.getId());
+    }
+  }
+
+  /** Отмечает очистку коллекции: клиенты с любой прежней версией получат коллекцию целиком. */
+  public void recordClear() {
+    liveVersions.clear();
+    upserts.clear();
+    tombstones.clear();
+    horizon = ++version;
+    if (listener != null) {
+      listener.onClear(version);
+    }
+  }
+
+  /**
+   * Возвращает изменения после заданной версии.
+   *
+   * @param since версия, известная клиенту.
+   * @param snapshot все элементы коллекции на случай, если изменения уже нельзя восстановить.
+   * @return Изменения или, если версия слишком старая либо неизвестна, коллекция целиком.
+   */
+  public Delta since(long since, Supplier<List<Ticket>> snapshot) {
+    if (since < horizon || since > version) {
+      return new Delta(version, true, snapshot.get(), List.of());
+    }
+    return new Delta(
+        version,
+        false,
+        new ArrayList<>(upserts.tailMap(since, false).values()),
+        new ArrayList<>(tombstones.tailMap(since, false).values()));
+  }
+
+  /**
+   * Получатель событий об изменениях коллекции. Вызывается внутри изменения, пока другие изменения
+   * коллекции невозможны.
+   */
+  public interface ChangeListener {
+    void onUpsert(long version, Ticket ticket);
+
+    void onRemoval(long version, int id);
+
+    void onClear(long version);
+  }
+
+  /** Изменения коллекции между двумя версиями. */
+  public static final class Delta {
+    private final long version;
+    private final boolean reset;
+    private final List<Ticket> changed;
+    private final List<Integer> removedIds;
+
+    /**
+     * @param version версия коллекции, к которой приводят изменения.
+     * @param reset {@code true}, если вместо изменений передается коллекция целиком.
+     * @param changed добавленные и измененные элементы в порядке изменения.
+     * @param removedIds идентификаторы удаленных элементов.
+     */
+    public Delta(long version, boolean reset, List<Ticket> changed, List<Integer> removedIds) {
+      this.version = version;
+      this.reset = reset;
+      this.changed = changed;
+      this.removedIds = removedIds;
+    }
+
+    /** Версия коллекции, к которой приводят изменения. */
+    public long getVersion() {
+      return version;
+    }
+
+    /** {@code true}, если вместо изменений передается коллекция целиком. */
+    public boolean isReset() {
+      return reset;
+    }
+
+    /** Добавленные и измененные элементы в порядке изменения. */
+    public List<Ticket> getChanged() {
+      return changed;
+    }
+
+    /** Идентификаторы удаленных элементов. */
+    public List<Integer> getRemovedIds() {
+      return removedIds;
+    }
+  }
+}
@@ -12,6 +12,8 @@ import java.util.List;
 public interface CollectionManager {
   ArrayDeque<Ticket> getCollection();
 
+  String getCollectionType();
+
   IdManager getIdManager();
 
   LocalDateTime getInitializationTime();
@@ -38,6 +40,8 @@ public interface CollectionManager {
 
   float getAveragePrice();
 
+  PriceStatistics.Summary getPriceSummary();
+
   Ticket getMaxByDate() throws EmptyCollectionException;
 
   List<Ticket> getFilteredByType(TicketType type);
@@ -47,4 +51,10 @@ public interface CollectionManager {
   void removeLower(Ticket ticket) throws RemoveException;
 
   List<Ticket> getTicketsList();
+
+  long getVersion();
+
+  ChangeLog.Delta getChangesSince(long version);
+
+  void setChangeListener(ChangeLog.ChangeListener listener);
 }
@@ -3,11 +3,17 @@ package common.managers;
 import common.commands.*;
 import common.exceptions.CommandExecuteException;
 import common.exceptions.UnknownCommandException;
+import common.network.BatchRequest;
+import common.network.BatchResponse;
 import common.network.Request;
 import common.network.RequestBody;
 import common.network.Response;
+import common.network.ResponseWithException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * Класс, отвечающий за связь между командами и {@link CollectionManager}.
@@ -36,9 +42,13 @@ public class CommandManager {
       ScriptManager scriptManager,
       ScannerManager scannerManager) {
     commandList = new LinkedHashMap<>();
+    CursorManager cursorManager = new CursorManager();
     commandList.put("help", new HelpCommand(collectionManager));
     commandList.put("info", new InfoCommand(collectionManager));
-    commandList.put("show", new ShowCommand(collectionManager));
+    commandList.put("show", new ShowCommand(collectionManager, cursorManager));
+    commandList.put("show_since", new ShowSinceCommand(collectionManager));
+    commandList.put("subscribe", new SubscribeCommand(collectionManager));
+    commandList.put("unsubscribe", new UnsubscribeCommand());
     commandList.put("add", new AddCommand(collectionManager, scriptManager, scannerManager));
     commandList.put("update", new UpdateCommand(collectionManager, scriptManager, scannerManager));
     commandList.put("remove_by_id", new RemoveByIdCommand(collectionManager));
@@ -47,7 +57,7 @@ public class CommandManager {
     commandList.put(
         "remove_lower", new RemoveLowerCommand(collectionManager, scriptManager, scannerManager));
     commandList.put("max_by_creation_date", new MaxByCreationDateCommand(collectionManager));
-    commandList.put("filter_by_type", new FilterByTypeCommand(collectionManager));
+    commandList.put("filter_by_type", new FilterByTypeCommand(collectionManager, cursorManager));
     commandList.put(
         "add_if_max", new AddIfMaxCommand(collectionManager, scriptManager, scannerManager));
     commandList.put("average_of_price", new AverageOfPriceCommand(collectionManager));
@@ -67,7 +77,52 @@ public class CommandManager {
     return new Request(commandName, body);
   }
 
+  /**
+   * Проверяет, что команда с заданным именем только читает коллекцию.
+   *
+   * @param commandName название команды.
+   * @return {@code true}, если команда существует и не изменяет коллекцию.
+   * @see Command#isReadOnly()
+   */
+  public boolean isReadOnly(String commandName) {
+    Command command = commandList.get(commandName);
+    return command != null && command.isReadOnly();
+  }
+
+  /**
+   * Проверяет, что запрос только читает коллекцию. Пакет читающий, если читающие все его команды.
+   *
+   * @param request запрос.
+   * @return {@code true}, если запрос не изменяет коллекцию.
+   */
+  public boolean isReadOnly(Request request) {
+    if (request instanceof BatchRequest) {
+      for (Request inner : ((BatchRequest) request).getRequests()) {
+        if (!isReadOnly(inner.getCommandName())) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return isReadOnly(request.getCommandName());
+  }
+
   public Response executeRequest(Request request) {
+    return executeRequest(request, null);
+  }
+
+  /**
+   * Исполняет запрос клиента.
+   *
+   * @param request запрос или пакет запросов.
+   * @param client адрес клиента или {@code null}, если запрос пришел не по сети.
+   * @return Ответ.
+   * @see Command#execute(Request, SocketAddress)
+   */
+  public Response executeRequest(Request request, SocketAddress client) {
+    if (request instanceof BatchRequest) {
+      return executeBatch((BatchRequest) request, client);
+    }
     Command command = commandList.get(request.getCommandName());
 
     if (request.getCommandName().equals("save")) {
@@ -75,7 +130,34 @@ public class CommandManager {
           "Недостаточно прав. Команда 'save' может быть использована только на сервере.");
     }
 
-    return command.execute(request);
+    return command.execute(request, client);
+  }
+
+  /**
+   * Исполняет команды пакета по порядку. Ошибка одной команды не прерывает пакет: вместо ее ответа
+   * возвращается {@link ResponseWithException}.
+   *
+   * @param batch пакет команд.
+   * @param client адрес клиента или {@code null}.
+   * @return Ответы на команды в порядке пакета.
+   */
+  private BatchResponse executeBatch(BatchRequest batch, SocketAddress client) {
+    List<Response> responses = new ArrayList<>(batch.getRequests().size());
+    for (Request request : batch.getRequests()) {
+      try {
+        if (request instanceof BatchRequest) {
+          throw new CommandExecuteException("Вложенные пакеты команд не поддерживаются.");
+        }
+        if (!commandList.containsKey(request.getCommandName())
+            && !request.getCommandName().equals("save")) {
+          throw new UnknownCommandException(request.getCommandName());
+        }
+        responses.add(executeRequest(request, client));
+      } catch (CommandExecuteException | UnknownCommandException | RuntimeException e) {
+        responses.add(new ResponseWithException(e));
+      }
+    }
+    return new BatchResponse(responses);
   }
 
   /**
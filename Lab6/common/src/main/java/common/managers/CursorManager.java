@@ -0,0 +1,255 @@
+package common.managers;
+
+import common.data.Ticket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Курсоры постраничного просмотра элементов.
+ *
+ * <p>Курсор запоминает список элементов на момент первой страницы, поэтому все страницы одного
+ * просмотра согласованы между собой, даже если коллекция меняется между запросами. Курсоры,
+ * открытые над одним представлением одной версии коллекции, разделяют один неизменяемый список, а
+ * не держат по копии: пока коллекция не меняется, сколько бы клиентов ни листало {@code show},
+ * память занимает один список. Курсор идентифицируется случайным номером; токен продолжения
+ * содержит номер курсора и позицию следующей страницы, поэтому повторный запрос той же страницы
+ * возвращает ту же страницу.
+ *
+ * <p>Курсоры, к которым долго не обращались, удаляются. Количество курсоров ограничено и в целом, и
+ * для каждого клиента: при переполнении удаляется курсор, к которому дольше всего не обращались, —
+ * при превышении лимита клиента это курсор того же клиента, поэтому один клиент не вытесняет
+ * курсоры остальных. Курсор последней страницы удаляется сразу.
+ *
+ * @see CollectionManager
+ */
+public class CursorManager {
+  public static final int MAX_PAGE_SIZE = 1000;
+  private static final int DEFAULT_MAX_CURSORS = 256;
+  private static final int DEFAULT_MAX_CURSORS_PER_CLIENT = 8;
+  private static final long DEFAULT_IDLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final int TOKEN_RADIX = 36;
+
+  private final int maxCursors;
+  private final int maxCursorsPerClient;
+  private final long idleTimeoutNanos;
+  private final LinkedHashMap<Long, Cursor> cursors = new LinkedHashMap<>(16, 0.75f, true);
+  private final HashMap<String, SharedView> views = new HashMap<>();
+  private final HashMap<SocketAddress, Integer> clientCursors = new HashMap<>();
+
+  public CursorManager() {
+    this(DEFAULT_MAX_CURSORS, DEFAULT_MAX_CURSORS_PER_CLIENT, DEFAULT_IDLE_TIMEOUT_NANOS);
+  }
+
+  /**
+   * @param maxCursors максимальное количество открытых курсоров.
+   * @param maxCursorsPerClient максимальное количество открытых курсоров одного клиента.
+   * @param idleTimeoutNanos время без обращений, после которого курсор удаляется.
+   */
+  public CursorManager(int maxCursors, int maxCursorsPerClient, long idleTimeoutNanos) {
+    this.maxCursors = maxCursors;
+    this.maxCursorsPerClient = maxCursorsPerClient;
+    this.idleTimeoutNanos = idleTimeoutNanos;
+  }
+
+  /**
+   * Открывает курсор над представлением коллекции и возвращает первую страницу.
+   *
+   * <p>Если открыт курсор над тем же представлением той же версии, новый курсор использует его
+   * список, и {@code tickets} не вызывается.
+   *
+   * @param client адрес клиента или {@code null}, если запрос пришел не по сети.
+   * @param view название представления, например команда с аргументами отбора.
+   * @param version версия коллекции, прочитанная до получения списка.
+   * @param tickets список элементов, который больше не будет изменяться; вызывается без блокировки
+   *     менеджера.
+   * @param limit максимальный размер страницы.
+   * @return Первая страница.
+   */
+  public Page open(
+      SocketAddress client, String view, long version, Supplier<List<Ticket>> tickets, int limit) {
+    String key = version + "@" + view;
+    List<Ticket> shared;
+    synchronized (this) {
+      SharedView existing = views.get(key);
+      shared = existing != null ? existing.tickets : null;
+    }
+    // Копия коллекции строится вне блокировки, чтобы не задерживать остальные курсоры.
+    List<Ticket> list = shared != null ? shared : tickets.get();
+
+    synchronized (this) {
+      long now = System.nanoTime();
+      evictIdle(now);
+      long id;
+      do {
+        id = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+      } while (cursors.containsKey(id));
+      // Если другой курсор успел открыть то же представление, используется его список.
+      SharedView sharedView = views.computeIfAbsent(key, k -> new SharedView(k, list));
+      sharedView.cursors++;
+      Cursor cursor = new Cursor(client, sharedView, now);
+      cursors.put(id, cursor);
+      if (clientCursors.merge(client, 1, Integer::sum) > maxCursorsPerClient) {
+        evictEldest(client);
+      }
+      Iterator<Cursor> eldest = cursors.values().iterator();
+      while (cursors.size() > maxCursors) {
+        Cursor evicted = eldest.next();
+        eldest.remove();
+        closed(evicted);
+      }
+      return page(id, cursor, 0, limit);
+    }
+  }
+
+  /**
+   * Возвращает страницу по токену продолжения.
+   *
+   * @param token токен из предыдущей страницы.
+   * @param limit максимальный размер страницы.
+   * @return Страница или {@code null}, если токен некорректен, а курсор истек или не существовал.
+   */
+  public synchronized Page next(String token, int limit) {
+    long now = System.nanoTime();
+    evictIdle(now);
+    int separator = token.indexOf('.');
+    if (separator < 0) {
+      return null;
+    }
+    long id;
+    int offset;
+    try {
+      id = Long.parseLong(token.substring(0, separator), TOKEN_RADIX);
+      offset = Integer.parseInt(token.substring(separator + 1), TOKEN_RADIX);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    Cursor cursor = cursors.get(id);
+    if (cursor == null || offset < 0 || offset > cursor.view.tickets.size()) {
+      return null;
+    }
+    cursor.lastAccess = now;
+    return page(id, cursor, offset, limit);
+  }
+
+  public synchronized int size() {
+    return cursors.size();
+  }
+
+  /** Количество различных списков, над которыми открыты курсоры. */
+  public synchronized int getViewCount() {
+    return views.size();
+  }
+
+  private Page page(long id, Cursor cursor, int offset, int limit) {
+    List<Ticket> tickets = cursor.view.tickets;
+    int total = tickets.size();
+    int end = (int) Math.min(total, (long) offset + Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    String nextToken = null;
+    if (end < total) {
+      nextToken = Long.toString(id, TOKEN_RADIX) + "." + Integer.toString(end, TOKEN_RADIX);
+    } else {
+      closed(cursors.remove(id));
+    }
+    // Страница копируется: представление подсписка не сериализуется.
+    return new Page(new ArrayList<>(tickets.subList(offset, end)), offset, total, nextToken);
+  }
+
+  private void evictIdle(long now) {
+    // Курсоры упорядочены по времени последнего обращения, поэтому достаточно проверить начало.
+    Iterator<Cursor> iterator = cursors.values().iterator();
+    while (iterator.hasNext()) {
+      Cursor cursor = iterator.next();
+      if (now - cursor.lastAccess <= idleTimeoutNanos) {
+        return;
+      }
+      iterator.remove();
+      closed(cursor);
+    }
+  }
+
+  /** Удаляет курсор клиента, к которому дольше всего не обращались. */
+  private void evictEldest(SocketAddress client) {
+    Iterator<Cursor> iterator = cursors.values().iterator();
+    while (iterator.hasNext()) {
+      Cursor cursor = iterator.next();
+      if (Objects.equals(client, cursor.client)) {
+        iterator.remove();
+        closed(cursor);
+        return;
+      }
+    }
+  }
+
+  /** Освобождает список и место клиента удаленного курсора. */
+  private void closed(Cursor cursor) {
+    if (--cursor.view.cursors == 0) {
+      views.remove(cursor.view.key);
+    }
+    clientCursors.computeIfPresent(cursor.client, (client, count) -> count == 1 ? null : count - 1);
+  }
+
+  /** Страница элементов и токен следующей страницы. */
+  public static final class Page {
+    private final List<Ticket> tickets;
+    private final int offset;
+    private final int total;
+    private final String nextToken;
+
+    private Page(List<Ticket> tickets, int offset, int total, String nextToken) {
+      this.tickets = tickets;
+      this.offset = offset;
+      this.total = total;
+      this.nextToken = nextToken;
+    }
+
+    public List<Ticket> getTickets() {
+      return tickets;
+    }
+
+    /** Номер первого элемента страницы, начиная с 0. */
+    public int getOffset() {
+      return offset;
+    }
+
+    /** Количество элементов во всем просмотре. */
+    public int getTotal() {
+      return total;
+    }
+
+    public String getNextToken() {
+      return nextToken;
+    }
+  }
+
+  private static final class Cursor {
+    private final SocketAddress client;
+    private final SharedView view;
+    private long lastAccess;
+
+    private Cursor(SocketAddress client, SharedView view, long lastAccess) {
+      this.client = client;
+      this.view = view;
+      this.lastAccess = lastAccess;
+    }
+  }
+
+  /** Список элементов одной версии представления и количество курсоров над ним. */
+  private static final class SharedView {
+    private final String key;
+    private final List<Ticket> tickets;
+    private int cursors;
+
+    private SharedView(String key, List<Ticket> tickets) {
+      this.key = key;
+      this.tickets = tickets;
+    }
+  }
+}
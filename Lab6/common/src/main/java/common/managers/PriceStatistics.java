@@ -0,0 +1,205 @@
+package common.managers;
+
+import common.data.Ticket;
+import common.data.TicketType;
+import java.util.TreeMap;
+
+/**
+ * Накопительная статистика цен элементов коллекции: количество, сумма, минимум, максимум и разбивка
+ * по {@link TicketType}.
+ *
+ * <p>Статистика обновляется при каждом изменении коллекции, а не пересчитывается по запросу:
+ * добавление и удаление элемента меняют количество и суммы за O(1), минимум и максимум — за O(log
+ * k), где k — количество различных цен (для произвольных удалений минимум за O(1) не поддержать).
+ * Суммы ведутся в {@code double} с компенсацией ошибок округления по Ноймайеру, поэтому среднее
+ * остается точным и после миллионов добавлений и удалений.
+ *
+ * <p>Класс не потокобезопасен: изменения и запросы выполняются под блокировкой менеджера коллекции.
+ */
+public class PriceStatistics {
+  private static final int TYPES = TicketType.values().length;
+
+  private final CompensatedSum total = new CompensatedSum();
+  private final CompensatedSum[] typeSums = new CompensatedSum[TYPES];
+  private final int[] typeCounts = new int[TYPES];
+  private final TreeMap<Float, Integer> prices = new TreeMap<>();
+  private int count;
+
+  public PriceStatistics() {
+    for (int i = 0; i < TYPES; i++) {
+      typeSums[i] = new CompensatedSum();
+    }
+  }
+
+  /**
+   * Считает статистику по элементам, для менеджеров, которые не ведут ее при изменениях.
+   *
+   * @param tickets элементы коллекции.
+   * @return Статистика цен.
+   */
+  public static PriceStatistics of(Iterable<Ticket> tickets) {
+    PriceStatistics statistics = new PriceStatistics();
+    for (Ticket ticket : tickets) {
+      statistics.add(ticket);
+    }
+    return statistics;
+  }
+
+  /** Отмечает добавление элемента. */
+  public void add(Ticket ticket) {
+    float price = ticket.getPrice();
+    count++;
+    total.add(price);
+    prices.merge(price, 1, Integer::sum);
+    if (ticket.getType() != null) {
+      int type = ticket.getType().ordinal();
+      typeCounts[type]++;
+      typeSums[type].add(price);
+    }
+  }
+
+  /** Отмечает удаление элемента; элемент должен быть тем же, что был добавлен. */
+  public void remove(Ticket ticket) {
+    float price = ticket.getPrice();
+    count--;
+    total.add(-price);
+    prices.computeIfPresent(price, (p, n) -> n == 1 ? null : n - 1);
+    if (ticket.getType() != null) {
+      int type = ticket.getType().ordinal();
+      typeCounts[type]--;
+      typeSums[type].add(-price);
+      if (typeCounts[type] == 0) {
+        typeSums[type].reset();
+      }
+    }
+    if (count == 0) {
+      total.reset();
+    }
+  }
+
+  /** Отмечает очистку коллекции. */
+  public void clear() {
+    count = 0;
+    total.reset();
+    prices.clear();
+    for (int i = 0; i < TYPES; i++) {
+      typeCounts[i] = 0;
+      typeSums[i].reset();
+    }
+  }
+
+  /** Среднее значение цены или 0, если элементов нет. */
+  public double getAverage() {
+    return count == 0 ? 0 : total.value() / count;
+  }
+
+  /** Неизменяемая копия текущей статистики. */
+  public Summary summary() {
+    double[] sums = new double[TYPES];
+    for (int i = 0; i < TYPES; i++) {
+      sums[i] = typeSums[i].value();
+    }
+    return new Summary(
+        count,
+        total.value(),
+        prices.isEmpty() ? Float.NaN : prices.firstKey(),
+        prices.isEmpty() ? Float.NaN : prices.lastKey(),
+        typeCounts.clone(),
+        sums);
+  }
+
+  /** Сумма с компенсацией ошибок округления (алгоритм Ноймайера). */
+  private static final class CompensatedSum {
+    private double sum;
+    private double compensation;
+
+    void add(double value) {
+      double next = sum + value;
+      if (Math.abs(sum) >= Math.abs(value)) {
+        compensation += (sum - next) + value;
+      } else {
+        compensation += (value - next) + sum;
+      }
+      sum = next;
+    }
+
+    double value() {
+      return sum + compensation;
+    }
+
+    void reset() {
+      sum = 0;
+      compensation = 0;
+    }
+  }
+
+  /** Статистика цен на один момент. */
+  public static final class Summary {
+    private final int count;
+    private final double sum;
+    private final float min;
+    private final float max;
+    private final int[] typeCounts;
+    private final double[] typeSums;
+
+    private Summary(
+        int count, double sum, float min, float max, int[] typeCounts, double[] typeSums) {
+      this.count = count;
+      this.sum = sum;
+      this.min = min;
+      this.max = max;
+      this.typeCounts = typeCounts;
+      this.typeSums = typeSums;
+    }
+
+    /**
+     * Статистика из готовых значений, для менеджеров, которые ведут ее сами.
+     *
+     * @param typeCounts количество элементов каждого {@link TicketType} по порядковому номеру.
+     * @param typeSums сумма цен элементов каждого {@link TicketType} по порядковому номеру.
+     */
+    public static Summary of(
+        int count, double sum, float min, float max, int[] typeCounts, double[] typeSums) {
+      if (typeCounts.length != TYPES || typeSums.length != TYPES) {
+        throw new IllegalArgumentException("Ожидается по значению на каждый тип билета.");
+      }
+      return new Summary(count, sum, min, max, typeCounts.clone(), typeSums.clone());
+    }
+
+    /** Количество элементов. */
+    public int getCount() {
+      return count;
+    }
+
+    /** Сумма цен. */
+    public double getSum() {
+      return sum;
+    }
+
+    /** Среднее значение цены или 0, если элементов нет. */
+    public double getAverage() {
+      return count == 0 ? 0 : sum / count;
+    }
+
+    /** Минимальная цена или {@link Float#NaN}, если элементов нет. */
+    public float getMin() {
+      return min;
+    }
+
+    /** Максимальная цена или {@link Float#NaN}, если элементов нет. */
+    public float getMax() {
+      return max;
+    }
+
+    /** Количество элементов заданного типа. */
+    public int getCount(TicketType type) {
+      return typeCounts[type.ordinal()];
+    }
+
+    /** Средняя цена элементов заданного типа или 0, если их нет. */
+    public double getAverage(TicketType type) {
+      int typeCount = typeCounts[type.ordinal()];
+      return typeCount == 0 ? 0 : typeSums[type.ordinal()] / typeCount;
+    }
+  }
+}
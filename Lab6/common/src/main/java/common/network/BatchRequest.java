@@ -0,0 +1,36 @@
+package common.network;
+
+import java.io.Serial;
+import java.util.List;
+
+/**
+ * Пакет из нескольких команд, передаваемый одним сообщением.
+ *
+ * <p>Сервер исполняет команды пакета подряд, за один захват коллекции, и возвращает {@link
+ * BatchResponse} с ответом на каждую команду в том же порядке. Идентификатор клиента, номер и
+ * зависимость относятся ко всему пакету; вложенные запросы их не несут.
+ */
+public class BatchRequest extends Request {
+  @Serial private static final long serialVersionUID = 4120975816243058117L;
+  public static final String COMMAND_NAME = "batch";
+
+  private final List<Request> requests;
+
+  public BatchRequest(List<Request> requests) {
+    this(requests, 0, 0, 0);
+  }
+
+  public BatchRequest(List<Request> requests, long clientId, long sequence, long dependsOn) {
+    super(COMMAND_NAME, null, clientId, sequence, dependsOn);
+    this.requests = List.copyOf(requests);
+  }
+
+  @Override
+  public Request withIdentity(long clientId, long sequence, long dependsOn) {
+    return new BatchRequest(requests, clientId, sequence, dependsOn);
+  }
+
+  public List<Request> getRequests() {
+    return requests;
+  }
+}
@@ -0,0 +1,24 @@
+package common.network;
+
+import java.io.Serial;
+import java.util.List;
+
+/** Ответы на команды {@link BatchRequest} в порядке команд пакета. */
+public class BatchResponse extends Response {
+  @Serial private static final long serialVersionUID = 2958173640917265034L;
+
+  private final List<Response> responses;
+
+  public BatchResponse(List<Response> responses) {
+    this("Выполнено команд: " + responses.size(), responses);
+  }
+
+  public BatchResponse(String message, List<Response> responses) {
+    super(message);
+    this.responses = List.copyOf(responses);
+  }
+
+  public List<Response> getResponses() {
+    return responses;
+  }
+}
@@ -0,0 +1,450 @@
+package common.network;
+
+import common.data.Coordinates;
+import common.data.Location;
+import common.data.Person;
+import common.data.Ticket;
+import common.data.TicketType;
+import common.exceptions.RemoteCommandException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Компактный двоичный кодек для {@link Request} и {@link Response}.
+ *
+ * <p>В отличие от {@link SerializationCodec} не передает описания классов: команда кодируется
+ * номером в таблице {@link #COMMAND_TYPES}, целые числа — в формате varint, даты — номером дня от
+ * эпохи, а отсутствие необязательных полей ({@link Person}, {@link Location} и упакованных чисел)
+ * отмечается битовой маской перед билетом.
+ *
+ * <p>Пакет команд ({@link BatchRequest}) и пакет ответов ({@link BatchResponse}) записываются как
+ * количество вложенных сообщений, за которым следуют сами сообщения в обычном формате.
+ *
+ * <p>Ошибка {@link ResponseWithException} передается сообщением и полным именем класса исключения;
+ * получатель восстанавливает ее как {@link RemoteCommandException} с тем же сообщением и именем
+ * класса, а не как экземпляр исходного класса. Ответы в прежнем формате, без имени класса, также
+ * читаются.
+ *
+ * <p>Для записи поток берет буфер из {@link WorkspacePool}, поэтому результат {@link
+ * #encode(Object)} действителен только до следующего вызова кодирования в том же потоке или до
+ * {@link WorkspacePool#releaseAll()}.
+ */
+public final class BinaryCodec implements MessageCodec {
+  public static final byte ID = 1;
+
+  /** Таблица номеров команд. Допускается только добавление новых имен в конец. */
+  private static final List<String> COMMAND_TYPES =
+      List.of(
+          "help",
+          "info",
+          "show",
+          "add",
+          "update",
+          "remove_by_id",
+          "clear",
+          "remove_head",
+          "remove_lower",
+          "max_by_creation_date",
+          "filter_by_type",
+          "add_if_max",
+          "average_of_price",
+          "show_since",
+          "subscribe",
+          "unsubscribe");
+
+  private static final int INITIAL_CAPACITY = 4096;
+  private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+  private static final WorkspacePool<WireWriter> WRITERS =
+      new WorkspacePool<>(
+          WorkspacePool.defaultCapacity(),
+          () -> new WireWriter(INITIAL_CAPACITY, MAX_RETAINED_CAPACITY),
+          writer -> {});
+  private static final TicketType[] TICKET_TYPES = TicketType.values();
+
+  private static final byte REQUEST = 1;
+  private static final byte RESPONSE = 2;
+  private static final byte RESPONSE_WITH_EXCEPTION = 3;
+  private static final byte IDENTIFIED_REQUEST = 4;
+  private static final byte DEPENDENT_REQUEST = 5;
+  private static final byte BATCH_REQUEST = 6;
+  private static final byte BATCH_RESPONSE = 7;
+  private static final byte BUSY_RESPONSE = 8;
+  private static final byte PAGE_RESPONSE = 9;
+  private static final byte DELTA_RESPONSE = 10;
+  private static final byte CHANGE_NOTIFICATION = 11;
+  private static final byte TYPED_EXCEPTION = 12;
+
+  private static final byte PLAIN_BODY = 0;
+  private static final byte TICKET_BODY = 1;
+  private static final byte NO_BODY = 2;
+
+  private static final int HAS_COORDINATES = 1;
+  private static final int HAS_COORDINATES_Y = 1 << 1;
+  private static final int HAS_CREATION_DATE = 1 << 2;
+  private static final int HAS_TYPE = 1 << 3;
+  private static final int HAS_PERSON = 1 << 4;
+  private static final int HAS_HEIGHT = 1 << 5;
+  private static final int HAS_LOCATION = 1 << 6;
+  private static final int HAS_LOCATION_X = 1 << 7;
+  private static final int HAS_LOCATION_Y = 1 << 8;
+  private static final int HAS_LOCATION_Z = 1 << 9;
+
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+  @Override
+  public ByteBuffer encode(Object message) throws IOException {
+    WireWriter out = WRITERS.acquire();
+    out.reset();
+    writeMessage(out, message);
+    return out.toBuffer();
+  }
+
+  @Override
+  public Object decode(ByteBuffer payload) throws IOException {
+    return readMessage(new WireReader(payload));
+  }
+
+  private void writeMessage(WireWriter out, Object message) throws IOException {
+    if (message instanceof BatchRequest) {
+      writeBatchRequest(out, (BatchRequest) message);
+    } else if (message instanceof Request) {
+      writeRequest(out, (Request) message);
+    } else if (message instanceof ResponseWithException) {
+      writeException(out, ((ResponseWithException) message).getException());
+    } else if (message instanceof BusyResponse) {
+      out.writeByte(BUSY_RESPONSE);
+      out.writeUnsignedVarLong(((BusyResponse) message).getRetryAfterMillis());
+      out.writeString(((BusyResponse) message).getMessage());
+    } else if (message instanceof PageResponse) {
+      writeResponse(out, PAGE_RESPONSE, (Response) message);
+      out.writeString(((PageResponse) message).getNextToken());
+    } else if (message instanceof ChangeNotification) {
+      out.writeByte(CHANGE_NOTIFICATION);
+      out.writeUnsignedVarLong(((ChangeNotification) message).getFromVersion());
+      writeDeltaResponse(out, (DeltaResponse) message);
+    } else if (message instanceof DeltaResponse) {
+      writeDeltaResponse(out, (DeltaResponse) message);
+    } else if (message instanceof BatchResponse) {
+      writeBatchResponse(out, (BatchResponse) message);
+    } else if (message instanceof Response) {
+      writeResponse(out, RESPONSE, (Response) message);
+    } else {
+      throw new IOException("Неподдерживаемый тип сообщения: " + message.getClass().getName());
+    }
+  }
+
+  private Object readMessage(WireReader in) throws IOException {
+    int tag = in.readByte();
+    return switch (tag) {
+      case REQUEST -> readRequest(in, 0, 0, 0);
+      case IDENTIFIED_REQUEST ->
+          readRequest(in, in.readUnsignedVarLong(), in.readUnsignedVarLong(), 0);
+      case DEPENDENT_REQUEST ->
+          readRequest(
+              in, in.readUnsignedVarLong(), in.readUnsignedVarLong(), in.readUnsignedVarLong());
+      case BATCH_REQUEST -> readBatchRequest(in);
+      case RESPONSE -> readResponse(in);
+      case PAGE_RESPONSE -> {
+        Response page = readResponse(in);
+        yield new PageResponse(page.getMessage(), page.getTickets(), in.readString());
+      }
+      case DELTA_RESPONSE -> readDeltaResponse(in);
+      case CHANGE_NOTIFICATION -> {
+        long fromVersion = in.readUnsignedVarLong();
+        if (in.readByte() != DELTA_RESPONSE) {
+          throw new IOException("Уведомление об изменениях повреждено.");
+        }
+        DeltaResponse delta = readDeltaResponse(in);
+        yield new ChangeNotification(
+            delta.getMessage(),
+            delta.getTickets(),
+            fromVersion,
+            delta.getVersion(),
+            delta.isReset(),
+            delta.getRemovedIds());
+      }
+      case BATCH_RESPONSE -> readBatchResponse(in);
+      case BUSY_RESPONSE -> {
+        long retryAfterMillis = in.readUnsignedVarLong();
+        yield new BusyResponse(in.readString(), retryAfterMillis);
+      }
+      case RESPONSE_WITH_EXCEPTION ->
+          new ResponseWithException(new RemoteCommandException(null, in.readString()));
+      case TYPED_EXCEPTION -> {
+        String message = in.readString();
+        String typeName = in.readString();
+        yield new ResponseWithException(
+            typeName != null || message != null
+                ? new RemoteCommandException(typeName, message)
+                : null);
+      }
+      default -> throw new IOException("Неизвестный тип сообщения: " + tag);
+    };
+  }
+
+  private void writeException(WireWriter out, Exception exception) {
+    out.writeByte(TYPED_EXCEPTION);
+    if (exception == null) {
+      out.writeString(null);
+      out.writeString(null);
+      return;
+    }
+    out.writeString(exception.getMessage());
+    out.writeString(
+        exception instanceof RemoteCommandException
+            ? ((RemoteCommandException) exception).getTypeName()
+            : exception.getClass().getName());
+  }
+
+  private void writeRequest(WireWriter out, Request request) {
+    if (request.getDependsOn() != 0) {
+      out.writeByte(DEPENDENT_REQUEST);
+      out.writeUnsignedVarLong(request.getClientId());
+      out.writeUnsignedVarLong(request.getSequence());
+      out.writeUnsignedVarLong(request.getDependsOn());
+    } else if (request.isIdentified()) {
+      out.writeByte(IDENTIFIED_REQUEST);
+      out.writeUnsignedVarLong(request.getClientId());
+      out.writeUnsignedVarLong(request.getSequence());
+    } else {
+      out.writeByte(REQUEST);
+    }
+    int commandType = COMMAND_TYPES.indexOf(request.getCommandName());
+    out.writeUnsignedVarLong(commandType + 1);
+    if (commandType < 0) {
+      out.writeString(request.getCommandName());
+    }
+
+    RequestBody body = request.getRequestBody();
+    if (body == null) {
+      out.writeByte(NO_BODY);
+      return;
+    }
+    out.writeByte(body instanceof RequestBodyWithTicket ? TICKET_BODY : PLAIN_BODY);
+    String[] args = body.getArgs() != null ? body.getArgs() : new String[0];
+    out.writeUnsignedVarLong(args.length);
+    for (String arg : args) {
+      out.writeString(arg);
+    }
+    if (body instanceof RequestBodyWithTicket) {
+      writeTicket(out, ((RequestBodyWithTicket) body).getTicket());
+    }
+  }
+
+  private Request readRequest(WireReader in, long clientId, long sequence, long dependsOn)
+      throws IOException {
+    int commandType = (int) in.readUnsignedVarLong() - 1;
+    String commandName;
+    if (commandType < 0) {
+      commandName = in.readString();
+    } else if (commandType < COMMAND_TYPES.size()) {
+      commandName = COMMAND_TYPES.get(commandType);
+    } else {
+      throw new IOException("Неизвестный номер команды: " + commandType);
+    }
+
+    int bodyKind = in.readByte();
+    if (bodyKind == NO_BODY) {
+      return new Request(commandName, null, clientId, sequence, dependsOn);
+    }
+    String[] args = new String[in.readLength()];
+    for (int i = 0; i < args.length; i++) {
+      args[i] = in.readString();
+    }
+    RequestBody body =
+        bodyKind == TICKET_BODY
+            ? new RequestBodyWithTicket(args, readTicket(in))
+            : new RequestBody(args);
+    return new Request(commandName, body, clientId, sequence, dependsOn);
+  }
+
+  private void writeBatchRequest(WireWriter out, BatchRequest batch) throws IOException {
+    out.writeByte(BATCH_REQUEST);
+    out.writeUnsignedVarLong(batch.getClientId());
+    out.writeUnsignedVarLong(batch.getSequence());
+    out.writeUnsignedVarLong(batch.getDependsOn());
+    out.writeUnsignedVarLong(batch.getRequests().size());
+    for (Request request : batch.getRequests()) {
+      if (request instanceof BatchRequest) {
+        throw new IOException("Вложенные пакеты команд не поддерживаются.");
+      }
+      writeRequest(out, request);
+    }
+  }
+
+  private BatchRequest readBatchRequest(WireReader in) throws IOException {
+    long clientId = in.readUnsignedVarLong();
+    long sequence = in.readUnsignedVarLong();
+    long dependsOn = in.readUnsignedVarLong();
+    int count = in.readLength();
+    List<Request> requests = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Object request = readMessage(in);
+      if (!(request instanceof Request) || request instanceof BatchRequest) {
+        throw new IOException("Пакет команд содержит недопустимое сообщение.");
+      }
+      requests.add((Request) request);
+    }
+    return new BatchRequest(requests, clientId, sequence, dependsOn);
+  }
+
+  private void writeBatchResponse(WireWriter out, BatchResponse batch) throws IOException {
+    out.writeByte(BATCH_RESPONSE);
+    out.writeString(batch.getMessage());
+    out.writeUnsignedVarLong(batch.getResponses().size());
+    for (Response response : batch.getResponses()) {
+      writeMessage(out, response);
+    }
+  }
+
+  private BatchResponse readBatchResponse(WireReader in) throws IOException {
+    String message = in.readString();
+    int count = in.readLength();
+    List<Response> responses = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Object response = readMessage(in);
+      if (!(response instanceof Response)) {
+        throw new IOException("Пакет ответов содержит недопустимое сообщение.");
+      }
+      responses.add((Response) response);
+    }
+    return new BatchResponse(message, responses);
+  }
+
+  private void writeResponse(WireWriter out, byte tag, Response response) {
+    out.writeByte(tag);
+    out.writeString(response.getMessage());
+    List<Ticket> tickets = response.getTickets();
+    out.writeUnsignedVarLong(tickets.size());
+    for (Ticket ticket : tickets) {
+      writeTicket(out, ticket);
+    }
+  }
+
+  private Response readResponse(WireReader in) throws IOException {
+    String message = in.readString();
+    int count = in.readLength();
+    List<Ticket> tickets = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      tickets.add(readTicket(in));
+    }
+    return new Response(message, tickets);
+  }
+
+  private void writeDeltaResponse(WireWriter out, DeltaResponse response) {
+    writeResponse(out, DELTA_RESPONSE, response);
+    out.writeUnsignedVarLong(response.getVersion());
+    out.writeByte(response.isReset() ? 1 : 0);
+    List<Integer> removedIds = response.getRemovedIds();
+    out.writeUnsignedVarLong(removedIds.size());
+    for (int id : removedIds) {
+      out.writeVarInt(id);
+    }
+  }
+
+  private DeltaResponse readDeltaResponse(WireReader in) throws IOException {
+    Response changes = readResponse(in);
+    long version = in.readUnsignedVarLong();
+    boolean reset = in.readByte() != 0;
+    int count = in.readLength();
+    List<Integer> removedIds = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      removedIds.add(in.readVarInt());
+    }
+    return new DeltaResponse(
+        changes.getMessage(), changes.getTickets(), version, reset, removedIds);
+  }
+
+  private void writeTicket(WireWriter out, Ticket ticket) {
+    if (ticket == null) {
+      out.writeByte(0);
+      return;
+    }
+    out.writeByte(1);
+
+    Coordinates coordinates = ticket.getCoordinates();
+    Person person = ticket.getPerson();
+    Location location = person != null ? person.getLocation() : null;
+    int presence = 0;
+    if (coordinates != null) presence |= HAS_COORDINATES;
+    if (coordinates != null && coordinates.getY() != null) presence |= HAS_COORDINATES_Y;
+    if (ticket.getCreationDate() != null) presence |= HAS_CREATION_DATE;
+    if (ticket.getType() != null) presence |= HAS_TYPE;
+    if (person != null) presence |= HAS_PERSON;
+    if (person != null && person.getHeight() != null) presence |= HAS_HEIGHT;
+    if (location != null) presence |= HAS_LOCATION;
+    if (location != null && location.getX() != null) presence |= HAS_LOCATION_X;
+    if (location != null && location.getY() != null) presence |= HAS_LOCATION_Y;
+    if (location != null && location.getZ() != null) presence |= HAS_LOCATION_Z;
+    out.writeUnsignedVarLong(presence);
+
+    out.writeVarInt(ticket.getId());
+    out.writeString(ticket.getName());
+    if (coordinates != null) {
+      out.writeFloat(coordinates.getX());
+      if (coordinates.getY() != null) out.writeVarLong(coordinates.getY());
+    }
+    if (ticket.getCreationDate() != null) out.writeVarLong(ticket.getCreationDate().toEpochDay());
+    out.writeFloat(ticket.getPrice());
+    if (ticket.getType() != null) out.writeByte(ticket.getType().ordinal());
+    if (person != null) {
+      if (person.getHeight() != null) out.writeFloat(person.getHeight());
+      out.writeVarInt(person.getWeight());
+      out.writeString(person.getPassportID());
+      if (location != null) {
+        if (location.getX() != null) out.writeVarLong(location.getX());
+        if (location.getY() != null) out.writeVarLong(location.getY());
+        if (location.getZ() != null) out.writeVarInt(location.getZ());
+      }
+    }
+  }
+
+  private Ticket readTicket(WireReader in) throws IOException {
+    if (in.readByte() == 0) {
+      return null;
+    }
+    long presence = in.readUnsignedVarLong();
+
+    Ticket ticket = new Ticket();
+    ticket.setId(in.readVarInt());
+    ticket.setName(in.readString());
+    if ((presence & HAS_COORDINATES) != 0) {
+      Coordinates coordinates = new Coordinates();
+      coordinates.setX(in.readFloat());
+      if ((presence & HAS_COORDINATES_Y) != 0) coordinates.setY(in.readVarLong());
+      ticket.setCoordinates(coordinates);
+    }
+    if ((presence & HAS_CREATION_DATE) != 0) {
+      ticket.setCreationDate(LocalDate.ofEpochDay(in.readVarLong()));
+    }
+    ticket.setPrice(in.readFloat());
+    if ((presence & HAS_TYPE) != 0) {
+      int ordinal = in.readByte();
+      if (ordinal < 0 || ordinal >= TICKET_TYPES.length) {
+        throw new IOException("Неизвестный тип билета: " + ordinal);
+      }
+      ticket.setType(TICKET_TYPES[ordinal]);
+    }
+    if ((presence & HAS_PERSON) != 0) {
+      Person person = new Person();
+      if ((presence & HAS_HEIGHT) != 0) person.setHeight(in.readFloat());
+      person.setWeight(in.readVarInt());
+      person.setPassportID(in.readString());
+      if ((presence & HAS_LOCATION) != 0) {
+        Location location = new Location();
+        if ((presence & HAS_LOCATION_X) != 0) location.setX(in.readVarLong());
+        if ((presence & HAS_LOCATION_Y) != 0) location.setY(in.readVarLong());
+        if ((presence & HAS_LOCATION_Z) != 0) location.setZ(in.readVarInt());
+        person.setLocation(location);
+      }
+      ticket.setPerson(person);
+    }
+    return ticket;
+  }
+}
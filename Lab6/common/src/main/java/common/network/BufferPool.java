@@ -0,0 +1,41 @@
+package common.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Пул прямых буферов фиксированного размера для приема и отправки датаграмм.
+ *
+ * <p>Очередь на основе массива не создает объектов при взятии и возврате буфера, поэтому в
+ * установившемся режиме путь приема и отправки не нагружает сборщик мусора. Если пул пуст,
+ * создается новый буфер; если пул полон, возвращаемый буфер отбрасывается.
+ */
+public final class BufferPool {
+  private final int bufferSize;
+  private final BlockingQueue<ByteBuffer> buffers;
+
+  public BufferPool(int bufferSize, int capacity) {
+    this.bufferSize = bufferSize;
+    this.buffers = new ArrayBlockingQueue<>(capacity);
+  }
+
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = buffers.poll();
+    return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  public void release(ByteBuffer buffer) {
+    if (buffer.capacity() == bufferSize && buffer.isDirect()) {
+      buffers.offer(buffer);
+    }
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public int available() {
+    return buffers.size();
+  }
+}
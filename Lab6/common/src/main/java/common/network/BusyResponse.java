@@ -0,0 +1,28 @@
+package common.network;
+
+import java.io.Serial;
+
+/**
+ * Отказ перегруженного сервера исполнять запрос.
+ *
+ * <p>Запрос не исполнялся и не сохранялся сервером, поэтому клиент может повторить его с тем же
+ * номером не раньше чем через {@link #getRetryAfterMillis()} миллисекунд.
+ */
+public class BusyResponse extends Response {
+  @Serial private static final long serialVersionUID = 5307712694386154249L;
+  private final long retryAfterMillis;
+
+  public BusyResponse(long retryAfterMillis) {
+    this(
+        "Сервер перегружен, повторите запрос через " + retryAfterMillis + " мс.", retryAfterMillis);
+  }
+
+  public BusyResponse(String message, long retryAfterMillis) {
+    super(message);
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+}
@@ -0,0 +1,35 @@
+package common.network;
+
+import common.data.Ticket;
+import java.io.Serial;
+import java.util.List;
+
+/**
+ * Уведомление подписчика об изменениях коллекции между версиями {@link #getFromVersion()} и {@link
+ * #getVersion()}. Отправляется сервером без запроса одной датаграммой с флагом {@link
+ * FrameHeader#PUSH}.
+ *
+ * <p>Если {@link #isReset()}, сервер не смог доставить изменения (подписчик не успевал их принимать
+ * или коллекция была очищена), и уведомление не содержит элементов: клиент должен запросить
+ * изменения командой {@code show_since} с последней известной ему версии.
+ */
+public class ChangeNotification extends DeltaResponse {
+  @Serial private static final long serialVersionUID = 6907129584017733520L;
+  private final long fromVersion;
+
+  public ChangeNotification(
+      String message,
+      List<Ticket> tickets,
+      long fromVersion,
+      long version,
+      boolean reset,
+      List<Integer> removedIds) {
+    super(message, tickets, version, reset, removedIds);
+    this.fromVersion = fromVersion;
+  }
+
+  /** Версия, с которой начинаются изменения уведомления. */
+  public long getFromVersion() {
+    return fromVersion;
+  }
+}
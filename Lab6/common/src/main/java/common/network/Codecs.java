@@ -0,0 +1,38 @@
+package common.network;
+
+/** Реестр поддерживаемых кодеков сообщений. */
+public final class Codecs {
+  public static final MessageCodec SERIALIZATION = new SerializationCodec();
+  public static final MessageCodec BINARY = new BinaryCodec();
+
+  private Codecs() {}
+
+  /**
+   * Возвращает кодек по идентификатору из заголовка кадра.
+   *
+   * @param id идентификатор кодека.
+   * @return Кодек или {@code null}, если кодек с таким идентификатором не поддерживается.
+   */
+  public static MessageCodec forId(int id) {
+    return switch (id) {
+      case SerializationCodec.ID -> SERIALIZATION;
+      case BinaryCodec.ID -> BINARY;
+      default -> null;
+    };
+  }
+
+  /**
+   * Возвращает кодек по имени, заданному при запуске.
+   *
+   * @param name имя кодека: {@code binary} или {@code java}.
+   * @return Кодек.
+   * @throws IllegalArgumentException если имя неизвестно.
+   */
+  public static MessageCodec forName(String name) {
+    return switch (name.toLowerCase()) {
+      case "binary" -> BINARY;
+      case "java" -> SERIALIZATION;
+      default -> throw new IllegalArgumentException("Неизвестный кодек: " + name);
+    };
+  }
+}
@@ -0,0 +1,40 @@
+package common.network;
+
+import common.data.Ticket;
+import java.io.Serial;
+import java.util.List;
+
+/**
+ * Изменения коллекции с версии, известной клиенту: добавленные и измененные элементы,
+ * идентификаторы удаленных элементов и новая версия коллекции.
+ *
+ * <p>Если {@link #isReset()}, ответ содержит коллекцию целиком, и клиент должен заменить ею свою
+ * копию.
+ */
+public class DeltaResponse extends Response {
+  @Serial private static final long serialVersionUID = -3160470533357839121L;
+  private final long version;
+  private final boolean reset;
+  private final List<Integer> removedIds;
+
+  public DeltaResponse(
+      String message, List<Ticket> tickets, long version, boolean reset, List<Integer> removedIds) {
+    super(message, tickets);
+    this.version = version;
+    this.reset = reset;
+    this.removedIds = removedIds;
+  }
+
+  /** Версия коллекции, которую нужно передать в следующем запросе изменений. */
+  public long getVersion() {
+    return version;
+  }
+
+  public boolean isReset() {
+    return reset;
+  }
+
+  public List<Integer> getRemovedIds() {
+    return removedIds;
+  }
+}
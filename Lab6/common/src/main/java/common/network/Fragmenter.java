@@ -0,0 +1,106 @@
+package common.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Разбивает закодированные сообщения на кадры размером не больше одной датаграммы. */
+public final class Fragmenter {
+  private Fragmenter() {}
+
+  public static int fragmentCount(int payloadLength) {
+    return Math.max(
+        1, (payloadLength + FrameHeader.MAX_PAYLOAD_SIZE - 1) / FrameHeader.MAX_PAYLOAD_SIZE);
+  }
+
+  /**
+   * Разбивает сообщение на пронумерованные кадры.
+   *
+   * @param messageId идентификатор сообщения.
+   * @param flags флаги кадра, в том числе идентификатор кодека.
+   * @param payload закодированное сообщение от позиции до границы буфера.
+   * @return Список кадров, готовых к отправке.
+   */
+  public static List<ByteBuffer> fragment(long messageId, byte flags, ByteBuffer payload) {
+    int count = fragmentCount(payload.remaining());
+    List<ByteBuffer> frames = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      frames.add(fragment(messageId, flags, payload, i));
+    }
+    return frames;
+  }
+
+  /**
+   * Формирует один кадр сообщения, например для повторной отправки потерянного фрагмента.
+   *
+   * @param messageId идентификатор сообщения.
+   * @param flags флаги кадра, в том числе идентификатор кодека.
+   * @param payload закодированное сообщение от позиции до границы буфера.
+   * @param index номер фрагмента.
+   * @return Кадр, готовый к отправке.
+   */
+  public static ByteBuffer fragment(long messageId, byte flags, ByteBuffer payload, int index) {
+    ByteBuffer frame = ByteBuffer.allocate(FrameHeader.MAX_DATAGRAM_SIZE);
+    return writeFragment(frame, messageId, flags, payload, index);
+  }
+
+  /**
+   * Записывает один кадр сообщения в заданный буфер, не создавая новых объектов.
+   *
+   * @param frame буфер размером не меньше {@link FrameHeader#MAX_DATAGRAM_SIZE}, например из {@link
+   *     BufferPool}.
+   * @param messageId идентификатор сообщения.
+   * @param flags флаги кадра, в том числе идентификатор кодека.
+   * @param payload закодированное сообщение от позиции до границы буфера; не изменяется.
+   * @param index номер фрагмента.
+   * @return Тот же буфер, готовый к отправке.
+   */
+  public static ByteBuffer writeFragment(
+      ByteBuffer frame, long messageId, byte flags, ByteBuffer payload, int index) {
+    int count = fragmentCount(payload.remaining());
+    int offset = payload.position() + index * FrameHeader.MAX_PAYLOAD_SIZE;
+    int length = Math.min(FrameHeader.MAX_PAYLOAD_SIZE, payload.limit() - offset);
+
+    frame.clear();
+    FrameHeader.write(frame, FrameHeader.DATA, flags, messageId, index, count);
+    frame.put(frame.position(), payload, offset, length);
+    frame.position(frame.position() + length);
+    return frame.flip();
+  }
+
+  /**
+   * Формирует кадр с запросом повторной отправки недостающих фрагментов.
+   *
+   * <p>В один кадр помещается ограниченное число номеров, остальные будут запрошены в следующем
+   * раунде.
+   *
+   * @param messageId идентификатор сообщения.
+   * @param missing номера недостающих фрагментов.
+   * @return Кадр, готовый к отправке.
+   */
+  public static ByteBuffer nack(long messageId, int[] missing) {
+    int count = Math.min(missing.length, FrameHeader.MAX_PAYLOAD_SIZE / Integer.BYTES);
+    ByteBuffer frame = ByteBuffer.allocate(FrameHeader.HEADER_SIZE + count * Integer.BYTES);
+    new FrameHeader(FrameHeader.NACK, (byte) 0, messageId, 0, count).write(frame);
+    for (int i = 0; i < count; i++) {
+      frame.putInt(missing[i]);
+    }
+    return frame.flip();
+  }
+
+  /**
+   * Читает номера фрагментов из кадра {@link FrameHeader#NACK}.
+   *
+   * @param header заголовок кадра.
+   * @param frame кадр, позиция которого указывает на полезную нагрузку.
+   * @return Номера запрошенных фрагментов.
+   */
+  public static int[] readNack(FrameHeader header, ByteBuffer frame) {
+    int count = Math.min(header.getFragmentCount(), frame.remaining() / Integer.BYTES);
+    int[] indices = new int[count];
+    for (int i = 0; i < count; i++) {
+      indices[i] = frame.getInt();
+    }
+    return indices;
+  }
+}
@@ -0,0 +1,131 @@
+package common.network;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Заголовок кадра прикладного уровня, которым предваряется каждая датаграмма.
+ *
+ * <p>Закодированное сообщение разбивается на фрагменты не больше {@link #MAX_DATAGRAM_SIZE} байт,
+ * каждый из которых несет идентификатор сообщения, номер фрагмента и общее число фрагментов. Кадр
+ * {@link #NACK} отправляется получателем, чтобы запросить повторно только недостающие фрагменты
+ * сообщения.
+ *
+ * <p>Кадры {@link #DATA} несут во флагах идентификатор кодека, которым закодировано сообщение.
+ * Старшие биты флагов: {@link #COMPRESSED} отмечает сжатое сообщение, а {@link #ACCEPTS_COMPRESSED}
+ * в кадрах запроса сообщает, что клиент умеет принимать сжатые ответы. Флаг {@link #PUSH} отмечает
+ * уведомления, которые сервер отправляет по своей инициативе.
+ */
+public final class FrameHeader {
+  /** Максимальный размер датаграммы, при котором не происходит IP-фрагментации. */
+  public static final int MAX_DATAGRAM_SIZE = 1400;
+
+  public static final int HEADER_SIZE = 18;
+  public static final int MAX_PAYLOAD_SIZE = MAX_DATAGRAM_SIZE - HEADER_SIZE;
+
+  public static final byte DATA = 1;
+  public static final byte NACK = 2;
+
+  /** Младшие биты флагов кадра хранят идентификатор кодека ({@link MessageCodec#getId()}). */
+  public static final int CODEC_MASK = 0x0F;
+
+  /** Сообщение сжато {@link PayloadCompressor}. */
+  public static final int COMPRESSED = 0x10;
+
+  /** Отправитель запроса умеет распаковывать сжатые ответы. */
+  public static final int ACCEPTS_COMPRESSED = 0x20;
+
+  /**
+   * Уведомление, отправленное сервером без запроса. Идентификаторы уведомлений не связаны с
+   * идентификаторами запросов.
+   */
+  public static final int PUSH = 0x40;
+
+  private final byte type;
+  private final byte flags;
+  private final long messageId;
+  private final int fragmentIndex;
+  private final int fragmentCount;
+
+  public FrameHeader(byte type, byte flags, long messageId, int fragmentIndex, int fragmentCount) {
+    this.type = type;
+    this.flags = flags;
+    this.messageId = messageId;
+    this.fragmentIndex = fragmentIndex;
+    this.fragmentCount = fragmentCount;
+  }
+
+  /**
+   * Читает заголовок из начала кадра. После вызова позиция буфера указывает на полезную нагрузку.
+   *
+   * @param frame принятая датаграмма.
+   * @return Заголовок кадра.
+   * @throws IllegalArgumentException если датаграмма не является корректным кадром.
+   */
+  public static FrameHeader read(ByteBuffer frame) {
+    try {
+      FrameHeader header =
+          new FrameHeader(
+              frame.get(), frame.get(), frame.getLong(), frame.getInt(), frame.getInt());
+      if ((header.type != DATA && header.type != NACK)
+          || header.fragmentCount <= 0
+          || header.fragmentIndex < 0
+          || (header.type == DATA && header.fragmentIndex >= header.fragmentCount)) {
+        throw new IllegalArgumentException("Некорректный заголовок кадра.");
+      }
+      return header;
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Датаграмма короче заголовка кадра.");
+    }
+  }
+
+  public void write(ByteBuffer frame) {
+    write(frame, type, flags, messageId, fragmentIndex, fragmentCount);
+  }
+
+  public static void write(
+      ByteBuffer frame,
+      byte type,
+      byte flags,
+      long messageId,
+      int fragmentIndex,
+      int fragmentCount) {
+    frame.put(type).put(flags).putLong(messageId).putInt(fragmentIndex).putInt(fragmentCount);
+  }
+
+  public byte getType() {
+    return type;
+  }
+
+  public byte getFlags() {
+    return flags;
+  }
+
+  public int getCodecId() {
+    return flags & CODEC_MASK;
+  }
+
+  public boolean isCompressed() {
+    return (flags & COMPRESSED) != 0;
+  }
+
+  public boolean acceptsCompressed() {
+    return (flags & ACCEPTS_COMPRESSED) != 0;
+  }
+
+  public boolean isPush() {
+    return (flags & PUSH) != 0;
+  }
+
+  public long getMessageId() {
+    return messageId;
+  }
+
+  public int getFragmentIndex() {
+    return fragmentIndex;
+  }
+
+  public int getFragmentCount() {
+    return fragmentCount;
+  }
+}
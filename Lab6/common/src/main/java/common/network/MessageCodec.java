@@ -0,0 +1,26 @@
+package common.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Способ кодирования сообщений ({@link Request}, {@link Response}) для передачи по сети.
+ *
+ * <p>Идентификатор кодека передается в заголовке каждого кадра, поэтому получатель всегда знает,
+ * как декодировать сообщение, и отвечает тем же кодеком.
+ */
+public interface MessageCodec {
+  byte getId();
+
+  /**
+   * Кодирует сообщение.
+   *
+   * @param message сообщение.
+   * @return Буфер с закодированным сообщением. Кодек может переиспользовать буфер, поэтому данные
+   *     нужно отправить или скопировать до следующего вызова в том же потоке.
+   * @throws IOException если сообщение не может быть закодировано.
+   */
+  ByteBuffer encode(Object message) throws IOException;
+
+  Object decode(ByteBuffer payload) throws IOException, ClassNotFoundException;
+}
@@ -8,9 +8,18 @@ import java.nio.ByteBuffer;
 public class ObjectDecoder {
   public static Object decodeObject(ByteBuffer receiveBuffer)
       throws IOException, ClassNotFoundException {
-    receiveBuffer.flip();
-    ByteArrayInputStream bais =
-        new ByteArrayInputStream(receiveBuffer.array(), 0, receiveBuffer.capacity());
+    ByteArrayInputStream bais;
+    if (receiveBuffer.hasArray()) {
+      bais =
+          new ByteArrayInputStream(
+              receiveBuffer.array(),
+              receiveBuffer.arrayOffset() + receiveBuffer.position(),
+              receiveBuffer.remaining());
+    } else {
+      byte[] data = new byte[receiveBuffer.remaining()];
+      receiveBuffer.duplicate().get(data);
+      bais = new ByteArrayInputStream(data);
+    }
     ObjectInputStream ois = new ObjectInputStream(bais);
     return ois.readObject();
   }
@@ -0,0 +1,26 @@
+package common.network;
+
+import common.data.Ticket;
+import java.io.Serial;
+import java.util.List;
+
+/**
+ * Страница постраничного просмотра элементов.
+ *
+ * <p>Если элементы еще остались, ответ содержит непрозрачный токен продолжения: его нужно передать
+ * в следующем запросе той же команды, чтобы получить следующую страницу.
+ */
+public class PageResponse extends Response {
+  @Serial private static final long serialVersionUID = 1840442368710945633L;
+  private final String nextToken;
+
+  public PageResponse(String message, List<Ticket> tickets, String nextToken) {
+    super(message, tickets);
+    this.nextToken = nextToken;
+  }
+
+  /** Токен следующей страницы или {@code null}, если страница последняя. */
+  public String getNextToken() {
+    return nextToken;
+  }
+}
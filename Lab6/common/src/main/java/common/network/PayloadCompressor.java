@@ -0,0 +1,129 @@
+package common.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Сжатие закодированных сообщений алгоритмом Deflate перед нарезкой на кадры.
+ *
+ * <p>Списки билетов хорошо сжимаются: повторяются названия типов, похожие имена и пустые поля.
+ * Сжатое сообщение начинается с четырех байт исходного размера, за которыми следует поток Deflate
+ * без заголовка и контрольной суммы (целостность проверяет UDP). Кадры такого сообщения помечаются
+ * флагом {@link FrameHeader#COMPRESSED}.
+ *
+ * <p>Сжимаются только сообщения не меньше порога. Порог подстраивается по средней степени сжатия:
+ * сообщение сжимается, если ожидаемая экономия не меньше {@code MIN_SAVED_BYTES}, то есть порог
+ * равен {@code MIN_SAVED_BYTES / (1 - ratio)}. Чтобы оценка не устаревала, когда порог вырос,
+ * каждое {@code PROBE_INTERVAL}-е сообщение меньше порога все равно сжимается на пробу.
+ *
+ * <p>Класс потокобезопасен. {@link Deflater} и выходной буфер берутся из {@link WorkspacePool} и
+ * закрепляются за потоком до конца задачи; не поместившиеся в пул кодировщики сразу освобождаются
+ * через {@link Deflater#end()}, а не дожидаются сборки мусора. Параметры подстройки разделяются
+ * потоками без блокировок: потерянное при гонке обновление лишь немного замедляет подстройку.
+ */
+public final class PayloadCompressor {
+  private static final int MIN_SAVED_BYTES = 128;
+  private static final int MIN_THRESHOLD = 256;
+  private static final int MAX_THRESHOLD = 64 * 1024;
+  private static final int PROBE_INTERVAL = 64;
+  private static final double INITIAL_RATIO = 0.5;
+  private static final int RATIO_SMOOTHING = 8;
+  private static final int INITIAL_CAPACITY = 4096;
+  private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+  private final int level;
+  private final WorkspacePool<Workspace> workspaces;
+  private final AtomicInteger skipped = new AtomicInteger();
+  private volatile double ratio = INITIAL_RATIO;
+  private volatile int threshold = thresholdFor(INITIAL_RATIO);
+
+  public PayloadCompressor() {
+    this(Deflater.BEST_SPEED);
+  }
+
+  /**
+   * @param level уровень сжатия {@link Deflater}.
+   */
+  public PayloadCompressor(int level) {
+    this.level = level;
+    this.workspaces =
+        new WorkspacePool<>(
+            WorkspacePool.defaultCapacity(), Workspace::new, workspace -> workspace.deflater.end());
+  }
+
+  /**
+   * Сжимает сообщение, если это выгодно. Позиция исходного буфера не меняется.
+   *
+   * <p>Сжатое сообщение записывается в буфер потока, который переиспользуется следующим вызовом в
+   * том же потоке и возвращается в пул вызовом {@link WorkspacePool#releaseAll()}, поэтому
+   * сохранять его без копирования нельзя.
+   *
+   * @param payload закодированное сообщение.
+   * @return Сжатое сообщение или тот же {@code payload}, если сообщение меньше порога или не
+   *     сжимается.
+   */
+  public ByteBuffer compress(ByteBuffer payload) {
+    int size = payload.remaining();
+    if (size < MIN_THRESHOLD
+        || (size < threshold && skipped.incrementAndGet() % PROBE_INTERVAL != 0)) {
+      return payload;
+    }
+
+    Workspace workspace = workspaces.acquire();
+    ByteBuffer output = workspace.output(size);
+    // Сжатие без выигрыша бесполезно, поэтому результат ограничен исходным размером.
+    output.putInt(size).limit(size);
+    Deflater deflater = workspace.deflater;
+    deflater.reset();
+    deflater.setInput(payload.duplicate());
+    deflater.finish();
+    while (!deflater.finished() && output.hasRemaining()) {
+      deflater.deflate(output);
+    }
+
+    boolean smaller = deflater.finished() && output.position() < size;
+    record(smaller ? (double) output.position() / size : 1);
+    return smaller ? output.flip() : payload;
+  }
+
+  /** Средняя степень сжатия: отношение сжатого размера к исходному. */
+  public double getRatio() {
+    return ratio;
+  }
+
+  /** Текущий порог сжатия в байтах. */
+  public int getThreshold() {
+    return threshold;
+  }
+
+  private void record(double sample) {
+    double updated = ratio + (sample - ratio) / RATIO_SMOOTHING;
+    ratio = updated;
+    threshold = thresholdFor(updated);
+  }
+
+  private static int thresholdFor(double ratio) {
+    double saved = 1 - ratio;
+    if (saved * MAX_THRESHOLD <= MIN_SAVED_BYTES) {
+      return MAX_THRESHOLD;
+    }
+    return Math.max(MIN_THRESHOLD, (int) (MIN_SAVED_BYTES / saved));
+  }
+
+  /** Кодировщик и выходной буфер, закрепленные за одним потоком на время задачи. */
+  private final class Workspace {
+    private final Deflater deflater = new Deflater(level, true);
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    private ByteBuffer output(int size) {
+      int required = Integer.BYTES + size;
+      // Буфер под редкое большое сообщение не удерживается дольше, чем нужен.
+      if (buffer.capacity() < required
+          || buffer.capacity() > Math.max(required, MAX_RETAINED_CAPACITY)) {
+        buffer = ByteBuffer.allocate(Math.max(INITIAL_CAPACITY, required));
+      }
+      return buffer.clear();
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package common.network;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Распаковка сообщений, сжатых {@link PayloadCompressor}.
+ *
+ * <p>Распакованное сообщение записывается в буфер, который переиспользуется следующим вызовом.
+ * Класс не потокобезопасен: у каждого получателя свой экземпляр.
+ */
+public final class PayloadDecompressor {
+  /** Максимальный размер сообщения, которое может быть собрано из кадров. */
+  public static final int MAX_MESSAGE_SIZE =
+      Reassembler.MAX_FRAGMENTS * FrameHeader.MAX_PAYLOAD_SIZE;
+
+  private static final int INITIAL_CAPACITY = 4096;
+  private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+  private final Inflater inflater = new Inflater(true);
+  private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+  /**
+   * Распаковывает сообщение.
+   *
+   * @param payload собранное из кадров сжатое сообщение.
+   * @return Исходное сообщение.
+   * @throws IOException если сообщение повреждено.
+   */
+  public ByteBuffer decompress(ByteBuffer payload) throws IOException {
+    int size;
+    try {
+      size = payload.getInt();
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Сжатое сообщение короче заголовка.");
+    }
+    if (size < 0 || size > MAX_MESSAGE_SIZE) {
+      throw new IOException("Некорректный размер сжатого сообщения: " + size);
+    }
+
+    // Лишний байт места позволяет дойти до конца потока и заметить данные сверх заголовка.
+    int required = size + 1;
+    if (buffer.capacity() < required
+        || buffer.capacity() > Math.max(required, MAX_RETAINED_CAPACITY)) {
+      buffer = ByteBuffer.allocate(Math.max(INITIAL_CAPACITY, required));
+    }
+    buffer.clear().limit(required);
+    inflater.reset();
+    inflater.setInput(payload);
+    try {
+      while (!inflater.finished() && buffer.hasRemaining()) {
+        if (inflater.inflate(buffer) == 0 && inflater.needsInput()) {
+          break;
+        }
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Сжатое сообщение повреждено: " + e.getMessage());
+    }
+    if (!inflater.finished() || buffer.position() != size) {
+      throw new IOException("Размер распакованного сообщения не совпадает с заголовком.");
+    }
+    return buffer.flip();
+  }
+}
@@ -0,0 +1,268 @@
+package common.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Собирает сообщения из фрагментов, пришедших в произвольном порядке.
+ *
+ * <p>Хранит ограниченное число незавершенных сообщений: при переполнении отбрасывается самое старое
+ * из них. Память под сообщение выделяется по мере прихода фрагментов, а не по заявленному в
+ * заголовке числу фрагментов, поэтому кадр с большим числом фрагментов не резервирует память
+ * заранее. Объем полученных байтов незавершенных сообщений ограничен для сборщика и, если задан
+ * общий {@link Budget}, для всех сборщиков вместе; чтобы принять фрагмент сверх ограничения,
+ * отбрасываются самые старые незавершенные сообщения этого сборщика.
+ *
+ * <p>Класс не потокобезопасен, кроме {@link Budget}.
+ */
+public class Reassembler {
+  /** Ограничение на количество фрагментов одного сообщения (около 90 МБ). */
+  public static final int MAX_FRAGMENTS = 1 << 16;
+
+  private final int maxPartialMessages;
+  private final int maxFragments;
+  private final long maxPartialBytes;
+  private final Budget budget;
+  private final Map<Long, PartialMessage> partialMessages = new LinkedHashMap<>();
+  private long partialBytes;
+
+  /**
+   * Сборщик без ограничения объема, с ограничением числа фрагментов {@link #MAX_FRAGMENTS}.
+   *
+   * @param maxPartialMessages максимальное количество незавершенных сообщений.
+   */
+  public Reassembler(int maxPartialMessages) {
+    this(maxPartialMessages, MAX_FRAGMENTS, Long.MAX_VALUE, null);
+  }
+
+  /**
+   * @param maxPartialMessages максимальное количество незавершенных сообщений.
+   * @param maxFragments максимальное количество фрагментов одного сообщения.
+   * @param maxPartialBytes максимальный объем полученных фрагментов незавершенных сообщений.
+   * @param budget общее ограничение объема для нескольких сборщиков или {@code null}.
+   */
+  public Reassembler(
+      int maxPartialMessages, int maxFragments, long maxPartialBytes, Budget budget) {
+    this.maxPartialMessages = maxPartialMessages;
+    this.maxFragments = Math.min(maxFragments, MAX_FRAGMENTS);
+    this.maxPartialBytes = maxPartialBytes;
+    this.budget = budget;
+  }
+
+  /**
+   * Принимает очередной фрагмент.
+   *
+   * @param header заголовок кадра {@link FrameHeader#DATA}.
+   * @param frame кадр, позиция которого указывает на полезную нагрузку.
+   * @return Собранное сообщение, если получен последний недостающий фрагмент, иначе {@code null}.
+   *     Сообщение из одного фрагмента возвращается без копирования — это сам кадр, позиция которого
+   *     указывает на полезную нагрузку.
+   * @throws IllegalArgumentException если фрагмент не согласуется с уже полученными.
+   */
+  public ByteBuffer accept(FrameHeader header, ByteBuffer frame) {
+    if (header.getFragmentCount() == 1) {
+      return frame;
+    }
+    if (header.getFragmentCount() > maxFragments) {
+      throw new IllegalArgumentException("Сообщение состоит из слишком большого числа фрагментов.");
+    }
+
+    long messageId = header.getMessageId();
+    PartialMessage message = partialMessages.get(messageId);
+    if (message == null) {
+      if (partialMessages.size() >= maxPartialMessages) {
+        discardEldest(messageId);
+      }
+      message = new PartialMessage(header.getFragmentCount());
+      partialMessages.put(messageId, message);
+    } else if (message.fragmentCount != header.getFragmentCount()) {
+      throw new IllegalArgumentException("Число фрагментов сообщения не совпадает.");
+    }
+
+    int index = header.getFragmentIndex();
+    if (message.has(index)) {
+      return null;
+    }
+    message.validate(index, frame.remaining());
+    int size = frame.remaining();
+    while (!reserve(size)) {
+      if (!discardEldest(messageId)) {
+        discard(messageId);
+        throw new IllegalArgumentException("Превышен объем незавершенных сообщений.");
+      }
+    }
+    message.put(index, frame);
+    if (!message.isComplete()) {
+      return null;
+    }
+    discard(messageId);
+    return message.toBuffer();
+  }
+
+  private boolean reserve(int size) {
+    if (partialBytes + size > maxPartialBytes) {
+      return false;
+    }
+    if (budget != null && !budget.tryReserve(size)) {
+      return false;
+    }
+    partialBytes += size;
+    return true;
+  }
+
+  /** Отбрасывает самое старое незавершенное сообщение, кроме заданного. */
+  private boolean discardEldest(long keep) {
+    Iterator<Map.Entry<Long, PartialMessage>> iterator = partialMessages.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, PartialMessage> eldest = iterator.next();
+      if (eldest.getKey() != keep) {
+        iterator.remove();
+        release(eldest.getValue());
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void release(PartialMessage message) {
+    partialBytes -= message.receivedBytes;
+    if (budget != null) {
+      budget.release(message.receivedBytes);
+    }
+  }
+
+  /**
+   * Проверяет, получена ли часть фрагментов сообщения.
+   *
+   * @param messageId идентификатор сообщения.
+   * @return {@code true}, если сообщение собрано частично.
+   */
+  public boolean isPartial(long messageId) {
+    return partialMessages.containsKey(messageId);
+  }
+
+  /**
+   * Возвращает номера фрагментов, которые еще не были получены.
+   *
+   * @param messageId идентификатор сообщения.
+   * @return Номера недостающих фрагментов в порядке возрастания.
+   */
+  public int[] missingFragments(long messageId) {
+    PartialMessage message = partialMessages.get(messageId);
+    if (message == null) {
+      return new int[0];
+    }
+    BitSet missing = (BitSet) message.received.clone();
+    missing.flip(0, message.fragmentCount);
+    return missing.stream().toArray();
+  }
+
+  public void discard(long messageId) {
+    PartialMessage message = partialMessages.remove(messageId);
+    if (message != null) {
+      release(message);
+    }
+  }
+
+  /** Отбрасывает все незавершенные сообщения и возвращает их объем в общее ограничение. */
+  public void clear() {
+    for (PartialMessage message : partialMessages.values()) {
+      release(message);
+    }
+    partialMessages.clear();
+  }
+
+  /** Общее ограничение объема незавершенных сообщений для нескольких сборщиков. Потокобезопасно. */
+  public static final class Budget {
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * @param maxBytes максимальный общий объем полученных фрагментов незавершенных сообщений.
+     */
+    public Budget(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    private boolean tryReserve(long bytes) {
+      long used;
+      do {
+        used = usedBytes.get();
+        if (used + bytes > maxBytes) {
+          return false;
+        }
+      } while (!usedBytes.compareAndSet(used, used + bytes));
+      return true;
+    }
+
+    private void release(long bytes) {
+      usedBytes.addAndGet(-bytes);
+    }
+
+    /** Объем, занятый сейчас всеми сборщиками. */
+    public long getUsedBytes() {
+      return usedBytes.get();
+    }
+  }
+
+  private static final class PartialMessage {
+    private final int fragmentCount;
+    private final BitSet received;
+    private byte[][] fragments;
+    private int receivedCount;
+    private long receivedBytes;
+
+    private PartialMessage(int fragmentCount) {
+      this.fragmentCount = fragmentCount;
+      this.received = new BitSet();
+      this.fragments = new byte[Math.min(fragmentCount, 16)][];
+    }
+
+    private boolean has(int index) {
+      return received.get(index);
+    }
+
+    private void validate(int index, int size) {
+      boolean isLast = index == fragmentCount - 1;
+      if (index < 0
+          || index >= fragmentCount
+          || size > FrameHeader.MAX_PAYLOAD_SIZE
+          || (!isLast && size != FrameHeader.MAX_PAYLOAD_SIZE)) {
+        throw new IllegalArgumentException("Некорректный размер фрагмента.");
+      }
+    }
+
+    private void put(int index, ByteBuffer frame) {
+      if (index >= fragments.length) {
+        fragments =
+            Arrays.copyOf(
+                fragments, Math.min(fragmentCount, Math.max(index + 1, fragments.length * 2)));
+      }
+      byte[] fragment = new byte[frame.remaining()];
+      frame.get(fragment);
+      fragments[index] = fragment;
+      received.set(index);
+      receivedCount++;
+      receivedBytes += fragment.length;
+    }
+
+    private boolean isComplete() {
+      return receivedCount == fragmentCount;
+    }
+
+    private ByteBuffer toBuffer() {
+      byte[] data = new byte[(int) receivedBytes];
+      int offset = 0;
+      for (byte[] fragment : fragments) {
+        System.arraycopy(fragment, 0, data, offset, fragment.length);
+        offset += fragment.length;
+      }
+      return ByteBuffer.wrap(data);
+    }
+  }
+}
@@ -3,15 +3,64 @@ package common.network;
 import java.io.Serial;
 import java.io.Serializable;
 
+/**
+ * Запрос клиента на исполнение команды.
+ *
+ * <p>Запрос может нести идентификатор клиента и возрастающий номер запроса. Повтор запроса с той же
+ * парой не исполняется сервером повторно, а получает сохраненный ответ. Нулевой идентификатор
+ * клиента означает, что запрос не идентифицирован.
+ *
+ * <p>Запрос может также указывать номер предыдущего запроса того же клиента, после которого он
+ * должен быть исполнен. Так клиент, отправляющий несколько запросов без ожидания ответов, сохраняет
+ * порядок изменений коллекции.
+ */
 public class Request implements Serializable {
   @Serial private static final long serialVersionUID = 98795723595203572L;
 
   private final String commandName;
   private final RequestBody requestBody;
+  private final long clientId;
+  private final long sequence;
+  private final long dependsOn;
 
   public Request(String commandName, RequestBody requestBody) {
+    this(commandName, requestBody, 0, 0);
+  }
+
+  public Request(String commandName, RequestBody requestBody, long clientId, long sequence) {
+    this(commandName, requestBody, clientId, sequence, 0);
+  }
+
+  public Request(
+      String commandName, RequestBody requestBody, long clientId, long sequence, long dependsOn) {
     this.commandName = commandName;
     this.requestBody = requestBody;
+    this.clientId = clientId;
+    this.sequence = sequence;
+    this.dependsOn = dependsOn;
+  }
+
+  /**
+   * Возвращает копию запроса с заданными идентификатором клиента и номером.
+   *
+   * @param clientId идентификатор клиента.
+   * @param sequence номер запроса у этого клиента.
+   * @return Идентифицированный запрос.
+   */
+  public Request withIdentity(long clientId, long sequence) {
+    return withIdentity(clientId, sequence, 0);
+  }
+
+  /**
+   * Возвращает копию запроса с заданными идентификатором клиента, номером и зависимостью.
+   *
+   * @param clientId идентификатор клиента.
+   * @param sequence номер запроса у этого клиента.
+   * @param dependsOn номер запроса, который должен быть исполнен раньше, или {@code 0}.
+   * @return Идентифицированный запрос.
+   */
+  public Request withIdentity(long clientId, long sequence, long dependsOn) {
+    return new Request(commandName, requestBody, clientId, sequence, dependsOn);
   }
 
   public String getCommandName() {
@@ -21,4 +70,20 @@ public class Request implements Serializable {
   public RequestBody getRequestBody() {
     return requestBody;
   }
+
+  public long getClientId() {
+    return clientId;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public long getDependsOn() {
+    return dependsOn;
+  }
+
+  public boolean isIdentified() {
+    return clientId != 0;
+  }
 }
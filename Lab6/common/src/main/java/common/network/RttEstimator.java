@@ -0,0 +1,128 @@
+package common.network;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Оценка времени приема-передачи и таймаута повторной отправки по схеме TCP (RFC 6298).
+ *
+ * <p>Сглаженное время {@code SRTT} и его разброс {@code RTTVAR} обновляются по каждому замеру, а
+ * таймаут равен {@code SRTT + 4 * RTTVAR} в заданных границах. При повторных попытках таймаут
+ * удваивается и увеличивается на случайную добавку, чтобы клиенты, потерявшие ответы одновременно,
+ * не повторяли запросы синхронно. Замеры по повторно отправленным запросам не учитываются (алгоритм
+ * Карна), так как неизвестно, на какую попытку пришел ответ.
+ *
+ * <p>Последние замеры хранятся в кольцевом буфере для расчета процентилей.
+ */
+public class RttEstimator {
+  private static final long INITIAL_RTO_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long GRANULARITY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final double JITTER = 0.25;
+  private static final int MAX_BACKOFF_SHIFT = 16;
+  private static final int SAMPLE_CAPACITY = 4096;
+
+  private final long minRtoNanos;
+  private final long maxRtoNanos;
+  private final long[] samples = new long[SAMPLE_CAPACITY];
+  private long sampleCount;
+  private long srtt;
+  private long rttvar;
+  private long rto;
+  private long retransmissions;
+
+  /**
+   * @param minRtoMillis нижняя граница таймаута в миллисекундах.
+   * @param maxRtoMillis верхняя граница таймаута в миллисекундах.
+   */
+  public RttEstimator(long minRtoMillis, long maxRtoMillis) {
+    this.minRtoNanos = TimeUnit.MILLISECONDS.toNanos(minRtoMillis);
+    this.maxRtoNanos = TimeUnit.MILLISECONDS.toNanos(maxRtoMillis);
+    this.rto = clamp(INITIAL_RTO_NANOS);
+  }
+
+  /**
+   * Учитывает замер времени приема-передачи.
+   *
+   * @param rttNanos время от отправки запроса до получения первого кадра ответа.
+   */
+  public synchronized void addSample(long rttNanos) {
+    if (sampleCount == 0) {
+      srtt = rttNanos;
+      rttvar = rttNanos / 2;
+    } else {
+      rttvar += (Math.abs(srtt - rttNanos) - rttvar) / 4;
+      srtt += (rttNanos - srtt) / 8;
+    }
+    rto = clamp(srtt + Math.max(GRANULARITY_NANOS, 4 * rttvar));
+    samples[(int) (sampleCount % SAMPLE_CAPACITY)] = rttNanos;
+    sampleCount++;
+  }
+
+  /**
+   * Возвращает таймаут ожидания ответа для заданной попытки с экспоненциальной отсрочкой и
+   * случайной добавкой.
+   *
+   * @param attempt номер попытки, начиная с 1.
+   * @return Таймаут в миллисекундах, не меньше 1.
+   */
+  public synchronized int getTimeoutMillis(int attempt) {
+    long backoff = rto << Math.min(attempt - 1, MAX_BACKOFF_SHIFT);
+    long timeout = Math.min(backoff, maxRtoNanos);
+    timeout += (long) (timeout * JITTER * ThreadLocalRandom.current().nextDouble());
+    return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeout));
+  }
+
+  /** Текущий таймаут без отсрочки и добавки в миллисекундах. */
+  public synchronized int getRtoMillis() {
+    return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(rto));
+  }
+
+  public synchronized void onRetransmission() {
+    retransmissions++;
+  }
+
+  /**
+   * Возвращает процентиль времени приема-передачи по последним замерам.
+   *
+   * @param percentile процентиль от 0 до 100.
+   * @return Время в наносекундах или {@code -1}, если замеров еще нет.
+   */
+  public synchronized long getPercentile(double percentile) {
+    int count = (int) Math.min(sampleCount, SAMPLE_CAPACITY);
+    if (count == 0) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))];
+  }
+
+  /** Возвращает сводку по замерам для вывода пользователю. */
+  public synchronized String getSummary() {
+    if (sampleCount == 0) {
+      return "Замеров времени ответа еще нет.";
+    }
+    return String.format(
+        "замеров: %d, p50: %.2f мс, p90: %.2f мс, p99: %.2f мс, max: %.2f мс, "
+            + "SRTT: %.2f мс, RTTVAR: %.2f мс, RTO: %d мс, повторных отправок: %d",
+        sampleCount,
+        toMillis(getPercentile(50)),
+        toMillis(getPercentile(90)),
+        toMillis(getPercentile(99)),
+        toMillis(getPercentile(100)),
+        toMillis(srtt),
+        toMillis(rttvar),
+        getRtoMillis(),
+        retransmissions);
+  }
+
+  private long clamp(long nanos) {
+    return Math.max(minRtoNanos, Math.min(maxRtoNanos, nanos));
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+}
@@ -0,0 +1,26 @@
+package common.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Кодек на основе стандартной сериализации Java. Поддерживается всеми версиями клиента и сервера.
+ */
+public final class SerializationCodec implements MessageCodec {
+  public static final byte ID = 0;
+
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+  @Override
+  public ByteBuffer encode(Object message) throws IOException {
+    return ObjectEncoder.encodeObject(message);
+  }
+
+  @Override
+  public Object decode(ByteBuffer payload) throws IOException, ClassNotFoundException {
+    return ObjectDecoder.decodeObject(payload);
+  }
+}
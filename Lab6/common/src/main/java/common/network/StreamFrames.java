@@ -0,0 +1,52 @@
+package common.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Кадры потокового транспорта (TCP): четыре байта длины сообщения, байт флагов в том же формате,
+ * что и во {@link FrameHeader}, и само сообщение.
+ *
+ * <p>Поток сам обеспечивает доставку, порядок и управление скоростью, поэтому сообщение передается
+ * одним кадром без нарезки, номеров и переотправки.
+ */
+public final class StreamFrames {
+  public static final int HEADER_SIZE = Integer.BYTES + 1;
+  public static final int MAX_MESSAGE_SIZE = PayloadDecompressor.MAX_MESSAGE_SIZE;
+
+  private StreamFrames() {}
+
+  /**
+   * Записывает сообщение с заголовком в новый буфер. Позиция исходного буфера не меняется.
+   *
+   * @param flags флаги сообщения.
+   * @param payload сообщение.
+   * @return Кадр, готовый к отправке.
+   */
+  public static ByteBuffer frame(byte flags, ByteBuffer payload) {
+    int length = payload.remaining();
+    ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + length);
+    frame.putInt(length).put(flags).put(payload.duplicate());
+    return frame.flip();
+  }
+
+  /**
+   * Читает длину сообщения из заголовка кадра, не меняя позицию буфера.
+   *
+   * @param buffer буфер, начинающийся с заголовка кадра.
+   * @param offset смещение заголовка в буфере.
+   * @return Длина сообщения.
+   * @throws IllegalArgumentException если длина некорректна.
+   */
+  public static int readLength(ByteBuffer buffer, int offset) {
+    int length = buffer.getInt(offset);
+    if (length < 0 || length > MAX_MESSAGE_SIZE) {
+      throw new IllegalArgumentException("Некорректная длина сообщения: " + length);
+    }
+    return length;
+  }
+
+  /** Читает флаги сообщения из заголовка кадра, не меняя позицию буфера. */
+  public static byte readFlags(ByteBuffer buffer, int offset) {
+    return buffer.get(offset + Integer.BYTES);
+  }
+}
@@ -0,0 +1,92 @@
+package common.network;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** Чтение примитивов двоичного формата {@link BinaryCodec}, записанных {@link WireWriter}. */
+public final class WireReader {
+  private final ByteBuffer buffer;
+
+  public WireReader(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  public int readByte() throws IOException {
+    try {
+      return buffer.get();
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Неожиданный конец сообщения.");
+    }
+  }
+
+  public float readFloat() throws IOException {
+    try {
+      return buffer.getFloat();
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Неожиданный конец сообщения.");
+    }
+  }
+
+  public long readUnsignedVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Некорректное число в формате varint.");
+  }
+
+  public long readVarLong() throws IOException {
+    long raw = readUnsignedVarLong();
+    return (raw >>> 1) ^ -(raw & 1);
+  }
+
+  public int readVarInt() throws IOException {
+    return (int) readVarLong();
+  }
+
+  /**
+   * Читает неотрицательный размер, не превышающий оставшуюся длину сообщения.
+   *
+   * @return Размер коллекции или строки.
+   * @throws IOException если размер некорректен.
+   */
+  public int readLength() throws IOException {
+    long length = readUnsignedVarLong();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IOException("Некорректная длина в сообщении.");
+    }
+    return (int) length;
+  }
+
+  public String readString() throws IOException {
+    long header = readUnsignedVarLong();
+    if (header == 0) {
+      return null;
+    }
+    long length = header - 1;
+    if (length > buffer.remaining()) {
+      throw new IOException("Некорректная длина строки в сообщении.");
+    }
+    String value;
+    if (buffer.hasArray()) {
+      value =
+          new String(
+              buffer.array(),
+              buffer.arrayOffset() + buffer.position(),
+              (int) length,
+              StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + (int) length);
+    } else {
+      byte[] bytes = new byte[(int) length];
+      buffer.get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return value;
+  }
+}
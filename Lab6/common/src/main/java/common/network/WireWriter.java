@@ -0,0 +1,144 @@
+package common.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Расширяемый буфер для записи примитивов двоичного формата {@link BinaryCodec}.
+ *
+ * <p>Целые числа записываются в формате varint с zigzag-кодированием, строки — как длина плюс один
+ * (ноль означает {@code null}) и байты UTF-8.
+ */
+public final class WireWriter {
+  private final int initialCapacity;
+  private final int maxRetainedCapacity;
+  private ByteBuffer buffer;
+
+  public WireWriter(int initialCapacity) {
+    this(initialCapacity, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param initialCapacity начальный размер буфера.
+   * @param maxRetainedCapacity размер, больше которого буфер не сохраняется между сообщениями при
+   *     {@link #reset()}.
+   */
+  public WireWriter(int initialCapacity, int maxRetainedCapacity) {
+    this.initialCapacity = initialCapacity;
+    this.maxRetainedCapacity = maxRetainedCapacity;
+    this.buffer = ByteBuffer.allocate(initialCapacity);
+  }
+
+  /** Подготавливает писатель к записи следующего сообщения, переиспользуя буфер. */
+  public void reset() {
+    if (buffer.capacity() > maxRetainedCapacity) {
+      buffer = ByteBuffer.allocate(initialCapacity);
+    } else {
+      buffer.clear();
+    }
+  }
+
+  private void ensureCapacity(int bytes) {
+    if (buffer.remaining() < bytes) {
+      int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+      ByteBuffer grown = ByteBuffer.allocate(capacity);
+      grown.put(buffer.flip());
+      buffer = grown;
+    }
+  }
+
+  public WireWriter writeByte(int value) {
+    ensureCapacity(1);
+    buffer.put((byte) value);
+    return this;
+  }
+
+  public WireWriter writeFloat(float value) {
+    ensureCapacity(Float.BYTES);
+    buffer.putFloat(value);
+    return this;
+  }
+
+  public WireWriter writeUnsignedVarLong(long value) {
+    ensureCapacity(10);
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+    return this;
+  }
+
+  public WireWriter writeVarLong(long value) {
+    return writeUnsignedVarLong((value << 1) ^ (value >> 63));
+  }
+
+  public WireWriter writeVarInt(int value) {
+    return writeVarLong(value);
+  }
+
+  public WireWriter writeString(String value) {
+    if (value == null) {
+      return writeUnsignedVarLong(0);
+    }
+    // Строка кодируется в UTF-8 прямо в буфер, без промежуточного массива байтов.
+    int length = utf8Length(value);
+    writeUnsignedVarLong(length + 1L);
+    ensureCapacity(length);
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer.put((byte) c);
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer
+            .put((byte) (0xF0 | (codePoint >> 18)))
+            .put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+            .put((byte) (0x80 | ((codePoint >> 6) & 0x3F)))
+            .put((byte) (0x80 | (codePoint & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        buffer.put((byte) '?');
+      } else {
+        buffer
+            .put((byte) (0xE0 | (c >> 12)))
+            .put((byte) (0x80 | ((c >> 6) & 0x3F)))
+            .put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+    return this;
+  }
+
+  private static int utf8Length(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length += 1;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Возвращает записанные данные.
+   *
+   * @return Буфер, готовый к чтению, от начала до последнего записанного байта.
+   */
+  public ByteBuffer toBuffer() {
+    return buffer.duplicate().flip();
+  }
+}
@@ -0,0 +1,94 @@
+package common.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный пул рабочих объектов кодирования (писателей, кодировщиков и их буферов).
+ *
+ * <p>Объект выдается текущему потоку при первом обращении и остается за ним до вызова {@link
+ * #releaseAll()}, поэтому результат, записанный в буфер объекта, действителен до конца задачи.
+ * Долгоживущие потоки могут не возвращать объекты вовсе; исполнители, создающие поток на каждую
+ * задачу (виртуальные потоки), вызывают {@link #releaseAll()} после задачи, и следующая задача
+ * получает тот же объект из пула, а не создает новый.
+ *
+ * <p>Пул хранит не больше {@code capacity} свободных объектов; лишние при возврате освобождаются
+ * функцией {@code dispose}.
+ *
+ * @param <T> тип рабочего объекта.
+ */
+public final class WorkspacePool<T> {
+  /** Пулы, из которых текущий поток взял объекты. */
+  private static final ThreadLocal<List<WorkspacePool<?>>> HELD = new ThreadLocal<>();
+
+  private final Supplier<T> factory;
+  private final Consumer<T> dispose;
+  private final ArrayBlockingQueue<T> idle;
+  private final ThreadLocal<T> borrowed = new ThreadLocal<>();
+
+  /**
+   * @param capacity максимальное количество свободных объектов в пуле.
+   * @param factory создает новый объект, если свободных нет.
+   * @param dispose освобождает объект, не поместившийся в пул.
+   */
+  public WorkspacePool(int capacity, Supplier<T> factory, Consumer<T> dispose) {
+    this.idle = new ArrayBlockingQueue<>(capacity);
+    this.factory = factory;
+    this.dispose = dispose;
+  }
+
+  /** Размер пула по умолчанию: по два объекта на процессор. */
+  public static int defaultCapacity() {
+    return 2 * Runtime.getRuntime().availableProcessors();
+  }
+
+  /** Возвращает объект текущего потока, при необходимости беря его из пула. */
+  public T acquire() {
+    T workspace = borrowed.get();
+    if (workspace == null) {
+      workspace = idle.poll();
+      if (workspace == null) {
+        workspace = factory.get();
+      }
+      borrowed.set(workspace);
+      List<WorkspacePool<?>> held = HELD.get();
+      if (held == null) {
+        held = new ArrayList<>(2);
+        HELD.set(held);
+      }
+      held.add(this);
+    }
+    return workspace;
+  }
+
+  /**
+   * Возвращает в пулы все объекты, взятые текущим потоком. После вызова результаты, записанные в их
+   * буферы, использовать нельзя.
+   */
+  public static void releaseAll() {
+    List<WorkspacePool<?>> held = HELD.get();
+    if (held == null) {
+      return;
+    }
+    for (int i = 0; i < held.size(); i++) {
+      held.get(i).release();
+    }
+    held.clear();
+  }
+
+  private void release() {
+    T workspace = borrowed.get();
+    borrowed.remove();
+    if (workspace != null && !idle.offer(workspace)) {
+      dispose.accept(workspace);
+    }
+  }
+
+  /** Количество свободных объектов в пуле. */
+  public int getIdleCount() {
+    return idle.size();
+  }
+}
@@ -0,0 +1,110 @@
+package common.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек в микросекундах с относительной погрешностью не больше 1/64.
+ *
+ * <p>Значения меньше {@code 128} хранятся точно, а каждый следующий интервал {@code [64 * 2^b, 128
+ * * 2^b)} делится на 64 равные ячейки, как в HdrHistogram. Память постоянна и не зависит от числа
+ * замеров, поэтому процентили считаются по всем замерам, а не по выборке.
+ *
+ * <p>Запись потокобезопасна и не блокирует.
+ */
+public final class LatencyHistogram {
+  private static final int EXACT_VALUES = 128;
+  private static final int SUB_BUCKETS = 64;
+  private static final int SUB_BUCKET_SHIFT = 6;
+  private static final int MAX_BUCKET = 30;
+  private static final long MAX_VALUE = ((long) EXACT_VALUES << MAX_BUCKET) - 1;
+
+  private final AtomicLongArray counts =
+      new AtomicLongArray(EXACT_VALUES + MAX_BUCKET * SUB_BUCKETS);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Записывает замер.
+   *
+   * @param micros задержка в микросекундах; значения вне диапазона приводятся к его границам.
+   */
+  public void record(long micros) {
+    long value = Math.max(0, Math.min(MAX_VALUE, micros));
+    counts.incrementAndGet(indexOf(value));
+    total.incrementAndGet();
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Записывает замер и исправляет его на coordinated omission для запросов, которые должны были
+   * отправляться каждые {@code expectedIntervalMicros}: задержка одного запроса означает, что
+   * следующие запросы не были отправлены вовремя, поэтому добавляются замеры {@code micros -
+   * expectedIntervalMicros}, {@code micros - 2 * expectedIntervalMicros} и так далее, пока они
+   * больше интервала.
+   *
+   * @param micros задержка в микросекундах.
+   * @param expectedIntervalMicros ожидаемый интервал между запросами или {@code 0}, если он не
+   *     задан и исправление не нужно.
+   */
+  public void recordCorrected(long micros, long expectedIntervalMicros) {
+    record(micros);
+    if (expectedIntervalMicros <= 0) {
+      return;
+    }
+    for (long missed = micros - expectedIntervalMicros;
+        missed >= expectedIntervalMicros;
+        missed -= expectedIntervalMicros) {
+      record(missed);
+    }
+  }
+
+  public long getCount() {
+    return total.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Возвращает процентиль задержки.
+   *
+   * @param percentile процентиль от 0 до 100.
+   * @return Наибольшее значение ячейки, в которую попадает процентиль, в микросекундах, или {@code
+   *     0}, если замеров нет.
+   */
+  public long getPercentile(double percentile) {
+    long count = total.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValueAt(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  private static int indexOf(long value) {
+    if (value < EXACT_VALUES) {
+      return (int) value;
+    }
+    int bucket = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_SHIFT;
+    int subBucket = (int) (value >>> bucket) - SUB_BUCKETS;
+    return EXACT_VALUES + (bucket - 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long highestValueAt(int index) {
+    if (index < EXACT_VALUES) {
+      return index;
+    }
+    int bucket = (index - EXACT_VALUES) / SUB_BUCKETS + 1;
+    int subBucket = (index - EXACT_VALUES) % SUB_BUCKETS;
+    return ((long) (subBucket + SUB_BUCKETS + 1) << bucket) - 1;
+  }
+}
@@ -0,0 +1,59 @@
+package common.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Аргументы запуска приложения: позиционные аргументы и необязательные параметры вида {@code
+ * --key=value} (или {@code --flag}, что равносильно {@code --flag=true}).
+ */
+public final class LaunchOptions {
+  private final List<String> positional = new ArrayList<>();
+  private final Map<String, String> options = new HashMap<>();
+
+  private LaunchOptions() {}
+
+  public static LaunchOptions parse(String[] args) {
+    LaunchOptions launchOptions = new LaunchOptions();
+    for (String arg : args) {
+      if (arg.startsWith("--")) {
+        int separator = arg.indexOf('=');
+        if (separator < 0) {
+          launchOptions.options.put(arg.substring(2), "true");
+        } else {
+          launchOptions.options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+      } else {
+        launchOptions.positional.add(arg);
+      }
+    }
+    return launchOptions;
+  }
+
+  public List<String> getPositional() {
+    return positional;
+  }
+
+  public boolean has(String key) {
+    return options.containsKey(key);
+  }
+
+  public String get(String key, String defaultValue) {
+    return options.getOrDefault(key, defaultValue);
+  }
+
+  /**
+   * Возвращает целочисленное значение параметра.
+   *
+   * @param key имя параметра.
+   * @param defaultValue значение, если параметр не задан.
+   * @return Значение параметра.
+   * @throws NumberFormatException если значение не является целым числом.
+   */
+  public int getInt(String key, int defaultValue) {
+    String value = options.get(key);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+}
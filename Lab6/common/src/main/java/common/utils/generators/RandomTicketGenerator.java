@@ -0,0 +1,83 @@
+package common.utils.generators;
+
+import common.data.Coordinates;
+import common.data.Location;
+import common.data.Person;
+import common.data.Ticket;
+import common.data.TicketType;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Класс, отвечающий за генерацию объекта класса {@link Ticket} со случайными значениями полей без
+ * участия пользователя.
+ *
+ * <p>Значения удовлетворяют тем же ограничениям, что проверяют {@link TicketGenerator}, {@link
+ * CoordinatesGenerator}, {@link PersonGenerator} и {@link LocationGenerator}. Идентификатор билета
+ * равен нулю: его назначает сервер.
+ *
+ * @see Ticket
+ * @see TicketGenerator
+ * @author Alvas
+ * @since 2.0
+ */
+public class RandomTicketGenerator extends ObjectGenerator<Ticket> {
+  private static final String[] NAMES = {"Концерт", "Спектакль", "Матч", "Выставка", "Поезд"};
+  private static final TicketType[] TYPES = TicketType.values();
+  private static final long MAX_COORDINATE_Y = 332;
+  private static final int MAX_PASSPORT_LENGTH = 28;
+
+  private final Random random;
+
+  /**
+   * Конструктор генератора билетов.
+   *
+   * @param random источник случайных чисел; с одинаковым зерном генерирует одинаковые билеты.
+   * @author Alvas
+   * @since 2.0
+   */
+  public RandomTicketGenerator(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Генерирует объект класса {@link Ticket} со случайными значениями полей.
+   *
+   * @return Объект класса {@link Ticket}.
+   * @see Ticket
+   * @author Alvas
+   * @since 2.0
+   */
+  @Override
+  public Ticket create() {
+    return new Ticket(
+        0,
+        NAMES[random.nextInt(NAMES.length)] + " " + random.nextInt(10_000),
+        new Coordinates(
+            random.nextFloat() * 1000, (long) random.nextInt(1000) - 1000 + MAX_COORDINATE_Y),
+        LocalDate.now(),
+        1 + random.nextInt(10_000) / 100f,
+        TYPES[random.nextInt(TYPES.length)],
+        random.nextBoolean() ? createPerson() : null);
+  }
+
+  /**
+   * Генерирует объект класса {@link Person} со случайными значениями полей.
+   *
+   * @return Объект класса {@link Person}.
+   * @see Person
+   * @author Alvas
+   * @since 2.0
+   */
+  private Person createPerson() {
+    String passport = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+    return new Person(
+        100 + random.nextFloat() * 100,
+        40 + random.nextInt(80),
+        passport.substring(0, Math.min(passport.length(), MAX_PASSPORT_LENGTH)),
+        random.nextBoolean()
+            ? new Location(
+                (long) random.nextInt(1000), (long) random.nextInt(1000), random.nextInt(1000))
+            : null);
+  }
+}
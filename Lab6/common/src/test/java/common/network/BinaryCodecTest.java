@@ -0,0 +1,353 @@
+package common.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import common.data.Coordinates;
+import common.data.Location;
+import common.data.Person;
+import common.data.Ticket;
+import common.data.TicketType;
+import common.exceptions.CommandExecuteException;
+import common.exceptions.RemoteCommandException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Проверки {@link BinaryCodec}: каждое сообщение после кодирования и декодирования совпадает с
+ * исходным по всем полям, в том числе при отсутствии необязательных полей билета.
+ */
+class BinaryCodecTest {
+  private final BinaryCodec codec = new BinaryCodec();
+
+  @Test
+  void requestsRoundTrip() throws IOException {
+    assertRequestEquals(new Request("show", null), roundTrip(new Request("show", null)));
+    assertRequestEquals(
+        new Request("info", new RequestBody(new String[0]), 7, 42),
+        roundTrip(new Request("info", new RequestBody(new String[0]), 7, 42)));
+    Request dependent =
+        new Request("remove_by_id", new RequestBody(new String[] {"5", null, "ё"}), 1, 2, 1);
+    assertRequestEquals(dependent, roundTrip(dependent));
+
+    // Команда не из таблицы номеров передается именем.
+    Request unknown = new Request("no_such_command", new RequestBody(new String[] {"x"}));
+    assertRequestEquals(unknown, roundTrip(unknown));
+
+    Request add = new Request("add", new RequestBodyWithTicket(new String[0], fullTicket()), 3, 4);
+    assertRequestEquals(add, roundTrip(add));
+    Request withoutTicket =
+        new Request("update", new RequestBodyWithTicket(new String[] {"1"}, null));
+    assertRequestEquals(withoutTicket, roundTrip(withoutTicket));
+  }
+
+  @Test
+  void batchRequestRoundTrips() throws IOException {
+    BatchRequest batch =
+        new BatchRequest(
+            List.of(
+                new Request("clear", null),
+                new Request("add", new RequestBodyWithTicket(new String[0], sparseTicket())),
+                new Request("show_since", new RequestBody(new String[] {"10"}))),
+            9,
+            10,
+            8);
+    assertRequestEquals(batch, roundTrip(batch));
+
+    BatchRequest nested = new BatchRequest(List.of(batch));
+    assertThrows(IOException.class, () -> codec.encode(nested));
+  }
+
+  @Test
+  void everyPresenceCombinationRoundTrips() throws IOException {
+    // Каждое необязательное поле отсутствует по отдельности и вместе с остальными; маска
+    // присутствия не должна сдвигать чтение следующих полей.
+    List<Ticket> tickets = new ArrayList<>();
+    for (int mask = 0; mask < 1 << 9; mask++) {
+      tickets.add(ticket(mask));
+    }
+    Ticket withoutLocation = fullTicket();
+    withoutLocation.getPerson().setLocation(null);
+    tickets.add(withoutLocation);
+    tickets.add(sparseTicket());
+    Response response = new Response("все варианты", tickets);
+    assertResponseEquals(response, roundTrip(response));
+  }
+
+  @Test
+  void extremeValuesRoundTrip() throws IOException {
+    Ticket ticket =
+        new Ticket(
+            Integer.MIN_VALUE,
+            "",
+            new Coordinates(-Float.MAX_VALUE, Long.MIN_VALUE),
+            LocalDate.of(-999, 1, 1),
+            Float.NaN,
+            TicketType.values()[TicketType.values().length - 1],
+            new Person(
+                Float.NEGATIVE_INFINITY,
+                Integer.MAX_VALUE,
+                "",
+                new Location(Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE)));
+    Response response = new Response(null, List.of(ticket));
+    assertResponseEquals(response, roundTrip(response));
+  }
+
+  @Test
+  void responsesRoundTrip() throws IOException {
+    List<Ticket> tickets = List.of(fullTicket(), sparseTicket());
+
+    Response plain = new Response("готово");
+    assertResponseEquals(plain, roundTrip(plain));
+
+    PageResponse page = new PageResponse("страница", tickets, "token:1");
+    assertResponseEquals(page, roundTrip(page));
+    PageResponse last = new PageResponse("последняя", List.of(), null);
+    assertResponseEquals(last, roundTrip(last));
+
+    DeltaResponse delta = new DeltaResponse("изменения", tickets, 17, false, List.of(3, -4, 0));
+    assertResponseEquals(delta, roundTrip(delta));
+    DeltaResponse reset = new DeltaResponse("сброс", tickets, Long.MAX_VALUE, true, List.of());
+    assertResponseEquals(reset, roundTrip(reset));
+
+    ChangeNotification notification =
+        new ChangeNotification("уведомление", tickets, 5, 9, false, List.of(1, 2));
+    assertResponseEquals(notification, roundTrip(notification));
+    ChangeNotification dropped =
+        new ChangeNotification("пропуск", List.of(), 5, 0, true, List.of());
+    assertResponseEquals(dropped, roundTrip(dropped));
+
+    BusyResponse busy = new BusyResponse(250);
+    assertResponseEquals(busy, roundTrip(busy));
+  }
+
+  @Test
+  void batchResponseKeepsNestedTypes() throws IOException {
+    BatchResponse batch =
+        new BatchResponse(
+            List.of(
+                new Response("первый", List.of(fullTicket())),
+                new PageResponse("страница", List.of(sparseTicket()), "next"),
+                new ChangeNotification("уведомление", List.of(), 1, 2, false, List.of(7)),
+                new DeltaResponse("изменения", List.of(), 3, true, List.of()),
+                new BusyResponse("занят", 10),
+                new ResponseWithException(new CommandExecuteException("ошибка"))));
+    assertResponseEquals(batch, roundTrip(batch));
+  }
+
+  @Test
+  void exceptionKeepsMessageAndTypeName() throws IOException {
+    Exception exception = new CommandExecuteException("нет элемента");
+    Response decoded = roundTrip(new ResponseWithException(exception));
+    assertInstanceOf(ResponseWithException.class, decoded);
+    Exception remote = ((ResponseWithException) decoded).getException();
+    assertInstanceOf(RemoteCommandException.class, remote);
+    assertEquals(exception.getMessage(), remote.getMessage());
+    assertEquals(
+        CommandExecuteException.class.getName(), ((RemoteCommandException) remote).getTypeName());
+
+    // Повторное кодирование передает имя исходного класса, а не RemoteCommandException.
+    Exception again = ((ResponseWithException) roundTrip(decoded)).getException();
+    assertEquals(
+        CommandExecuteException.class.getName(), ((RemoteCommandException) again).getTypeName());
+
+    Exception withoutMessage =
+        ((ResponseWithException) roundTrip(new ResponseWithException(new IllegalStateException())))
+            .getException();
+    assertNull(withoutMessage.getMessage());
+    assertEquals(
+        IllegalStateException.class.getName(),
+        ((RemoteCommandException) withoutMessage).getTypeName());
+
+    assertNull(((ResponseWithException) roundTrip(new ResponseWithException(null))).getException());
+  }
+
+  @Test
+  void decodesExceptionWithoutTypeName() throws IOException {
+    // Прежний формат: тег 3 и сообщение без имени класса.
+    byte[] message = "старая ошибка".getBytes(StandardCharsets.UTF_8);
+    ByteBuffer payload = ByteBuffer.allocate(2 + message.length);
+    payload.put((byte) 3).put((byte) (message.length + 1)).put(message).flip();
+    Exception exception = ((ResponseWithException) codec.decode(payload)).getException();
+    assertEquals("старая ошибка", exception.getMessage());
+    assertNull(((RemoteCommandException) exception).getTypeName());
+  }
+
+  @Test
+  void rejectsCorruptedPayloads() {
+    assertThrows(IOException.class, () -> codec.decode(ByteBuffer.wrap(new byte[] {99})));
+    assertThrows(IOException.class, () -> codec.decode(ByteBuffer.wrap(new byte[0])));
+    assertThrows(IOException.class, () -> codec.encode(new Object()));
+  }
+
+  private Response roundTrip(Response response) throws IOException {
+    return (Response) codec.decode(codec.encode(response));
+  }
+
+  private Request roundTrip(Request request) throws IOException {
+    return (Request) codec.decode(codec.encode(request));
+  }
+
+  /**
+   * Билет, в котором бит {@code i} маски означает отсутствие i-го необязательного поля: координат,
+   * {@code coordinates.y}, даты, типа, владельца, роста и трех координат местоположения. Бит 9
+   * (местоположение целиком) проверяется отдельно.
+   */
+  private static Ticket ticket(int mask) {
+    Ticket ticket = fullTicket();
+    ticket.setId(mask);
+    if ((mask & 1 << 1) != 0) ticket.getCoordinates().setY(null);
+    if ((mask & 1) != 0) ticket.setCoordinates(null);
+    if ((mask & 1 << 2) != 0) ticket.setCreationDate(null);
+    if ((mask & 1 << 3) != 0) ticket.setType(null);
+    Person person = ticket.getPerson();
+    if ((mask & 1 << 5) != 0) person.setHeight(null);
+    if ((mask & 1 << 6) != 0) person.getLocation().setX(null);
+    if ((mask & 1 << 7) != 0) person.getLocation().setY(null);
+    if ((mask & 1 << 8) != 0) person.getLocation().setZ(null);
+    if ((mask & 1 << 4) != 0) ticket.setPerson(null);
+    return ticket;
+  }
+
+  private static Ticket fullTicket() {
+    return new Ticket(
+        12,
+        "билет",
+        new Coordinates(1.5f, -2L),
+        LocalDate.of(2024, 2, 29),
+        99.5f,
+        TicketType.values()[0],
+        new Person(180.5f, 70, "AB123", new Location(-1L, 2L, -3)));
+  }
+
+  /** Билет без необязательных полей: без координат, даты, типа, имени и владельца. */
+  private static Ticket sparseTicket() {
+    Ticket ticket = new Ticket();
+    ticket.setId(-1);
+    return ticket;
+  }
+
+  private static void assertRequestEquals(Request expected, Request actual) {
+    assertSame(expected.getClass(), actual.getClass());
+    assertEquals(expected.getCommandName(), actual.getCommandName());
+    assertEquals(expected.getClientId(), actual.getClientId());
+    assertEquals(expected.getSequence(), actual.getSequence());
+    assertEquals(expected.getDependsOn(), actual.getDependsOn());
+    if (expected instanceof BatchRequest) {
+      List<Request> expectedRequests = ((BatchRequest) expected).getRequests();
+      List<Request> actualRequests = ((BatchRequest) actual).getRequests();
+      assertEquals(expectedRequests.size(), actualRequests.size());
+      for (int i = 0; i < expectedRequests.size(); i++) {
+        assertRequestEquals(expectedRequests.get(i), actualRequests.get(i));
+      }
+      return;
+    }
+    RequestBody expectedBody = expected.getRequestBody();
+    RequestBody actualBody = actual.getRequestBody();
+    if (expectedBody == null) {
+      assertNull(actualBody);
+      return;
+    }
+    assertSame(expectedBody.getClass(), actualBody.getClass());
+    assertArrayEquals(expectedBody.getArgs(), actualBody.getArgs());
+    if (expectedBody instanceof RequestBodyWithTicket) {
+      assertTicketEquals(
+          ((RequestBodyWithTicket) expectedBody).getTicket(),
+          ((RequestBodyWithTicket) actualBody).getTicket());
+    }
+  }
+
+  private static void assertResponseEquals(Response expected, Response actual) {
+    assertSame(expected.getClass(), actual.getClass());
+    if (expected instanceof ResponseWithException) {
+      Exception expectedException = ((ResponseWithException) expected).getException();
+      Exception actualException = ((ResponseWithException) actual).getException();
+      assertEquals(expectedException.getMessage(), actualException.getMessage());
+      assertEquals(
+          expectedException.getClass().getName(),
+          ((RemoteCommandException) actualException).getTypeName());
+      return;
+    }
+    assertEquals(expected.getMessage(), actual.getMessage());
+    assertEquals(expected.getTickets().size(), actual.getTickets().size());
+    for (int i = 0; i < expected.getTickets().size(); i++) {
+      assertTicketEquals(expected.getTickets().get(i), actual.getTickets().get(i));
+    }
+    if (expected instanceof PageResponse) {
+      assertEquals(
+          ((PageResponse) expected).getNextToken(), ((PageResponse) actual).getNextToken());
+    }
+    if (expected instanceof DeltaResponse) {
+      DeltaResponse expectedDelta = (DeltaResponse) expected;
+      DeltaResponse actualDelta = (DeltaResponse) actual;
+      assertEquals(expectedDelta.getVersion(), actualDelta.getVersion());
+      assertEquals(expectedDelta.isReset(), actualDelta.isReset());
+      assertEquals(expectedDelta.getRemovedIds(), actualDelta.getRemovedIds());
+    }
+    if (expected instanceof ChangeNotification) {
+      assertEquals(
+          ((ChangeNotification) expected).getFromVersion(),
+          ((ChangeNotification) actual).getFromVersion());
+    }
+    if (expected instanceof BusyResponse) {
+      assertEquals(
+          ((BusyResponse) expected).getRetryAfterMillis(),
+          ((BusyResponse) actual).getRetryAfterMillis());
+    }
+    if (expected instanceof BatchResponse) {
+      List<Response> expectedResponses = ((BatchResponse) expected).getResponses();
+      List<Response> actualResponses = ((BatchResponse) actual).getResponses();
+      assertEquals(expectedResponses.size(), actualResponses.size());
+      for (int i = 0; i < expectedResponses.size(); i++) {
+        assertResponseEquals(expectedResponses.get(i), actualResponses.get(i));
+      }
+    }
+  }
+
+  private static void assertTicketEquals(Ticket expected, Ticket actual) {
+    if (expected == null) {
+      assertNull(actual);
+      return;
+    }
+    assertEquals(expected.getId(), actual.getId());
+    assertEquals(expected.getName(), actual.getName());
+    assertEquals(expected.getCreationDate(), actual.getCreationDate());
+    assertEquals(expected.getPrice(), actual.getPrice());
+    assertEquals(expected.getType(), actual.getType());
+
+    Coordinates expectedCoordinates = expected.getCoordinates();
+    if (expectedCoordinates == null) {
+      assertNull(actual.getCoordinates());
+    } else {
+      assertEquals(expectedCoordinates.getX(), actual.getCoordinates().getX());
+      assertEquals(expectedCoordinates.getY(), actual.getCoordinates().getY());
+    }
+
+    Person expectedPerson = expected.getPerson();
+    if (expectedPerson == null) {
+      assertNull(actual.getPerson());
+      return;
+    }
+    Person actualPerson = actual.getPerson();
+    assertEquals(expectedPerson.getHeight(), actualPerson.getHeight());
+    assertEquals(expectedPerson.getWeight(), actualPerson.getWeight());
+    assertEquals(expectedPerson.getPassportID(), actualPerson.getPassportID());
+    Location expectedLocation = expectedPerson.getLocation();
+    if (expectedLocation == null) {
+      assertNull(actualPerson.getLocation());
+    } else {
+      assertEquals(expectedLocation.getX(), actualPerson.getLocation().getX());
+      assertEquals(expectedLocation.getY(), actualPerson.getLocation().getY());
+      assertEquals(expectedLocation.getZ(), actualPerson.getLocation().getZ());
+    }
+  }
+}
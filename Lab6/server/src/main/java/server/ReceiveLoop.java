@@ -0,0 +1,155 @@
+package server;
+
+import common.managers.CommandManager;
+import common.network.BufferPool;
+import common.network.FrameHeader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import server.pipeline.ProcessorOptions;
+import server.pipeline.RequestProcessor;
+import server.pipeline.ResponseSender;
+
+/**
+ * Цикл приема датаграмм одного канала: свой {@link Selector}, пул буферов, стадия исполнения и
+ * стадия отправки.
+ *
+ * <p>Несколько циклов могут слушать один порт, если каналы открыты с {@code SO_REUSEPORT}: ядро
+ * распределяет клиентов между каналами по хешу адресов, поэтому все датаграммы одного клиента
+ * попадают в один цикл, а его очередь запросов, отложенные запросы и кэш ответов остаются
+ * согласованными. Коллекция, блокировка исполнения и допуск запросов общие для всех циклов.
+ */
+public class ReceiveLoop implements Runnable, AutoCloseable {
+  private static final Logger logger = LogManager.getLogger();
+  private static final int SELECTOR_TIMEOUT = 100;
+  private static final int BUFFER_POOL_CAPACITY = 4096;
+
+  private final Selector selector;
+  private final DatagramChannel channel;
+  private final BufferPool bufferPool;
+  private final ResponseSender sender;
+  private final RequestProcessor processor;
+  private ByteBuffer receiveBuffer;
+  private volatile boolean isRunning = true;
+
+  private ReceiveLoop(
+      Selector selector,
+      DatagramChannel channel,
+      CommandManager commandManager,
+      ProcessorOptions options) {
+    this.selector = selector;
+    this.channel = channel;
+    this.bufferPool = new BufferPool(FrameHeader.MAX_DATAGRAM_SIZE, BUFFER_POOL_CAPACITY);
+    this.sender = new ResponseSender(channel, bufferPool);
+    this.processor = new RequestProcessor(commandManager, sender, bufferPool, options);
+    this.receiveBuffer = bufferPool.acquire();
+    sender.start();
+  }
+
+  /**
+   * Открывает канал на заданном адресе и создает для него цикл приема.
+   *
+   * @param address адрес, на котором слушает канал.
+   * @param reusePort открыть канал с {@code SO_REUSEPORT}, чтобы этот же порт могли слушать другие
+   *     циклы.
+   * @param commandManager менеджер команд.
+   * @param options параметры стадии исполнения; блокировка, допуск, подписки и показатели в них
+   *     общие для всех циклов.
+   * @throws UnsupportedOperationException если {@code SO_REUSEPORT} или режим исполнения не
+   *     поддерживаются.
+   */
+  public static ReceiveLoop open(
+      InetSocketAddress address,
+      boolean reusePort,
+      CommandManager commandManager,
+      ProcessorOptions options)
+      throws IOException {
+    Selector selector = Selector.open();
+    DatagramChannel channel = DatagramChannel.open();
+    try {
+      if (reusePort) {
+        if (!channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+          throw new UnsupportedOperationException(
+              "Операционная система не поддерживает SO_REUSEPORT.");
+        }
+        channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+      }
+      channel.configureBlocking(false);
+      channel.bind(address);
+      channel.register(selector, SelectionKey.OP_READ);
+      return new ReceiveLoop(selector, channel, commandManager, options);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      selector.close();
+      throw e;
+    }
+  }
+
+  public SocketAddress getLocalAddress() throws IOException {
+    return channel.getLocalAddress();
+  }
+
+  /** Принимает датаграммы до вызова {@link #stop()}. */
+  @Override
+  public void run() {
+    try {
+      while (isRunning) {
+        poll();
+      }
+    } catch (IOException e) {
+      logger.error("Ошибка при приеме датаграмм: " + e.getMessage());
+    }
+  }
+
+  /** Дожидается датаграмм не дольше таймаута селектора и передает их на исполнение. */
+  public void poll() throws IOException {
+    processor.retryStalledStrands();
+    processor.evictIdleStrands();
+    if (selector.select(SELECTOR_TIMEOUT) == 0) return;
+
+    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+    while (keys.hasNext()) {
+      SelectionKey key = keys.next();
+      keys.remove();
+
+      if (key.isReadable()) {
+        SocketAddress clientAddress;
+        // Датаграммы принимаются прямо в буфер из пула, который передается обработчику.
+        while ((clientAddress = channel.receive(receiveBuffer)) != null) {
+          processor.submit(clientAddress, receiveBuffer.flip());
+          receiveBuffer = bufferPool.acquire();
+        }
+      }
+    }
+  }
+
+  public void stop() {
+    isRunning = false;
+    selector.wakeup();
+  }
+
+  /**
+   * Дожидается исполнения принятых запросов и отправки ответов, затем закрывает канал. Цикл должен
+   * быть уже остановлен.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      processor.shutdown();
+      sender.shutdown();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      selector.close();
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package server;
+
+import common.managers.CommandManager;
+import common.network.StreamFrames;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import server.pipeline.ProcessorOptions;
+import server.pipeline.StreamRequestExecutor;
+
+/**
+ * Цикл потокового транспорта (TCP) для больших запросов и ответов.
+ *
+ * <p>Сообщения передаются кадрами {@link StreamFrames} тем же кодеком, что и по UDP, и исполняются
+ * тем же менеджером команд. Каждое соединение обрабатывает запросы по одному: пока запрос
+ * исполняется и ответ не записан, соединение не читается. Клиент, отправляющий быстрее, чем сервер
+ * отвечает, упирается в окно TCP, а не в память сервера.
+ *
+ * <p>Все операции с каналами выполняет поток цикла; рабочие потоки только ставят готовые ответы в
+ * очередь и будят селектор.
+ */
+public class StreamLoop implements Runnable, AutoCloseable {
+  private static final Logger logger = LogManager.getLogger();
+  private static final int SELECTOR_TIMEOUT = 100;
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 20;
+
+  private final Selector selector;
+  private final ServerSocketChannel serverChannel;
+  private final StreamRequestExecutor executor;
+  private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+  private volatile boolean isRunning = true;
+
+  private StreamLoop(
+      Selector selector, ServerSocketChannel serverChannel, StreamRequestExecutor executor) {
+    this.selector = selector;
+    this.serverChannel = serverChannel;
+    this.executor = executor;
+  }
+
+  /**
+   * Открывает TCP-порт и создает для него цикл.
+   *
+   * @param address адрес, на котором принимаются соединения.
+   * @param commandManager менеджер команд.
+   * @param options параметры исполнения; блокировка, допуск и показатели в них общие с циклами UDP.
+   * @throws UnsupportedOperationException если режим исполнения не поддерживается.
+   */
+  public static StreamLoop open(
+      InetSocketAddress address, CommandManager commandManager, ProcessorOptions options)
+      throws IOException {
+    Selector selector = Selector.open();
+    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    try {
+      serverChannel.configureBlocking(false);
+      serverChannel.bind(address);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      return new StreamLoop(
+          selector, serverChannel, new StreamRequestExecutor(commandManager, options));
+    } catch (IOException | RuntimeException e) {
+      serverChannel.close();
+      selector.close();
+      throw e;
+    }
+  }
+
+  public SocketAddress getLocalAddress() throws IOException {
+    return serverChannel.getLocalAddress();
+  }
+
+  /** Обслуживает соединения до вызова {@link #stop()}. */
+  @Override
+  public void run() {
+    try {
+      while (isRunning) {
+        poll();
+      }
+    } catch (IOException e) {
+      logger.error("Ошибка потокового транспорта: " + e.getMessage());
+    }
+  }
+
+  private void poll() throws IOException {
+    selector.select(SELECTOR_TIMEOUT);
+    Connection ready;
+    while ((ready = completed.poll()) != null) {
+      ready.startWriting();
+    }
+
+    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+    while (keys.hasNext()) {
+      SelectionKey key = keys.next();
+      keys.remove();
+      if (!key.isValid()) {
+        continue;
+      }
+      if (key.isAcceptable()) {
+        accept();
+        continue;
+      }
+      Connection connection = (Connection) key.attachment();
+      try {
+        if (key.isReadable()) {
+          connection.read();
+        } else if (key.isWritable()) {
+          connection.write();
+        }
+      } catch (IOException | IllegalArgumentException e) {
+        logger.warn("Соединение " + connection.address + " закрыто: " + e.getMessage());
+        connection.close();
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null) {
+      channel.configureBlocking(false);
+      Connection connection = new Connection(channel);
+      connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+      logger.info("Открыто потоковое соединение с " + connection.address);
+    }
+  }
+
+  public void stop() {
+    isRunning = false;
+    selector.wakeup();
+  }
+
+  /**
+   * Дожидается исполнения принятых запросов, затем закрывает соединения. Цикл должен быть уже
+   * остановлен.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      executor.shutdown();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        key.channel().close();
+      }
+      selector.close();
+      serverChannel.close();
+    }
+  }
+
+  /** Состояние одного соединения. Используется только потоком цикла. */
+  private final class Connection {
+    private final SocketChannel channel;
+    private final SocketAddress address;
+    private SelectionKey key;
+    private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer output;
+    // Кадр ответа от рабочего потока; очередь completed обеспечивает его видимость.
+    private ByteBuffer response;
+    private boolean busy;
+    private boolean closed;
+
+    private Connection(SocketChannel channel) throws IOException {
+      this.channel = channel;
+      this.address = channel.getRemoteAddress();
+    }
+
+    private void read() throws IOException {
+      if (channel.read(input) < 0) {
+        logger.info("Потоковое соединение с " + address + " закрыто клиентом.");
+        close();
+        return;
+      }
+      dispatch();
+    }
+
+    /** Передает на исполнение следующий полностью принятый запрос, если соединение свободно. */
+    private void dispatch() {
+      if (busy || input.position() < StreamFrames.HEADER_SIZE) {
+        return;
+      }
+      int length = StreamFrames.readLength(input, 0);
+      int frameSize = StreamFrames.HEADER_SIZE + length;
+      if (input.position() < frameSize) {
+        if (input.capacity() < frameSize) {
+          input = ByteBuffer.allocate(frameSize).put(input.flip());
+        }
+        return;
+      }
+
+      byte flags = StreamFrames.readFlags(input, 0);
+      input.flip().position(StreamFrames.HEADER_SIZE);
+      ByteBuffer payload = ByteBuffer.allocate(length);
+      payload.put(input.slice().limit(length)).flip();
+      input.position(frameSize).compact();
+      if (input.capacity() > MAX_RETAINED_BUFFER_SIZE && input.position() <= INITIAL_BUFFER_SIZE) {
+        input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE).put(input.flip());
+      }
+
+      busy = true;
+      key.interestOps(0);
+      executor.submit(
+          address,
+          flags,
+          payload,
+          System.nanoTime(),
+          frame -> {
+            response = frame;
+            completed.add(this);
+            selector.wakeup();
+          });
+    }
+
+    private void startWriting() {
+      if (closed) {
+        return;
+      }
+      if (response == null) {
+        close();
+        return;
+      }
+      output = response;
+      response = null;
+      try {
+        write();
+      } catch (IOException | IllegalArgumentException e) {
+        logger.warn("Соединение " + address + " закрыто: " + e.getMessage());
+        close();
+      }
+    }
+
+    private void write() throws IOException {
+      channel.write(output);
+      if (output.hasRemaining()) {
+        key.interestOps(SelectionKey.OP_WRITE);
+        return;
+      }
+      output = null;
+      busy = false;
+      key.interestOps(SelectionKey.OP_READ);
+      // Следующий запрос мог быть принят, пока исполнялся предыдущий.
+      dispatch();
+    }
+
+    private void close() {
+      closed = true;
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        logger.warn("Не удалось закрыть соединение " + address + ": " + e.getMessage());
+      }
+    }
+  }
+}
@@ -1,140 +1,384 @@
 package server;
 
+import common.data.TicketType;
 import common.exceptions.FileWriteException;
 import common.managers.CollectionManager;
 import common.managers.CommandManager;
 import common.managers.FileManager;
-import common.network.ObjectDecoder;
-import common.network.ObjectEncoder;
-import common.network.Request;
-import common.network.Response;
-import java.io.*;
+import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.util.Iterator;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import server.admin.AdminConsole;
+import server.admin.AdminEndpoint;
+import server.admin.AdminRequest;
+import server.admin.ControlPlane;
+import server.metrics.ServerMetrics;
+import server.pipeline.AdmissionController;
+import server.pipeline.ExecutionMode;
+import server.pipeline.ProcessorOptions;
+import server.pipeline.SubscriptionManager;
+import server.system.ServerCollectionManager;
+import server.system.TicketFilter;
 
 public class UDPServer {
-  private final int BUFFER_SIZE = 65535;
-  private final int SELECTOR_TIMEOUT = 100;
   private final CommandManager commandManager;
   private final CollectionManager collectionManager;
   private final FileManager fileManager;
-  private final ExecutorService requestPool = Executors.newCachedThreadPool();
+  private final ExecutionMode executionMode;
+  private final int workerCount;
+  private final int channelCount;
+  private final AdmissionController admission;
+  // Изменяющие команды всех каналов исполняются под ней по одной. Не монитор, чтобы виртуальные
+  // потоки, ждущие ее, не занимали потоки-носители.
+  private final ReentrantLock executionLock = new ReentrantLock();
   private static final Logger logger = LogManager.getLogger();
-  private final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+  private static final String ADMIN_COMMANDS = "shutdown/save/stats/set.";
+  private final ControlPlane controlPlane = new ControlPlane();
+  private StreamLoop streamLoop;
+  private SubscriptionManager subscriptions;
+  private ServerMetrics metrics;
   private boolean isRunning = true;
 
   public UDPServer(
       CommandManager commandManager, CollectionManager collectionManager, FileManager fileManager) {
+    this(
+        commandManager, collectionManager, fileManager, Runtime.getRuntime().availableProcessors());
+  }
+
+  public UDPServer(
+      CommandManager commandManager,
+      CollectionManager collectionManager,
+      FileManager fileManager,
+      int workerCount) {
+    this(
+        commandManager,
+        collectionManager,
+        fileManager,
+        ExecutionMode.POOL,
+        workerCount,
+        1,
+        AdmissionController.unlimited());
+  }
+
+  /**
+   * @param commandManager менеджер команд.
+   * @param collectionManager менеджер коллекции.
+   * @param fileManager файловый менеджер для сохранения коллекции.
+   * @param executionMode способ исполнения запросов.
+   * @param workerCount общее количество рабочих потоков в режиме {@link ExecutionMode#POOL}.
+   * @param channelCount количество каналов на одном порту, каждый со своим потоком селектора.
+   *     Больше одного канала требует {@code SO_REUSEPORT}.
+   * @param admission допуск запросов к исполнению при перегрузке.
+   */
+  public UDPServer(
+      CommandManager commandManager,
+      CollectionManager collectionManager,
+      FileManager fileManager,
+      ExecutionMode executionMode,
+      int workerCount,
+      int channelCount,
+      AdmissionController admission) {
     this.commandManager = commandManager;
     this.collectionManager = collectionManager;
     this.fileManager = fileManager;
+    this.executionMode = executionMode;
+    this.workerCount = workerCount;
+    this.channelCount = channelCount;
+    this.admission = admission;
   }
 
   public void runServer(int port) throws IOException {
-    try (Selector selector = Selector.open();
-        DatagramChannel channel = DatagramChannel.open()) {
-      channel.configureBlocking(false);
-      channel.bind(new InetSocketAddress(port));
-      channel.register(selector, SelectionKey.OP_READ);
+    runServer(port, -1, false);
+  }
 
-      logger.info("Сервер запущен на порту " + port);
+  /**
+   * Запускает сервер и исполняет команды администратора до команды {@code shutdown}.
+   *
+   * <p>Все каналы обслуживаются потоками селекторов, а главный поток исполняет команды из {@link
+   * ControlPlane}, поэтому сохранение коллекции и ввод с консоли не задерживают прием запросов.
+   * Уведомления подписчикам рассылает {@link SubscriptionManager}, общий для всех каналов, а
+   * показатели запросов всех каналов собирает один {@link ServerMetrics}, доступный через JMX.
+   *
+   * @param port порт для запросов клиентов.
+   * @param adminPort порт администратора на петлевом интерфейсе или {@code -1}, если он не нужен.
+   * @param stream принимать запросы также по TCP на том же номере порта ({@link StreamLoop}).
+   */
+  public void runServer(int port, int adminPort, boolean stream) throws IOException {
+    List<ReceiveLoop> loops = new ArrayList<>(channelCount);
+    List<Thread> threads = new ArrayList<>(channelCount);
+    AdminEndpoint endpoint = null;
+    try {
+      // Рабочие потоки делятся между каналами, чтобы общее их количество не зависело от числа
+      // каналов.
+      int loopWorkers = Math.max(1, workerCount / channelCount);
+      metrics =
+          new ServerMetrics(commandManager.getCommandList().keySet(), this::getCollectionSize);
+      metrics.register();
+      subscriptions = new SubscriptionManager(collectionManager);
+      executionLock.lock();
+      try {
+        collectionManager.setChangeListener(subscriptions);
+      } finally {
+        executionLock.unlock();
+      }
+      subscriptions.start();
+      ProcessorOptions options =
+          new ProcessorOptions()
+              .executionLock(executionLock)
+              .admission(admission)
+              .executionMode(executionMode)
+              .workerCount(loopWorkers)
+              .subscriptions(subscriptions)
+              .metrics(metrics);
+      for (int i = 0; i < channelCount; i++) {
+        loops.add(
+            ReceiveLoop.open(
+                new InetSocketAddress(port), channelCount > 1, commandManager, options));
+      }
+      for (int i = 0; i < channelCount; i++) {
+        Thread thread = new Thread(loops.get(i), "selector-" + i);
+        thread.start();
+        threads.add(thread);
+      }
+      if (stream) {
+        streamLoop = StreamLoop.open(new InetSocketAddress(port), commandManager, options);
+        Thread thread = new Thread(streamLoop, "stream-selector");
+        thread.start();
+        threads.add(thread);
+      }
 
-      ByteBuffer receiveBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+      if (adminPort >= 0) {
+        endpoint = new AdminEndpoint(controlPlane, adminPort);
+        startDaemon(endpoint, "admin-endpoint");
+        logger.info("Порт администратора: " + endpoint.getLocalAddress());
+      }
+      startDaemon(new AdminConsole(controlPlane), "admin-console");
+
+      logger.info(
+          "Сервер запущен на порту "
+              + port
+              + ", режим исполнения: "
+              + executionMode.name()
+              + ", каналов: "
+              + channelCount
+              + (stream ? ", TCP включен" : ""));
 
       while (isRunning) {
-        if (isConsoleInput()) {
-          shutdown(selector, channel);
-          return;
-        }
-
-        if (selector.select(SELECTOR_TIMEOUT) == 0) continue;
-
-        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
-        while (keys.hasNext()) {
-          SelectionKey key = keys.next();
-          keys.remove();
-
-          try {
-            if (key.isReadable()) {
-              receiveBuffer.clear();
-              DatagramChannel clientChannel = (DatagramChannel) key.channel();
-              InetSocketAddress clientAddress =
-                  (InetSocketAddress) clientChannel.receive(receiveBuffer);
-
-              if (clientAddress != null) {
-                Request request = (Request) ObjectDecoder.decodeObject(receiveBuffer);
-                logger.info("Сервер получил запрос с командой " + request.getCommandName());
-
-                Response response = commandManager.executeRequest(request);
-
-                ByteBuffer sendBuffer = ObjectEncoder.encodeObject(response);
-                channel.send(sendBuffer, clientAddress);
-                logger.info("Сервер отправил ответ: " + response.getMessage());
-              }
-            }
-          } catch (ClassNotFoundException e) {
-            logger.error("Возникла ошибка на сервере: " + e.getMessage());
-          }
-        }
+        AdminRequest request = controlPlane.take();
+        request.complete(executeAdminCommand(request.getLine(), loops, threads));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      controlPlane.close();
+      if (endpoint != null) {
+        endpoint.close();
+      }
+      for (ReceiveLoop loop : loops) {
+        loop.stop();
       }
+      stopSubscriptions();
+      for (ReceiveLoop loop : loops) {
+        loop.close();
+      }
+      if (streamLoop != null) {
+        streamLoop.stop();
+        streamLoop.close();
+      }
+      if (metrics != null) {
+        metrics.unregister();
+      }
+    }
+  }
+
+  /** Останавливает рассылку уведомлений до закрытия каналов, через которые они отправляются. */
+  private void stopSubscriptions() {
+    if (subscriptions == null) {
+      return;
+    }
+    executionLock.lock();
+    try {
+      collectionManager.setChangeListener(null);
+    } finally {
+      executionLock.unlock();
     }
+    try {
+      subscriptions.shutdown();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    subscriptions = null;
   }
 
-  private boolean isConsoleInput() throws IOException {
-    if (System.in.available() > 0) {
-      String commandName = in.readLine();
-      if (commandName == null) {
-        commandName = "shutdown";
-      }
-      switch (commandName) {
-        case "shutdown" -> {
-          logger.warn("Введена команда 'shutdown'.");
-          System.out.println("Сохранение коллекции перед завершением работы сервера...");
-          try {
-            fileManager.saveCollectionToXml(collectionManager);
-            logger.info("Коллекция сохранена в файл.");
-          } catch (FileWriteException e) {
-            logger.error("Возникла ошибка при сохранении в файл.");
-            System.err.println(e.getMessage());
-          }
-          System.out.println("Завершение работы сервера...");
-          logger.info("Сервер завершил свою работу.");
-          return true;
-        }
-        case "save" -> {
-          logger.warn("Введена команда 'save'.");
-          System.out.println("Сохранение коллекции...");
-          try {
-            fileManager.saveCollectionToXml(collectionManager);
-            logger.info("Коллекция сохранена в файл.");
-          } catch (FileWriteException e) {
-            logger.error("Возникла ошибка при сохранении в файл.");
-            System.err.println(e.getMessage());
-          }
-          System.out.println("Коллекция успешно сохранена.");
-          return false;
-        }
-        case "" -> {}
-        default ->
-            System.out.println(
-                "Неизвестное имя команды. Введите одну из доступных: shutdown/save.");
-      }
-    }
-    return false;
+  private static void startDaemon(Runnable task, String name) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    thread.start();
   }
 
-  private void shutdown(Selector selector, DatagramChannel channel) throws IOException {
-    selector.close();
-    channel.close();
-    requestPool.shutdown();
+  private String executeAdminCommand(String line, List<ReceiveLoop> loops, List<Thread> threads)
+      throws IOException {
+    String[] parts = line.split("\\s+");
+    switch (parts[0]) {
+      case "shutdown" -> {
+        logger.warn("Введена команда 'shutdown'.");
+        shutdown(loops, threads);
+        return "Сервер завершил свою работу.";
+      }
+      case "save" -> {
+        logger.warn("Введена команда 'save'.");
+        return saveCollection()
+            ? "Коллекция успешно сохранена."
+            : "Не удалось сохранить коллекцию.";
+      }
+      case "stats" -> {
+        return getStats();
+      }
+      case "set" -> {
+        return tune(parts);
+      }
+      default -> {
+        return "Неизвестное имя команды. Введите одну из доступных: " + ADMIN_COMMANDS;
+      }
+    }
+  }
+
+  private int getCollectionSize() {
+    return collectionManager.getCollectionSize();
+  }
+
+  private String getStats() {
+    return "Режим исполнения: "
+        + executionMode.name()
+        + ", каналов: "
+        + channelCount
+        + ", рабочих потоков: "
+        + workerCount
+        + "\nЭлементов в коллекции: "
+        + getCollectionSize()
+        + "\nПодписчиков: "
+        + (subscriptions != null ? subscriptions.getSubscriberCount() : 0)
+        + ", уведомлений со сбросом: "
+        + (subscriptions != null ? subscriptions.getResyncCount() : 0)
+        + "\nОтклонено запросов при перегрузке: "
+        + admission.getRejectedCount()
+        + "\nДопуск читающих команд: "
+        + admission.getLimits(true)
+        + "\nДопуск изменяющих команд: "
+        + admission.getLimits(false)
+        + getIndexStats()
+        + "\n"
+        + metrics.report();
+  }
+
+  /**
+   * Количества билетов по битовым индексам {@link ServerCollectionManager}: считаются по мощности
+   * множеств строк, не обращаясь к самим билетам. Для других менеджеров коллекции — пустая строка.
+   */
+  private String getIndexStats() {
+    if (!(collectionManager instanceof ServerCollectionManager indexed)) {
+      return "";
+    }
+    TicketType[] types = TicketType.values();
+    TicketFilter[] filters = new TicketFilter[types.length + 4];
+    for (int i = 0; i < types.length; i++) {
+      filters[i] = TicketFilter.type(types[i]);
+    }
+    filters[types.length] = TicketFilter.hasPerson();
+    filters[types.length + 1] = TicketFilter.hasPerson().not();
+    filters[types.length + 2] = TicketFilter.hasPerson().and(TicketFilter.hasLocation().not());
+    filters[types.length + 3] = TicketFilter.hasLocation().or(TicketFilter.hasPassportId());
+    int[] counts = indexed.countEach(filters);
+
+    StringBuilder sb = new StringBuilder("\nБилетов по типам:");
+    for (int i = 0; i < types.length; i++) {
+      sb.append(' ').append(types[i]).append(' ').append(counts[i]);
+    }
+    return sb.append("\nС person: ")
+        .append(counts[types.length])
+        .append(", без person: ")
+        .append(counts[types.length + 1])
+        .append(", person без местоположения: ")
+        .append(counts[types.length + 2])
+        .append(", с местоположением или passportID: ")
+        .append(counts[types.length + 3])
+        .toString();
+  }
+
+  /** Меняет ограничения допуска запросов: {@code set <параметр> <значение>}. */
+  private String tune(String[] parts) {
+    if (parts.length != 3) {
+      return "Используйте: set max-reads|max-writes|read-deadline-ms|write-deadline-ms <значение>";
+    }
+    int value;
+    try {
+      value = Integer.parseInt(parts[2]);
+    } catch (NumberFormatException e) {
+      return "Значение должно быть целым числом.";
+    }
+    if (value <= 0) {
+      return "Значение должно быть положительным.";
+    }
+    boolean readOnly = parts[1].equals("max-reads") || parts[1].equals("read-deadline-ms");
+    AdmissionController.Limits limits = admission.getLimits(readOnly);
+    switch (parts[1]) {
+      case "max-reads", "max-writes" -> limits = limits.withMaxAdmitted(value);
+      case "read-deadline-ms", "write-deadline-ms" -> limits = limits.withDeadlineMillis(value);
+      default -> {
+        return "Неизвестный параметр: " + parts[1];
+      }
+    }
+    admission.setLimits(readOnly, limits);
+    logger.warn("Параметр " + parts[1] + " изменен на " + value + ".");
+    return "Параметр " + parts[1] + " изменен: " + limits + ".";
+  }
+
+  private boolean saveCollection() {
+    try {
+      // Менеджер коллекции выдает согласованный список без блокировки исполнения, поэтому запись
+      // файла не задерживает команды.
+      fileManager.saveCollectionToXml(collectionManager);
+      logger.info("Коллекция сохранена в файл.");
+      return true;
+    } catch (FileWriteException e) {
+      logger.error("Возникла ошибка при сохранении в файл.");
+      System.err.println(e.getMessage());
+      return false;
+    }
+  }
+
+  private void shutdown(List<ReceiveLoop> loops, List<Thread> threads) throws IOException {
     isRunning = false;
+    for (ReceiveLoop loop : loops) {
+      loop.stop();
+    }
+    if (streamLoop != null) {
+      streamLoop.stop();
+    }
+    try {
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      stopSubscriptions();
+      // Закрытие цикла дожидается исполнения уже принятых запросов и отправки ответов.
+      for (ReceiveLoop loop : loops) {
+        loop.close();
+      }
+      if (streamLoop != null) {
+        streamLoop.close();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    loops.clear();
+    streamLoop = null;
+    System.out.println("Сохранение коллекции перед завершением работы сервера...");
+    saveCollection();
+    System.out.println("Завершение работы сервера...");
+    logger.info("Сервер завершил свою работу.");
   }
 }
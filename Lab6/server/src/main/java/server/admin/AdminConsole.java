@@ -0,0 +1,38 @@
+package server.admin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Источник команд администратора со стандартного ввода.
+ *
+ * <p>Поток консоли блокируется на чтении строки, ставит команду в {@link ControlPlane} и печатает
+ * ответ. Конец ввода равносилен команде {@code shutdown}.
+ */
+public class AdminConsole implements Runnable {
+  private final ControlPlane controlPlane;
+  private final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+  public AdminConsole(ControlPlane controlPlane) {
+    this.controlPlane = controlPlane;
+  }
+
+  @Override
+  public void run() {
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (!line.isBlank()) {
+          System.out.println(controlPlane.submit(line).get());
+        }
+      }
+      System.out.println(controlPlane.submit("shutdown").get());
+    } catch (IOException | ExecutionException e) {
+      System.err.println("Ошибка консоли сервера: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
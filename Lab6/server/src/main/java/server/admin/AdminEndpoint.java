@@ -0,0 +1,93 @@
+package server.admin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Порт администратора на петлевом интерфейсе.
+ *
+ * <p>Текстовый протокол: одна команда в строке, на каждую команду возвращается ответ и пустая
+ * строка. Подключения обслуживаются по одному, например {@code nc localhost <port>}. Порт доступен
+ * только с той же машины.
+ */
+public class AdminEndpoint implements Runnable, AutoCloseable {
+  private static final Logger logger = LogManager.getLogger();
+
+  private final ControlPlane controlPlane;
+  private final ServerSocket serverSocket;
+  private volatile Socket connection;
+
+  /**
+   * @param controlPlane очередь команд администратора.
+   * @param port порт на петлевом интерфейсе; {@code 0} — любой свободный.
+   * @throws IOException если порт занят.
+   */
+  public AdminEndpoint(ControlPlane controlPlane, int port) throws IOException {
+    this.controlPlane = controlPlane;
+    this.serverSocket = new ServerSocket();
+    serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+  }
+
+  public SocketAddress getLocalAddress() {
+    return serverSocket.getLocalSocketAddress();
+  }
+
+  @Override
+  public void run() {
+    while (!serverSocket.isClosed()) {
+      try (Socket socket = serverSocket.accept()) {
+        connection = socket;
+        serve(socket);
+      } catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          logger.warn("Ошибка соединения администратора: " + e.getMessage());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        connection = null;
+      }
+    }
+  }
+
+  private void serve(Socket socket) throws IOException, InterruptedException {
+    logger.info("Подключен администратор " + socket.getRemoteSocketAddress());
+    BufferedReader in =
+        new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (line.isBlank()) {
+        continue;
+      }
+      try {
+        out.print(controlPlane.submit(line).get());
+      } catch (ExecutionException e) {
+        out.print("Ошибка исполнения команды: " + e.getCause().getMessage());
+      }
+      out.print("\n\n");
+      out.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    Socket socket = connection;
+    if (socket != null) {
+      socket.close();
+    }
+  }
+}
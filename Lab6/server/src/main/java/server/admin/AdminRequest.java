@@ -0,0 +1,27 @@
+package server.admin;
+
+import java.util.concurrent.CompletableFuture;
+
+/** Команда администратора, ожидающая исполнения потоком управления, и будущий ответ на нее. */
+public final class AdminRequest {
+  private final String line;
+  private final CompletableFuture<String> reply = new CompletableFuture<>();
+
+  AdminRequest(String line) {
+    this.line = line;
+  }
+
+  /** Строка команды без начальных и конечных пробелов. */
+  public String getLine() {
+    return line;
+  }
+
+  /** Завершает команду ответом для администратора. */
+  public void complete(String message) {
+    reply.complete(message);
+  }
+
+  CompletableFuture<String> getReply() {
+    return reply;
+  }
+}
@@ -0,0 +1,61 @@
+package server.admin;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Очередь команд администратора между источниками команд ({@link AdminConsole}, {@link
+ * AdminEndpoint}) и потоком управления сервера.
+ *
+ * <p>Источники команд только ставят их в очередь, а исполняет их один поток управления. Поэтому
+ * потоки селекторов не опрашивают консоль и не пишут файлы, а команды администратора исполняются
+ * строго по одной.
+ */
+public class ControlPlane {
+  private static final int QUEUE_CAPACITY = 64;
+
+  private final BlockingQueue<AdminRequest> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+  private volatile boolean closed;
+
+  /**
+   * Ставит команду в очередь.
+   *
+   * @param line строка команды.
+   * @return Ответ, который будет получен после исполнения команды.
+   */
+  public CompletableFuture<String> submit(String line) {
+    AdminRequest request = new AdminRequest(line.trim());
+    if (closed) {
+      request.complete("Сервер остановлен.");
+    } else if (!queue.offer(request)) {
+      request.complete("Очередь команд переполнена, повторите позже.");
+    } else if (closed) {
+      // Очередь могла быть очищена между проверкой и постановкой команды.
+      drain();
+    }
+    return request.getReply();
+  }
+
+  /**
+   * Извлекает следующую команду, дожидаясь ее появления.
+   *
+   * @throws InterruptedException если ожидание прервано.
+   */
+  public AdminRequest take() throws InterruptedException {
+    return queue.take();
+  }
+
+  /** Перестает принимать команды и отвечает на уже поставленные в очередь. */
+  public void close() {
+    closed = true;
+    drain();
+  }
+
+  private void drain() {
+    AdminRequest request;
+    while ((request = queue.poll()) != null) {
+      request.complete("Сервер остановлен.");
+    }
+  }
+}
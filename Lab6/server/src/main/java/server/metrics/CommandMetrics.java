@@ -0,0 +1,131 @@
+package server.metrics;
+
+import common.network.BusyResponse;
+import common.network.Response;
+import common.network.ResponseWithException;
+import common.utils.LatencyHistogram;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Показатели одной команды: количество запросов, ошибок и отказов, число исполняемых сейчас
+ * запросов и гистограммы задержек.
+ *
+ * <p>Задержка запроса отсчитывается от приема его кадра до кодирования ответа и включает ожидание в
+ * очереди клиента и блокировки исполнения. Время исполнения — только время под блокировкой.
+ */
+public final class CommandMetrics implements CommandMetricsMBean {
+  private final String name;
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder totalLatencyMicros = new LongAdder();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LatencyHistogram service = new LatencyHistogram();
+
+  CommandMetrics(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** Отмечает начало обработки запроса. Каждому вызову соответствует вызов {@link #end}. */
+  public void begin() {
+    inFlight.incrementAndGet();
+  }
+
+  /**
+   * Отмечает конец обработки запроса.
+   *
+   * @param response ответ на запрос или {@code null}, если обработка прервана исключением.
+   * @param latencyNanos время от приема запроса до готового ответа.
+   * @param serviceNanos время исполнения под блокировкой исполнения или {@code 0}, если запрос не
+   *     исполнялся.
+   */
+  public void end(Response response, long latencyNanos, long serviceNanos) {
+    inFlight.decrementAndGet();
+    requests.increment();
+    if (response instanceof BusyResponse) {
+      rejected.increment();
+    } else if (response == null || response instanceof ResponseWithException) {
+      errors.increment();
+    }
+    long latencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+    latency.record(latencyMicros);
+    totalLatencyMicros.add(latencyMicros);
+    if (serviceNanos > 0) {
+      service.record(TimeUnit.NANOSECONDS.toMicros(serviceNanos));
+    }
+  }
+
+  @Override
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  @Override
+  public long getErrorCount() {
+    return errors.sum();
+  }
+
+  @Override
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  @Override
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  @Override
+  public long getLatencyP50Micros() {
+    return latency.getPercentile(50);
+  }
+
+  @Override
+  public long getLatencyP99Micros() {
+    return latency.getPercentile(99);
+  }
+
+  @Override
+  public long getLatencyP999Micros() {
+    return latency.getPercentile(99.9);
+  }
+
+  @Override
+  public long getLatencyMaxMicros() {
+    return latency.getMax();
+  }
+
+  @Override
+  public long getServiceP99Micros() {
+    return service.getPercentile(99);
+  }
+
+  @Override
+  public long getTotalLatencyMicros() {
+    return totalLatencyMicros.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%-22s %8d %6d %6d %4d %9.3f %9.3f %9.3f %9.3f %9.3f %10.1f",
+        name,
+        getRequestCount(),
+        getErrorCount(),
+        getRejectedCount(),
+        getInFlight(),
+        getLatencyP50Micros() / 1000.0,
+        getLatencyP99Micros() / 1000.0,
+        getLatencyP999Micros() / 1000.0,
+        getLatencyMaxMicros() / 1000.0,
+        getServiceP99Micros() / 1000.0,
+        getTotalLatencyMicros() / 1000.0);
+  }
+}
@@ -0,0 +1,24 @@
+package server.metrics;
+
+/** Показатели одной команды, доступные через JMX. Задержки в микросекундах. */
+public interface CommandMetricsMBean {
+  long getRequestCount();
+
+  long getErrorCount();
+
+  long getRejectedCount();
+
+  int getInFlight();
+
+  long getLatencyP50Micros();
+
+  long getLatencyP99Micros();
+
+  long getLatencyP999Micros();
+
+  long getLatencyMaxMicros();
+
+  long getServiceP99Micros();
+
+  long getTotalLatencyMicros();
+}
@@ -0,0 +1,227 @@
+package server.metrics;
+
+import common.network.BatchRequest;
+import common.utils.LatencyHistogram;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Реестр показателей сервера: {@link CommandMetrics} для каждой команды из {@link
+ * common.managers.CommandManager}, время декодирования запросов и кодирования ответов, объем
+ * принятых и отправленных данных и размер коллекции.
+ *
+ * <p>Набор команд фиксируется при создании, поэтому реестр читается без блокировок, а запросы с
+ * неизвестными командами учитываются в одной общей записи и не раздувают его.
+ *
+ * <p>Показатели выводит команда администратора {@code stats}, а после {@link #register()} они
+ * доступны через JMX как {@code lab6.server:type=Server} и {@code
+ * lab6.server:type=Command,name=<команда>}.
+ */
+public final class ServerMetrics implements ServerMetricsMBean {
+  private static final Logger logger = LogManager.getLogger();
+  private static final String DOMAIN = "lab6.server";
+  private static final String UNKNOWN_COMMAND = "<неизвестная>";
+
+  private final Map<String, CommandMetrics> commands = new LinkedHashMap<>();
+  private final CommandMetrics unknown = new CommandMetrics(UNKNOWN_COMMAND);
+  private final LatencyHistogram decode = new LatencyHistogram();
+  private final LatencyHistogram encode = new LatencyHistogram();
+  private final LongAdder bytesIn = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+  private final IntSupplier collectionSize;
+  private final List<ObjectName> registered = new ArrayList<>();
+
+  /**
+   * @param commandNames названия команд, для которых ведутся показатели.
+   * @param collectionSize источник размера коллекции.
+   */
+  public ServerMetrics(Collection<String> commandNames, IntSupplier collectionSize) {
+    for (String name : commandNames) {
+      commands.put(name, new CommandMetrics(name));
+    }
+    commands.putIfAbsent(BatchRequest.COMMAND_NAME, new CommandMetrics(BatchRequest.COMMAND_NAME));
+    this.collectionSize = collectionSize;
+  }
+
+  /**
+   * Возвращает показатели команды.
+   *
+   * @param commandName название команды из запроса.
+   * @return Показатели команды или общая запись для неизвестных команд.
+   */
+  public CommandMetrics command(String commandName) {
+    CommandMetrics metrics = commands.get(commandName);
+    return metrics != null ? metrics : unknown;
+  }
+
+  public void recordDecode(long nanos) {
+    decode.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  public void recordEncode(long nanos) {
+    encode.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  public void addBytesIn(int bytes) {
+    bytesIn.add(bytes);
+  }
+
+  public void addBytesOut(int bytes) {
+    bytesOut.add(bytes);
+  }
+
+  @Override
+  public long getRequestCount() {
+    long count = unknown.getRequestCount();
+    for (CommandMetrics metrics : commands.values()) {
+      count += metrics.getRequestCount();
+    }
+    return count;
+  }
+
+  @Override
+  public long getErrorCount() {
+    long count = unknown.getErrorCount();
+    for (CommandMetrics metrics : commands.values()) {
+      count += metrics.getErrorCount();
+    }
+    return count;
+  }
+
+  @Override
+  public int getInFlight() {
+    int count = unknown.getInFlight();
+    for (CommandMetrics metrics : commands.values()) {
+      count += metrics.getInFlight();
+    }
+    return count;
+  }
+
+  @Override
+  public long getBytesIn() {
+    return bytesIn.sum();
+  }
+
+  @Override
+  public long getBytesOut() {
+    return bytesOut.sum();
+  }
+
+  @Override
+  public int getCollectionSize() {
+    return collectionSize.getAsInt();
+  }
+
+  @Override
+  public long getDecodeP99Micros() {
+    return decode.getPercentile(99);
+  }
+
+  @Override
+  public long getEncodeP99Micros() {
+    return encode.getPercentile(99);
+  }
+
+  /**
+   * Формирует отчет для команды администратора {@code stats}: общие показатели и таблицу команд,
+   * которые уже получали запросы, по убыванию суммарной задержки.
+   *
+   * @return Текст отчета.
+   */
+  public String report() {
+    List<CommandMetrics> active = new ArrayList<>();
+    for (CommandMetrics metrics : commands.values()) {
+      if (metrics.getRequestCount() > 0 || metrics.getInFlight() > 0) {
+        active.add(metrics);
+      }
+    }
+    if (unknown.getRequestCount() > 0) {
+      active.add(unknown);
+    }
+    active.sort(Comparator.comparingLong(CommandMetrics::getTotalLatencyMicros).reversed());
+
+    StringBuilder report =
+        new StringBuilder(
+            String.format(
+                "Запросов: %d, ошибок: %d, исполняется: %d%n"
+                    + "Принято байт: %d, отправлено байт: %d%n"
+                    + "Декодирование, мс: p50 %.3f, p99 %.3f; кодирование, мс: p50 %.3f, p99 %.3f",
+                getRequestCount(),
+                getErrorCount(),
+                getInFlight(),
+                getBytesIn(),
+                getBytesOut(),
+                decode.getPercentile(50) / 1000.0,
+                decode.getPercentile(99) / 1000.0,
+                encode.getPercentile(50) / 1000.0,
+                encode.getPercentile(99) / 1000.0));
+    if (!active.isEmpty()) {
+      report.append(
+          String.format(
+              "%n%-22s %8s %6s %6s %4s %9s %9s %9s %9s %9s %10s",
+              "Команда (задержка, мс)",
+              "запросы",
+              "ошибки",
+              "отказы",
+              "идут",
+              "p50",
+              "p99",
+              "p99.9",
+              "max",
+              "исп. p99",
+              "сумма"));
+      for (CommandMetrics metrics : active) {
+        report.append(System.lineSeparator()).append(metrics);
+      }
+    }
+    return report.toString();
+  }
+
+  /** Регистрирует показатели в платформенном сервере MBean. */
+  public void register() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      register(server, new ObjectName(DOMAIN + ":type=Server"), this);
+      register(server, new ObjectName(DOMAIN + ":type=Command,name=unknown"), unknown);
+      for (CommandMetrics metrics : commands.values()) {
+        register(
+            server,
+            new ObjectName(DOMAIN + ":type=Command,name=" + ObjectName.quote(metrics.getName())),
+            metrics);
+      }
+    } catch (JMException e) {
+      logger.warn("Не удалось зарегистрировать показатели в JMX: " + e.getMessage());
+    }
+  }
+
+  private void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+    server.registerMBean(bean, name);
+    registered.add(name);
+  }
+
+  /** Снимает показатели с регистрации в JMX. */
+  public void unregister() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName name : registered) {
+      try {
+        server.unregisterMBean(name);
+      } catch (JMException e) {
+        logger.warn("Не удалось снять с регистрации " + name + ": " + e.getMessage());
+      }
+    }
+    registered.clear();
+  }
+}
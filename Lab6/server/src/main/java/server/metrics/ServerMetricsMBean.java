@@ -0,0 +1,20 @@
+package server.metrics;
+
+/** Общие показатели сервера, доступные через JMX. Время в микросекундах. */
+public interface ServerMetricsMBean {
+  long getRequestCount();
+
+  long getErrorCount();
+
+  int getInFlight();
+
+  long getBytesIn();
+
+  long getBytesOut();
+
+  int getCollectionSize();
+
+  long getDecodeP99Micros();
+
+  long getEncodeP99Micros();
+}
@@ -0,0 +1,173 @@
+package server.pipeline;
+
+import common.network.BusyResponse;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Допуск запросов к исполнению при перегрузке.
+ *
+ * <p>Изменяющие команды исполняются по одной под общей блокировкой исполнения, а читающие —
+ * параллельно, без нее. Поэтому перед исполнением запрос проверяется по-разному. Для изменяющего
+ * запроса время, которое он уже провел в очереди, плюс ожидаемое время исполнения всех допущенных
+ * раньше изменяющих запросов и его самого не должно превышать срок для изменяющих команд; ожидаемое
+ * время исполнения — скользящее среднее времени удержания блокировки. Читающий запрос не ждет
+ * других запросов, поэтому со сроком для читающих команд сравнивается только время в очереди. Кроме
+ * того, для каждого класса ограничено количество одновременно допущенных запросов: для читающих это
+ * и есть ограничение нагрузки.
+ *
+ * <p>Запрос, который не уложится в срок, получает {@link BusyResponse} сразу, а не после
+ * бесполезного ожидания: клиент узнает о перегрузке и повторяет запрос позже, а время ответа на
+ * допущенные запросы остается ограниченным.
+ *
+ * <p>Ограничения можно менять на ходу: новые значения действуют для следующих запросов.
+ */
+public class AdmissionController {
+  private static final int SERVICE_TIME_SHIFT = 3;
+  private static final long MIN_RETRY_AFTER_MILLIS = 50;
+  private static final long MAX_RETRY_AFTER_MILLIS = 5_000;
+
+  private volatile Limits readLimits;
+  private volatile Limits writeLimits;
+  private final AtomicInteger admittedReads = new AtomicInteger();
+  private final AtomicInteger admittedWrites = new AtomicInteger();
+  private final AtomicLong rejected = new AtomicLong();
+  private volatile long writeServiceNanos;
+
+  /**
+   * @param readLimits ограничения для команд, только читающих коллекцию.
+   * @param writeLimits ограничения для команд, изменяющих коллекцию.
+   */
+  public AdmissionController(Limits readLimits, Limits writeLimits) {
+    this.readLimits = readLimits;
+    this.writeLimits = writeLimits;
+  }
+
+  /** Возвращает контроллер, допускающий все запросы. */
+  public static AdmissionController unlimited() {
+    Limits unlimited = new Limits(Integer.MAX_VALUE, Long.MAX_VALUE / 1_000_000);
+    return new AdmissionController(unlimited, unlimited);
+  }
+
+  /**
+   * Решает, допустить ли запрос к исполнению. Допущенный запрос должен быть завершен вызовом {@link
+   * #complete(boolean, long)}.
+   *
+   * @param readOnly {@code true}, если запрос только читает коллекцию.
+   * @param queuedNanos время, которое запрос уже провел в очереди.
+   * @return {@code null}, если запрос допущен, иначе ответ об отказе.
+   */
+  public BusyResponse tryAdmit(boolean readOnly, long queuedNanos) {
+    Limits limits = readOnly ? readLimits : writeLimits;
+    AtomicInteger admitted = readOnly ? admittedReads : admittedWrites;
+    long backlogNanos = queuedNanos;
+    long expectedNanos = queuedNanos;
+    if (!readOnly) {
+      long service = writeServiceNanos;
+      int ahead = admittedWrites.get();
+      backlogNanos += ahead * service;
+      // Без очереди впереди собственное время исполнения не учитывается, иначе запрос, который
+      // исполняется дольше срока, не был бы допущен никогда.
+      expectedNanos = ahead > 0 ? backlogNanos + service : backlogNanos;
+    }
+    if (expectedNanos > limits.deadlineNanos) {
+      return reject(backlogNanos);
+    }
+    if (admitted.incrementAndGet() > limits.maxAdmitted) {
+      admitted.decrementAndGet();
+      return reject(backlogNanos);
+    }
+    return null;
+  }
+
+  /**
+   * Завершает допущенный запрос.
+   *
+   * @param readOnly класс запроса, указанный при допуске.
+   * @param serviceNanos время исполнения запроса; для изменяющих — время удержания блокировки
+   *     коллекции, только оно входит в ожидаемое время исполнения.
+   */
+  public void complete(boolean readOnly, long serviceNanos) {
+    if (readOnly) {
+      admittedReads.decrementAndGet();
+      return;
+    }
+    admittedWrites.decrementAndGet();
+    synchronized (this) {
+      long previous = writeServiceNanos;
+      writeServiceNanos =
+          previous == 0
+              ? serviceNanos
+              : previous + ((serviceNanos - previous) >> SERVICE_TIME_SHIFT);
+    }
+  }
+
+  public Limits getLimits(boolean readOnly) {
+    return readOnly ? readLimits : writeLimits;
+  }
+
+  /**
+   * Заменяет ограничения для класса команд. Уже допущенные запросы не отзываются.
+   *
+   * @param readOnly {@code true} для команд, только читающих коллекцию.
+   * @param limits новые ограничения.
+   */
+  public void setLimits(boolean readOnly, Limits limits) {
+    if (readOnly) {
+      readLimits = limits;
+    } else {
+      writeLimits = limits;
+    }
+  }
+
+  /** Количество запросов, отклоненных с момента запуска. */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  private BusyResponse reject(long backlogNanos) {
+    rejected.incrementAndGet();
+    long retryAfter = TimeUnit.NANOSECONDS.toMillis(backlogNanos);
+    return new BusyResponse(
+        Math.max(MIN_RETRY_AFTER_MILLIS, Math.min(MAX_RETRY_AFTER_MILLIS, retryAfter)));
+  }
+
+  /** Ограничения допуска для одного класса команд. */
+  public static final class Limits {
+    private final int maxAdmitted;
+    private final long deadlineNanos;
+
+    /**
+     * @param maxAdmitted максимальное количество одновременно допущенных запросов класса.
+     * @param deadlineMillis срок, за который запрос должен быть исполнен с момента приема.
+     */
+    public Limits(int maxAdmitted, long deadlineMillis) {
+      this.maxAdmitted = maxAdmitted;
+      this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    public int getMaxAdmitted() {
+      return maxAdmitted;
+    }
+
+    public long getDeadlineMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(deadlineNanos);
+    }
+
+    /** Возвращает копию ограничений с другим количеством допущенных запросов. */
+    public Limits withMaxAdmitted(int maxAdmitted) {
+      return new Limits(maxAdmitted, getDeadlineMillis());
+    }
+
+    /** Возвращает копию ограничений с другим сроком исполнения. */
+    public Limits withDeadlineMillis(long deadlineMillis) {
+      return new Limits(maxAdmitted, deadlineMillis);
+    }
+
+    @Override
+    public String toString() {
+      return "не больше " + maxAdmitted + " одновременно, срок " + getDeadlineMillis() + " мс";
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package server.pipeline;
+
+import common.network.MessageCodec;
+import common.network.Request;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Порядок исполнения зависимых запросов одного клиента.
+ *
+ * <p>Клиент, отправляющий запросы окном, указывает в каждом запросе номер последнего изменяющего
+ * запроса ({@link Request#getDependsOn()}). Если из-за потери или перестановки датаграмм запрос
+ * пришел раньше своей зависимости, он откладывается и исполняется сразу после нее.
+ *
+ * <p>Для каждого клиента хранятся номера последних исполненных запросов. Номера растут, а в полете
+ * у клиента не больше окна запросов, поэтому зависимость старше всех сохраненных номеров уже
+ * исполнена.
+ *
+ * <p>Класс не потокобезопасен: им пользуется только очередь запросов одного клиента.
+ */
+class DependencyTracker {
+  private static final int MAX_CLIENTS = 16;
+  private static final int EXECUTED_WINDOW = 1024;
+
+  private final int maxParked;
+  private final long parkedTimeoutNanos;
+  private final Map<Long, ExecutedWindow> executed =
+      new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ExecutedWindow> eldest) {
+          return size() > MAX_CLIENTS;
+        }
+      };
+  private final Map<Key, ParkedRequest> parked = new LinkedHashMap<>();
+
+  /**
+   * @param maxParked максимальное количество отложенных запросов.
+   * @param parkedTimeoutNanos время, после которого отложенный запрос считается потерянным.
+   */
+  DependencyTracker(int maxParked, long parkedTimeoutNanos) {
+    this.maxParked = maxParked;
+    this.parkedTimeoutNanos = parkedTimeoutNanos;
+  }
+
+  boolean isExecuted(long clientId, long sequence) {
+    ExecutedWindow window = executed.get(clientId);
+    return window != null && window.contains(sequence);
+  }
+
+  void markExecuted(long clientId, long sequence) {
+    executed.computeIfAbsent(clientId, id -> new ExecutedWindow()).add(sequence);
+  }
+
+  /**
+   * Откладывает запрос до исполнения его зависимости. Повтор уже отложенного запроса заменяет
+   * предыдущую запись.
+   *
+   * @return {@code false}, если отложенных запросов слишком много и запрос не принят.
+   */
+  boolean park(long messageId, MessageCodec codec, Request request) {
+    Key key = new Key(request.getClientId(), request.getSequence());
+    if (!parked.containsKey(key) && parked.size() >= maxParked) {
+      return false;
+    }
+    parked.put(key, new ParkedRequest(messageId, codec, request, System.nanoTime()));
+    return true;
+  }
+
+  /**
+   * Извлекает отложенный запрос, зависимость которого уже исполнена.
+   *
+   * @return Запрос или {@code null}, если таких нет.
+   */
+  ParkedRequest pollReady() {
+    Iterator<ParkedRequest> iterator = parked.values().iterator();
+    while (iterator.hasNext()) {
+      ParkedRequest next = iterator.next();
+      if (isExecuted(next.request.getClientId(), next.request.getDependsOn())) {
+        iterator.remove();
+        return next;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Извлекает отложенные запросы, зависимость которых так и не пришла.
+   *
+   * @return Просроченные запросы в порядке поступления.
+   */
+  List<ParkedRequest> pollExpired() {
+    if (parked.isEmpty()) {
+      return List.of();
+    }
+    long now = System.nanoTime();
+    List<ParkedRequest> expired = new ArrayList<>();
+    Iterator<ParkedRequest> iterator = parked.values().iterator();
+    while (iterator.hasNext()) {
+      ParkedRequest next = iterator.next();
+      if (now - next.parkedAt > parkedTimeoutNanos) {
+        iterator.remove();
+        expired.add(next);
+      }
+    }
+    return expired;
+  }
+
+  static final class ParkedRequest {
+    final long messageId;
+    final MessageCodec codec;
+    final Request request;
+    private final long parkedAt;
+
+    private ParkedRequest(long messageId, MessageCodec codec, Request request, long parkedAt) {
+      this.messageId = messageId;
+      this.codec = codec;
+      this.request = request;
+      this.parkedAt = parkedAt;
+    }
+  }
+
+  /** Номера последних исполненных запросов клиента. */
+  private static final class ExecutedWindow {
+    private final LinkedHashSet<Long> sequences = new LinkedHashSet<>();
+    private long evictedUpTo;
+
+    private boolean contains(long sequence) {
+      return sequence <= evictedUpTo || sequences.contains(sequence);
+    }
+
+    private void add(long sequence) {
+      sequences.add(sequence);
+      if (sequences.size() > EXECUTED_WINDOW) {
+        Iterator<Long> eldest = sequences.iterator();
+        evictedUpTo = Math.max(evictedUpTo, eldest.next());
+        eldest.remove();
+      }
+    }
+  }
+
+  private static final class Key {
+    private final long clientId;
+    private final long sequence;
+
+    private Key(long clientId, long sequence) {
+      this.clientId = clientId;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) return true;
+      if (!(other instanceof Key)) return false;
+      Key key = (Key) other;
+      return clientId == key.clientId && sequence == key.sequence;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(clientId) * 31 + Long.hashCode(sequence);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package server.pipeline;
+
+import common.network.WorkspacePool;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Способ исполнения очередей запросов клиентов ({@link RequestProcessor}).
+ *
+ * <p>Режим {@link #VIRTUAL} требует Java 21: виртуальные потоки создаются через {@code
+ * Executors.newVirtualThreadPerTaskExecutor()}, который ищется во время запуска, поэтому сервер
+ * по-прежнему собирается и работает на Java 17 в остальных режимах.
+ *
+ * <p>Рабочие объекты кодирования из {@link WorkspacePool} закрепляются за потоком. Платформенные
+ * потоки пула и поток селектора живут долго и держат их постоянно, а виртуальный поток создается на
+ * каждую задачу, поэтому в режиме {@link #VIRTUAL} объекты возвращаются в пул после каждой задачи.
+ */
+public enum ExecutionMode {
+  /** Ограниченный пул платформенных потоков. */
+  POOL,
+  /** Отдельный виртуальный поток на каждую обработку очереди клиента. */
+  VIRTUAL,
+  /** Исполнение прямо в потоке селектора, без передачи другим потокам. */
+  SINGLE;
+
+  /**
+   * Возвращает режим по имени без учета регистра.
+   *
+   * @throws IllegalArgumentException если режим неизвестен.
+   */
+  public static ExecutionMode forName(String name) {
+    for (ExecutionMode mode : values()) {
+      if (mode.name().equalsIgnoreCase(name)) {
+        return mode;
+      }
+    }
+    throw new IllegalArgumentException(
+        "Неизвестный режим исполнения: " + name + ". Доступны: pool, virtual, single.");
+  }
+
+  /**
+   * Создает исполнителя для этого режима.
+   *
+   * @param workerCount количество рабочих потоков в режиме {@link #POOL}.
+   * @param queueCapacity максимальное количество задач, ожидающих рабочий поток, в режиме {@link
+   *     #POOL}.
+   * @throws UnsupportedOperationException если режим не поддерживается текущей версией Java.
+   */
+  ExecutorService createExecutor(int workerCount, int queueCapacity) {
+    return switch (this) {
+      case POOL -> {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        yield new ThreadPoolExecutor(
+            workerCount,
+            workerCount,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> new Thread(runnable, "request-worker-" + threadNumber.getAndIncrement()));
+      }
+      case VIRTUAL -> new ReleasingExecutor(newVirtualThreadPerTaskExecutor());
+      case SINGLE -> new CallerRunsExecutor();
+    };
+  }
+
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    MethodHandle factory;
+    try {
+      factory =
+          MethodHandles.publicLookup()
+              .findStatic(
+                  Executors.class,
+                  "newVirtualThreadPerTaskExecutor",
+                  MethodType.methodType(ExecutorService.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new UnsupportedOperationException(
+          "Виртуальные потоки недоступны: требуется Java 21, запущена Java "
+              + Runtime.version().feature()
+              + ".");
+    }
+    try {
+      return (ExecutorService) factory.invokeExact();
+    } catch (Throwable e) {
+      throw new IllegalStateException("Не удалось создать виртуальные потоки: " + e, e);
+    }
+  }
+
+  /** Исполнитель, возвращающий рабочие объекты задачи в пулы после ее выполнения. */
+  private static final class ReleasingExecutor extends AbstractExecutorService {
+    private final ExecutorService delegate;
+
+    private ReleasingExecutor(ExecutorService delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      delegate.execute(
+          () -> {
+            try {
+              command.run();
+            } finally {
+              WorkspacePool.releaseAll();
+            }
+          });
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return delegate.awaitTermination(timeout, unit);
+    }
+  }
+
+  /** Исполнитель, выполняющий задачу в вызывающем потоке. */
+  private static final class CallerRunsExecutor extends AbstractExecutorService {
+    private volatile boolean shutdown;
+
+    @Override
+    public void execute(Runnable command) {
+      if (shutdown) {
+        throw new RejectedExecutionException("Исполнитель остановлен.");
+      }
+      command.run();
+    }
+
+    @Override
+    public void shutdown() {
+      shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      shutdown = true;
+      return List.of();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return shutdown;
+    }
+  }
+}
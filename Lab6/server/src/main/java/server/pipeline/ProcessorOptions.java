@@ -0,0 +1,120 @@
+package server.pipeline;
+
+import java.util.concurrent.locks.ReentrantLock;
+import server.metrics.ServerMetrics;
+
+/**
+ * Параметры стадий исполнения {@link RequestProcessor} и {@link StreamRequestExecutor}. Незаданные
+ * параметры имеют значения по умолчанию: собственная блокировка исполнения, без ограничения
+ * допуска, {@link ExecutionMode#POOL} с потоком на процессор, без подписок и с собственным реестром
+ * показателей.
+ */
+public final class ProcessorOptions {
+  /** Максимальное количество задач, ожидающих рабочий поток, по умолчанию. */
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+  private ReentrantLock executionLock = new ReentrantLock();
+  private AdmissionController admission = AdmissionController.unlimited();
+  private ExecutionMode executionMode = ExecutionMode.POOL;
+  private int workerCount = Runtime.getRuntime().availableProcessors();
+  private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+  private SubscriptionManager subscriptions;
+  private ServerMetrics metrics;
+
+  /**
+   * Задает блокировку, под которой по одной исполняются изменяющие команды. Стадии, работающие с
+   * одной коллекцией, должны использовать одну блокировку. Это не монитор {@code synchronized}:
+   * виртуальный поток, ждущий ее, освобождает поток-носитель.
+   *
+   * @param executionLock блокировка исполнения.
+   * @return Эти же параметры.
+   */
+  public ProcessorOptions executionLock(ReentrantLock executionLock) {
+    this.executionLock = executionLock;
+    return this;
+  }
+
+  /**
+   * @param admission допуск запросов к исполнению.
+   * @return Эти же параметры.
+   */
+  public ProcessorOptions admission(AdmissionController admission) {
+    this.admission = admission;
+    return this;
+  }
+
+  /**
+   * @param executionMode способ исполнения очередей клиентов.
+   * @return Эти же параметры.
+   */
+  public ProcessorOptions executionMode(ExecutionMode executionMode) {
+    this.executionMode = executionMode;
+    return this;
+  }
+
+  /**
+   * @param workerCount количество рабочих потоков в режиме {@link ExecutionMode#POOL}.
+   * @return Эти же параметры.
+   */
+  public ProcessorOptions workerCount(int workerCount) {
+    this.workerCount = workerCount;
+    return this;
+  }
+
+  /**
+   * @param queueCapacity максимальное количество задач (очередей клиентов или запросов по потоку),
+   *     ожидающих рабочий поток.
+   * @return Эти же параметры.
+   */
+  public ProcessorOptions queueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+    return this;
+  }
+
+  /**
+   * @param subscriptions подписки на изменения коллекции или {@code null}, если подписки не
+   *     поддерживаются.
+   * @return Эти же параметры.
+   */
+  public ProcessorOptions subscriptions(SubscriptionManager subscriptions) {
+    this.subscriptions = subscriptions;
+    return this;
+  }
+
+  /**
+   * @param metrics показатели сервера или {@code null}, чтобы стадия вела собственные.
+   * @return Эти же параметры.
+   */
+  public ProcessorOptions metrics(ServerMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  public ReentrantLock getExecutionLock() {
+    return executionLock;
+  }
+
+  public AdmissionController getAdmission() {
+    return admission;
+  }
+
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
+  public int getWorkerCount() {
+    return workerCount;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public SubscriptionManager getSubscriptions() {
+    return subscriptions;
+  }
+
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+}
@@ -0,0 +1,560 @@
+package server.pipeline;
+
+import common.exceptions.CommandExecuteException;
+import common.managers.CommandManager;
+import common.network.BufferPool;
+import common.network.BusyResponse;
+import common.network.Codecs;
+import common.network.Fragmenter;
+import common.network.FrameHeader;
+import common.network.MessageCodec;
+import common.network.PayloadCompressor;
+import common.network.Reassembler;
+import common.network.Request;
+import common.network.Response;
+import common.network.ResponseWithException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import server.metrics.CommandMetrics;
+import server.metrics.ServerMetrics;
+
+/**
+ * Стадия декодирования и исполнения запросов. Очереди клиентов исполняются согласно {@link
+ * ExecutionMode}: на ограниченном пуле рабочих потоков, на виртуальных потоках или прямо в потоке
+ * селектора.
+ *
+ * <p>Запросы одного клиента попадают в его очередь ({@link ClientStrand}) и обрабатываются строго
+ * последовательно, поэтому порядок запросов и ответов для каждого клиента сохраняется, а запросы
+ * разных клиентов исполняются параллельно.
+ *
+ * <p>Каждая датаграмма — кадр {@link FrameHeader}. Многофрагментные запросы собираются в очереди
+ * клиента, а последние отправленные многофрагментные ответы хранятся в ней же, чтобы по кадру
+ * {@link FrameHeader#NACK} переотправить только потерянные фрагменты. Число фрагментов запроса и
+ * объем незавершенных запросов ограничены для каждого клиента и для всех клиентов вместе, чтобы
+ * кадры незавершенных запросов не могли занять память сервера. Ответ кодируется тем же кодеком, что
+ * и запрос; запрос с неизвестным кодеком получает ответ с ошибкой в формате сериализации Java,
+ * понятном любому клиенту.
+ *
+ * <p>Ответы на идентифицированные запросы ({@link Request#isIdentified()}) сохраняются в {@link
+ * ResponseCache}: повтор запроса получает те же байты ответа без повторного исполнения команды.
+ * Запрос, пришедший раньше запроса, от которого он зависит, откладывается ({@link
+ * DependencyTracker}).
+ *
+ * <p>Изменяющие команды, а также оформление подписок исполняются под блокировкой исполнения по
+ * одному. Читающие команды исполняются без него, параллельно друг с другом и с изменениями, поэтому
+ * менеджер коллекции должен быть потокобезопасным.
+ *
+ * <p>Перед исполнением запрос проходит {@link AdmissionController}: время приема каждого кадра
+ * запоминается, и запрос, который уже не успеет исполниться в срок, получает {@link BusyResponse}.
+ *
+ * <p>Ответы клиентам, отметившим кадры запроса флагом {@link FrameHeader#ACCEPTS_COMPRESSED},
+ * сжимаются {@link PayloadCompressor}, если это выгодно.
+ *
+ * <p>Команды {@code subscribe} и {@code unsubscribe} оформляют и отменяют подписку клиента в {@link
+ * SubscriptionManager} под блокировкой исполнения, а любой запрос клиента продлевает его подписку.
+ *
+ * <p>Время декодирования и кодирования, объем кадров и задержка каждой команды от приема кадра до
+ * отправки ответа записываются в {@link ServerMetrics}.
+ *
+ * <p>Кадры передаются в буферах из {@link BufferPool}: принятый кадр возвращается в пул после
+ * обработки, а кадры ответа записываются в буферы пула и возвращаются в него стадией отправки.
+ *
+ * <p>Метод {@link #submit(SocketAddress, ByteBuffer)} вызывается только из потока селектора.
+ */
+public class RequestProcessor {
+  private static final Logger logger = LogManager.getLogger();
+  private static final int MAX_DRAIN = 32;
+  private static final int MAX_PENDING_PER_CLIENT = 1024;
+  private static final long STRAND_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final long EVICTION_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(10);
+  private static final int SHUTDOWN_TIMEOUT_SEC = 10;
+  private static final int MAX_PARTIAL_REQUESTS = 64;
+  // Запросы — одна команда или пакет, помещающийся в один кадр, поэтому многофрагментный запрос
+  // бывает только с большим билетом: 64 фрагментов (около 88 КБ) хватает с запасом.
+  private static final int MAX_REQUEST_FRAGMENTS = 64;
+  private static final long MAX_PARTIAL_BYTES_PER_CLIENT = 256L * 1024;
+  private static final long MAX_PARTIAL_BYTES = 64L * 1024 * 1024;
+  private static final int MAX_PARKED_REQUESTS = 256;
+  private static final long PARKED_REQUEST_NANOS = TimeUnit.SECONDS.toNanos(30);
+  private static final int MAX_RETAINED_RESPONSES = 64;
+  private static final long RETAINED_RESPONSE_NANOS = TimeUnit.SECONDS.toNanos(30);
+  private static final int CACHED_RESPONSES = 16_384;
+  private static final long CACHED_RESPONSE_BYTES = 64L * 1024 * 1024;
+  private static final long CACHED_RESPONSE_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+  private final CommandManager commandManager;
+  private final ReentrantLock executionLock;
+  private final ResponseSender sender;
+  private final BufferPool bufferPool;
+  private final AdmissionController admission;
+  private final ExecutorService workers;
+  private final SubscriptionManager subscriptions;
+  private final ServerMetrics metrics;
+  private final Map<SocketAddress, ClientStrand> strands = new HashMap<>();
+  // Очереди, которые не удалось поставить в пул; используется только потоком селектора.
+  private final Set<ClientStrand> stalledStrands = new LinkedHashSet<>();
+  private final ResponseCache responseCache =
+      new ResponseCache(CACHED_RESPONSES, CACHED_RESPONSE_BYTES, CACHED_RESPONSE_NANOS);
+  private final PayloadCompressor compressor = new PayloadCompressor();
+  private final Reassembler.Budget partialBudget = new Reassembler.Budget(MAX_PARTIAL_BYTES);
+  private long lastEviction = System.nanoTime();
+
+  /**
+   * @param commandManager менеджер команд.
+   * @param sender стадия отправки ответов.
+   * @param bufferPool пул буферов для кадров.
+   * @param options блокировка исполнения, допуск, способ исполнения, подписки и показатели.
+   * @throws UnsupportedOperationException если режим не поддерживается текущей версией Java.
+   */
+  public RequestProcessor(
+      CommandManager commandManager,
+      ResponseSender sender,
+      BufferPool bufferPool,
+      ProcessorOptions options) {
+    this.subscriptions = options.getSubscriptions();
+    this.metrics =
+        options.getMetrics() != null
+            ? options.getMetrics()
+            : new ServerMetrics(commandManager.getCommandList().keySet(), () -> 0);
+    this.commandManager = commandManager;
+    this.executionLock = options.getExecutionLock();
+    this.sender = sender;
+    this.bufferPool = bufferPool;
+    this.admission = options.getAdmission();
+    this.workers =
+        options
+            .getExecutionMode()
+            .createExecutor(options.getWorkerCount(), options.getQueueCapacity());
+  }
+
+  /**
+   * Ставит кадр в очередь клиента. Буфер переходит во владение обработчика и будет возвращен в пул.
+   *
+   * @param address адрес клиента.
+   * @param frame принятый кадр, готовый к чтению.
+   */
+  public void submit(SocketAddress address, ByteBuffer frame) {
+    strands.computeIfAbsent(address, ClientStrand::new).offer(frame);
+  }
+
+  /**
+   * Повторно ставит в пул очереди клиентов, которым при приеме кадра не хватило места в пуле. Без
+   * этого кадры такой очереди ждали бы следующей датаграммы от того же клиента. Вызывается потоком
+   * селектора на каждой итерации.
+   */
+  public void retryStalledStrands() {
+    Iterator<ClientStrand> iterator = stalledStrands.iterator();
+    while (iterator.hasNext()) {
+      ClientStrand strand = iterator.next();
+      if (strand.pending.isEmpty() || !strand.scheduled.compareAndSet(false, true)) {
+        // Очередь уже исполняется или исполнена после следующего кадра.
+        iterator.remove();
+      } else if (strand.resubmit()) {
+        iterator.remove();
+      } else {
+        strand.scheduled.set(false);
+        return;
+      }
+    }
+  }
+
+  /** Периодически удаляет очереди клиентов, от которых давно не было запросов. */
+  public void evictIdleStrands() {
+    long now = System.nanoTime();
+    if (now - lastEviction < EVICTION_PERIOD_NANOS) {
+      return;
+    }
+    lastEviction = now;
+    Iterator<ClientStrand> iterator = strands.values().iterator();
+    while (iterator.hasNext()) {
+      ClientStrand strand = iterator.next();
+      if (strand.isIdle() && now - strand.lastActivity > STRAND_IDLE_NANOS) {
+        iterator.remove();
+        // Очередь простаивает, поэтому ее сборщик сейчас не используется другим потоком.
+        strand.reassembler.clear();
+      }
+    }
+  }
+
+  /** Дожидается завершения уже принятых запросов и останавливает рабочие потоки. */
+  public void shutdown() throws InterruptedException {
+    workers.shutdown();
+    if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+      logger.warn("Не все запросы были обработаны до завершения работы сервера.");
+      workers.shutdownNow();
+    }
+  }
+
+  /** Очередь запросов одного клиента, которая исполняется не более чем одним потоком за раз. */
+  private final class ClientStrand implements Runnable {
+    private final SocketAddress address;
+    private final BlockingQueue<ByteBuffer> pending =
+        new ArrayBlockingQueue<>(MAX_PENDING_PER_CLIENT);
+    // Время приема кадров в порядке очереди. Записывает только поток селектора перед постановкой
+    // кадра в очередь, читает только поток, извлекший кадр, поэтому очередь упорядочивает доступ.
+    private final long[] arrivals = new long[MAX_PENDING_PER_CLIENT];
+    private int arrivalTail;
+    private int arrivalHead;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Reassembler reassembler =
+        new Reassembler(
+            MAX_PARTIAL_REQUESTS,
+            MAX_REQUEST_FRAGMENTS,
+            MAX_PARTIAL_BYTES_PER_CLIENT,
+            partialBudget);
+    private final DependencyTracker dependencies =
+        new DependencyTracker(MAX_PARKED_REQUESTS, PARKED_REQUEST_NANOS);
+    private final Map<Long, RetainedResponse> retainedResponses =
+        new LinkedHashMap<>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Long, RetainedResponse> eldest) {
+            return size() > MAX_RETAINED_RESPONSES;
+          }
+        };
+    private long lastActivity = System.nanoTime();
+    private boolean acceptsCompressed;
+
+    private ClientStrand(SocketAddress address) {
+      this.address = address;
+    }
+
+    private void offer(ByteBuffer frame) {
+      lastActivity = System.nanoTime();
+      // Место проверяется до записи времени: в заполненной очереди слот времени еще не прочитан.
+      // Кадры ставит в очередь только поток селектора, поэтому место не может исчезнуть.
+      if (pending.remainingCapacity() == 0) {
+        bufferPool.release(frame);
+        logger.warn("Очередь запросов клиента " + address + " переполнена, запрос отброшен.");
+        return;
+      }
+      arrivals[arrivalTail] = lastActivity;
+      arrivalTail = (arrivalTail + 1) % MAX_PENDING_PER_CLIENT;
+      pending.add(frame);
+      if (scheduled.compareAndSet(false, true) && !resubmit()) {
+        // Запрос остается в очереди клиента, а очередь будет поставлена в пул повторно.
+        scheduled.set(false);
+        stalledStrands.add(this);
+        logger.warn("Пул рабочих потоков переполнен, обработка запросов " + address + " отложена.");
+      }
+    }
+
+    private boolean isIdle() {
+      return !scheduled.get() && pending.isEmpty();
+    }
+
+    private boolean resubmit() {
+      try {
+        workers.execute(this);
+        return true;
+      } catch (RejectedExecutionException e) {
+        return false;
+      }
+    }
+
+    @Override
+    public void run() {
+      do {
+        ByteBuffer frame;
+        int processed = 0;
+        while (processed < MAX_DRAIN && (frame = pending.poll()) != null) {
+          long arrivedAt = arrivals[arrivalHead];
+          arrivalHead = (arrivalHead + 1) % MAX_PENDING_PER_CLIENT;
+          try {
+            process(frame, arrivedAt);
+          } finally {
+            bufferPool.release(frame);
+          }
+          processed++;
+        }
+        scheduled.set(false);
+        // Если пул переполнен или остановлен, оставшиеся запросы дорабатываются в текущем потоке.
+      } while (!pending.isEmpty() && scheduled.compareAndSet(false, true) && !resubmit());
+    }
+
+    private void process(ByteBuffer frame, long arrivedAt) {
+      try {
+        metrics.addBytesIn(frame.remaining());
+        expireParked();
+        FrameHeader header = FrameHeader.read(frame);
+        if (header.getType() == FrameHeader.NACK) {
+          resendFragments(header.getMessageId(), Fragmenter.readNack(header, frame));
+          return;
+        }
+        acceptsCompressed = header.acceptsCompressed();
+
+        MessageCodec codec = Codecs.forId(header.getCodecId());
+        if (codec == null) {
+          sendResponse(
+              header.getMessageId(),
+              Codecs.SERIALIZATION,
+              new ResponseWithException(
+                  new CommandExecuteException("Неподдерживаемый кодек " + header.getCodecId())));
+          return;
+        }
+
+        ByteBuffer message = reassembler.accept(header, frame);
+        if (message == null) {
+          return;
+        }
+
+        long decodeStarted = System.nanoTime();
+        Request request = (Request) codec.decode(message);
+        metrics.recordDecode(System.nanoTime() - decodeStarted);
+        logger.info("Сервер получил запрос с командой " + request.getCommandName());
+        if (subscriptions != null) {
+          subscriptions.touch(address);
+        }
+
+        if (request.isIdentified()) {
+          ResponseCache.CachedResponse cached =
+              responseCache.get(address, request.getClientId(), request.getSequence());
+          if (cached != null) {
+            dependencies.markExecuted(request.getClientId(), request.getSequence());
+            sendPayload(header.getMessageId(), cached.getFlags(), cached.getPayload(), true);
+            logger.info(
+                "Повтор запроса "
+                    + request.getSequence()
+                    + " клиента "
+                    + request.getClientId()
+                    + ", отправлен сохраненный ответ.");
+            return;
+          }
+        }
+
+        if (!isDependencyExecuted(request)) {
+          if (dependencies.park(header.getMessageId(), codec, request)) {
+            logger.info(
+                "Запрос "
+                    + request.getSequence()
+                    + " отложен до исполнения запроса "
+                    + request.getDependsOn());
+          } else {
+            sendResponse(
+                header.getMessageId(),
+                codec,
+                new ResponseWithException(
+                    new CommandExecuteException("Слишком много запросов ожидают предыдущих.")));
+          }
+          return;
+        }
+
+        execute(header.getMessageId(), codec, request, arrivedAt);
+        DependencyTracker.ParkedRequest ready;
+        while ((ready = dependencies.pollReady()) != null) {
+          // Отложенный запрос ждал предыдущего запроса клиента, а не очереди сервера.
+          execute(ready.messageId, ready.codec, ready.request, System.nanoTime());
+        }
+      } catch (IOException | ClassNotFoundException | ClassCastException e) {
+        logger.error("Возникла ошибка на сервере: " + e.getMessage());
+      } catch (IllegalArgumentException e) {
+        logger.warn("Отброшен некорректный кадр от " + address + ": " + e.getMessage());
+      } catch (RuntimeException e) {
+        logger.error("Ошибка при исполнении запроса от " + address + ": " + e);
+      }
+    }
+
+    private void execute(long messageId, MessageCodec codec, Request request, long arrivedAt)
+        throws IOException {
+      CommandMetrics commandMetrics = metrics.command(request.getCommandName());
+      commandMetrics.begin();
+      Response response = null;
+      long serviceNanos = 0;
+      try {
+        // Подписка оформляется под блокировкой исполнения, поэтому для допуска она — изменяющий
+        // запрос.
+        boolean readOnly =
+            commandManager.isReadOnly(request)
+                && !SubscriptionManager.isSubscriptionRequest(request);
+        BusyResponse rejection = admission.tryAdmit(readOnly, System.nanoTime() - arrivedAt);
+        if (rejection != null) {
+          response = rejection;
+          // Отказ не сохраняется в кэше: повтор запроса с тем же номером будет исполнен.
+          sendResponse(messageId, codec, rejection);
+          logger.info(
+              "Запрос "
+                  + request.getCommandName()
+                  + " от "
+                  + address
+                  + " отклонен: "
+                  + rejection.getMessage());
+          return;
+        }
+
+        try {
+          if (readOnly) {
+            // Читающие команды исполняются параллельно: менеджер коллекции сам защищает чтение.
+            long started = System.nanoTime();
+            response = commandManager.executeRequest(request, address);
+            serviceNanos = System.nanoTime() - started;
+          } else {
+            executionLock.lock();
+            try {
+              long started = System.nanoTime();
+              response = executeLocked(codec, request);
+              serviceNanos = System.nanoTime() - started;
+            } finally {
+              executionLock.unlock();
+            }
+          }
+        } finally {
+          admission.complete(readOnly, serviceNanos);
+        }
+        sendExecuted(messageId, codec, request, response);
+      } finally {
+        commandMetrics.end(response, System.nanoTime() - arrivedAt, serviceNanos);
+      }
+    }
+
+    private void sendExecuted(
+        long messageId, MessageCodec codec, Request request, Response response) throws IOException {
+      long encodeStarted = System.nanoTime();
+      ByteBuffer encoded = codec.encode(response);
+      ByteBuffer payload = compress(encoded);
+      metrics.recordEncode(System.nanoTime() - encodeStarted);
+      byte flags = flags(codec, payload != encoded);
+      boolean identified = request.isIdentified();
+      if (identified) {
+        // Буфер кодека переиспользуется следующим ответом, поэтому в кэш попадает копия.
+        payload = copy(payload);
+        responseCache.put(address, request.getClientId(), request.getSequence(), payload, flags);
+        dependencies.markExecuted(request.getClientId(), request.getSequence());
+      }
+      sendPayload(messageId, flags, payload, identified);
+      logger.info("Сервер отправил ответ: " + response.getMessage());
+    }
+
+    /**
+     * Исполняет запрос под блокировкой исполнения, оформив перед этим подписку, если она запрошена.
+     */
+    private Response executeLocked(MessageCodec codec, Request request) {
+      String error;
+      if (subscriptions != null) {
+        error = subscriptions.apply(request, address, codec, acceptsCompressed, sender, bufferPool);
+      } else {
+        error =
+            SubscriptionManager.isSubscriptionRequest(request)
+                ? "Сервер не поддерживает подписки."
+                : null;
+      }
+      if (error != null) {
+        return new ResponseWithException(new CommandExecuteException(error));
+      }
+      return commandManager.executeRequest(request, address);
+    }
+
+    private boolean isDependencyExecuted(Request request) {
+      long dependsOn = request.getDependsOn();
+      return dependsOn == 0
+          || dependencies.isExecuted(request.getClientId(), dependsOn)
+          || responseCache.get(address, request.getClientId(), dependsOn) != null;
+    }
+
+    /** Отвечает ошибкой на отложенные запросы, предыдущий запрос которых так и не пришел. */
+    private void expireParked() throws IOException {
+      for (DependencyTracker.ParkedRequest expired : dependencies.pollExpired()) {
+        logger.warn(
+            "Запрос "
+                + expired.request.getSequence()
+                + " от "
+                + address
+                + " не дождался предыдущего.");
+        sendResponse(
+            expired.messageId,
+            expired.codec,
+            new ResponseWithException(
+                new CommandExecuteException(
+                    "Не получен запрос "
+                        + expired.request.getDependsOn()
+                        + ", после которого должен быть исполнен этот запрос.")));
+      }
+    }
+
+    private void sendResponse(long messageId, MessageCodec codec, Response response)
+        throws IOException {
+      ByteBuffer encoded = codec.encode(response);
+      ByteBuffer payload = compress(encoded);
+      sendPayload(messageId, flags(codec, payload != encoded), payload, false);
+    }
+
+    /** Сжимает ответ, если клиент принимает сжатые ответы и сжатие выгодно. */
+    private ByteBuffer compress(ByteBuffer payload) {
+      return acceptsCompressed ? compressor.compress(payload) : payload;
+    }
+
+    private byte flags(MessageCodec codec, boolean compressed) {
+      return (byte) (compressed ? codec.getId() | FrameHeader.COMPRESSED : codec.getId());
+    }
+
+    /**
+     * Отправляет закодированный ответ по кадрам.
+     *
+     * @param stable {@code true}, если буфер не будет изменен и его можно хранить без копирования.
+     */
+    private void sendPayload(long messageId, byte flags, ByteBuffer payload, boolean stable) {
+      int count = Fragmenter.fragmentCount(payload.remaining());
+      if (count > 1) {
+        // Буфер кодека переиспользуется следующим ответом, поэтому для переотправки нужна копия.
+        ByteBuffer retained = stable ? payload : copy(payload);
+        retainedResponses.put(messageId, new RetainedResponse(retained, flags, System.nanoTime()));
+      }
+      for (int i = 0; i < count; i++) {
+        sendFragment(messageId, flags, payload, i);
+      }
+    }
+
+    private void resendFragments(long messageId, int[] indices) {
+      RetainedResponse response = retainedResponses.get(messageId);
+      if (response == null || System.nanoTime() - response.createdAt > RETAINED_RESPONSE_NANOS) {
+        retainedResponses.remove(messageId);
+        logger.warn("Запрошены фрагменты неизвестного ответа " + messageId + " от " + address);
+        return;
+      }
+      int count = Fragmenter.fragmentCount(response.payload.remaining());
+      for (int index : indices) {
+        if (index >= 0 && index < count) {
+          sendFragment(messageId, response.flags, response.payload, index);
+        }
+      }
+      logger.info("Переотправлено " + indices.length + " фрагментов ответа " + messageId);
+    }
+
+    private void sendFragment(long messageId, byte flags, ByteBuffer payload, int index) {
+      ByteBuffer frame =
+          Fragmenter.writeFragment(bufferPool.acquire(), messageId, flags, payload, index);
+      metrics.addBytesOut(frame.remaining());
+      sender.send(frame, address);
+    }
+  }
+
+  private static ByteBuffer copy(ByteBuffer payload) {
+    return ByteBuffer.allocate(payload.remaining()).put(payload.duplicate()).flip();
+  }
+
+  private static final class RetainedResponse {
+    private final ByteBuffer payload;
+    private final byte flags;
+    private final long createdAt;
+
+    private RetainedResponse(ByteBuffer payload, byte flags, long createdAt) {
+      this.payload = payload;
+      this.flags = flags;
+      this.createdAt = createdAt;
+    }
+  }
+}
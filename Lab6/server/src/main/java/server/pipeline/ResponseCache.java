@@ -0,0 +1,146 @@
+package server.pipeline;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Кэш закодированных ответов на идентифицированные запросы для подавления повторов.
+ *
+ * <p>Ключ — адрес отправителя, идентификатор клиента и номер запроса. Клиент, не дождавшийся
+ * ответа, повторяет запрос с того же адреса с той же парой номеров, и сервер отправляет сохраненные
+ * байты ответа, не исполняя команду снова. Поэтому повтор {@code add} или {@code remove_head} не
+ * меняет коллекцию дважды, а стоит один поиск в таблице. Идентификатор клиента выбирается самим
+ * клиентом, поэтому без адреса в ключе другой клиент с совпавшим идентификатором получил бы чужой
+ * ответ вместо исполнения своей команды.
+ *
+ * <p>Размер кэша ограничен количеством записей и суммарным объемом ответов; записи старше заданного
+ * времени удаляются. Записи хранятся в порядке добавления, поэтому вытесняются всегда самые старые.
+ */
+public class ResponseCache {
+  private final int maxEntries;
+  private final long maxBytes;
+  private final long ttlNanos;
+  private final LinkedHashMap<Key, CachedResponse> entries = new LinkedHashMap<>();
+  private long totalBytes;
+
+  /**
+   * @param maxEntries максимальное количество ответов в кэше.
+   * @param maxBytes максимальный суммарный размер закодированных ответов.
+   * @param ttlNanos время хранения ответа в наносекундах.
+   */
+  public ResponseCache(int maxEntries, long maxBytes, long ttlNanos) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.ttlNanos = ttlNanos;
+  }
+
+  /**
+   * Возвращает сохраненный ответ на запрос.
+   *
+   * @param address адрес клиента.
+   * @param clientId идентификатор клиента.
+   * @param sequence номер запроса.
+   * @return Ответ или {@code null}, если запрос еще не исполнялся или ответ уже вытеснен.
+   */
+  public synchronized CachedResponse get(SocketAddress address, long clientId, long sequence) {
+    evictExpired(System.nanoTime());
+    return entries.get(new Key(address, clientId, sequence));
+  }
+
+  /**
+   * Сохраняет закодированный ответ. Буфер не должен изменяться после сохранения.
+   *
+   * @param address адрес клиента.
+   * @param clientId идентификатор клиента.
+   * @param sequence номер запроса.
+   * @param payload закодированный ответ.
+   * @param flags флаги кадров ответа, в том числе идентификатор кодека.
+   */
+  public synchronized void put(
+      SocketAddress address, long clientId, long sequence, ByteBuffer payload, byte flags) {
+    int size = payload.remaining();
+    if (size > maxBytes) {
+      return;
+    }
+    long now = System.nanoTime();
+    Key key = new Key(address, clientId, sequence);
+    // Повторная запись переносится в конец, чтобы порядок записей совпадал с порядком времени.
+    CachedResponse previous = entries.remove(key);
+    entries.put(key, new CachedResponse(payload, flags, now));
+    if (previous != null) {
+      totalBytes -= previous.payload.remaining();
+    }
+    totalBytes += size;
+    evictExpired(now);
+    Iterator<CachedResponse> iterator = entries.values().iterator();
+    while ((entries.size() > maxEntries || totalBytes > maxBytes) && iterator.hasNext()) {
+      totalBytes -= iterator.next().payload.remaining();
+      iterator.remove();
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private void evictExpired(long now) {
+    Iterator<CachedResponse> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      CachedResponse response = iterator.next();
+      if (now - response.createdAt <= ttlNanos) {
+        return;
+      }
+      totalBytes -= response.payload.remaining();
+      iterator.remove();
+    }
+  }
+
+  /** Сохраненный ответ: байты сообщения и флаги, с которыми оно было отправлено. */
+  public static final class CachedResponse {
+    private final ByteBuffer payload;
+    private final byte flags;
+    private final long createdAt;
+
+    private CachedResponse(ByteBuffer payload, byte flags, long createdAt) {
+      this.payload = payload;
+      this.flags = flags;
+      this.createdAt = createdAt;
+    }
+
+    /** Возвращает представление ответа с собственной позицией, безопасное для чтения. */
+    public ByteBuffer getPayload() {
+      return payload.duplicate();
+    }
+
+    public byte getFlags() {
+      return flags;
+    }
+  }
+
+  private static final class Key {
+    private final SocketAddress address;
+    private final long clientId;
+    private final long sequence;
+
+    private Key(SocketAddress address, long clientId, long sequence) {
+      this.address = address;
+      this.clientId = clientId;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) return true;
+      if (!(other instanceof Key)) return false;
+      Key key = (Key) other;
+      return clientId == key.clientId && sequence == key.sequence && address.equals(key.address);
+    }
+
+    @Override
+    public int hashCode() {
+      return (address.hashCode() * 31 + Long.hashCode(clientId)) * 31 + Long.hashCode(sequence);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package server.pipeline;
+
+import common.network.BufferPool;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Стадия отправки ответов.
+ *
+ * <p>Рабочие потоки только ставят готовые ответы в очередь, а запись в канал выполняет один
+ * отдельный поток, поэтому поток селектора никогда не блокируется на отправке.
+ *
+ * <p>Очередь ограничена: если канал не успевает отправлять, рабочие потоки ждут освобождения места
+ * вместо неограниченного накопления ответов в памяти. После отправки буфер кадра возвращается в
+ * {@link BufferPool}.
+ *
+ * <p>Если буфер сокета переполнен, поток отправки ждет с нарастающими паузами, а после {@value
+ * #MAX_SEND_ATTEMPTS} попыток или при остановке отбрасывает датаграмму: клиент по UDP все равно
+ * повторяет запрос, не получив ответа.
+ */
+public class ResponseSender implements Runnable {
+  private static final Logger logger = LogManager.getLogger();
+  private static final int POLL_TIMEOUT_MS = 100;
+  private static final int QUEUE_CAPACITY = 4096;
+  private static final int MAX_SEND_ATTEMPTS = 32;
+  private static final long MIN_SEND_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+  private static final long MAX_SEND_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final DatagramChannel channel;
+  private final BufferPool bufferPool;
+  private final BlockingQueue<OutgoingDatagram> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final Thread thread;
+  private volatile boolean isRunning = true;
+
+  public ResponseSender(DatagramChannel channel, BufferPool bufferPool) {
+    this.channel = channel;
+    this.bufferPool = bufferPool;
+    this.thread = new Thread(this, "response-sender");
+  }
+
+  public void start() {
+    thread.start();
+  }
+
+  /**
+   * Ставит кадр в очередь на отправку. Буфер переходит во владение стадии отправки.
+   *
+   * @param data кадр, готовый к отправке.
+   * @param address адрес получателя.
+   */
+  public void send(ByteBuffer data, SocketAddress address) {
+    try {
+      queue.put(new OutgoingDatagram(data, address));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      bufferPool.release(data);
+      logger.warn("Отправка ответа клиенту " + address + " прервана.");
+    }
+  }
+
+  /**
+   * Ставит кадр в очередь на отправку, если в ней есть место. Используется для уведомлений, которые
+   * можно потерять, но нельзя ждать.
+   *
+   * @param data кадр, готовый к отправке. Если кадр не принят, буфер возвращается в пул.
+   * @param address адрес получателя.
+   * @return {@code false}, если очередь заполнена.
+   */
+  public boolean offer(ByteBuffer data, SocketAddress address) {
+    if (queue.offer(new OutgoingDatagram(data, address))) {
+      return true;
+    }
+    bufferPool.release(data);
+    return false;
+  }
+
+  @Override
+  public void run() {
+    while (isRunning || !queue.isEmpty()) {
+      try {
+        OutgoingDatagram datagram = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (datagram != null) {
+          write(datagram);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void write(OutgoingDatagram datagram) {
+    try {
+      // Неблокирующий канал может не принять датаграмму при переполненном буфере сокета.
+      long backoff = MIN_SEND_BACKOFF_NANOS;
+      for (int attempt = 1; channel.send(datagram.data, datagram.address) == 0; attempt++) {
+        if (attempt == MAX_SEND_ATTEMPTS || !isRunning) {
+          logger.warn("Буфер сокета переполнен, ответ клиенту " + datagram.address + " отброшен.");
+          return;
+        }
+        LockSupport.parkNanos(backoff);
+        backoff = Math.min(backoff * 2, MAX_SEND_BACKOFF_NANOS);
+      }
+    } catch (IOException e) {
+      logger.error(
+          "Не удалось отправить ответ клиенту " + datagram.address + ": " + e.getMessage());
+    } finally {
+      bufferPool.release(datagram.data);
+    }
+  }
+
+  /**
+   * Отправляет оставшиеся в очереди ответы и останавливает поток. Ответы, которые сокет не
+   * принимает сразу, отбрасываются без ожидания.
+   */
+  public void shutdown() throws InterruptedException {
+    isRunning = false;
+    thread.join();
+  }
+
+  private static final class OutgoingDatagram {
+    private final ByteBuffer data;
+    private final SocketAddress address;
+
+    private OutgoingDatagram(ByteBuffer data, SocketAddress address) {
+      this.data = data;
+      this.address = address;
+    }
+  }
+}
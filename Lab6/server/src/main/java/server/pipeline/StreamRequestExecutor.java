@@ -0,0 +1,206 @@
+package server.pipeline;
+
+import common.exceptions.CommandExecuteException;
+import common.managers.CommandManager;
+import common.network.BusyResponse;
+import common.network.Codecs;
+import common.network.FrameHeader;
+import common.network.MessageCodec;
+import common.network.PayloadCompressor;
+import common.network.Request;
+import common.network.Response;
+import common.network.ResponseWithException;
+import common.network.StreamFrames;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import server.metrics.CommandMetrics;
+import server.metrics.ServerMetrics;
+
+/**
+ * Исполнение запросов, принятых потоковым транспортом.
+ *
+ * <p>Запросы исполняются тем же {@link CommandManager} под той же блокировкой исполнения и проходят
+ * тот же {@link AdmissionController}, что и запросы по UDP; читающие команды так же исполняются без
+ * блокировки. Поток доставляет запрос ровно один раз и в порядке отправки, поэтому кэш ответов,
+ * отложенные запросы и переотправка здесь не нужны.
+ *
+ * <p>Показатели запросов попадают в тот же {@link ServerMetrics}, что и показатели запросов по UDP.
+ */
+public class StreamRequestExecutor {
+  private static final Logger logger = LogManager.getLogger();
+  private static final int SHUTDOWN_TIMEOUT_SEC = 10;
+  private static final long REJECTED_RETRY_AFTER_MILLIS = 100;
+
+  private final CommandManager commandManager;
+  private final ReentrantLock executionLock;
+  private final AdmissionController admission;
+  private final ExecutorService workers;
+  private final PayloadCompressor compressor = new PayloadCompressor();
+  private final ServerMetrics metrics;
+
+  /**
+   * @param commandManager менеджер команд.
+   * @param options блокировка исполнения, допуск, способ исполнения и показатели; подписки по
+   *     потоку не оформляются.
+   * @throws UnsupportedOperationException если режим не поддерживается текущей версией Java.
+   */
+  public StreamRequestExecutor(CommandManager commandManager, ProcessorOptions options) {
+    this.metrics =
+        options.getMetrics() != null
+            ? options.getMetrics()
+            : new ServerMetrics(commandManager.getCommandList().keySet(), () -> 0);
+    this.commandManager = commandManager;
+    this.executionLock = options.getExecutionLock();
+    this.admission = options.getAdmission();
+    this.workers =
+        options
+            .getExecutionMode()
+            .createExecutor(options.getWorkerCount(), options.getQueueCapacity());
+  }
+
+  /**
+   * Исполняет запрос в рабочем потоке и передает кадр ответа получателю.
+   *
+   * @param client адрес клиента.
+   * @param flags флаги кадра запроса.
+   * @param payload закодированный запрос; буфер переходит во владение исполнителя.
+   * @param arrivedAt момент приема запроса по {@link System#nanoTime()}.
+   * @param onResponse получатель кадра ответа, вызывается из рабочего потока; получает {@code
+   *     null}, если ответ не удалось закодировать и соединение нужно закрыть.
+   */
+  public void submit(
+      SocketAddress client,
+      byte flags,
+      ByteBuffer payload,
+      long arrivedAt,
+      Consumer<ByteBuffer> onResponse) {
+    try {
+      workers.execute(
+          () -> {
+            ByteBuffer frame = null;
+            try {
+              frame = execute(client, flags, payload, arrivedAt);
+            } catch (RuntimeException e) {
+              logger.error("Ошибка при обработке запроса из потока: " + e);
+            } finally {
+              onResponse.accept(frame);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      MessageCodec codec = Codecs.forId(flags & FrameHeader.CODEC_MASK);
+      onResponse.accept(
+          encode(
+              codec != null ? codec : Codecs.SERIALIZATION,
+              flags,
+              new BusyResponse(REJECTED_RETRY_AFTER_MILLIS)));
+    }
+  }
+
+  private ByteBuffer execute(SocketAddress client, byte flags, ByteBuffer payload, long arrivedAt) {
+    MessageCodec codec = Codecs.forId(flags & FrameHeader.CODEC_MASK);
+    if (codec == null) {
+      return encode(
+          Codecs.SERIALIZATION,
+          flags,
+          new ResponseWithException(
+              new CommandExecuteException(
+                  "Неподдерживаемый кодек " + (flags & FrameHeader.CODEC_MASK))));
+    }
+
+    Request request;
+    metrics.addBytesIn(payload.remaining());
+    try {
+      long decodeStarted = System.nanoTime();
+      request = (Request) codec.decode(payload);
+      metrics.recordDecode(System.nanoTime() - decodeStarted);
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      logger.warn("Не удалось декодировать запрос из потока: " + e.getMessage());
+      return encode(
+          codec,
+          flags,
+          new ResponseWithException(new CommandExecuteException("Некорректный запрос.")));
+    }
+    logger.info("Сервер получил по потоку запрос с командой " + request.getCommandName());
+    if (SubscriptionManager.isSubscriptionRequest(request)) {
+      // Уведомления отправляются датаграммами на адрес подписчика, а у соединения его нет.
+      return encode(
+          codec,
+          flags,
+          new ResponseWithException(
+              new CommandExecuteException("Подписка оформляется только по UDP.")));
+    }
+
+    CommandMetrics commandMetrics = metrics.command(request.getCommandName());
+    commandMetrics.begin();
+    Response response = null;
+    long serviceNanos = 0;
+    try {
+      boolean readOnly = commandManager.isReadOnly(request);
+      BusyResponse rejection = admission.tryAdmit(readOnly, System.nanoTime() - arrivedAt);
+      if (rejection != null) {
+        response = rejection;
+        return encode(codec, flags, rejection);
+      }
+      try {
+        if (readOnly) {
+          long started = System.nanoTime();
+          response = commandManager.executeRequest(request, client);
+          serviceNanos = System.nanoTime() - started;
+        } else {
+          executionLock.lock();
+          try {
+            long started = System.nanoTime();
+            response = commandManager.executeRequest(request, client);
+            serviceNanos = System.nanoTime() - started;
+          } finally {
+            executionLock.unlock();
+          }
+        }
+      } finally {
+        admission.complete(readOnly, serviceNanos);
+      }
+      logger.info("Сервер отправил по потоку ответ: " + response.getMessage());
+      return encode(codec, flags, response);
+    } finally {
+      commandMetrics.end(response, System.nanoTime() - arrivedAt, serviceNanos);
+    }
+  }
+
+  /** Кодирует ответ и, если клиент принимает сжатые ответы, сжимает его. */
+  private ByteBuffer encode(MessageCodec codec, byte requestFlags, Response response) {
+    try {
+      long started = System.nanoTime();
+      ByteBuffer encoded = codec.encode(response);
+      ByteBuffer payload =
+          (requestFlags & FrameHeader.ACCEPTS_COMPRESSED) != 0
+              ? compressor.compress(encoded)
+              : encoded;
+      byte flags =
+          (byte) (payload != encoded ? codec.getId() | FrameHeader.COMPRESSED : codec.getId());
+      metrics.recordEncode(System.nanoTime() - started);
+      // Кадр копируется из буферов потока: его отправит поток селектора.
+      ByteBuffer frame = StreamFrames.frame(flags, payload);
+      metrics.addBytesOut(frame.remaining());
+      return frame;
+    } catch (IOException e) {
+      throw new IllegalStateException("Не удалось закодировать ответ: " + e.getMessage(), e);
+    }
+  }
+
+  /** Дожидается завершения уже принятых запросов и останавливает рабочие потоки. */
+  public void shutdown() throws InterruptedException {
+    workers.shutdown();
+    if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+      logger.warn("Не все запросы из потоков были обработаны до завершения работы сервера.");
+      workers.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,415 @@
+package server.pipeline;
+
+import common.data.Ticket;
+import common.managers.ChangeLog;
+import common.managers.CollectionManager;
+import common.network.BatchRequest;
+import common.network.BufferPool;
+import common.network.ChangeNotification;
+import common.network.Fragmenter;
+import common.network.FrameHeader;
+import common.network.MessageCodec;
+import common.network.PayloadCompressor;
+import common.network.Request;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Подписки клиентов на изменения коллекции.
+ *
+ * <p>Коллекция сообщает об изменениях через {@link ChangeLog.ChangeListener} внутри изменения,
+ * поэтому на пути изменения событие только кладется в общую очередь. Поток рассылки раз в {@code
+ * PUBLISH_PERIOD_MS} раскладывает накопленные события по ограниченным очередям подписчиков и
+ * отправляет каждому не больше одного уведомления {@link ChangeNotification}: события одного
+ * элемента схлопываются в последнее, а уведомление помещается в одну датаграмму с флагом {@link
+ * FrameHeader#PUSH}.
+ *
+ * <p>Уведомления не подтверждаются и не переотправляются. Если очередь подписчика переполнилась,
+ * коллекция была очищена или стадия отправки не приняла кадр, события подписчика отбрасываются, и
+ * он получает уведомление со сбросом: дальше клиент догоняет коллекцию командой {@code show_since}.
+ * Так медленный подписчик не удерживает память сервера и не задерживает остальных.
+ *
+ * <p>Подписка продлевается любым запросом клиента и истекает через {@code LEASE_NANOS} без
+ * запросов.
+ */
+public class SubscriptionManager implements ChangeLog.ChangeListener {
+  private static final Logger logger = LogManager.getLogger();
+  private static final String SUBSCRIBE = "subscribe";
+  private static final String UNSUBSCRIBE = "unsubscribe";
+  private static final int MAX_SUBSCRIBERS = 1024;
+  private static final int SUBSCRIBER_QUEUE_CAPACITY = 256;
+  private static final int MAX_PENDING_EVENTS = 65_536;
+  private static final int MAX_BATCH = 64;
+  private static final long PUBLISH_PERIOD_MS = 50;
+  private static final long LEASE_NANOS = TimeUnit.MINUTES.toNanos(10);
+  private static final int SHUTDOWN_TIMEOUT_SEC = 5;
+
+  private final CollectionManager collectionManager;
+  private final Map<SocketAddress, Subscriber> subscribers = new ConcurrentHashMap<>();
+  private final PayloadCompressor compressor = new PayloadCompressor();
+  private final ScheduledExecutorService publisher =
+      Executors.newSingleThreadScheduledExecutor(task -> new Thread(task, "push-publisher"));
+  private final AtomicLong resyncs = new AtomicLong();
+
+  // События, еще не разложенные по очередям подписчиков. Доступ под монитором очереди.
+  private final ArrayDeque<ChangeEvent> pending = new ArrayDeque<>();
+  private long lostVersion;
+
+  /**
+   * @param collectionManager коллекция, версию которой получает новый подписчик.
+   */
+  public SubscriptionManager(CollectionManager collectionManager) {
+    this.collectionManager = collectionManager;
+  }
+
+  /** Запускает поток рассылки уведомлений. */
+  public void start() {
+    publisher.scheduleWithFixedDelay(
+        this::publish, PUBLISH_PERIOD_MS, PUBLISH_PERIOD_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Оформляет или отменяет подписку, если запрос или команда пакета — {@code subscribe} или {@code
+   * unsubscribe}. Вызывается под блокировкой исполнения до исполнения запроса, поэтому подписчик
+   * получит все изменения после версии, которую вернет команда.
+   *
+   * @param request запрос клиента.
+   * @param address адрес клиента, на который будут приходить уведомления.
+   * @param codec кодек уведомлений.
+   * @param acceptsCompressed клиент принимает сжатые сообщения.
+   * @param sender стадия отправки канала, через который пришел запрос.
+   * @param bufferPool пул буферов этого канала.
+   * @return Сообщение об ошибке или {@code null}, если запрос можно исполнять.
+   */
+  public String apply(
+      Request request,
+      SocketAddress address,
+      MessageCodec codec,
+      boolean acceptsCompressed,
+      ResponseSender sender,
+      BufferPool bufferPool) {
+    List<Request> requests =
+        request instanceof BatchRequest ? ((BatchRequest) request).getRequests() : List.of(request);
+    for (Request command : requests) {
+      if (UNSUBSCRIBE.equals(command.getCommandName())) {
+        if (subscribers.remove(address) != null) {
+          logger.info("Клиент " + address + " отменил подписку.");
+        }
+      } else if (SUBSCRIBE.equals(command.getCommandName())) {
+        Subscriber existing = subscribers.get(address);
+        if (existing != null && existing.codec == codec) {
+          existing.renew();
+          continue;
+        }
+        if (existing == null && subscribers.size() >= MAX_SUBSCRIBERS) {
+          return "Достигнуто максимальное количество подписчиков: " + MAX_SUBSCRIBERS;
+        }
+        subscribers.put(
+            address,
+            new Subscriber(
+                address,
+                codec,
+                acceptsCompressed,
+                sender,
+                bufferPool,
+                collectionManager.getVersion()));
+        logger.info("Клиент " + address + " подписался на изменения коллекции.");
+      }
+    }
+    return null;
+  }
+
+  /** Проверяет, оформляет или отменяет ли запрос (или команда пакета) подписку. */
+  public static boolean isSubscriptionRequest(Request request) {
+    List<Request> requests =
+        request instanceof BatchRequest ? ((BatchRequest) request).getRequests() : List.of(request);
+    for (Request command : requests) {
+      if (SUBSCRIBE.equals(command.getCommandName())
+          || UNSUBSCRIBE.equals(command.getCommandName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Продлевает подписку клиента, если она есть. */
+  public void touch(SocketAddress address) {
+    Subscriber subscriber = subscribers.get(address);
+    if (subscriber != null) {
+      subscriber.renew();
+    }
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /** Количество уведомлений со сбросом, отправленных вместо потерянных изменений. */
+  public long getResyncCount() {
+    return resyncs.get();
+  }
+
+  @Override
+  public void onUpsert(long version, Ticket ticket) {
+    // Элементы коллекции не изменяются после добавления: изменение заменяет элемент новым, поэтому
+    // событие может ссылаться на сам элемент.
+    enqueue(new ChangeEvent(version, ticket.getId(), ticket, false));
+  }
+
+  @Override
+  public void onRemoval(long version, int id) {
+    enqueue(new ChangeEvent(version, id, null, false));
+  }
+
+  @Override
+  public void onClear(long version) {
+    enqueue(new ChangeEvent(version, 0, null, true));
+  }
+
+  private void enqueue(ChangeEvent event) {
+    if (subscribers.isEmpty()) {
+      return;
+    }
+    synchronized (pending) {
+      if (pending.size() >= MAX_PENDING_EVENTS) {
+        // Рассылка не успевает: все подписчики получат сброс до этой версии.
+        pending.clear();
+        lostVersion = event.version;
+        return;
+      }
+      pending.add(event);
+    }
+  }
+
+  private void publish() {
+    try {
+      List<ChangeEvent> events;
+      long lost;
+      synchronized (pending) {
+        events = new ArrayList<>(pending);
+        pending.clear();
+        lost = lostVersion;
+        lostVersion = 0;
+      }
+
+      long now = System.nanoTime();
+      Iterator<Subscriber> iterator = subscribers.values().iterator();
+      while (iterator.hasNext()) {
+        Subscriber subscriber = iterator.next();
+        if (now - subscriber.leaseUntil > 0) {
+          iterator.remove();
+          logger.info("Подписка клиента " + subscriber.address + " истекла.");
+          continue;
+        }
+        if (lost != 0) {
+          subscriber.drop(lost);
+        }
+        for (ChangeEvent event : events) {
+          subscriber.offer(event);
+        }
+        subscriber.flush();
+      }
+    } catch (RuntimeException e) {
+      // Исключение остановило бы периодическую задачу.
+      logger.error("Ошибка при рассылке уведомлений: " + e);
+    }
+  }
+
+  /** Останавливает рассылку и снимает все подписки. */
+  public void shutdown() throws InterruptedException {
+    publisher.shutdown();
+    if (!publisher.awaitTermination(SHUTDOWN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+      publisher.shutdownNow();
+    }
+    subscribers.clear();
+  }
+
+  /** Изменение одного элемента, удаление элемента или очистка коллекции. */
+  private static final class ChangeEvent {
+    private final long version;
+    private final int id;
+    private final Ticket ticket;
+    private final boolean clear;
+
+    private ChangeEvent(long version, int id, Ticket ticket, boolean clear) {
+      this.version = version;
+      this.id = id;
+      this.ticket = ticket;
+      this.clear = clear;
+    }
+  }
+
+  /** Состояние подписчика. Кроме срока подписки, используется только потоком рассылки. */
+  private final class Subscriber {
+    private final SocketAddress address;
+    private final MessageCodec codec;
+    private final boolean acceptsCompressed;
+    private final ResponseSender sender;
+    private final BufferPool bufferPool;
+    private final ArrayDeque<ChangeEvent> queue = new ArrayDeque<>();
+    // Версия, до которой подписчик получил изменения, и последняя версия, о которой он узнает.
+    private long deliveredVersion;
+    private long seenVersion;
+    private boolean resync;
+    private boolean compressed;
+    private long nextMessageId = 1;
+    private volatile long leaseUntil;
+
+    private Subscriber(
+        SocketAddress address,
+        MessageCodec codec,
+        boolean acceptsCompressed,
+        ResponseSender sender,
+        BufferPool bufferPool,
+        long version) {
+      this.address = address;
+      this.codec = codec;
+      this.acceptsCompressed = acceptsCompressed;
+      this.sender = sender;
+      this.bufferPool = bufferPool;
+      this.deliveredVersion = version;
+      this.seenVersion = version;
+      renew();
+    }
+
+    private void renew() {
+      leaseUntil = System.nanoTime() + LEASE_NANOS;
+    }
+
+    private void offer(ChangeEvent event) {
+      // События до подписки уже отражены в версии, которую вернула команда subscribe.
+      if (event.version <= seenVersion) {
+        return;
+      }
+      seenVersion = event.version;
+      if (resync) {
+        return;
+      }
+      if (event.clear || queue.size() >= SUBSCRIBER_QUEUE_CAPACITY) {
+        drop(event.version);
+        return;
+      }
+      queue.add(event);
+    }
+
+    /** Отбрасывает недоставленные события: подписчик получит сброс. */
+    private void drop(long version) {
+      seenVersion = Math.max(seenVersion, version);
+      resync = true;
+      queue.clear();
+    }
+
+    private void flush() {
+      try {
+        if (resync) {
+          ChangeNotification notification =
+              new ChangeNotification(
+                  "Часть изменений не доставлена, запросите show_since " + deliveredVersion,
+                  List.of(),
+                  deliveredVersion,
+                  seenVersion,
+                  true,
+                  List.of());
+          if (send(notification)) {
+            resyncs.incrementAndGet();
+            resync = false;
+            deliveredVersion = seenVersion;
+          }
+          return;
+        }
+
+        for (int limit = Math.min(MAX_BATCH, queue.size()); limit > 0; limit /= 2) {
+          ByteBuffer payload = encode(notification(limit));
+          if (payload.remaining() <= FrameHeader.MAX_PAYLOAD_SIZE) {
+            if (!send(payload)) {
+              drop(seenVersion);
+              return;
+            }
+            for (int i = 0; i < limit; i++) {
+              deliveredVersion = queue.poll().version;
+            }
+            return;
+          }
+        }
+        if (!queue.isEmpty()) {
+          // Даже одно изменение не помещается в датаграмму.
+          drop(seenVersion);
+        }
+      } catch (IOException e) {
+        logger.error("Не удалось закодировать уведомление для " + address + ": " + e.getMessage());
+        drop(seenVersion);
+      }
+    }
+
+    /** Собирает уведомление из первых {@code limit} событий очереди. */
+    private ChangeNotification notification(int limit) {
+      Map<Integer, ChangeEvent> latest = new LinkedHashMap<>();
+      Iterator<ChangeEvent> events = queue.iterator();
+      long version = deliveredVersion;
+      for (int i = 0; i < limit; i++) {
+        ChangeEvent event = events.next();
+        // Событие переносится в конец, чтобы уведомление сохраняло порядок последних изменений.
+        latest.remove(event.id);
+        latest.put(event.id, event);
+        version = event.version;
+      }
+
+      List<Ticket> changed = new ArrayList<>();
+      List<Integer> removedIds = new ArrayList<>();
+      for (ChangeEvent event : latest.values()) {
+        if (event.ticket != null) {
+          changed.add(event.ticket);
+        } else {
+          removedIds.add(event.id);
+        }
+      }
+      return new ChangeNotification(
+          "ИЗМЕНЕНИЯ С ВЕРСИИ "
+              + deliveredVersion
+              + " (версия "
+              + version
+              + "): изменено "
+              + changed.size()
+              + ", удалено "
+              + removedIds.size(),
+          changed,
+          deliveredVersion,
+          version,
+          false,
+          removedIds);
+    }
+
+    private ByteBuffer encode(ChangeNotification notification) throws IOException {
+      ByteBuffer encoded = codec.encode(notification);
+      ByteBuffer payload = acceptsCompressed ? compressor.compress(encoded) : encoded;
+      compressed = payload != encoded;
+      return payload;
+    }
+
+    private boolean send(ChangeNotification notification) throws IOException {
+      return send(encode(notification));
+    }
+
+    /** Отправляет закодированное уведомление одним кадром, не дожидаясь места в очереди. */
+    private boolean send(ByteBuffer payload) {
+      int flags = codec.getId() | FrameHeader.PUSH | (compressed ? FrameHeader.COMPRESSED : 0);
+      ByteBuffer frame =
+          Fragmenter.writeFragment(bufferPool.acquire(), nextMessageId++, (byte) flags, payload, 0);
+      return sender.offer(frame, address);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package server.system;
+
+import common.data.Person;
+import common.data.Ticket;
+import common.data.TicketType;
+
+/**
+ * Битовые индексы по атрибутам билетов с малым числом значений: по типу и по наличию {@link
+ * Person}, его {@link common.data.Location} и {@code passportID}.
+ *
+ * <p>Строка — номер записи {@link TicketIndex}; индексы изменяются вместе с записями. Отдельное
+ * множество всех занятых строк служит дополнением для отрицания условий.
+ *
+ * <p>Класс не потокобезопасен.
+ *
+ * @see RowBitmap
+ * @see TicketFilter
+ */
+final class AttributeBitmaps {
+  private final RowBitmap rows = new RowBitmap();
+  private final RowBitmap[] byType = new RowBitmap[TicketType.values().length];
+  private final RowBitmap withPerson = new RowBitmap();
+  private final RowBitmap withLocation = new RowBitmap();
+  private final RowBitmap withPassportId = new RowBitmap();
+
+  AttributeBitmaps() {
+    for (int i = 0; i < byType.length; i++) {
+      byType[i] = new RowBitmap();
+    }
+  }
+
+  void add(int row, Ticket ticket) {
+    rows.add(row);
+    if (ticket.getType() != null) {
+      byType[ticket.getType().ordinal()].add(row);
+    }
+    Person person = ticket.getPerson();
+    if (person != null) {
+      withPerson.add(row);
+      if (person.getLocation() != null) {
+        withLocation.add(row);
+      }
+      if (person.getPassportID() != null) {
+        withPassportId.add(row);
+      }
+    }
+  }
+
+  /** Удаляет строку из индексов; билет должен быть тем же, что был добавлен в эту строку. */
+  void remove(int row, Ticket ticket) {
+    rows.remove(row);
+    if (ticket.getType() != null) {
+      byType[ticket.getType().ordinal()].remove(row);
+    }
+    Person person = ticket.getPerson();
+    if (person != null) {
+      withPerson.remove(row);
+      if (person.getLocation() != null) {
+        withLocation.remove(row);
+      }
+      if (person.getPassportID() != null) {
+        withPassportId.remove(row);
+      }
+    }
+  }
+
+  void clear() {
+    rows.clear();
+    for (RowBitmap type : byType) {
+      type.clear();
+    }
+    withPerson.clear();
+    withLocation.clear();
+    withPassportId.clear();
+  }
+
+  /** Все занятые строки. Возвращаемые множества нельзя изменять. */
+  RowBitmap rows() {
+    return rows;
+  }
+
+  RowBitmap type(TicketType type) {
+    return byType[type.ordinal()];
+  }
+
+  RowBitmap withPerson() {
+    return withPerson;
+  }
+
+  RowBitmap withLocation() {
+    return withLocation;
+  }
+
+  RowBitmap withPassportId() {
+    return withPassportId;
+  }
+}
@@ -0,0 +1,323 @@
+package server.system;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Неизменяемая упорядоченная карта с ключами {@code long}: АВЛ-дерево с копированием пути.
+ *
+ * <p>Изменение возвращает новую карту, копируя только O(log n) узлов на пути от корня, а остальные
+ * узлы остаются общими с прежней картой. Поэтому прежняя версия остается корректной и доступной без
+ * блокировок, сколько бы изменений ни было сделано после нее. Узлы хранят размер поддерева, что
+ * дает доступ к значению по порядковому номеру за O(log n). Ключ {@link Long#MIN_VALUE} не
+ * поддерживается.
+ *
+ * @param <V> тип значений.
+ */
+final class PersistentLongMap<V> {
+  private static final PersistentLongMap<?> EMPTY = new PersistentLongMap<>(null);
+
+  private final Node<V> root;
+
+  private PersistentLongMap(Node<V> root) {
+    this.root = root;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <V> PersistentLongMap<V> empty() {
+    return (PersistentLongMap<V>) EMPTY;
+  }
+
+  int size() {
+    return size(root);
+  }
+
+  boolean isEmpty() {
+    return root == null;
+  }
+
+  /** Высота дерева; для диагностики. */
+  int height() {
+    return height(root);
+  }
+
+  /**
+   * @return Значение по ключу или {@code null}, если ключа нет.
+   */
+  V get(long key) {
+    Node<V> node = root;
+    while (node != null) {
+      if (key < node.key) {
+        node = node.left;
+      } else if (key > node.key) {
+        node = node.right;
+      } else {
+        return node.value;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return Карта, в которой ключу сопоставлено значение.
+   */
+  PersistentLongMap<V> put(long key, V value) {
+    return new PersistentLongMap<>(put(root, key, value));
+  }
+
+  /**
+   * @return Карта без ключа; та же карта, если ключа не было.
+   */
+  PersistentLongMap<V> remove(long key) {
+    Node<V> updated = remove(root, key);
+    return updated == root ? this : new PersistentLongMap<>(updated);
+  }
+
+  /**
+   * @throws NoSuchElementException если карта пуста.
+   */
+  long firstKey() {
+    return first().key;
+  }
+
+  /**
+   * @throws NoSuchElementException если карта пуста.
+   */
+  V firstValue() {
+    return first().value;
+  }
+
+  /**
+   * @throws NoSuchElementException если карта пуста.
+   */
+  long lastKey() {
+    if (root == null) {
+      throw new NoSuchElementException();
+    }
+    Node<V> node = root;
+    while (node.right != null) {
+      node = node.right;
+    }
+    return node.key;
+  }
+
+  private Node<V> first() {
+    if (root == null) {
+      throw new NoSuchElementException();
+    }
+    Node<V> node = root;
+    while (node.left != null) {
+      node = node.left;
+    }
+    return node;
+  }
+
+  /**
+   * Значения с ключами больше заданного в порядке ключей.
+   *
+   * @param key ключ, после которого начинается обход.
+   * @return Новый список значений.
+   */
+  ArrayList<V> valuesAfter(long key) {
+    ArrayList<V> values = new ArrayList<>();
+    Iterator<V> iterator = iterator(key);
+    while (iterator.hasNext()) {
+      values.add(iterator.next());
+    }
+    return values;
+  }
+
+  /**
+   * Значения в порядке ключей без копирования: список — представление этой версии карты и не
+   * меняется. Доступ по номеру за O(log n), обход за O(1) на элемент. При сериализации список
+   * заменяется на {@link ArrayList}.
+   */
+  List<V> values() {
+    return new ValuesView<>(root);
+  }
+
+  private Iterator<V> iterator(long after) {
+    return new Iterator<>() {
+      // Высота АВЛ-дерева ограничивает глубину стека, поэтому хватает массива без расширения.
+      private final Node<V>[] path = newPath(height(root));
+
+      private int depth;
+
+      {
+        // Спуск к первому ключу больше after: на стеке остаются узлы, еще не выданные по порядку.
+        Node<V> node = root;
+        while (node != null) {
+          if (node.key > after) {
+            path[depth++] = node;
+            node = node.left;
+          } else {
+            node = node.right;
+          }
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return depth > 0;
+      }
+
+      @Override
+      public V next() {
+        if (depth == 0) {
+          throw new NoSuchElementException();
+        }
+        Node<V> node = path[--depth];
+        path[depth] = null;
+        for (Node<V> child = node.right; child != null; child = child.left) {
+          path[depth++] = child;
+        }
+        return node.value;
+      }
+    };
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static <V> Node<V>[] newPath(int length) {
+    return new Node[length];
+  }
+
+  private static int size(Node<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static int height(Node<?> node) {
+    return node == null ? 0 : node.height;
+  }
+
+  private static <V> Node<V> put(Node<V> node, long key, V value) {
+    if (node == null) {
+      return new Node<>(key, value, null, null);
+    }
+    if (key < node.key) {
+      return balance(node.key, node.value, put(node.left, key, value), node.right);
+    }
+    if (key > node.key) {
+      return balance(node.key, node.value, node.left, put(node.right, key, value));
+    }
+    return new Node<>(key, value, node.left, node.right);
+  }
+
+  private static <V> Node<V> remove(Node<V> node, long key) {
+    if (node == null) {
+      return null;
+    }
+    if (key < node.key) {
+      Node<V> left = remove(node.left, key);
+      return left == node.left ? node : balance(node.key, node.value, left, node.right);
+    }
+    if (key > node.key) {
+      Node<V> right = remove(node.right, key);
+      return right == node.right ? node : balance(node.key, node.value, node.left, right);
+    }
+    if (node.left == null) {
+      return node.right;
+    }
+    if (node.right == null) {
+      return node.left;
+    }
+    Node<V> successor = node.right;
+    while (successor.left != null) {
+      successor = successor.left;
+    }
+    return balance(successor.key, successor.value, node.left, remove(node.right, successor.key));
+  }
+
+  private static <V> Node<V> balance(long key, V value, Node<V> left, Node<V> right) {
+    int difference = height(left) - height(right);
+    if (difference > 1) {
+      if (height(left.left) >= height(left.right)) {
+        return new Node<>(
+            left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+      }
+      return new Node<>(
+          left.right.key,
+          left.right.value,
+          new Node<>(left.key, left.value, left.left, left.right.left),
+          new Node<>(key, value, left.right.right, right));
+    }
+    if (difference < -1) {
+      if (height(right.right) >= height(right.left)) {
+        return new Node<>(
+            right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+      }
+      return new Node<>(
+          right.left.key,
+          right.left.value,
+          new Node<>(key, value, left, right.left.left),
+          new Node<>(right.key, right.value, right.left.right, right.right));
+    }
+    return new Node<>(key, value, left, right);
+  }
+
+  private static final class Node<V> {
+    private final long key;
+    private final V value;
+    private final Node<V> left;
+    private final Node<V> right;
+    private final int height;
+    private final int size;
+
+    private Node(long key, V value, Node<V> left, Node<V> right) {
+      this.key = key;
+      this.value = value;
+      this.left = left;
+      this.right = right;
+      this.height = Math.max(height(left), height(right)) + 1;
+      this.size = size(left) + size(right) + 1;
+    }
+  }
+
+  private static final class ValuesView<V> extends AbstractList<V> implements Serializable {
+    @Serial private static final long serialVersionUID = 1L;
+
+    private final transient Node<V> root;
+
+    private ValuesView(Node<V> root) {
+      this.root = root;
+    }
+
+    @Override
+    public V get(int index) {
+      if (index < 0 || index >= PersistentLongMap.size(root)) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      Node<V> node = root;
+      while (true) {
+        int leftSize = PersistentLongMap.size(node.left);
+        if (index < leftSize) {
+          node = node.left;
+        } else if (index > leftSize) {
+          index -= leftSize + 1;
+          node = node.right;
+        } else {
+          return node.value;
+        }
+      }
+    }
+
+    @Override
+    public int size() {
+      return PersistentLongMap.size(root);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+      return new PersistentLongMap<>(root).iterator(Long.MIN_VALUE);
+    }
+
+    @Serial
+    private Object writeReplace() {
+      return new ArrayList<>(this);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package server.system;
+
+import common.data.Ticket;
+import common.data.TicketType;
+import common.managers.PriceStatistics;
+
+/**
+ * Неизменяемая статистика цен для одной версии коллекции {@link SnapshotCollectionManager}.
+ *
+ * <p>То же, что {@link PriceStatistics}, но каждое изменение возвращает новый объект, а прежний
+ * остается верным для своего снимка. Количество и суммы пересчитываются за O(1), суммы ведутся с
+ * компенсацией ошибок округления по Ноймайеру. Для минимума и максимума при удалениях хранится
+ * {@link PersistentLongMap} из цены в количество элементов с ней: изменение копирует O(log k)
+ * узлов, где k — количество различных цен.
+ */
+final class PriceAggregate {
+  private static final int TYPES = TicketType.values().length;
+  private static final PriceAggregate EMPTY =
+      new PriceAggregate(
+          0, 0, 0, new int[TYPES], new double[TYPES], new double[TYPES], PersistentLongMap.empty());
+
+  private final int count;
+  private final double sum;
+  private final double compensation;
+  private final int[] typeCounts;
+  private final double[] typeSums;
+  private final double[] typeCompensations;
+  private final PersistentLongMap<Integer> prices;
+
+  private PriceAggregate(
+      int count,
+      double sum,
+      double compensation,
+      int[] typeCounts,
+      double[] typeSums,
+      double[] typeCompensations,
+      PersistentLongMap<Integer> prices) {
+    this.count = count;
+    this.sum = sum;
+    this.compensation = compensation;
+    this.typeCounts = typeCounts;
+    this.typeSums = typeSums;
+    this.typeCompensations = typeCompensations;
+    this.prices = prices;
+  }
+
+  static PriceAggregate empty() {
+    return EMPTY;
+  }
+
+  /** Статистика с добавленным элементом. */
+  PriceAggregate add(Ticket ticket) {
+    return change(ticket, 1);
+  }
+
+  /** Статистика без элемента; элемент должен быть тем же, что был добавлен. */
+  PriceAggregate remove(Ticket ticket) {
+    return change(ticket, -1);
+  }
+
+  private PriceAggregate change(Ticket ticket, int delta) {
+    float price = ticket.getPrice();
+    int updatedCount = count + delta;
+    if (updatedCount == 0) {
+      return EMPTY;
+    }
+
+    double value = delta * (double) price;
+    double updatedSum = sum + value;
+    double updatedCompensation = compensation + error(sum, value, updatedSum);
+
+    int[] updatedTypeCounts = typeCounts;
+    double[] updatedTypeSums = typeSums;
+    double[] updatedTypeCompensations = typeCompensations;
+    if (ticket.getType() != null) {
+      int type = ticket.getType().ordinal();
+      updatedTypeCounts = typeCounts.clone();
+      updatedTypeSums = typeSums.clone();
+      updatedTypeCompensations = typeCompensations.clone();
+      updatedTypeCounts[type] += delta;
+      if (updatedTypeCounts[type] == 0) {
+        updatedTypeSums[type] = 0;
+        updatedTypeCompensations[type] = 0;
+      } else {
+        updatedTypeSums[type] = typeSums[type] + value;
+        updatedTypeCompensations[type] += error(typeSums[type], value, updatedTypeSums[type]);
+      }
+    }
+
+    long key = key(price);
+    Integer same = prices.get(key);
+    int remaining = (same == null ? 0 : same) + delta;
+    PersistentLongMap<Integer> updatedPrices =
+        remaining > 0 ? prices.put(key, remaining) : prices.remove(key);
+
+    return new PriceAggregate(
+        updatedCount,
+        updatedSum,
+        updatedCompensation,
+        updatedTypeCounts,
+        updatedTypeSums,
+        updatedTypeCompensations,
+        updatedPrices);
+  }
+
+  /** Ошибка округления при сложении {@code sum + value = next} (алгоритм Ноймайера). */
+  private static double error(double sum, double value, double next) {
+    return Math.abs(sum) >= Math.abs(value) ? (sum - next) + value : (value - next) + sum;
+  }
+
+  /** Статистика в виде {@link PriceStatistics.Summary}. */
+  PriceStatistics.Summary summary() {
+    double[] sums = new double[TYPES];
+    for (int i = 0; i < TYPES; i++) {
+      sums[i] = typeSums[i] + typeCompensations[i];
+    }
+    return PriceStatistics.Summary.of(
+        count,
+        sum + compensation,
+        prices.isEmpty() ? Float.NaN : price(prices.firstKey()),
+        prices.isEmpty() ? Float.NaN : price(prices.lastKey()),
+        typeCounts,
+        sums);
+  }
+
+  /** Ключ карты, упорядоченный так же, как цены: у отрицательных цен инвертируются биты модуля. */
+  private static long key(float price) {
+    int bits = Float.floatToIntBits(price);
+    return bits < 0 ? bits ^ Integer.MAX_VALUE : bits;
+  }
+
+  private static float price(long key) {
+    int bits = (int) key;
+    return Float.intBitsToFloat(bits < 0 ? bits ^ Integer.MAX_VALUE : bits);
+  }
+}
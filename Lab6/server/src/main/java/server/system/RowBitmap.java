@@ -0,0 +1,444 @@
+package server.system;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Сжатое множество неотрицательных номеров строк.
+ *
+ * <p>Номера делятся на блоки по 2<sup>16</sup>: старшие 16 бит — ключ блока, младшие хранятся в
+ * контейнере блока. Разреженный блок (не больше {@value #ARRAY_LIMIT} номеров) — отсортированный
+ * массив {@code char}, плотный — 1024 слова {@code long} по биту на номер. Поэтому множество
+ * занимает не больше двух байт на номер и не больше 8 КБ на блок, а пересечение, объединение и
+ * разность идут по блокам и словам, не перебирая отдельные номера плотных блоков. Пустые блоки не
+ * хранятся.
+ *
+ * <p>Обход выдает номера по возрастанию. Результат операции над множествами — новое множество;
+ * операнды не меняются.
+ *
+ * <p>Класс не потокобезопасен.
+ */
+final class RowBitmap {
+  private static final int ARRAY_LIMIT = 4096;
+  private static final int WORDS = 1 << 10;
+
+  private char[] keys;
+  private Container[] containers;
+  private int blocks;
+  private int cardinality;
+
+  RowBitmap() {
+    this(4);
+  }
+
+  private RowBitmap(int capacity) {
+    keys = new char[capacity];
+    containers = new Container[capacity];
+  }
+
+  /** Количество номеров во множестве. */
+  int cardinality() {
+    return cardinality;
+  }
+
+  boolean contains(int row) {
+    int block = findBlock((char) (row >>> 16));
+    return block >= 0 && containers[block].contains((char) row);
+  }
+
+  void add(int row) {
+    char key = (char) (row >>> 16);
+    int block = findBlock(key);
+    if (block < 0) {
+      block = -block - 1;
+      insertBlock(block, key, new ArrayContainer());
+    }
+    Container container = containers[block];
+    int before = container.cardinality;
+    containers[block] = container.add((char) row);
+    cardinality += containers[block].cardinality - before;
+  }
+
+  void remove(int row) {
+    int block = findBlock((char) (row >>> 16));
+    if (block < 0) {
+      return;
+    }
+    Container container = containers[block];
+    int before = container.cardinality;
+    Container updated = container.remove((char) row);
+    cardinality -= before - updated.cardinality;
+    if (updated.cardinality == 0) {
+      removeBlock(block);
+    } else {
+      containers[block] = updated;
+    }
+  }
+
+  void clear() {
+    Arrays.fill(containers, 0, blocks, null);
+    blocks = 0;
+    cardinality = 0;
+  }
+
+  /** Количество блоков, хранящихся словами, а не массивом; для диагностики. */
+  int denseBlocks() {
+    int dense = 0;
+    for (int block = 0; block < blocks; block++) {
+      if (containers[block] instanceof BitmapContainer) {
+        dense++;
+      }
+    }
+    return dense;
+  }
+
+  /** Передает номера по возрастанию. */
+  void forEach(IntConsumer action) {
+    for (int block = 0; block < blocks; block++) {
+      containers[block].forEach(keys[block] << 16, action);
+    }
+  }
+
+  RowBitmap and(RowBitmap other) {
+    RowBitmap result = new RowBitmap(Math.max(1, Math.min(blocks, other.blocks)));
+    int i = 0;
+    int j = 0;
+    while (i < blocks && j < other.blocks) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        result.append(keys[i], containers[i].and(other.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  RowBitmap or(RowBitmap other) {
+    RowBitmap result = new RowBitmap(Math.max(1, blocks + other.blocks));
+    int i = 0;
+    int j = 0;
+    while (i < blocks || j < other.blocks) {
+      if (j == other.blocks || (i < blocks && keys[i] < other.keys[j])) {
+        result.append(keys[i], containers[i].copy());
+        i++;
+      } else if (i == blocks || keys[i] > other.keys[j]) {
+        result.append(other.keys[j], other.containers[j].copy());
+        j++;
+      } else {
+        result.append(keys[i], containers[i].or(other.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /** Номера этого множества, которых нет в другом. */
+  RowBitmap andNot(RowBitmap other) {
+    RowBitmap result = new RowBitmap(Math.max(1, blocks));
+    int j = 0;
+    for (int i = 0; i < blocks; i++) {
+      while (j < other.blocks && other.keys[j] < keys[i]) {
+        j++;
+      }
+      result.append(
+          keys[i],
+          j < other.blocks && other.keys[j] == keys[i]
+              ? containers[i].andNot(other.containers[j])
+              : containers[i].copy());
+    }
+    return result;
+  }
+
+  /** Добавляет блок с ключом больше всех имеющихся; пустой контейнер пропускается. */
+  private void append(char key, Container container) {
+    if (container == null) {
+      return;
+    }
+    insertBlock(blocks, key, container);
+    cardinality += container.cardinality;
+  }
+
+  private int findBlock(char key) {
+    return Arrays.binarySearch(keys, 0, blocks, key);
+  }
+
+  private void insertBlock(int block, char key, Container container) {
+    if (blocks == keys.length) {
+      keys = Arrays.copyOf(keys, blocks * 2);
+      containers = Arrays.copyOf(containers, blocks * 2);
+    }
+    System.arraycopy(keys, block, keys, block + 1, blocks - block);
+    System.arraycopy(containers, block, containers, block + 1, blocks - block);
+    keys[block] = key;
+    containers[block] = container;
+    blocks++;
+  }
+
+  private void removeBlock(int block) {
+    System.arraycopy(keys, block + 1, keys, block, blocks - block - 1);
+    System.arraycopy(containers, block + 1, containers, block, blocks - block - 1);
+    containers[--blocks] = null;
+  }
+
+  /**
+   * Младшие 16 бит номеров одного блока. Изменение может вернуть контейнер другого вида, операции
+   * над множествами возвращают новый контейнер или {@code null}, если результат пуст.
+   */
+  private abstract static class Container {
+    int cardinality;
+
+    abstract boolean contains(char value);
+
+    abstract Container add(char value);
+
+    abstract Container remove(char value);
+
+    abstract void forEach(int high, IntConsumer action);
+
+    abstract Container copy();
+
+    Container and(Container other) {
+      if (this instanceof BitmapContainer && other instanceof BitmapContainer) {
+        long[] words = ((BitmapContainer) this).words.clone();
+        long[] otherWords = ((BitmapContainer) other).words;
+        for (int i = 0; i < WORDS; i++) {
+          words[i] &= otherWords[i];
+        }
+        return BitmapContainer.of(words);
+      }
+      ArrayContainer array = (ArrayContainer) (this instanceof ArrayContainer ? this : other);
+      return array.filter(this == array ? other : this, true);
+    }
+
+    Container or(Container other) {
+      if (this instanceof ArrayContainer && other instanceof ArrayContainer) {
+        return ((ArrayContainer) this).merge((ArrayContainer) other);
+      }
+      Container dense = this instanceof BitmapContainer ? this : other;
+      long[] words = ((BitmapContainer) dense).words.clone();
+      (dense == this ? other : this).addTo(words);
+      return BitmapContainer.of(words);
+    }
+
+    Container andNot(Container other) {
+      if (this instanceof ArrayContainer) {
+        return ((ArrayContainer) this).filter(other, false);
+      }
+      long[] words = ((BitmapContainer) this).words.clone();
+      other.removeFrom(words);
+      return BitmapContainer.of(words);
+    }
+
+    /** Устанавливает биты своих номеров в словах плотного контейнера. */
+    abstract void addTo(long[] words);
+
+    /** Сбрасывает биты своих номеров в словах плотного контейнера. */
+    abstract void removeFrom(long[] words);
+  }
+
+  private static final class ArrayContainer extends Container {
+    private char[] values;
+
+    ArrayContainer() {
+      this(new char[4], 0);
+    }
+
+    private ArrayContainer(char[] values, int cardinality) {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+    }
+
+    @Override
+    Container add(char value) {
+      int index = Arrays.binarySearch(values, 0, cardinality, value);
+      if (index >= 0) {
+        return this;
+      }
+      if (cardinality == ARRAY_LIMIT) {
+        return toBitmap().add(value);
+      }
+      index = -index - 1;
+      if (cardinality == values.length) {
+        values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+      }
+      System.arraycopy(values, index, values, index + 1, cardinality - index);
+      values[index] = value;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(char value) {
+      int index = Arrays.binarySearch(values, 0, cardinality, value);
+      if (index >= 0) {
+        System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+        cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int i = 0; i < cardinality; i++) {
+        action.accept(high | values[i]);
+      }
+    }
+
+    @Override
+    Container copy() {
+      return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)), cardinality);
+    }
+
+    @Override
+    void addTo(long[] words) {
+      for (int i = 0; i < cardinality; i++) {
+        words[values[i] >>> 6] |= 1L << values[i];
+      }
+    }
+
+    @Override
+    void removeFrom(long[] words) {
+      for (int i = 0; i < cardinality; i++) {
+        words[values[i] >>> 6] &= ~(1L << values[i]);
+      }
+    }
+
+    /** Номера, которые есть ({@code keep}) или которых нет в другом контейнере. */
+    Container filter(Container other, boolean keep) {
+      char[] result = new char[cardinality];
+      int size = 0;
+      for (int i = 0; i < cardinality; i++) {
+        if (other.contains(values[i]) == keep) {
+          result[size++] = values[i];
+        }
+      }
+      return size == 0 ? null : new ArrayContainer(result, size);
+    }
+
+    Container merge(ArrayContainer other) {
+      char[] result = new char[cardinality + other.cardinality];
+      int size = 0;
+      int i = 0;
+      int j = 0;
+      while (i < cardinality || j < other.cardinality) {
+        if (j == other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+          result[size++] = values[i++];
+        } else if (i == cardinality || values[i] > other.values[j]) {
+          result[size++] = other.values[j++];
+        } else {
+          result[size++] = values[i++];
+          j++;
+        }
+      }
+      if (size > ARRAY_LIMIT) {
+        return new ArrayContainer(result, size).toBitmap();
+      }
+      return new ArrayContainer(result, size);
+    }
+
+    private BitmapContainer toBitmap() {
+      long[] words = new long[WORDS];
+      addTo(words);
+      return new BitmapContainer(words, cardinality);
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+    private final long[] words;
+
+    private BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    /** Контейнер по словам: разреженный, если номеров мало, или {@code null}, если их нет. */
+    static Container of(long[] words) {
+      int cardinality = 0;
+      for (long word : words) {
+        cardinality += Long.bitCount(word);
+      }
+      if (cardinality == 0) {
+        return null;
+      }
+      if (cardinality > ARRAY_LIMIT) {
+        return new BitmapContainer(words, cardinality);
+      }
+      char[] values = new char[cardinality];
+      int size = 0;
+      for (int i = 0; i < WORDS; i++) {
+        for (long word = words[i]; word != 0; word &= word - 1) {
+          values[size++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+        }
+      }
+      return new ArrayContainer(values, cardinality);
+    }
+
+    @Override
+    boolean contains(char value) {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    Container add(char value) {
+      long word = words[value >>> 6];
+      if ((word & (1L << value)) == 0) {
+        words[value >>> 6] = word | (1L << value);
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    Container remove(char value) {
+      long word = words[value >>> 6];
+      if ((word & (1L << value)) != 0) {
+        words[value >>> 6] = word & ~(1L << value);
+        cardinality--;
+        // Обратно в массив — с запасом, чтобы чередование добавлений и удалений на границе не
+        // перестраивало контейнер каждый раз.
+        if (cardinality <= ARRAY_LIMIT / 2) {
+          return of(words);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int i = 0; i < WORDS; i++) {
+        for (long word = words[i]; word != 0; word &= word - 1) {
+          action.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+        }
+      }
+    }
+
+    @Override
+    Container copy() {
+      return new BitmapContainer(words.clone(), cardinality);
+    }
+
+    @Override
+    void addTo(long[] target) {
+      for (int i = 0; i < WORDS; i++) {
+        target[i] |= words[i];
+      }
+    }
+
+    @Override
+    void removeFrom(long[] target) {
+      for (int i = 0; i < WORDS; i++) {
+        target[i] &= ~words[i];
+      }
+    }
+  }
+}
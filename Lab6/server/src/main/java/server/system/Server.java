@@ -5,33 +5,91 @@ import common.managers.CollectionManager;
 import common.managers.CommandManager;
 import common.managers.FileManager;
 import common.managers.IdManager;
+import common.utils.LaunchOptions;
 import java.io.IOException;
 import server.UDPServer;
+import server.pipeline.AdmissionController;
+import server.pipeline.ExecutionMode;
 
 public class Server {
+  private static final int DEFAULT_MAX_READS = 256;
+  private static final int DEFAULT_MAX_WRITES = 64;
+  private static final int DEFAULT_READ_DEADLINE_MS = 1_000;
+  private static final int DEFAULT_WRITE_DEADLINE_MS = 2_000;
+
   public static void main(String[] args) {
-    if (args.length != 2) {
+    LaunchOptions options = LaunchOptions.parse(args);
+    if (options.getPositional().size() != 2) {
       System.err.println("Неверное количество аргументов для запуска сервера.");
-      System.err.println("Используйте: java -jar server.jar <fileName> <port>");
+      System.err.println(
+          "Используйте: java -jar server.jar <fileName> <port>"
+              + " [--execution=pool|virtual|single] [--workers=N] [--channels=N]"
+              + " [--max-reads=N] [--max-writes=N] [--read-deadline-ms=N]"
+              + " [--write-deadline-ms=N] [--admin-port=N] [--tcp]"
+              + " [--collection=stamped|snapshot]");
       return;
     }
 
     try {
-      String fileName = args[0];
-      int port = Integer.parseInt(args[1]);
+      String fileName = options.getPositional().get(0);
+      int port = Integer.parseInt(options.getPositional().get(1));
+      ExecutionMode executionMode = ExecutionMode.forName(options.get("execution", "pool"));
+      int workerCount = options.getInt("workers", Runtime.getRuntime().availableProcessors());
+      int channelCount = options.getInt("channels", 1);
+      if (channelCount < 1) {
+        System.err.println("Количество каналов должно быть положительным.");
+        return;
+      }
+      AdmissionController admission =
+          new AdmissionController(
+              new AdmissionController.Limits(
+                  options.getInt("max-reads", DEFAULT_MAX_READS),
+                  options.getInt("read-deadline-ms", DEFAULT_READ_DEADLINE_MS)),
+              new AdmissionController.Limits(
+                  options.getInt("max-writes", DEFAULT_MAX_WRITES),
+                  options.getInt("write-deadline-ms", DEFAULT_WRITE_DEADLINE_MS)));
       FileManager fileManager = new FileManager(fileName);
       IdManager idManager = new IdManager();
-      CollectionManager collectionManager = new ServerCollectionManager(fileManager, idManager);
+      CollectionManager collectionManager =
+          createCollectionManager(options.get("collection", "stamped"), fileManager, idManager);
       fileManager.fillCollectionFromXml(collectionManager);
       CommandManager commandManager = new CommandManager(collectionManager, null, null);
-      UDPServer udpServer = new UDPServer(commandManager, collectionManager, fileManager);
-      udpServer.runServer(port);
+      UDPServer udpServer =
+          new UDPServer(
+              commandManager,
+              collectionManager,
+              fileManager,
+              executionMode,
+              workerCount,
+              channelCount,
+              admission);
+      udpServer.runServer(port, options.getInt("admin-port", -1), options.has("tcp"));
     } catch (NumberFormatException e) {
-      System.err.println("Порт должен быть целым числом.");
+      System.err.println("Порт и числовые параметры должны быть целыми числами.");
+    } catch (IllegalArgumentException | UnsupportedOperationException e) {
+      System.err.println(e.getMessage());
     } catch (FileReadException e) {
       System.err.println(e.getMessage());
     } catch (IOException e) {
       System.err.println("Ошибка при запуске сервера.");
     }
   }
+
+  /**
+   * Создает менеджер коллекции по названию реализации.
+   *
+   * @param name {@code stamped} — {@link ServerCollectionManager} с блокировкой чтения и записи,
+   *     {@code snapshot} — {@link SnapshotCollectionManager} с неизменяемыми версиями.
+   * @throws IllegalArgumentException если реализация неизвестна.
+   */
+  private static CollectionManager createCollectionManager(
+      String name, FileManager fileManager, IdManager idManager) {
+    return switch (name.toLowerCase()) {
+      case "stamped" -> new ServerCollectionManager(fileManager, idManager);
+      case "snapshot" -> new SnapshotCollectionManager(fileManager, idManager);
+      default ->
+          throw new IllegalArgumentException(
+              "Неизвестная реализация коллекции: " + name + ". Доступны: stamped, snapshot.");
+    };
+  }
 }
@@ -5,31 +5,51 @@ import common.data.TicketType;
 import common.exceptions.EmptyCollectionException;
 import common.exceptions.RemoveException;
 import common.exceptions.WrongArgumentException;
+import common.managers.ChangeLog;
 import common.managers.CollectionManager;
 import common.managers.FileManager;
 import common.managers.IdManager;
+import common.managers.PriceStatistics;
 import common.utils.DateTimeUtils;
 import common.utils.Validator;
 import java.time.LocalDateTime;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Класс, отвечающий за взаимодействие с коллекцией элементов {@link Ticket}.
  *
- * <p>Для реализации используется коллекция {@link ArrayDeque}.
+ * <p>Элементы хранятся в {@link TicketIndex} — очереди в порядке добавления с поиском и удалением
+ * по {@code id} за O(1). Изменения отмечаются в {@link ChangeLog}, чтобы клиенты могли получать
+ * только изменения с известной им версии. По типу билета и наличию {@code person}, местоположения и
+ * {@code passportID} ведутся битовые индексы, поэтому отбор по этим атрибутам ({@link
+ * TicketFilter}) не перебирает всю коллекцию. Статистика цен ({@link PriceStatistics}) тоже
+ * обновляется при каждом изменении, поэтому {@code average_of_price} не перебирает элементы.
+ *
+ * <p>Менеджер потокобезопасен: все методы защищены {@link StampedLock}. Изменения исполняются под
+ * блокировкой записи по одному, чтение — под общей блокировкой чтения параллельно, а размер, версия
+ * и время изменения читаются оптимистично, без блокировки. Элементы коллекции не изменяются после
+ * добавления: {@link #updateTicket(int, Ticket)} заменяет элемент новым, поэтому списки и элементы,
+ * возвращенные читателям, можно использовать после снятия блокировки.
  *
  * @see Ticket
- * @see ArrayDeque
+ * @see TicketIndex
  * @author Alvas
  * @since 1.0
  */
 public class ServerCollectionManager implements CollectionManager {
-  private final ArrayDeque<Ticket> collection;
+  private static final int MAX_TOMBSTONES = 10_000;
+
+  private final TicketIndex collection;
+  private final ChangeLog changeLog = new ChangeLog(MAX_TOMBSTONES);
+  private final PriceStatistics statistics = new PriceStatistics();
   private final LocalDateTime initializationTime;
   private LocalDateTime lastUpdateTime;
   private final IdManager idManager;
+  private final StampedLock lock = new StampedLock();
 
   /**
    * Конструктор менеджера коллекции.
@@ -46,7 +66,7 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 2.0
    */
   public ServerCollectionManager(FileManager fileManager, IdManager idManager) {
-    this.collection = new ArrayDeque<>();
+    this.collection = new TicketIndex();
     this.initializationTime = fileManager.getFileCreationTime();
     this.lastUpdateTime = fileManager.getFileLastModifiedTime();
     this.idManager = idManager;
@@ -57,14 +77,28 @@ public class ServerCollectionManager implements CollectionManager {
   }
 
   /**
-   * Возвращает коллекцию элементов.
+   * Возвращает копию коллекции элементов в порядке очереди.
    *
-   * @return Коллекция элементов.
+   * @return Копия коллекции элементов.
    * @author Alvas
    * @since 1.0
    */
   public ArrayDeque<Ticket> getCollection() {
-    return collection;
+    long stamp = lock.readLock();
+    try {
+      return new ArrayDeque<>(collection);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Возвращает описание типа коллекции для команды {@code info}.
+   *
+   * @return Тип коллекции.
+   */
+  public String getCollectionType() {
+    return "очередь с индексом по id";
   }
 
   /**
@@ -86,7 +120,17 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public LocalDateTime getLastUpdateTime() {
-    return lastUpdateTime;
+    long stamp = lock.tryOptimisticRead();
+    LocalDateTime time = lastUpdateTime;
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        time = lastUpdateTime;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return time;
   }
 
   /**
@@ -96,6 +140,16 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public void updateLastModifiedTime() {
+    long stamp = lock.writeLock();
+    try {
+      touch();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /** Обновляет время последней модификации; вызывается под блокировкой записи. */
+  private void touch() {
     lastUpdateTime = DateTimeUtils.getCurrentTime();
   }
 
@@ -107,7 +161,17 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public int getCollectionSize() {
-    return collection.size();
+    long stamp = lock.tryOptimisticRead();
+    int size = collection.size();
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        size = collection.size();
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return size;
   }
 
   /**
@@ -118,8 +182,15 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public void clearCollection() {
-    collection.clear();
-    updateLastModifiedTime();
+    long stamp = lock.writeLock();
+    try {
+      collection.clear();
+      changeLog.recordClear();
+      statistics.clear();
+      touch();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
   }
 
   /**
@@ -129,7 +200,8 @@ public class ServerCollectionManager implements CollectionManager {
    * @see Ticket
    * @see IdManager
    * @see ServerCollectionManager#updateLastModifiedTime()
-   * @throws WrongArgumentException если элемент уже содержится в коллекции или равен {@code null}.
+   * @throws WrongArgumentException если элемент или элемент с тем же {@code id} уже содержится в
+   *     коллекции или элемент равен {@code null}.
    * @author Alvas
    * @since 1.0
    */
@@ -137,12 +209,21 @@ public class ServerCollectionManager implements CollectionManager {
     if (ticket == null) {
       throw new WrongArgumentException("Билет не может быть null.");
     }
-    if (collection.contains(ticket)) {
-      throw new WrongArgumentException("Билет уже содержится в данной коллекции.");
+    long stamp = lock.writeLock();
+    try {
+      if (collection.contains(ticket)) {
+        throw new WrongArgumentException("Билет уже содержится в данной коллекции.");
+      }
+      if (!collection.add(ticket)) {
+        throw new WrongArgumentException("Билет с таким id уже содержится в данной коллекции.");
+      }
+      idManager.addId(ticket.getId());
+      changeLog.recordUpsert(ticket);
+      statistics.add(ticket);
+      touch();
+    } finally {
+      lock.unlockWrite(stamp);
     }
-    collection.addLast(ticket);
-    idManager.addId(ticket.getId());
-    updateLastModifiedTime();
   }
 
   /**
@@ -178,7 +259,13 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public Ticket getById(int id) throws WrongArgumentException {
-    Ticket ticket = collection.stream().filter(t -> t.getId() == id).findFirst().orElse(null);
+    Ticket ticket;
+    long stamp = lock.readLock();
+    try {
+      ticket = collection.get(id);
+    } finally {
+      lock.unlockRead(stamp);
+    }
     if (ticket == null) {
       throw new WrongArgumentException("Билета с таким id нет в коллекции.");
     }
@@ -189,6 +276,9 @@ public class ServerCollectionManager implements CollectionManager {
    * Обновляет элемент {@link Ticket} коллекции по заданному {@code id} и обновляет время последней
    * модификации.
    *
+   * <p>Элемент заменяется новым объектом на том же месте очереди, а не изменяется, чтобы читатели,
+   * уже получившие прежний элемент, видели его целиком.
+   *
    * @param id уникальный идентификатор элемента.
    * @param newTicket новый элемент коллекции.
    * @see Ticket
@@ -197,17 +287,28 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public void updateTicket(int id, Ticket newTicket) {
+    Ticket updated =
+        new Ticket(
+            id,
+            newTicket.getName(),
+            newTicket.getCoordinates(),
+            newTicket.getCreationDate(),
+            newTicket.getPrice(),
+            newTicket.getType(),
+            newTicket.getPerson());
+    long stamp = lock.writeLock();
     try {
-      Ticket oldTicket = getById(id);
-      oldTicket.setName(newTicket.getName());
-      oldTicket.setCoordinates(newTicket.getCoordinates());
-      oldTicket.setPrice(newTicket.getPrice());
-      oldTicket.setCreationDate(newTicket.getCreationDate());
-      oldTicket.setType(newTicket.getType());
-      oldTicket.setPerson(newTicket.getPerson());
-      updateLastModifiedTime();
-    } catch (WrongArgumentException e) {
-      System.out.println(e.getMessage());
+      Ticket previous = collection.replace(updated);
+      if (previous == null) {
+        System.out.println("Билета с таким id нет в коллекции.");
+        return;
+      }
+      changeLog.recordUpsert(updated);
+      statistics.remove(previous);
+      statistics.add(updated);
+      touch();
+    } finally {
+      lock.unlockWrite(stamp);
     }
   }
 
@@ -226,8 +327,16 @@ public class ServerCollectionManager implements CollectionManager {
     if (ticket == null) {
       throw new RemoveException("Удаляемый элемент не может быть null.");
     }
-    collection.remove(ticket);
-    updateLastModifiedTime();
+    long stamp = lock.writeLock();
+    try {
+      if (collection.remove(ticket)) {
+        changeLog.recordRemoval(ticket);
+        statistics.remove(ticket);
+      }
+      touch();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
   }
 
   /**
@@ -243,32 +352,54 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public Ticket removeHead() throws RemoveException {
-    Ticket head = collection.poll();
-    if (head == null) {
-      throw new RemoveException("Удаляемый элемент не может быть null.");
+    long stamp = lock.writeLock();
+    try {
+      Ticket head = collection.pollFirst();
+      if (head == null) {
+        throw new RemoveException("Удаляемый элемент не может быть null.");
+      }
+      changeLog.recordRemoval(head);
+      statistics.remove(head);
+      touch();
+      return head;
+    } finally {
+      lock.unlockWrite(stamp);
     }
-    updateLastModifiedTime();
-    return head;
   }
 
   /**
    * Возвращает среднее значение поля {@code price} для всех элементов {@link Ticket} коллекции.
    *
+   * <p>Среднее берется из статистики, которая ведется при изменениях, за O(1).
+   *
    * @return Среднее значение поля {@code price}.
    * @see Ticket
+   * @see PriceStatistics
    * @author Alvas
    * @since 1.0
    */
   public float getAveragePrice() {
-    if (collection.isEmpty()) {
-      return (float) 0;
+    long stamp = lock.readLock();
+    try {
+      return (float) statistics.getAverage();
+    } finally {
+      lock.unlockRead(stamp);
     }
+  }
 
-    float sumPrice = 0;
-    for (Ticket ticket : collection) {
-      sumPrice += ticket.getPrice();
+  /**
+   * Возвращает статистику цен: количество, среднее, минимум, максимум и разбивку по типам.
+   *
+   * @return Копия статистики на текущий момент.
+   * @see PriceStatistics
+   */
+  public PriceStatistics.Summary getPriceSummary() {
+    long stamp = lock.readLock();
+    try {
+      return statistics.summary();
+    } finally {
+      lock.unlockRead(stamp);
     }
-    return sumPrice / getCollectionSize();
   }
 
   /**
@@ -284,17 +415,25 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public Ticket getMaxByDate() throws EmptyCollectionException {
-    if (collection.isEmpty()) {
-      throw new EmptyCollectionException("Невозможно найти максимальный элемент.");
-    }
+    long stamp = lock.readLock();
+    try {
+      if (collection.isEmpty()) {
+        throw new EmptyCollectionException("Невозможно найти максимальный элемент.");
+      }
 
-    return collection.stream().max(Ticket::compareToByDate).orElse(null);
+      return collection.stream().max(Ticket::compareToByDate).orElse(null);
+    } finally {
+      lock.unlockRead(stamp);
+    }
   }
 
   /**
    * Возвращает список всех элементов {@link Ticket} коллекции с заданным значением {@link
    * TicketType}.
    *
+   * <p>Элементы отбираются по битовому индексу типа, за время, пропорциональное количеству
+   * найденных.
+   *
    * @param type тип.
    * @return Список элементов с заданным типом.
    * @see Ticket
@@ -303,7 +442,56 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public List<Ticket> getFilteredByType(TicketType type) {
-    return collection.stream().filter(t -> t.getType().equals(type)).toList();
+    return select(TicketFilter.type(type));
+  }
+
+  /**
+   * Возвращает элементы, подходящие под условие, в порядке очереди.
+   *
+   * @param filter условие отбора по битовым индексам.
+   * @return Новый список подходящих элементов.
+   */
+  public List<Ticket> select(TicketFilter filter) {
+    long stamp = lock.readLock();
+    try {
+      return collection.select(filter);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Возвращает количество элементов, подходящих под условие, не обращаясь к самим элементам.
+   *
+   * @param filter условие отбора по битовым индексам.
+   * @return Количество подходящих элементов.
+   */
+  public int count(TicketFilter filter) {
+    long stamp = lock.readLock();
+    try {
+      return collection.count(filter);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Возвращает количества элементов для нескольких условий, посчитанные по одной версии коллекции.
+   *
+   * @param filters условия отбора по битовым индексам.
+   * @return Количества подходящих элементов в порядке условий.
+   */
+  public int[] countEach(TicketFilter... filters) {
+    int[] counts = new int[filters.length];
+    long stamp = lock.readLock();
+    try {
+      for (int i = 0; i < filters.length; i++) {
+        counts[i] = collection.count(filters[i]);
+      }
+    } finally {
+      lock.unlockRead(stamp);
+    }
+    return counts;
   }
 
   /**
@@ -318,7 +506,12 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public Ticket getMaxTicket() {
-    return collection.stream().max(Ticket::compareTo).orElse(null);
+    long stamp = lock.readLock();
+    try {
+      return collection.stream().max(Ticket::compareTo).orElse(null);
+    } finally {
+      lock.unlockRead(stamp);
+    }
   }
 
   /**
@@ -339,8 +532,21 @@ public class ServerCollectionManager implements CollectionManager {
     if (ticket == null) {
       throw new RemoveException("Не может быть элементов меньше null.");
     }
-    collection.removeIf(t -> t.compareTo(ticket) < 0);
-    updateLastModifiedTime();
+    long stamp = lock.writeLock();
+    try {
+      Iterator<Ticket> iterator = collection.iterator();
+      while (iterator.hasNext()) {
+        Ticket next = iterator.next();
+        if (next.compareTo(ticket) < 0) {
+          iterator.remove();
+          changeLog.recordRemoval(next);
+          statistics.remove(next);
+        }
+      }
+      touch();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
   }
 
   /**
@@ -352,6 +558,63 @@ public class ServerCollectionManager implements CollectionManager {
    * @since 1.0
    */
   public List<Ticket> getTicketsList() {
-    return new ArrayList<>(collection);
+    long stamp = lock.readLock();
+    try {
+      return new ArrayList<>(collection);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Возвращает текущую версию коллекции.
+   *
+   * @return Версия, увеличивающаяся при каждом изменении коллекции.
+   * @see ChangeLog
+   */
+  public long getVersion() {
+    long stamp = lock.tryOptimisticRead();
+    long version = changeLog.getVersion();
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        version = changeLog.getVersion();
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return version;
+  }
+
+  /**
+   * Возвращает изменения коллекции после заданной версии.
+   *
+   * @param version версия, известная клиенту.
+   * @return Изменения или коллекция целиком, если изменения с этой версии уже не хранятся.
+   * @see ChangeLog#since(long, java.util.function.Supplier)
+   */
+  public ChangeLog.Delta getChangesSince(long version) {
+    long stamp = lock.readLock();
+    try {
+      // Блокировка не повторно входимая, поэтому снимок берется без повторного захвата.
+      return changeLog.since(version, () -> new ArrayList<>(collection));
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Задает получателя событий об изменениях коллекции.
+   *
+   * @param listener получатель или {@code null}.
+   * @see ChangeLog#setListener(ChangeLog.ChangeListener)
+   */
+  public void setChangeListener(ChangeLog.ChangeListener listener) {
+    long stamp = lock.writeLock();
+    try {
+      changeLog.setListener(listener);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
   }
 }
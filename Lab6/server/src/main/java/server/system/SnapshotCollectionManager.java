@@ -0,0 +1,455 @@
+package server.system;
+
+import common.data.Ticket;
+import common.data.TicketType;
+import common.exceptions.EmptyCollectionException;
+import common.exceptions.RemoveException;
+import common.exceptions.WrongArgumentException;
+import common.managers.ChangeLog;
+import common.managers.CollectionManager;
+import common.managers.FileManager;
+import common.managers.IdManager;
+import common.managers.PriceStatistics;
+import common.utils.DateTimeUtils;
+import common.utils.Validator;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Менеджер коллекции с неизменяемыми версиями (MVCC): читатели не блокируются никогда.
+ *
+ * <p>Состояние коллекции — неизменяемый {@link Snapshot} из нескольких {@link PersistentLongMap}:
+ * элементы в порядке очереди, индекс по {@code id}, элементы по версии последнего изменения и
+ * надгробия удаленных элементов, а также статистика цен {@link PriceAggregate}. Изменение строит
+ * новый снимок, копируя O(log n) узлов, и публикует его одной записью в {@link AtomicReference}.
+ * Читатель берет текущий снимок одним чтением и дальше работает с ним, поэтому видит коллекцию
+ * целиком на один момент, даже если изменения продолжаются. Длинный постраничный {@code show} и
+ * сохранение в файл получают список-представление снимка без копирования.
+ *
+ * <p>Изменения выдаются по версиям так же, как в {@link ChangeLog}, но из того же снимка: {@code
+ * show_since} тоже не блокируется и согласован с содержимым коллекции.
+ *
+ * <p>Изменения исполняются по одному под монитором менеджера. Получатель событий об изменениях
+ * вызывается внутри изменения, до публикации нового снимка.
+ *
+ * @see ServerCollectionManager
+ * @see PersistentLongMap
+ */
+public class SnapshotCollectionManager implements CollectionManager {
+  private static final int MAX_TOMBSTONES = 10_000;
+
+  private final AtomicReference<Snapshot> current;
+  private final Object writeLock = new Object();
+  private final LocalDateTime initializationTime;
+  private final IdManager idManager;
+  private ChangeLog.ChangeListener listener;
+
+  /**
+   * @param fileManager файловый менеджер, из которого берется время создания и изменения файла.
+   * @param idManager менеджер {@code id}.
+   */
+  public SnapshotCollectionManager(FileManager fileManager, IdManager idManager) {
+    this.initializationTime = fileManager.getFileCreationTime();
+    this.idManager = idManager;
+    this.current = new AtomicReference<>(Snapshot.empty(fileManager.getFileLastModifiedTime()));
+  }
+
+  @Override
+  public IdManager getIdManager() {
+    return idManager;
+  }
+
+  /**
+   * Возвращает копию коллекции элементов в порядке очереди.
+   *
+   * @return Копия коллекции элементов.
+   */
+  @Override
+  public ArrayDeque<Ticket> getCollection() {
+    return new ArrayDeque<>(current.get().order.values());
+  }
+
+  @Override
+  public String getCollectionType() {
+    return "очередь из неизменяемых версий (MVCC)";
+  }
+
+  @Override
+  public LocalDateTime getInitializationTime() {
+    return initializationTime;
+  }
+
+  @Override
+  public LocalDateTime getLastUpdateTime() {
+    return current.get().lastUpdateTime;
+  }
+
+  @Override
+  public void updateLastModifiedTime() {
+    synchronized (writeLock) {
+      Snapshot snapshot = current.get();
+      current.set(snapshot.with(snapshot.order, snapshot.byId, snapshot.byVersion));
+    }
+  }
+
+  @Override
+  public int getCollectionSize() {
+    return current.get().order.size();
+  }
+
+  @Override
+  public void clearCollection() {
+    synchronized (writeLock) {
+      long version = current.get().version + 1;
+      if (listener != null) {
+        listener.onClear(version);
+      }
+      current.set(Snapshot.cleared(version));
+    }
+  }
+
+  /**
+   * Добавляет элемент {@link Ticket} в конец очереди.
+   *
+   * @param ticket элемент для добавления.
+   * @throws WrongArgumentException если элемент или элемент с тем же {@code id} уже содержится в
+   *     коллекции или элемент равен {@code null}.
+   */
+  @Override
+  public void addTicket(Ticket ticket) throws WrongArgumentException {
+    if (ticket == null) {
+      throw new WrongArgumentException("Билет не может быть null.");
+    }
+    synchronized (writeLock) {
+      Snapshot snapshot = current.get();
+      Row existing = snapshot.byId.get(ticket.getId());
+      if (existing != null) {
+        throw new WrongArgumentException(
+            existing.ticket == ticket
+                ? "Билет уже содержится в данной коллекции."
+                : "Билет с таким id уже содержится в данной коллекции.");
+      }
+      long version = snapshot.version + 1;
+      long position = snapshot.nextPosition;
+      idManager.addId(ticket.getId());
+      if (listener != null) {
+        listener.onUpsert(version, ticket);
+      }
+      current.set(
+          new Snapshot(
+              snapshot.order.put(position, ticket),
+              snapshot.byId.put(ticket.getId(), new Row(position, version, ticket)),
+              snapshot.byVersion.put(version, ticket),
+              snapshot.tombstones,
+              snapshot.prices.add(ticket),
+              position + 1,
+              version,
+              snapshot.horizon,
+              DateTimeUtils.getCurrentTime()));
+    }
+  }
+
+  @Override
+  public void fillCollection(List<Ticket> tickets) {
+    for (Ticket ticket : tickets) {
+      try {
+        if (Validator.isValidTicket(ticket, idManager)) {
+          addTicket(ticket);
+        } else {
+          System.out.println("Объект не прошел валидацию.");
+        }
+      } catch (WrongArgumentException e) {
+        System.out.println(e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public Ticket getById(int id) throws WrongArgumentException {
+    Row row = current.get().byId.get(id);
+    if (row == null) {
+      throw new WrongArgumentException("Билета с таким id нет в коллекции.");
+    }
+    return row.ticket;
+  }
+
+  /**
+   * Заменяет элемент с заданным {@code id} новым объектом на том же месте очереди.
+   *
+   * @param id уникальный идентификатор элемента.
+   * @param newTicket новые значения полей элемента.
+   */
+  @Override
+  public void updateTicket(int id, Ticket newTicket) {
+    Ticket updated =
+        new Ticket(
+            id,
+            newTicket.getName(),
+            newTicket.getCoordinates(),
+            newTicket.getCreationDate(),
+            newTicket.getPrice(),
+            newTicket.getType(),
+            newTicket.getPerson());
+    synchronized (writeLock) {
+      Snapshot snapshot = current.get();
+      Row row = snapshot.byId.get(id);
+      if (row == null) {
+        System.out.println("Билета с таким id нет в коллекции.");
+        return;
+      }
+      long version = snapshot.version + 1;
+      if (listener != null) {
+        listener.onUpsert(version, updated);
+      }
+      current.set(
+          new Snapshot(
+              snapshot.order.put(row.position, updated),
+              snapshot.byId.put(id, new Row(row.position, version, updated)),
+              snapshot.byVersion.remove(row.version).put(version, updated),
+              snapshot.tombstones,
+              snapshot.prices.remove(row.ticket).add(updated),
+              snapshot.nextPosition,
+              version,
+              snapshot.horizon,
+              DateTimeUtils.getCurrentTime()));
+    }
+  }
+
+  @Override
+  public void removeTicket(Ticket ticket) throws RemoveException {
+    if (ticket == null) {
+      throw new RemoveException("Удаляемый элемент не может быть null.");
+    }
+    synchronized (writeLock) {
+      Snapshot snapshot = current.get();
+      Row row = snapshot.byId.get(ticket.getId());
+      current.set(
+          row != null && row.ticket == ticket
+              ? remove(snapshot, row)
+              : snapshot.with(snapshot.order, snapshot.byId, snapshot.byVersion));
+    }
+  }
+
+  @Override
+  public Ticket removeHead() throws RemoveException {
+    synchronized (writeLock) {
+      Snapshot snapshot = current.get();
+      if (snapshot.order.isEmpty()) {
+        throw new RemoveException("Удаляемый элемент не может быть null.");
+      }
+      Ticket head = snapshot.order.firstValue();
+      current.set(remove(snapshot, snapshot.byId.get(head.getId())));
+      return head;
+    }
+  }
+
+  /** Строит снимок без элемента и с надгробием для него. Вызывается под монитором изменений. */
+  private Snapshot remove(Snapshot snapshot, Row row) {
+    int id = row.ticket.getId();
+    long version = snapshot.version + 1;
+    PersistentLongMap<Integer> tombstones = snapshot.tombstones.put(version, id);
+    long horizon = snapshot.horizon;
+    if (tombstones.size() > MAX_TOMBSTONES) {
+      horizon = tombstones.firstKey();
+      tombstones = tombstones.remove(horizon);
+    }
+    if (listener != null) {
+      listener.onRemoval(version, id);
+    }
+    return new Snapshot(
+        snapshot.order.remove(row.position),
+        snapshot.byId.remove(id),
+        snapshot.byVersion.remove(row.version),
+        tombstones,
+        snapshot.prices.remove(row.ticket),
+        snapshot.nextPosition,
+        version,
+        horizon,
+        DateTimeUtils.getCurrentTime());
+  }
+
+  @Override
+  public float getAveragePrice() {
+    return (float) getPriceSummary().getAverage();
+  }
+
+  /** Статистика ведется в снимке при каждом изменении, поэтому запрос не обходит коллекцию. */
+  @Override
+  public PriceStatistics.Summary getPriceSummary() {
+    return current.get().prices.summary();
+  }
+
+  @Override
+  public Ticket getMaxByDate() throws EmptyCollectionException {
+    List<Ticket> tickets = current.get().order.values();
+    if (tickets.isEmpty()) {
+      throw new EmptyCollectionException("Невозможно найти максимальный элемент.");
+    }
+
+    return tickets.stream().max(Ticket::compareToByDate).orElse(null);
+  }
+
+  @Override
+  public List<Ticket> getFilteredByType(TicketType type) {
+    return current.get().order.values().stream().filter(t -> t.getType().equals(type)).toList();
+  }
+
+  @Override
+  public Ticket getMaxTicket() {
+    return current.get().order.values().stream().max(Ticket::compareTo).orElse(null);
+  }
+
+  @Override
+  public void removeLower(Ticket ticket) throws RemoveException {
+    if (ticket == null) {
+      throw new RemoveException("Не может быть элементов меньше null.");
+    }
+    synchronized (writeLock) {
+      // Обход идет по исходному снимку, а удаления накапливаются в новом и публикуются разом.
+      Snapshot snapshot = current.get();
+      Snapshot updated = snapshot.with(snapshot.order, snapshot.byId, snapshot.byVersion);
+      for (Ticket next : snapshot.order.values()) {
+        if (next.compareTo(ticket) < 0) {
+          updated = remove(updated, updated.byId.get(next.getId()));
+        }
+      }
+      current.set(updated);
+    }
+  }
+
+  /**
+   * Возвращает все элементы в порядке очереди.
+   *
+   * @return Неизменяемый список-представление текущего снимка, созданный без копирования.
+   */
+  @Override
+  public List<Ticket> getTicketsList() {
+    return current.get().order.values();
+  }
+
+  @Override
+  public long getVersion() {
+    return current.get().version;
+  }
+
+  /**
+   * Возвращает изменения коллекции после заданной версии из одного снимка.
+   *
+   * @param version версия, известная клиенту.
+   * @return Изменения или коллекция целиком, если изменения с этой версии уже не хранятся.
+   */
+  @Override
+  public ChangeLog.Delta getChangesSince(long version) {
+    Snapshot snapshot = current.get();
+    if (version < snapshot.horizon || version > snapshot.version) {
+      return new ChangeLog.Delta(
+          snapshot.version, true, new ArrayList<>(snapshot.order.values()), List.of());
+    }
+    return new ChangeLog.Delta(
+        snapshot.version,
+        false,
+        snapshot.byVersion.valuesAfter(version),
+        snapshot.tombstones.valuesAfter(version));
+  }
+
+  @Override
+  public void setChangeListener(ChangeLog.ChangeListener listener) {
+    synchronized (writeLock) {
+      this.listener = listener;
+    }
+  }
+
+  /** Положение элемента в очереди, версия его последнего изменения и сам элемент. */
+  private static final class Row {
+    private final long position;
+    private final long version;
+    private final Ticket ticket;
+
+    private Row(long position, long version, Ticket ticket) {
+      this.position = position;
+      this.version = version;
+      this.ticket = ticket;
+    }
+  }
+
+  /** Неизменяемая версия коллекции. */
+  private static final class Snapshot {
+    private final PersistentLongMap<Ticket> order;
+    private final PersistentLongMap<Row> byId;
+    private final PersistentLongMap<Ticket> byVersion;
+    private final PersistentLongMap<Integer> tombstones;
+    private final PriceAggregate prices;
+    private final long nextPosition;
+    private final long version;
+    private final long horizon;
+    private final LocalDateTime lastUpdateTime;
+
+    private Snapshot(
+        PersistentLongMap<Ticket> order,
+        PersistentLongMap<Row> byId,
+        PersistentLongMap<Ticket> byVersion,
+        PersistentLongMap<Integer> tombstones,
+        PriceAggregate prices,
+        long nextPosition,
+        long version,
+        long horizon,
+        LocalDateTime lastUpdateTime) {
+      this.order = order;
+      this.byId = byId;
+      this.byVersion = byVersion;
+      this.tombstones = tombstones;
+      this.prices = prices;
+      this.nextPosition = nextPosition;
+      this.version = version;
+      this.horizon = horizon;
+      this.lastUpdateTime = lastUpdateTime;
+    }
+
+    private static Snapshot empty(LocalDateTime lastUpdateTime) {
+      return new Snapshot(
+          PersistentLongMap.empty(),
+          PersistentLongMap.empty(),
+          PersistentLongMap.empty(),
+          PersistentLongMap.empty(),
+          PriceAggregate.empty(),
+          1,
+          0,
+          0,
+          lastUpdateTime);
+    }
+
+    /** Пустая коллекция после очистки: клиенты с любой прежней версией получат ее целиком. */
+    private static Snapshot cleared(long version) {
+      return new Snapshot(
+          PersistentLongMap.empty(),
+          PersistentLongMap.empty(),
+          PersistentLongMap.empty(),
+          PersistentLongMap.empty(),
+          PriceAggregate.empty(),
+          1,
+          version,
+          version,
+          DateTimeUtils.getCurrentTime());
+    }
+
+    /** Та же версия с новым временем изменения. */
+    private Snapshot with(
+        PersistentLongMap<Ticket> order,
+        PersistentLongMap<Row> byId,
+        PersistentLongMap<Ticket> byVersion) {
+      return new Snapshot(
+          order,
+          byId,
+          byVersion,
+          tombstones,
+          prices,
+          nextPosition,
+          version,
+          horizon,
+          DateTimeUtils.getCurrentTime());
+    }
+  }
+}
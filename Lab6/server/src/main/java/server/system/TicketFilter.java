@@ -0,0 +1,75 @@
+package server.system;
+
+import common.data.TicketType;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Условие отбора билетов по битовым индексам {@link ServerCollectionManager}.
+ *
+ * <p>Простые условия — тип билета и наличие {@link common.data.Person}, его {@link
+ * common.data.Location} и {@code passportID}; они объединяются через И, ИЛИ и НЕ. Условие
+ * вычисляется над сжатыми множествами номеров строк, не обращаясь к самим билетам: подсчет идет по
+ * словам битовых множеств, а выборка читает только найденные билеты.
+ *
+ * <p>Условия неизменяемы и могут использоваться повторно.
+ *
+ * @see ServerCollectionManager#select(TicketFilter)
+ * @see ServerCollectionManager#count(TicketFilter)
+ */
+public final class TicketFilter {
+  private final Function<AttributeBitmaps, RowBitmap> rows;
+
+  private TicketFilter(Function<AttributeBitmaps, RowBitmap> rows) {
+    this.rows = rows;
+  }
+
+  /** Все билеты. */
+  public static TicketFilter all() {
+    return new TicketFilter(AttributeBitmaps::rows);
+  }
+
+  /** Билеты заданного типа. */
+  public static TicketFilter type(TicketType type) {
+    Objects.requireNonNull(type);
+    return new TicketFilter(attributes -> attributes.type(type));
+  }
+
+  /** Билеты с заданным {@code person}. */
+  public static TicketFilter hasPerson() {
+    return new TicketFilter(AttributeBitmaps::withPerson);
+  }
+
+  /** Билеты, у {@code person} которых задано местоположение. */
+  public static TicketFilter hasLocation() {
+    return new TicketFilter(AttributeBitmaps::withLocation);
+  }
+
+  /** Билеты, у {@code person} которых задан {@code passportID}. */
+  public static TicketFilter hasPassportId() {
+    return new TicketFilter(AttributeBitmaps::withPassportId);
+  }
+
+  /** Билеты, подходящие под оба условия. */
+  public TicketFilter and(TicketFilter other) {
+    return new TicketFilter(attributes -> evaluate(attributes).and(other.evaluate(attributes)));
+  }
+
+  /** Билеты, подходящие хотя бы под одно из условий. */
+  public TicketFilter or(TicketFilter other) {
+    return new TicketFilter(attributes -> evaluate(attributes).or(other.evaluate(attributes)));
+  }
+
+  /** Билеты, не подходящие под условие. */
+  public TicketFilter not() {
+    return new TicketFilter(attributes -> attributes.rows().andNot(evaluate(attributes)));
+  }
+
+  /**
+   * Вычисляет множество подходящих строк. Для простого условия это сам индекс, поэтому результат
+   * нельзя изменять.
+   */
+  RowBitmap evaluate(AttributeBitmaps attributes) {
+    return rows.apply(attributes);
+  }
+}
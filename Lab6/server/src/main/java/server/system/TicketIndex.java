@@ -0,0 +1,358 @@
+package server.system;
+
+import common.data.Ticket;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Коллекция билетов в порядке добавления с поиском и удалением по {@code id} за O(1).
+ *
+ * <p>Билеты хранятся в параллельных массивах записей, связанных в двусвязный список через индексы
+ * {@code prev}/{@code next}, поэтому удаление из середины не сдвигает остальные записи, а порядок
+ * для {@code remove_head} и вывода сохраняется. Новые записи всегда добавляются после занятых, а
+ * когда массивы заполнены и больше половины записей свободно, занятые записи переносятся в начало в
+ * порядке очереди. Поэтому номера записей возрастают вдоль очереди, и выборка по возрастанию
+ * номеров идет в порядке очереди.
+ *
+ * <p>Поиск записи по {@code id} — хеш-таблица с открытой адресацией и линейным пробированием по
+ * массиву {@code int}, без упаковки ключей в {@link Integer}. При удалении следующие записи цепочки
+ * сдвигаются назад, поэтому таблица не копит удаленных меток и не требует периодической чистки.
+ *
+ * <p>{@link #contains} и {@link #remove} находят запись по {@code id} и сравнивают ссылки. Прежний
+ * {@link java.util.ArrayDeque} сравнивал элементы через {@code equals}, но {@link Ticket} его не
+ * переопределяет, поэтому поведение то же. В коллекции не может быть двух билетов с одинаковым
+ * {@code id}.
+ *
+ * <p>По номерам записей ведутся битовые индексы атрибутов {@link AttributeBitmaps}, по которым
+ * {@link #select(TicketFilter)} и {@link #count(TicketFilter)} отбирают билеты, не перебирая всю
+ * коллекцию.
+ *
+ * <p>Класс не потокобезопасен.
+ */
+final class TicketIndex extends AbstractCollection<Ticket> {
+  private static final int NIL = -1;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private int[] ids;
+  private Ticket[] tickets;
+  private int[] prev;
+  private int[] next;
+  private int[] table;
+  private int mask;
+  private int head = NIL;
+  private int tail = NIL;
+  private int allocated;
+  private int size;
+  private int modCount;
+  private final AttributeBitmaps attributes = new AttributeBitmaps();
+
+  TicketIndex() {
+    ids = new int[INITIAL_CAPACITY];
+    tickets = new Ticket[INITIAL_CAPACITY];
+    prev = new int[INITIAL_CAPACITY];
+    next = new int[INITIAL_CAPACITY];
+    allocateTable(INITIAL_CAPACITY * 2);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** Количество записей в массивах, занятых и свободных; для диагностики. */
+  int capacity() {
+    return ids.length;
+  }
+
+  /**
+   * Добавляет билет в конец.
+   *
+   * @return {@code false}, если билет с таким {@code id} уже есть.
+   */
+  @Override
+  public boolean add(Ticket ticket) {
+    int id = ticket.getId();
+    if (find(id) != NIL) {
+      return false;
+    }
+    int entry = allocateEntry();
+    ids[entry] = id;
+    tickets[entry] = ticket;
+    prev[entry] = tail;
+    next[entry] = NIL;
+    if (tail == NIL) {
+      head = entry;
+    } else {
+      next[tail] = entry;
+    }
+    tail = entry;
+    insertSlot(entry);
+    attributes.add(entry, ticket);
+    size++;
+    modCount++;
+    return true;
+  }
+
+  /**
+   * Возвращает билет с заданным {@code id}.
+   *
+   * @return Билет или {@code null}, если его нет.
+   */
+  Ticket get(int id) {
+    int entry = find(id);
+    return entry == NIL ? null : tickets[entry];
+  }
+
+  /**
+   * Заменяет билет с заданным {@code id}, сохраняя его место в очереди.
+   *
+   * @param ticket новый билет с тем же {@code id}.
+   * @return Прежний билет или {@code null}, если билета с таким {@code id} нет.
+   */
+  Ticket replace(Ticket ticket) {
+    int entry = find(ticket.getId());
+    if (entry == NIL) {
+      return null;
+    }
+    Ticket previous = tickets[entry];
+    tickets[entry] = ticket;
+    attributes.remove(entry, previous);
+    attributes.add(entry, ticket);
+    return previous;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof Ticket && get(((Ticket) o).getId()) == o;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (!contains(o)) {
+      return false;
+    }
+    removeById(((Ticket) o).getId());
+    return true;
+  }
+
+  /**
+   * Удаляет билет с заданным {@code id}.
+   *
+   * @return Удаленный билет или {@code null}, если его не было.
+   */
+  Ticket removeById(int id) {
+    int slot = findSlot(id);
+    if (slot == NIL) {
+      return null;
+    }
+    int entry = table[slot];
+    Ticket ticket = tickets[entry];
+    deleteSlot(slot);
+    unlink(entry);
+    return ticket;
+  }
+
+  /**
+   * Удаляет первый билет.
+   *
+   * @return Первый билет или {@code null}, если коллекция пуста.
+   */
+  Ticket pollFirst() {
+    return head == NIL ? null : removeById(ids[head]);
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(tickets, 0, allocated, null);
+    Arrays.fill(table, NIL);
+    attributes.clear();
+    head = NIL;
+    tail = NIL;
+    allocated = 0;
+    size = 0;
+    modCount++;
+  }
+
+  /**
+   * Отбирает билеты по битовым индексам.
+   *
+   * @param filter условие отбора.
+   * @return Новый список подходящих билетов в порядке очереди.
+   */
+  List<Ticket> select(TicketFilter filter) {
+    RowBitmap rows = filter.evaluate(attributes);
+    List<Ticket> selected = new ArrayList<>(rows.cardinality());
+    rows.forEach(entry -> selected.add(tickets[entry]));
+    return selected;
+  }
+
+  /**
+   * Считает билеты, подходящие под условие, не обращаясь к самим билетам.
+   *
+   * @param filter условие отбора.
+   * @return Количество подходящих билетов.
+   */
+  int count(TicketFilter filter) {
+    return filter.evaluate(attributes).cardinality();
+  }
+
+  /** Итератор в порядке добавления; поддерживает {@link Iterator#remove()} за O(1). */
+  @Override
+  public Iterator<Ticket> iterator() {
+    return new Iterator<>() {
+      private int cursor = head;
+      private int lastReturned = NIL;
+      private int expectedModCount = modCount;
+
+      @Override
+      public boolean hasNext() {
+        return cursor != NIL;
+      }
+
+      @Override
+      public Ticket next() {
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (cursor == NIL) {
+          throw new NoSuchElementException();
+        }
+        lastReturned = cursor;
+        cursor = next[cursor];
+        return tickets[lastReturned];
+      }
+
+      @Override
+      public void remove() {
+        if (lastReturned == NIL) {
+          throw new IllegalStateException();
+        }
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        removeById(ids[lastReturned]);
+        lastReturned = NIL;
+        expectedModCount = modCount;
+      }
+    };
+  }
+
+  private void unlink(int entry) {
+    int before = prev[entry];
+    int after = next[entry];
+    if (before == NIL) {
+      head = after;
+    } else {
+      next[before] = after;
+    }
+    if (after == NIL) {
+      tail = before;
+    } else {
+      prev[after] = before;
+    }
+    attributes.remove(entry, tickets[entry]);
+    tickets[entry] = null;
+    size--;
+    modCount++;
+  }
+
+  private int allocateEntry() {
+    if (allocated == ids.length && size <= ids.length / 2) {
+      compact();
+    } else if (allocated == ids.length) {
+      int capacity = ids.length * 2;
+      ids = Arrays.copyOf(ids, capacity);
+      tickets = Arrays.copyOf(tickets, capacity);
+      prev = Arrays.copyOf(prev, capacity);
+      next = Arrays.copyOf(next, capacity);
+      // Заполнение таблицы не превышает половины.
+      allocateTable(capacity * 2);
+      for (int entry = head; entry != NIL; entry = next[entry]) {
+        insertSlot(entry);
+      }
+    }
+    return allocated++;
+  }
+
+  /**
+   * Переносит занятые записи в начало массивов в порядке очереди и перестраивает таблицу и индексы.
+   * Вызывается, только когда свободна хотя бы половина записей, поэтому на одно добавление
+   * приходится O(1) перенесенных записей.
+   */
+  private void compact() {
+    int row = 0;
+    for (int entry = head; entry != NIL; row++) {
+      int after = next[entry];
+      ids[row] = ids[entry];
+      tickets[row] = tickets[entry];
+      prev[row] = row - 1;
+      next[row] = row + 1;
+      entry = after;
+    }
+    Arrays.fill(tickets, size, allocated, null);
+    allocated = size;
+    head = size == 0 ? NIL : 0;
+    tail = size - 1;
+    if (size > 0) {
+      next[tail] = NIL;
+    }
+    Arrays.fill(table, NIL);
+    attributes.clear();
+    for (int entry = 0; entry < size; entry++) {
+      insertSlot(entry);
+      attributes.add(entry, tickets[entry]);
+    }
+  }
+
+  private void allocateTable(int capacity) {
+    table = new int[capacity];
+    Arrays.fill(table, NIL);
+    mask = capacity - 1;
+  }
+
+  private static int hash(int id) {
+    int h = id * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private int find(int id) {
+    int slot = findSlot(id);
+    return slot == NIL ? NIL : table[slot];
+  }
+
+  private int findSlot(int id) {
+    for (int slot = hash(id) & mask; table[slot] != NIL; slot = (slot + 1) & mask) {
+      if (ids[table[slot]] == id) {
+        return slot;
+      }
+    }
+    return NIL;
+  }
+
+  private void insertSlot(int entry) {
+    int slot = hash(ids[entry]) & mask;
+    while (table[slot] != NIL) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = entry;
+  }
+
+  /** Освобождает слот и сдвигает назад записи цепочки, которые иначе стали бы недостижимы. */
+  private void deleteSlot(int slot) {
+    int gap = slot;
+    for (int current = (slot + 1) & mask; table[current] != NIL; current = (current + 1) & mask) {
+      int home = hash(ids[table[current]]) & mask;
+      // Запись можно перенести в пропуск, если ее домашний слот не лежит между пропуском и ней.
+      if (((current - home) & mask) >= ((current - gap) & mask)) {
+        table[gap] = table[current];
+        gap = current;
+      }
+    }
+    table[gap] = NIL;
+  }
+}
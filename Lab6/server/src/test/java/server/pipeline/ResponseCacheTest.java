@@ -0,0 +1,51 @@
+package server.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Проверки {@link ResponseCache}: ответы разделяются по адресу клиента и вытесняются по порядку.
+ */
+class ResponseCacheTest {
+  private static final long HOUR_NANOS = 3_600_000_000_000L;
+
+  private final SocketAddress first = new InetSocketAddress("127.0.0.1", 5001);
+  private final SocketAddress second = new InetSocketAddress("127.0.0.1", 5002);
+
+  @Test
+  void sameClientIdFromAnotherAddressMisses() {
+    ResponseCache cache = new ResponseCache(16, 1024, HOUR_NANOS);
+    cache.put(first, 7, 1, payload(1), (byte) 0);
+
+    assertEquals(1, cache.get(new InetSocketAddress("127.0.0.1", 5001), 7, 1).getPayload().get());
+    assertNull(cache.get(second, 7, 1));
+
+    cache.put(second, 7, 1, payload(2), (byte) 0);
+    assertEquals(1, cache.get(first, 7, 1).getPayload().get());
+    assertEquals(2, cache.get(second, 7, 1).getPayload().get());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  void evictsOldestByCountAndBytes() {
+    ResponseCache cache = new ResponseCache(2, 3, HOUR_NANOS);
+    cache.put(first, 1, 1, payload(1), (byte) 0);
+    cache.put(first, 1, 2, payload(2), (byte) 0);
+    cache.put(second, 1, 1, payload(3), (byte) 0);
+    assertNull(cache.get(first, 1, 1));
+    assertEquals(2, cache.size());
+
+    cache.put(second, 1, 2, ByteBuffer.allocate(3), (byte) 0);
+    assertEquals(1, cache.size());
+    assertNull(cache.get(second, 1, 1));
+  }
+
+  private static ByteBuffer payload(int value) {
+    return ByteBuffer.wrap(new byte[] {(byte) value});
+  }
+}
@@ -0,0 +1,148 @@
+package server.system;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Проверки {@link PersistentLongMap}: согласованность с {@link TreeMap}, сбалансированность дерева
+ * и неизменность прежних версий.
+ */
+class PersistentLongMapTest {
+
+  @Test
+  void matchesTreeMapUnderRandomChanges() {
+    Random random = new Random(23);
+    PersistentLongMap<String> map = PersistentLongMap.empty();
+    TreeMap<Long, String> expected = new TreeMap<>();
+    for (int step = 0; step < 100_000; step++) {
+      long key = key(random);
+      if (random.nextInt(100) < 60) {
+        String value = "v" + step;
+        map = map.put(key, value);
+        expected.put(key, value);
+      } else {
+        map = map.remove(key);
+        expected.remove(key);
+      }
+      assertEquals(expected.get(key), map.get(key));
+      long other = key(random);
+      assertEquals(expected.get(other), map.get(other));
+      if (step % 1000 == 0) {
+        assertMatches(expected, map, random);
+      }
+    }
+    assertMatches(expected, map, random);
+  }
+
+  @Test
+  void previousVersionsDoNotChange() {
+    Random random = new Random(7);
+    PersistentLongMap<String> map = PersistentLongMap.empty();
+    TreeMap<Long, String> expected = new TreeMap<>();
+    List<PersistentLongMap<String>> versions = new ArrayList<>();
+    List<TreeMap<Long, String>> copies = new ArrayList<>();
+    List<List<String>> views = new ArrayList<>();
+    for (int step = 0; step < 20_000; step++) {
+      long key = key(random);
+      if (random.nextInt(100) < 55) {
+        map = map.put(key, "v" + step);
+        expected.put(key, "v" + step);
+      } else {
+        map = map.remove(key);
+        expected.remove(key);
+      }
+      if (step % 500 == 0) {
+        versions.add(map);
+        copies.add(new TreeMap<>(expected));
+        views.add(map.values());
+      }
+    }
+    for (int i = 0; i < versions.size(); i++) {
+      assertMatches(copies.get(i), versions.get(i), random);
+      assertEquals(new ArrayList<>(copies.get(i).values()), views.get(i));
+    }
+  }
+
+  @Test
+  void orderedInsertsStayBalanced() {
+    PersistentLongMap<Integer> ascending = PersistentLongMap.empty();
+    PersistentLongMap<Integer> descending = PersistentLongMap.empty();
+    int count = 1 << 16;
+    for (int i = 0; i < count; i++) {
+      ascending = ascending.put(i, i);
+      descending = descending.put(-i, i);
+    }
+    assertBalanced(ascending);
+    assertBalanced(descending);
+    for (int i = 0; i < count; i += 2) {
+      ascending = ascending.remove(i);
+    }
+    assertEquals(count / 2, ascending.size());
+    assertBalanced(ascending);
+    assertEquals(1, ascending.firstKey());
+    assertEquals(count - 1, ascending.lastKey());
+  }
+
+  @Test
+  void removingAbsentKeyKeepsMap() {
+    PersistentLongMap<String> map = PersistentLongMap.<String>empty().put(1, "a").put(3, "c");
+    assertSame(map, map.remove(2));
+    assertSame(map, map.remove(Long.MAX_VALUE));
+
+    PersistentLongMap<String> empty = PersistentLongMap.empty();
+    assertSame(empty, empty.remove(1));
+    assertNull(empty.get(1));
+    assertTrue(empty.values().isEmpty());
+    assertThrows(NoSuchElementException.class, empty::firstKey);
+    assertThrows(NoSuchElementException.class, empty::lastKey);
+    assertThrows(NoSuchElementException.class, empty::firstValue);
+  }
+
+  /** Ключи из небольшого диапазона, чтобы часто совпадать, и крайние значения {@code long}. */
+  private static long key(Random random) {
+    return switch (random.nextInt(20)) {
+      case 0 -> Long.MAX_VALUE;
+      case 1 -> Long.MIN_VALUE + 1;
+      default -> random.nextInt(4000) - 2000;
+    };
+  }
+
+  private static void assertMatches(
+      TreeMap<Long, String> expected, PersistentLongMap<String> map, Random random) {
+    assertEquals(expected.size(), map.size());
+    assertEquals(expected.isEmpty(), map.isEmpty());
+    List<String> values = map.values();
+    assertEquals(new ArrayList<>(expected.values()), values);
+    assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(values));
+    if (!expected.isEmpty()) {
+      assertEquals(expected.firstKey(), map.firstKey());
+      assertEquals(expected.lastKey(), map.lastKey());
+      assertEquals(expected.firstEntry().getValue(), map.firstValue());
+      int index = random.nextInt(expected.size());
+      assertEquals(new ArrayList<>(expected.values()).get(index), values.get(index));
+    }
+    long after = key(random);
+    assertEquals(new ArrayList<>(expected.tailMap(after, false).values()), map.valuesAfter(after));
+    for (Map.Entry<Long, String> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+    assertBalanced(map);
+  }
+
+  /** Высота АВЛ-дерева из n узлов не больше 1.44·log2(n + 2). */
+  private static void assertBalanced(PersistentLongMap<?> map) {
+    double bound = 1.4405 * Math.log(map.size() + 2) / Math.log(2) - 0.3277;
+    assertTrue(map.height() <= bound, "высота " + map.height() + " при " + map.size() + " узлах");
+  }
+}
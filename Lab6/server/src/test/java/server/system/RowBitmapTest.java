@@ -0,0 +1,224 @@
+package server.system;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Проверки {@link RowBitmap}: переходы между видами контейнеров, операции над множествами и
+ * согласованность содержимого.
+ */
+class RowBitmapTest {
+  private static final int ARRAY_LIMIT = 4096;
+
+  @Test
+  void blockStaysArrayUpToLimit() {
+    RowBitmap bitmap = new RowBitmap();
+    for (int row = 0; row < ARRAY_LIMIT; row++) {
+      bitmap.add(row * 2);
+    }
+    assertEquals(ARRAY_LIMIT, bitmap.cardinality());
+    assertEquals(0, bitmap.denseBlocks());
+
+    bitmap.add(0);
+    assertEquals(ARRAY_LIMIT, bitmap.cardinality());
+    assertEquals(0, bitmap.denseBlocks(), "повторное добавление не меняет вид контейнера");
+  }
+
+  @Test
+  void blockBecomesDenseAboveLimit() {
+    RowBitmap bitmap = new RowBitmap();
+    for (int row = 0; row <= ARRAY_LIMIT; row++) {
+      bitmap.add(row * 3);
+    }
+    assertEquals(ARRAY_LIMIT + 1, bitmap.cardinality());
+    assertEquals(1, bitmap.denseBlocks());
+    for (int row = 0; row <= ARRAY_LIMIT; row++) {
+      assertTrue(bitmap.contains(row * 3));
+      assertFalse(bitmap.contains(row * 3 + 1));
+    }
+  }
+
+  @Test
+  void denseBlockReturnsToArrayAtHalfLimit() {
+    RowBitmap bitmap = new RowBitmap();
+    for (int row = 0; row <= ARRAY_LIMIT; row++) {
+      bitmap.add(row);
+    }
+    int row = ARRAY_LIMIT;
+    while (bitmap.cardinality() > ARRAY_LIMIT / 2 + 1) {
+      bitmap.remove(row--);
+    }
+    assertEquals(1, bitmap.denseBlocks(), "запас от границы: контейнер еще плотный");
+
+    bitmap.remove(row);
+    assertEquals(ARRAY_LIMIT / 2, bitmap.cardinality());
+    assertEquals(0, bitmap.denseBlocks());
+    assertEquals(range(0, ARRAY_LIMIT / 2), rows(bitmap));
+
+    bitmap.remove(ARRAY_LIMIT);
+    assertEquals(ARRAY_LIMIT / 2, bitmap.cardinality(), "удаление отсутствующего номера");
+  }
+
+  @Test
+  void blocksAreIndependent() {
+    RowBitmap bitmap = new RowBitmap();
+    for (int row = 0; row <= ARRAY_LIMIT; row++) {
+      bitmap.add((1 << 16) + row);
+    }
+    bitmap.add(5);
+    bitmap.add(Integer.MAX_VALUE);
+    assertEquals(1, bitmap.denseBlocks());
+    assertEquals(ARRAY_LIMIT + 3, bitmap.cardinality());
+
+    bitmap.remove(5);
+    assertFalse(bitmap.contains(5));
+    assertTrue(bitmap.contains(1 << 16));
+    assertTrue(bitmap.contains(Integer.MAX_VALUE));
+
+    List<Integer> rows = rows(bitmap);
+    assertEquals(Integer.MAX_VALUE, rows.get(rows.size() - 1));
+    assertEquals(1 << 16, rows.get(0));
+  }
+
+  @Test
+  void clearRemovesAllBlocks() {
+    RowBitmap bitmap = new RowBitmap();
+    for (int row = 0; row < 3 * ARRAY_LIMIT; row++) {
+      bitmap.add(row * 7);
+    }
+    bitmap.clear();
+    assertEquals(0, bitmap.cardinality());
+    assertEquals(0, bitmap.denseBlocks());
+    assertEquals(List.of(), rows(bitmap));
+
+    bitmap.add(42);
+    assertEquals(List.of(42), rows(bitmap));
+  }
+
+  @Test
+  void matchesSortedSetUnderRandomChanges() {
+    Random random = new Random(24);
+    RowBitmap bitmap = new RowBitmap();
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int step = 0; step < 200_000; step++) {
+      // Доля добавлений меняется, и контейнеры двух блоков проходят обе границы туда и обратно.
+      int addPercent = step / 25_000 % 2 == 0 ? 85 : 20;
+      int row = random.nextInt(6000) + (random.nextBoolean() ? 0 : 1 << 16);
+      if (random.nextInt(100) < addPercent) {
+        bitmap.add(row);
+        expected.add(row);
+      } else {
+        bitmap.remove(row);
+        expected.remove(row);
+      }
+      if (step % 10_000 == 0) {
+        assertEquals(new ArrayList<>(expected), rows(bitmap));
+      }
+    }
+    assertEquals(expected.size(), bitmap.cardinality());
+    assertEquals(new ArrayList<>(expected), rows(bitmap));
+  }
+
+  @Test
+  void setOperationsMatchSortedSets() {
+    Random random = new Random(2024);
+    int[] densities = {0, 1, 300, 3000, 5000, 20_000};
+    for (int round = 0; round < 40; round++) {
+      TreeSet<Integer> left = new TreeSet<>();
+      TreeSet<Integer> right = new TreeSet<>();
+      // Блоки с разными ключами и плотностью: массив с массивом, массив со словами, слова со
+      // словами и блоки, которые есть только в одном из операндов.
+      for (int block = 0; block < 5; block++) {
+        fill(left, random, block, densities[random.nextInt(densities.length)]);
+        fill(right, random, block, densities[random.nextInt(densities.length)]);
+      }
+      RowBitmap a = bitmap(left);
+      RowBitmap b = bitmap(right);
+
+      TreeSet<Integer> and = new TreeSet<>(left);
+      and.retainAll(right);
+      TreeSet<Integer> or = new TreeSet<>(left);
+      or.addAll(right);
+      TreeSet<Integer> andNot = new TreeSet<>(left);
+      andNot.removeAll(right);
+
+      assertMatches(and, a.and(b));
+      assertMatches(and, b.and(a));
+      assertMatches(or, a.or(b));
+      assertMatches(or, b.or(a));
+      assertMatches(andNot, a.andNot(b));
+      assertMatches(left, a);
+      assertMatches(right, b);
+    }
+  }
+
+  @Test
+  void setOperationResultsUseCompactContainers() {
+    RowBitmap evens = new RowBitmap();
+    RowBitmap odds = new RowBitmap();
+    for (int row = 0; row < 20_000; row++) {
+      (row % 2 == 0 ? evens : odds).add(row);
+    }
+    odds.add(0);
+    RowBitmap and = evens.and(odds);
+    assertEquals(List.of(0), rows(and));
+    assertEquals(0, and.denseBlocks(), "малое пересечение плотных блоков хранится массивом");
+
+    assertEquals(0, evens.andNot(evens).cardinality());
+    assertEquals(List.of(), rows(evens.andNot(evens)));
+
+    RowBitmap low = new RowBitmap();
+    RowBitmap high = new RowBitmap();
+    for (int row = 0; row < 3000; row++) {
+      low.add(row);
+      high.add(row + 3000);
+    }
+    RowBitmap or = low.or(high);
+    assertEquals(6000, or.cardinality());
+    assertEquals(1, or.denseBlocks(), "объединение массивов больше предела хранится словами");
+
+    or.add(70_000);
+    assertEquals(6000, low.or(high).cardinality(), "результат не связан с операндами");
+  }
+
+  private static void fill(TreeSet<Integer> rows, Random random, int block, int count) {
+    for (int i = 0; i < count; i++) {
+      rows.add((block << 16) + random.nextInt(1 << 16));
+    }
+  }
+
+  private static RowBitmap bitmap(TreeSet<Integer> rows) {
+    RowBitmap bitmap = new RowBitmap();
+    rows.forEach(bitmap::add);
+    return bitmap;
+  }
+
+  private static void assertMatches(TreeSet<Integer> expected, RowBitmap actual) {
+    assertEquals(expected.size(), actual.cardinality());
+    assertEquals(new ArrayList<>(expected), rows(actual));
+    for (int row : expected) {
+      assertTrue(actual.contains(row));
+    }
+  }
+
+  private static List<Integer> rows(RowBitmap bitmap) {
+    List<Integer> rows = new ArrayList<>();
+    bitmap.forEach(rows::add);
+    return rows;
+  }
+
+  private static List<Integer> range(int from, int to) {
+    List<Integer> rows = new ArrayList<>();
+    for (int row = from; row < to; row++) {
+      rows.add(row);
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,221 @@
+package server.system;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import common.data.Coordinates;
+import common.data.Location;
+import common.data.Person;
+import common.data.Ticket;
+import common.data.TicketType;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Проверки {@link TicketIndex}: согласованность с очередью {@link ArrayDeque} и картой по {@code
+ * id} при росте таблицы, удалениях со сдвигом цепочек и переносе записей в начало массивов.
+ */
+class TicketIndexTest {
+  private final Random random = new Random(21);
+  private final TicketIndex index = new TicketIndex();
+  private final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+  private final Map<Integer, Ticket> byId = new HashMap<>();
+
+  @Test
+  void matchesDequeThroughGrowthChurnAndShrink() {
+    // Рост: таблица и массивы расширяются несколько раз.
+    run(30_000, 5000, 80);
+    int grown = index.capacity();
+    assertTrue(index.size() > 4000, "размер " + index.size());
+
+    // Удаления до четверти, затем равновесие: новые записи идут после занятых, и массивы
+    // заполняются снова, но больше половины записей свободно — записи переносятся, а не растут.
+    run(60_000, 5000, 25);
+    assertTrue(index.size() < grown / 4, "размер " + index.size());
+    run(200_000, 5000, 50);
+    assertEquals(grown, index.capacity(), "при заполнении не больше половины массивы не растут");
+
+    // Очистка и повторное заполнение.
+    index.clear();
+    queue.clear();
+    byId.clear();
+    assertMatches();
+    run(20_000, 2000, 70);
+  }
+
+  @Test
+  void collidingIdsSurviveBackwardShift() {
+    // Соседние id в небольшом диапазоне часто попадают в одну цепочку пробирования; удаления из
+    // середины цепочек проверяют сдвиг следующих записей назад.
+    for (int round = 0; round < 20; round++) {
+      run(5000, 64, 55);
+    }
+  }
+
+  @Test
+  void pollFirstFollowsQueueOrder() {
+    for (int id = 1; id <= 100; id++) {
+      add(ticket(id));
+    }
+    for (int id = 1; id <= 100; id += 3) {
+      assertSame(byId.remove(id), index.removeById(id));
+    }
+    queue.removeIf(ticket -> !byId.containsKey(ticket.getId()));
+    while (!queue.isEmpty()) {
+      Ticket expected = queue.pollFirst();
+      byId.remove(expected.getId());
+      assertSame(expected, index.pollFirst());
+      assertMatches();
+    }
+    assertNull(index.pollFirst());
+  }
+
+  @Test
+  void identityIsByReference() {
+    Ticket ticket = ticket(7);
+    add(ticket);
+    Ticket sameId = ticket(7);
+    assertFalse(index.add(sameId));
+    assertFalse(index.contains(sameId));
+    assertFalse(index.remove(sameId));
+    assertTrue(index.contains(ticket));
+
+    assertSame(ticket, index.replace(sameId));
+    assertFalse(index.contains(ticket));
+    assertTrue(index.contains(sameId));
+    assertNull(index.replace(ticket(8)));
+  }
+
+  @Test
+  void iteratorRemovesAndDetectsChanges() {
+    for (int id = 1; id <= 50; id++) {
+      add(ticket(id));
+    }
+    Iterator<Ticket> iterator = index.iterator();
+    assertThrows(IllegalStateException.class, iterator::remove);
+    while (iterator.hasNext()) {
+      Ticket ticket = iterator.next();
+      if (ticket.getId() % 2 == 0) {
+        iterator.remove();
+        queue.remove(ticket);
+        byId.remove(ticket.getId());
+      }
+    }
+    assertMatches();
+
+    Iterator<Ticket> stale = index.iterator();
+    add(ticket(100));
+    assertThrows(ConcurrentModificationException.class, stale::next);
+  }
+
+  /**
+   * Случайные изменения с заданной долей добавлений; время от времени сравнивает все содержимое.
+   */
+  private void run(int steps, int idRange, int addPercent) {
+    for (int step = 0; step < steps; step++) {
+      int id = random.nextInt(idRange) + 1;
+      int operation = random.nextInt(100);
+      if (operation < addPercent) {
+        Ticket ticket = ticket(id);
+        if (byId.containsKey(id)) {
+          assertFalse(index.add(ticket));
+        } else {
+          add(ticket);
+        }
+      } else if (operation < addPercent + (100 - addPercent) / 4) {
+        Ticket ticket = ticket(id);
+        Ticket previous = byId.get(id);
+        assertSame(previous, index.replace(ticket));
+        if (previous != null) {
+          byId.put(id, ticket);
+          List<Ticket> replaced = new ArrayList<>(queue);
+          replaced.replaceAll(element -> element == previous ? ticket : element);
+          queue.clear();
+          queue.addAll(replaced);
+        }
+      } else if (operation < addPercent + (100 - addPercent) / 2) {
+        Ticket expected = queue.pollFirst();
+        if (expected != null) {
+          byId.remove(expected.getId());
+        }
+        assertSame(expected, index.pollFirst());
+      } else {
+        Ticket expected = byId.remove(id);
+        if (expected != null) {
+          queue.remove(expected);
+        }
+        assertSame(expected, index.removeById(id));
+      }
+      assertSame(byId.get(id), index.get(id));
+      if (step % 2000 == 0) {
+        assertMatches();
+      }
+    }
+    assertMatches();
+  }
+
+  private void add(Ticket ticket) {
+    assertTrue(index.add(ticket));
+    queue.addLast(ticket);
+    byId.put(ticket.getId(), ticket);
+  }
+
+  private void assertMatches() {
+    assertEquals(queue.size(), index.size());
+    assertEquals(new ArrayList<>(queue), new ArrayList<>(index));
+    for (Ticket ticket : queue) {
+      assertSame(ticket, index.get(ticket.getId()));
+      assertTrue(index.contains(ticket));
+    }
+    assertNull(index.get(0));
+    for (TicketType type : TicketType.values()) {
+      assertEquals(
+          select(ticket -> ticket.getType() == type), index.select(TicketFilter.type(type)));
+    }
+    assertEquals(
+        select(ticket -> ticket.getPerson() != null).size(), index.count(TicketFilter.hasPerson()));
+    assertEquals(
+        select(ticket -> ticket.getPerson() == null || ticket.getPerson().getLocation() == null),
+        index.select(TicketFilter.hasLocation().not()));
+  }
+
+  private List<Ticket> select(Predicate<Ticket> condition) {
+    List<Ticket> selected = new ArrayList<>();
+    for (Ticket ticket : queue) {
+      if (condition.test(ticket)) {
+        selected.add(ticket);
+      }
+    }
+    return selected;
+  }
+
+  private Ticket ticket(int id) {
+    TicketType[] types = TicketType.values();
+    int type = random.nextInt(types.length + 1);
+    Person person =
+        random.nextBoolean()
+            ? null
+            : new Person(null, 70, null, random.nextBoolean() ? null : new Location(1L, 2L, 3));
+    return new Ticket(
+        id,
+        "ticket" + id,
+        new Coordinates(1, 2L),
+        LocalDate.of(2024, 1, 1),
+        100,
+        type == types.length ? null : types[type],
+        person);
+  }
+}